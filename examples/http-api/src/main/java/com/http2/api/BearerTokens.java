@@ -0,0 +1,73 @@
+package com.http2.api;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Signs and verifies the bearer tokens the service accepts: {@code
+ * <subject>.<expiry>.<signature>}, where the expiry is in epoch seconds and the signature is the
+ * url safe base64 HMAC-SHA256 of the first two parts, keyed with a secret shared by whoever issues
+ * tokens and the service.
+ */
+public class BearerTokens {
+
+  private static final String ALGORITHM = "HmacSHA256";
+
+  private final SecretKeySpec key;
+
+  public BearerTokens(String secret) {
+    this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+  }
+
+  public String sign(String subject, long expiresAtEpochSeconds) {
+    if (subject.indexOf('.') >= 0) {
+      throw new IllegalArgumentException("a subject can't contain a '.'");
+    }
+    String payload = subject + "." + expiresAtEpochSeconds;
+    return payload + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(mac(payload));
+  }
+
+  /** the subject of a token, or null if it isn't signed with this secret, has expired or is bad */
+  public String verify(String token) {
+    int signatureAt = token.lastIndexOf('.');
+    if (signatureAt <= 0) return null;
+
+    String payload = token.substring(0, signatureAt);
+    byte[] signature;
+    try {
+      signature = Base64.getUrlDecoder().decode(token.substring(signatureAt + 1));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (!MessageDigest.isEqual(mac(payload), signature)) return null;
+
+    int expiryAt = payload.indexOf('.');
+    if (expiryAt <= 0 || expiresAt(token) * 1000 < System.currentTimeMillis()) return null;
+    return payload.substring(0, expiryAt);
+  }
+
+  /** the expiry of a token, in epoch seconds, without verifying it */
+  public static long expiresAt(String token) {
+    String[] parts = token.split("\\.");
+    try {
+      return parts.length == 3 ? Long.parseLong(parts[1]) : 0;
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private byte[] mac(String payload) {
+    try {
+      // a Mac isn't thread safe, and getting one is cheap next to what it costs to share one
+      Mac mac = Mac.getInstance(ALGORITHM);
+      mac.init(key);
+      return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
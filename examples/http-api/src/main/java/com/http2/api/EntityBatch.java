@@ -0,0 +1,197 @@
+package com.http2.api;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.IntPredicate;
+
+/**
+ * A batch of entities held in columns rather than as an {@link Entity} per row: the names as utf-8
+ * bytes in one shared array with an offset and length per row, and the addresses, which have to be
+ * UUIDs, as two longs per row. A batch of any size is a handful of arrays, which grow as rows are
+ * added, instead of three objects per entity.
+ *
+ * <p>Rows are read by index; the accessors returning a {@link String} build one, the others don't.
+ */
+public class EntityBatch {
+
+  private static final int ABSENT = -1;
+
+  private int size;
+  private int[] nameOffsets;
+  private int[] nameLengths;
+  private byte[] names;
+  private int namesLength;
+  private long[] addressMostSignificantBits;
+  private long[] addressLeastSignificantBits;
+  private boolean[] hasAddress;
+
+  public EntityBatch() {
+    this(16, 256);
+  }
+
+  public EntityBatch(int expectedEntities, int expectedNameBytes) {
+    int rows = Math.max(1, expectedEntities);
+    this.nameOffsets = new int[rows];
+    this.nameLengths = new int[rows];
+    this.names = new byte[Math.max(1, expectedNameBytes)];
+    this.addressMostSignificantBits = new long[rows];
+    this.addressLeastSignificantBits = new long[rows];
+    this.hasAddress = new boolean[rows];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** adds a row without a name or an address, to be set with the setters; returns its index */
+  public int add() {
+    if (size == nameOffsets.length) {
+      int rows = size * 2;
+      nameOffsets = Arrays.copyOf(nameOffsets, rows);
+      nameLengths = Arrays.copyOf(nameLengths, rows);
+      addressMostSignificantBits = Arrays.copyOf(addressMostSignificantBits, rows);
+      addressLeastSignificantBits = Arrays.copyOf(addressLeastSignificantBits, rows);
+      hasAddress = Arrays.copyOf(hasAddress, rows);
+    }
+    nameOffsets[size] = namesLength;
+    nameLengths[size] = ABSENT;
+    hasAddress[size] = false;
+    return size++;
+  }
+
+  /**
+   * sets the name of the last row added, encoding the chars as utf-8; a lone surrogate is encoded
+   * as {@code ?}, as {@link String#getBytes} would
+   */
+  public void setName(char[] chars, int offset, int length) {
+    int row = size - 1;
+    ensureNames(length * 3);
+    int start = namesLength;
+    int end = offset + length;
+    for (int i = offset; i < end; i++) {
+      char c = chars[i];
+      if (c < 0x80) {
+        names[namesLength++] = (byte) c;
+      } else if (c < 0x800) {
+        names[namesLength++] = (byte) (0xc0 | c >> 6);
+        names[namesLength++] = (byte) (0x80 | c & 0x3f);
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < end
+          && Character.isLowSurrogate(chars[i + 1])) {
+        int cp = Character.toCodePoint(c, chars[++i]);
+        names[namesLength++] = (byte) (0xf0 | cp >> 18);
+        names[namesLength++] = (byte) (0x80 | cp >> 12 & 0x3f);
+        names[namesLength++] = (byte) (0x80 | cp >> 6 & 0x3f);
+        names[namesLength++] = (byte) (0x80 | cp & 0x3f);
+      } else if (Character.isSurrogate(c)) {
+        names[namesLength++] = '?';
+      } else {
+        names[namesLength++] = (byte) (0xe0 | c >> 12);
+        names[namesLength++] = (byte) (0x80 | c >> 6 & 0x3f);
+        names[namesLength++] = (byte) (0x80 | c & 0x3f);
+      }
+    }
+    nameOffsets[row] = start;
+    nameLengths[row] = namesLength - start;
+  }
+
+  /** sets the name of the last row added, reading that many utf-8 bytes straight into the batch */
+  public void readName(DataInput in, int length) throws IOException {
+    int row = size - 1;
+    ensureNames(length);
+    in.readFully(names, namesLength, length);
+    nameOffsets[row] = namesLength;
+    nameLengths[row] = length;
+    namesLength += length;
+  }
+
+  /** sets the address of the last row added */
+  public void setAddress(long mostSignificantBits, long leastSignificantBits) {
+    int row = size - 1;
+    addressMostSignificantBits[row] = mostSignificantBits;
+    addressLeastSignificantBits[row] = leastSignificantBits;
+    hasAddress[row] = true;
+  }
+
+  public boolean hasName(int row) {
+    return nameLengths[row] != ABSENT;
+  }
+
+  /** the length of a row's name in utf-8 bytes; -1 if it has none */
+  public int getNameLength(int row) {
+    return nameLengths[row];
+  }
+
+  /** copies the utf-8 bytes of a row's name into a buffer */
+  public void copyName(int row, ByteBuffer dst) {
+    if (hasName(row)) dst.put(names, nameOffsets[row], nameLengths[row]);
+  }
+
+  /** copies the utf-8 bytes of a row's name into an array */
+  public void copyName(int row, byte[] dst, int offset) {
+    if (hasName(row)) System.arraycopy(names, nameOffsets[row], dst, offset, nameLengths[row]);
+  }
+
+  public String getName(int row) {
+    return hasName(row)
+        ? new String(names, nameOffsets[row], nameLengths[row], StandardCharsets.UTF_8)
+        : null;
+  }
+
+  public boolean hasAddress(int row) {
+    return hasAddress[row];
+  }
+
+  public long getAddressMostSignificantBits(int row) {
+    return addressMostSignificantBits[row];
+  }
+
+  public long getAddressLeastSignificantBits(int row) {
+    return addressLeastSignificantBits[row];
+  }
+
+  public String getAddress(int row) {
+    return hasAddress(row)
+        ? new UUID(addressMostSignificantBits[row], addressLeastSignificantBits[row]).toString()
+        : null;
+  }
+
+  /**
+   * removes the rows matching a predicate, keeping the order of the others; the predicate sees
+   * every row at its index before any row is removed
+   *
+   * @return how many rows were removed
+   */
+  public int removeIf(IntPredicate filter) {
+    int kept = 0;
+    int keptNames = 0;
+    for (int row = 0; row < size; row++) {
+      if (filter.test(row)) continue;
+      // rows only move down, so nothing is overwritten before it is read
+      if (hasName(row)) {
+        System.arraycopy(names, nameOffsets[row], names, keptNames, nameLengths[row]);
+      }
+      nameOffsets[kept] = keptNames;
+      nameLengths[kept] = nameLengths[row];
+      keptNames += Math.max(0, nameLengths[row]);
+      addressMostSignificantBits[kept] = addressMostSignificantBits[row];
+      addressLeastSignificantBits[kept] = addressLeastSignificantBits[row];
+      hasAddress[kept] = hasAddress[row];
+      kept++;
+    }
+    int removed = size - kept;
+    size = kept;
+    namesLength = keptNames;
+    return removed;
+  }
+
+  private void ensureNames(int extra) {
+    if (names.length - namesLength < extra) {
+      names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength + extra));
+    }
+  }
+}
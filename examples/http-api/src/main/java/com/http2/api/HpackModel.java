@@ -0,0 +1,427 @@
+package com.http2.api;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Works out how big the header block of a request is once HPACK (RFC 7541) has compressed it, by
+ * encoding it the way the OkHttp client of the benchmark does, with a dynamic table per connection
+ * that fills up as the requests on it go by. Neither OkHttp nor Jetty tell how many bytes their
+ * encoders write, so this replays the choices of the client's encoder instead: a field is sent as
+ * an index when the table has it whole, as a literal with an indexed name when it only has the
+ * name, and as a literal otherwise, its utf-8 bytes Huffman coded when that is shorter, and
+ * everything but the pseudo headers other than {@code :authority} is added to the dynamic table.
+ * The same request is also sized as an http/1.1 request line and headers, so the two protocols can
+ * be compared. The lengths of the Huffman codes are copied from the RFC, so this needs no HPACK
+ * library.
+ *
+ * <p>A model is one side of one connection, its methods are synchronized so the streams sharing the
+ * connection can use it from any thread; {@link Totals} adds the blocks of many models up. It only
+ * matches the client's encoder while it sees the requests in the order they were encoded.
+ */
+public class HpackModel {
+
+  /** the size of the dynamic table until a peer changes it, as SETTINGS_HEADER_TABLE_SIZE */
+  public static final int DEFAULT_TABLE_SIZE = 4096;
+
+  // the pseudo headers of a request, in the order the client writes them
+  public static final String METHOD = ":method";
+  public static final String PATH = ":path";
+  public static final String AUTHORITY = ":authority";
+  public static final String SCHEME = ":scheme";
+
+  /** connection specific headers, which aren't sent over h2 */
+  public static final Set<String> SKIPPED =
+      new HashSet<>(
+          Arrays.asList(
+              "connection",
+              "host",
+              "keep-alive",
+              "proxy-connection",
+              "te",
+              "transfer-encoding",
+              "encoding",
+              "upgrade"));
+
+  // what every entry of a table costs on top of its name and value
+  private static final int ENTRY_OVERHEAD = 32;
+
+  private static final String[][] STATIC_TABLE = {
+    {":authority", ""},
+    {":method", "GET"},
+    {":method", "POST"},
+    {":path", "/"},
+    {":path", "/index.html"},
+    {":scheme", "http"},
+    {":scheme", "https"},
+    {":status", "200"},
+    {":status", "204"},
+    {":status", "206"},
+    {":status", "304"},
+    {":status", "400"},
+    {":status", "404"},
+    {":status", "500"},
+    {"accept-charset", ""},
+    {"accept-encoding", "gzip, deflate"},
+    {"accept-language", ""},
+    {"accept-ranges", ""},
+    {"accept", ""},
+    {"access-control-allow-origin", ""},
+    {"age", ""},
+    {"allow", ""},
+    {"authorization", ""},
+    {"cache-control", ""},
+    {"content-disposition", ""},
+    {"content-encoding", ""},
+    {"content-language", ""},
+    {"content-length", ""},
+    {"content-location", ""},
+    {"content-range", ""},
+    {"content-type", ""},
+    {"cookie", ""},
+    {"date", ""},
+    {"etag", ""},
+    {"expect", ""},
+    {"expires", ""},
+    {"from", ""},
+    {"host", ""},
+    {"if-match", ""},
+    {"if-modified-since", ""},
+    {"if-none-match", ""},
+    {"if-range", ""},
+    {"if-unmodified-since", ""},
+    {"last-modified", ""},
+    {"link", ""},
+    {"location", ""},
+    {"max-forwards", ""},
+    {"proxy-authenticate", ""},
+    {"proxy-authorization", ""},
+    {"range", ""},
+    {"referer", ""},
+    {"refresh", ""},
+    {"retry-after", ""},
+    {"server", ""},
+    {"set-cookie", ""},
+    {"strict-transport-security", ""},
+    {"transfer-encoding", ""},
+    {"user-agent", ""},
+    {"vary", ""},
+    {"via", ""},
+    {"www-authenticate", ""}
+  };
+
+  // the bits of the Huffman code of every byte, from appendix B of RFC 7541
+  private static final byte[] HUFFMAN_BITS = {
+    13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+    28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+    6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+    5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+    13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+    7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+    15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+    6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+    20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+    24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+    22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+    21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+    26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+    19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+    20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+    26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26
+  };
+
+  // the first index of every name of the static table, counting from 1
+  private static final Map<String, Integer> STATIC_NAMES = new HashMap<>();
+
+  static {
+    for (int i = STATIC_TABLE.length - 1; i >= 0; i--) {
+      STATIC_NAMES.put(STATIC_TABLE[i][0], i + 1);
+    }
+  }
+
+  private final int maxTableSize;
+  // newest first, as the indices of the dynamic table count
+  private final Deque<String[]> table = new ArrayDeque<>();
+  private int tableSize;
+
+  public HpackModel() {
+    this(DEFAULT_TABLE_SIZE);
+  }
+
+  public HpackModel(int maxTableSize) {
+    this.maxTableSize = maxTableSize;
+  }
+
+  /**
+   * encodes the header list of a request, its pseudo headers first, adding to the dynamic table as
+   * the encoder would; the names must already be lower case and without the {@link #SKIPPED} ones
+   */
+  public synchronized Block encode(List<Map.Entry<String, String>> fields, int h1Bytes) {
+    Block block = new Block(h1Bytes);
+    for (Map.Entry<String, String> field : fields) {
+      String name = field.getKey();
+      String value = field.getValue();
+      block.fields++;
+      block.listBytes += entrySize(name, value);
+
+      int index = -1;
+      int nameIndex = -1;
+      Integer staticName = STATIC_NAMES.get(name);
+      if (staticName != null) {
+        nameIndex = staticName;
+        // only :method, :path and :scheme have values worth matching in the static table
+        if (nameIndex > 1 && nameIndex < 8) {
+          if (STATIC_TABLE[nameIndex - 1][1].equals(value)) index = nameIndex;
+          else if (STATIC_TABLE[nameIndex][1].equals(value)) index = nameIndex + 1;
+        }
+      }
+      boolean dynamic = false;
+      if (index == -1) {
+        int i = STATIC_TABLE.length + 1;
+        for (String[] entry : table) {
+          if (entry[0].equals(name)) {
+            if (entry[1].equals(value)) {
+              index = i;
+              dynamic = true;
+              break;
+            } else if (nameIndex == -1) {
+              nameIndex = i;
+            }
+          }
+          i++;
+        }
+      }
+
+      if (index != -1) {
+        if (dynamic) block.dynamicHits++;
+        else block.staticHits++;
+        block.hpackBytes += integerSize(index, 7);
+      } else if (nameIndex == -1) {
+        block.literals++;
+        block.hpackBytes += 1 + stringSize(name) + stringSize(value);
+        insert(name, value);
+      } else if (name.startsWith(":") && !AUTHORITY.equals(name)) {
+        // without indexing, a path or a method that isn't in the static table
+        block.nameHits++;
+        block.hpackBytes += integerSize(nameIndex, 4) + stringSize(value);
+      } else {
+        block.nameHits++;
+        block.hpackBytes += integerSize(nameIndex, 6) + stringSize(value);
+        insert(name, value);
+      }
+    }
+    return block;
+  }
+
+  /** the bytes the entries of the dynamic table count for */
+  public synchronized int getTableSize() {
+    return tableSize;
+  }
+
+  private void insert(String name, String value) {
+    int size = entrySize(name, value);
+    if (size > maxTableSize) {
+      // bigger than the whole table, which it empties
+      table.clear();
+      tableSize = 0;
+      return;
+    }
+    while (tableSize + size > maxTableSize) {
+      String[] evicted = table.removeLast();
+      tableSize -= entrySize(evicted[0], evicted[1]);
+    }
+    table.addFirst(new String[] {name, value});
+    tableSize += size;
+  }
+
+  /** the size of a field as the tables and SETTINGS_MAX_HEADER_LIST_SIZE count it */
+  public static int entrySize(String name, String value) {
+    return name.length() + value.length() + ENTRY_OVERHEAD;
+  }
+
+  /** the bytes of a string literal, its utf-8 bytes Huffman coded when that is shorter */
+  private static int stringSize(String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    long bits = 0;
+    for (byte b : bytes) {
+      bits += HUFFMAN_BITS[b & 0xff];
+    }
+    // padded with the most significant bits of EOS to a whole byte
+    int length = (int) Math.min(bytes.length, (bits + 7) / 8);
+    return integerSize(length, 7) + length;
+  }
+
+  /** the bytes of an integer with a prefix of the bits given */
+  private static int integerSize(int value, int prefixBits) {
+    int max = (1 << prefixBits) - 1;
+    if (value < max) return 1;
+    int bytes = 2;
+    for (value -= max; value >= 0x80; value >>>= 7) {
+      bytes++;
+    }
+    return bytes;
+  }
+
+  /**
+   * the bytes of an http/1.1 request line and headers, with the blank line ending them; the headers
+   * are sent as they are given, with a Host among them
+   */
+  public static int h1Size(
+      String method, String target, Iterable<Map.Entry<String, String>> headers) {
+    // "GET /path HTTP/1.1\r\n"
+    int bytes = method.length() + 1 + target.length() + " HTTP/1.1\r\n".length();
+    for (Map.Entry<String, String> header : headers) {
+      bytes += header.getKey().length() + 2 + header.getValue().length() + 2;
+    }
+    return bytes + 2;
+  }
+
+  /** lower cases a header name, as h2 sends it */
+  public static String name(String name) {
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+  /** how one header block was encoded */
+  public static class Block {
+    private final int h1Bytes;
+    private int fields;
+    private int listBytes;
+    private int hpackBytes;
+    private int staticHits;
+    private int dynamicHits;
+    private int nameHits;
+    private int literals;
+
+    Block(int h1Bytes) {
+      this.h1Bytes = h1Bytes;
+    }
+
+    /** the bytes the same request takes as http/1.1 */
+    public int getH1Bytes() {
+      return h1Bytes;
+    }
+
+    public int getFields() {
+      return fields;
+    }
+
+    /** the size of the header list, 32 bytes a field on top of its name and value */
+    public int getListBytes() {
+      return listBytes;
+    }
+
+    /** the bytes of the block once compressed */
+    public int getHpackBytes() {
+      return hpackBytes;
+    }
+
+    /** fields sent as an index into the static table */
+    public int getStaticHits() {
+      return staticHits;
+    }
+
+    /** fields sent as an index into the dynamic table */
+    public int getDynamicHits() {
+      return dynamicHits;
+    }
+
+    /** fields sent with an indexed name and a literal value */
+    public int getNameHits() {
+      return nameHits;
+    }
+
+    /** fields sent with a literal name and value */
+    public int getLiterals() {
+      return literals;
+    }
+  }
+
+  /** the blocks of many connections added up, as they are recorded from any thread */
+  public static class Totals {
+    private final LongAdder blocks = new LongAdder();
+    private final LongAdder fields = new LongAdder();
+    private final LongAdder h1Bytes = new LongAdder();
+    private final LongAdder listBytes = new LongAdder();
+    private final LongAdder hpackBytes = new LongAdder();
+    private final LongAdder staticHits = new LongAdder();
+    private final LongAdder dynamicHits = new LongAdder();
+    private final LongAdder nameHits = new LongAdder();
+    private final LongAdder literals = new LongAdder();
+
+    public void add(Block block) {
+      blocks.increment();
+      fields.add(block.fields);
+      h1Bytes.add(block.h1Bytes);
+      listBytes.add(block.listBytes);
+      hpackBytes.add(block.hpackBytes);
+      staticHits.add(block.staticHits);
+      dynamicHits.add(block.dynamicHits);
+      nameHits.add(block.nameHits);
+      literals.add(block.literals);
+    }
+
+    public long getBlocks() {
+      return blocks.sum();
+    }
+
+    public long getFields() {
+      return fields.sum();
+    }
+
+    public long getH1Bytes() {
+      return h1Bytes.sum();
+    }
+
+    public long getListBytes() {
+      return listBytes.sum();
+    }
+
+    public long getHpackBytes() {
+      return hpackBytes.sum();
+    }
+
+    public long getStaticHits() {
+      return staticHits.sum();
+    }
+
+    public long getDynamicHits() {
+      return dynamicHits.sum();
+    }
+
+    public long getNameHits() {
+      return nameHits.sum();
+    }
+
+    public long getLiterals() {
+      return literals.sum();
+    }
+
+    /** the bytes of the compressed blocks over those of the same requests as http/1.1 */
+    public double getCompressionRatio() {
+      return ratio(getHpackBytes(), getH1Bytes());
+    }
+
+    /** the share of the fields sent as an index into the dynamic table */
+    public double getDynamicHitRatio() {
+      return ratio(getDynamicHits(), getFields());
+    }
+
+    /** the share of the fields sent as an index into either table */
+    public double getIndexedRatio() {
+      return ratio(getStaticHits() + getDynamicHits(), getFields());
+    }
+
+    private static double ratio(long part, long whole) {
+      return whole == 0 ? 0 : part / (double) whole;
+    }
+  }
+}
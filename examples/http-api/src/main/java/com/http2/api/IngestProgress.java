@@ -0,0 +1,51 @@
+package com.http2.api;
+
+/**
+ * A line of the response to a streamed upload: how far the service got with what was sent so far.
+ * The last line is either done or has an error.
+ */
+public class IngestProgress {
+
+  /** the media type of a stream of json documents, one per line */
+  public static final String NDJSON = "application/x-ndjson";
+
+  long entities;
+  long duplicates;
+  boolean done;
+  String error;
+
+  /** entities read and published so far, including the duplicates dropped */
+  public long getEntities() {
+    return entities;
+  }
+
+  public void setEntities(long entities) {
+    this.entities = entities;
+  }
+
+  public long getDuplicates() {
+    return duplicates;
+  }
+
+  public void setDuplicates(long duplicates) {
+    this.duplicates = duplicates;
+  }
+
+  /** whether the whole upload was read and published */
+  public boolean isDone() {
+    return done;
+  }
+
+  public void setDone(boolean done) {
+    this.done = done;
+  }
+
+  /** why the upload stopped early; null unless it did */
+  public String getError() {
+    return error;
+  }
+
+  public void setError(String error) {
+    this.error = error;
+  }
+}
@@ -0,0 +1,66 @@
+package com.http2.api;
+
+import java.util.Map;
+
+/** Totals of what the service has persisted since it started. */
+public class IngestStats {
+
+  /** goes up with every batch written, so equal versions mean equal stats */
+  long version;
+
+  long requests;
+  long entities;
+  long bytes;
+  long lastCommitMillis;
+
+  /** entities by the first character of their address; {@code none} for those without one */
+  Map<String, Long> shards;
+
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
+  }
+
+  public long getRequests() {
+    return requests;
+  }
+
+  public void setRequests(long requests) {
+    this.requests = requests;
+  }
+
+  public long getEntities() {
+    return entities;
+  }
+
+  public void setEntities(long entities) {
+    this.entities = entities;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public void setBytes(long bytes) {
+    this.bytes = bytes;
+  }
+
+  public long getLastCommitMillis() {
+    return lastCommitMillis;
+  }
+
+  public void setLastCommitMillis(long lastCommitMillis) {
+    this.lastCommitMillis = lastCommitMillis;
+  }
+
+  public Map<String, Long> getShards() {
+    return shards;
+  }
+
+  public void setShards(Map<String, Long> shards) {
+    this.shards = shards;
+  }
+}
@@ -0,0 +1,39 @@
+package com.http2.api;
+
+/**
+ * A line of the response to a full-duplex upload, written as soon as the message it acknowledges
+ * has been read and published, while the rest of the upload may still be arriving.
+ */
+public class MessageAck {
+
+  long sequence;
+  boolean duplicate;
+  String error;
+
+  /** the position of the message in the upload, from 0 */
+  public long getSequence() {
+    return sequence;
+  }
+
+  public void setSequence(long sequence) {
+    this.sequence = sequence;
+  }
+
+  /** whether the message was dropped as a duplicate instead of published */
+  public boolean isDuplicate() {
+    return duplicate;
+  }
+
+  public void setDuplicate(boolean duplicate) {
+    this.duplicate = duplicate;
+  }
+
+  /** why the message couldn't be published; the upload stops after a message with an error */
+  public String getError() {
+    return error;
+  }
+
+  public void setError(String error) {
+    this.error = error;
+  }
+}
@@ -0,0 +1,34 @@
+package com.http2.api;
+
+/** What a segment file of the ingest log holds. */
+public class SegmentStats {
+
+  String name;
+  long records;
+  long bytes;
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public long getRecords() {
+    return records;
+  }
+
+  public void setRecords(long records) {
+    this.records = records;
+  }
+
+  /** bytes of the records, not of the file, which is always the segment size */
+  public long getBytes() {
+    return bytes;
+  }
+
+  public void setBytes(long bytes) {
+    this.bytes = bytes;
+  }
+}
@@ -0,0 +1,108 @@
+package com.http2.api;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the two halves of a UUID straight out of its canonical string form, {@code
+ * xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx}, and writes them back, without the objects {@link
+ * java.util.UUID#fromString} and {@link java.util.UUID#toString} allocate along the way.
+ */
+public class Uuids {
+
+  /** the length of a UUID in canonical form */
+  public static final int LENGTH = 36;
+
+  private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+  private Uuids() {}
+
+  /** whether a string is a UUID in canonical form, in either case */
+  public static boolean isUuid(CharSequence s) {
+    if (s == null || s.length() != LENGTH) return false;
+    for (int i = 0; i < LENGTH; i++) {
+      if (!isValid(i, s.charAt(i))) return false;
+    }
+    return true;
+  }
+
+  /** whether a range of chars is a UUID in canonical form, in either case */
+  public static boolean isUuid(char[] chars, int offset, int length) {
+    if (length != LENGTH) return false;
+    for (int i = 0; i < LENGTH; i++) {
+      if (!isValid(i, chars[offset + i])) return false;
+    }
+    return true;
+  }
+
+  /** the first 16 hex digits of a UUID checked with {@link #isUuid} */
+  public static long mostSignificantBits(CharSequence s) {
+    long bits = 0;
+    for (int i = 0; i < 19; i++) {
+      if (!isDash(i)) bits = bits << 4 | digit(s.charAt(i));
+    }
+    return bits;
+  }
+
+  /** the last 16 hex digits of a UUID checked with {@link #isUuid} */
+  public static long leastSignificantBits(CharSequence s) {
+    long bits = 0;
+    for (int i = 19; i < LENGTH; i++) {
+      if (!isDash(i)) bits = bits << 4 | digit(s.charAt(i));
+    }
+    return bits;
+  }
+
+  /** the first 16 hex digits of a UUID checked with {@link #isUuid} */
+  public static long mostSignificantBits(char[] chars, int offset) {
+    long bits = 0;
+    for (int i = 0; i < 19; i++) {
+      if (!isDash(i)) bits = bits << 4 | digit(chars[offset + i]);
+    }
+    return bits;
+  }
+
+  /** the last 16 hex digits of a UUID checked with {@link #isUuid} */
+  public static long leastSignificantBits(char[] chars, int offset) {
+    long bits = 0;
+    for (int i = 19; i < LENGTH; i++) {
+      if (!isDash(i)) bits = bits << 4 | digit(chars[offset + i]);
+    }
+    return bits;
+  }
+
+  /** writes a UUID in canonical form, in lower case, as {@link #LENGTH} ascii bytes */
+  public static void write(long mostSignificantBits, long leastSignificantBits, ByteBuffer dst) {
+    for (int i = 0, shift = 60; i < 19; i++) {
+      if (isDash(i)) {
+        dst.put((byte) '-');
+      } else {
+        dst.put(HEX[(int) (mostSignificantBits >>> shift) & 0xf]);
+        shift -= 4;
+      }
+    }
+    for (int i = 19, shift = 60; i < LENGTH; i++) {
+      if (isDash(i)) {
+        dst.put((byte) '-');
+      } else {
+        dst.put(HEX[(int) (leastSignificantBits >>> shift) & 0xf]);
+        shift -= 4;
+      }
+    }
+  }
+
+  private static boolean isValid(int i, char c) {
+    return isDash(i) ? c == '-' : digit(c) >= 0;
+  }
+
+  /** the value of an ascii hex digit, or -1; {@link Character#digit} takes other scripts' too */
+  private static int digit(char c) {
+    if (c >= '0' && c <= '9') return c - '0';
+    if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+    if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+    return -1;
+  }
+
+  private static boolean isDash(int i) {
+    return i == 8 || i == 13 || i == 18 || i == 23;
+  }
+}
@@ -0,0 +1,65 @@
+package com.http2.api;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BearerTokensTest {
+
+  private final BearerTokens tokens = new BearerTokens("secret");
+
+  @Test
+  public void test_Verify_SignedToken() {
+    String token = tokens.sign("tenant-1", inAnHour());
+
+    assertEquals("tenant-1", tokens.verify(token));
+  }
+
+  @Test
+  public void test_Verify_OtherSecret() {
+    String token = new BearerTokens("other").sign("tenant-1", inAnHour());
+
+    assertNull(tokens.verify(token));
+  }
+
+  @Test
+  public void test_Verify_Expired() {
+    String token = tokens.sign("tenant-1", System.currentTimeMillis() / 1000 - 1);
+
+    assertNull(tokens.verify(token));
+  }
+
+  @Test
+  public void test_Verify_ChangedExpiry() {
+    String token = tokens.sign("tenant-1", inAnHour());
+    String[] parts = token.split("\\.");
+    String forged = parts[0] + "." + (Long.parseLong(parts[1]) + 3600) + "." + parts[2];
+
+    assertNull(tokens.verify(forged));
+  }
+
+  @Test
+  public void test_Verify_Malformed() {
+    assertNull(tokens.verify(""));
+    assertNull(tokens.verify("no-dots"));
+    assertNull(tokens.verify("tenant-1.123.not base64!"));
+    assertNull(tokens.verify(".123.abc"));
+  }
+
+  @Test
+  public void test_ExpiresAt_WithoutVerifying() {
+    assertEquals(1234, BearerTokens.expiresAt("tenant-1.1234.signature"));
+    assertEquals(0, BearerTokens.expiresAt("tenant-1.soon.signature"));
+    assertEquals(0, BearerTokens.expiresAt("no-dots"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_Sign_SubjectWithDot() {
+    tokens.sign("tenant.1", inAnHour());
+  }
+
+  private static long inAnHour() {
+    return System.currentTimeMillis() / 1000 + 3600;
+  }
+}
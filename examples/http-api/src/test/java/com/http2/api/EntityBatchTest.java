@@ -0,0 +1,140 @@
+package com.http2.api;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EntityBatchTest {
+
+  @Test
+  public void test_SetName_SameAsGetBytes() {
+    String[] names = {
+      "",
+      "ascii",
+      "caf\u00e9",
+      "\u20ac 5",
+      "\ud83d\ude00 smile",
+      "lone \ud83d high",
+      "lone \ude00 low",
+      "ends high \ud83d"
+    };
+    EntityBatch batch = new EntityBatch(1, 1);
+    for (String name : names) {
+      batch.add();
+      batch.setName(name.toCharArray(), 0, name.length());
+    }
+
+    for (int row = 0; row < names.length; row++) {
+      byte[] expected = names[row].getBytes(StandardCharsets.UTF_8);
+      byte[] copied = new byte[batch.getNameLength(row)];
+      batch.copyName(row, copied, 0);
+
+      assertArrayEquals(expected, copied);
+      assertEquals(new String(expected, StandardCharsets.UTF_8), batch.getName(row));
+    }
+  }
+
+  @Test
+  public void test_SetName_WithinChars() {
+    char[] chars = "xx\u00e9tex".toCharArray();
+    EntityBatch batch = new EntityBatch();
+    batch.add();
+
+    batch.setName(chars, 2, 3);
+
+    assertEquals("\u00e9te", batch.getName(0));
+    assertEquals(4, batch.getNameLength(0));
+  }
+
+  @Test
+  public void test_Add_Grows() {
+    EntityBatch batch = new EntityBatch(1, 1);
+    for (int i = 0; i < 100; i++) {
+      batch.add();
+      String name = "entity-" + i;
+      batch.setName(name.toCharArray(), 0, name.length());
+      batch.setAddress(i, -i);
+    }
+
+    assertEquals(100, batch.size());
+    for (int row = 0; row < 100; row++) {
+      assertEquals("entity-" + row, batch.getName(row));
+      assertEquals(row, batch.getAddressMostSignificantBits(row));
+      assertEquals(-row, batch.getAddressLeastSignificantBits(row));
+    }
+  }
+
+  @Test
+  public void test_Add_WithoutNameOrAddress() {
+    EntityBatch batch = new EntityBatch();
+    batch.add();
+
+    assertFalse(batch.hasName(0));
+    assertEquals(-1, batch.getNameLength(0));
+    assertNull(batch.getName(0));
+    assertFalse(batch.hasAddress(0));
+    assertNull(batch.getAddress(0));
+  }
+
+  @Test
+  public void test_RemoveIf_CompactsRows() {
+    EntityBatch batch = new EntityBatch();
+    String[] names = {"zero", null, "two", "\u20ac3", "four", null};
+    for (int i = 0; i < names.length; i++) {
+      batch.add();
+      if (names[i] != null) batch.setName(names[i].toCharArray(), 0, names[i].length());
+      if (i % 2 == 0) batch.setAddress(i, i);
+    }
+
+    int removed = batch.removeIf(row -> row == 0 || row == 2 || row == 5);
+
+    assertEquals(3, removed);
+    assertEquals(3, batch.size());
+    assertNull(batch.getName(0));
+    assertFalse(batch.hasAddress(0));
+    assertEquals("\u20ac3", batch.getName(1));
+    assertFalse(batch.hasAddress(1));
+    assertEquals("four", batch.getName(2));
+    assertTrue(batch.hasAddress(2));
+    assertEquals(4, batch.getAddressMostSignificantBits(2));
+  }
+
+  @Test
+  public void test_RemoveIf_PredicateSeesOriginalRows() {
+    EntityBatch batch = new EntityBatch();
+    for (String name : Arrays.asList("a", "bb", "a", "cc", "a")) {
+      batch.add();
+      batch.setName(name.toCharArray(), 0, name.length());
+    }
+
+    batch.removeIf(row -> "a".equals(batch.getName(row)));
+
+    assertEquals(2, batch.size());
+    assertEquals("bb", batch.getName(0));
+    assertEquals("cc", batch.getName(1));
+  }
+
+  @Test
+  public void test_RemoveIf_AddAfterReusesSpace() {
+    EntityBatch batch = new EntityBatch();
+    for (String name : Arrays.asList("first", "second")) {
+      batch.add();
+      batch.setName(name.toCharArray(), 0, name.length());
+    }
+    batch.removeIf(row -> row == 0);
+
+    batch.add();
+    batch.setName("third".toCharArray(), 0, 5);
+
+    assertEquals(2, batch.size());
+    assertEquals("second", batch.getName(0));
+    assertEquals("third", batch.getName(1));
+  }
+}
@@ -0,0 +1,102 @@
+package com.http2.api;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class EntityBatchesTest {
+
+  @Test
+  public void test_Read_RoundTrip() throws IOException {
+    EntityBatch batch = new EntityBatch();
+    String[] names = {"first", null, "", "caf\u00e9 \u20ac"};
+    for (int i = 0; i < names.length; i++) {
+      batch.add();
+      if (names[i] != null) batch.setName(names[i].toCharArray(), 0, names[i].length());
+      if (i != 2) batch.setAddress(i, Long.MIN_VALUE + i);
+    }
+
+    EntityBatch read = EntityBatches.read(input(write(batch)), 10, 100);
+
+    assertEquals(names.length, read.size());
+    for (int row = 0; row < names.length; row++) {
+      assertEquals(names[row], read.getName(row));
+      assertEquals(batch.hasAddress(row), read.hasAddress(row));
+      assertEquals(batch.getAddress(row), read.getAddress(row));
+    }
+  }
+
+  @Test
+  public void test_Read_ManyRows() throws IOException {
+    EntityBatch batch = new EntityBatch(1, 1);
+    for (int i = 0; i < 1000; i++) {
+      batch.add();
+      String name = "entity-" + i;
+      batch.setName(name.toCharArray(), 0, name.length());
+    }
+
+    EntityBatch read = EntityBatches.read(input(write(batch)), 1000, 100);
+
+    assertEquals(1000, read.size());
+    assertEquals("entity-999", read.getName(999));
+    assertFalse(read.hasAddress(999));
+  }
+
+  @Test
+  public void test_Read_Empty() throws IOException {
+    EntityBatch read = EntityBatches.read(input(write(new EntityBatch())), 10, 100);
+
+    assertEquals(0, read.size());
+  }
+
+  @Test(expected = EOFException.class)
+  public void test_Read_FewerRowsThanDeclared() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new DataOutputStream(bytes).writeInt(Integer.MAX_VALUE);
+
+    EntityBatches.read(input(bytes.toByteArray()), Integer.MAX_VALUE, 100);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_Read_TooManyRows() throws IOException {
+    EntityBatch batch = new EntityBatch();
+    batch.add();
+    batch.add();
+
+    EntityBatches.read(input(write(batch)), 1, 100);
+  }
+
+  @Test
+  public void test_Read_NegativeNameLength() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(1);
+    out.writeInt(-2);
+
+    try {
+      EntityBatches.read(input(bytes.toByteArray()), 10, 100);
+      fail("read a name of [-2] bytes");
+    } catch (IllegalArgumentException e) {
+      assertEquals("a name of [-2] bytes is not between [-1] and [100]", e.getMessage());
+    }
+  }
+
+  private static byte[] write(EntityBatch batch) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    EntityBatches.write(batch, new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+  private static DataInputStream input(byte[] bytes) {
+    return new DataInputStream(new ByteArrayInputStream(bytes));
+  }
+}
@@ -0,0 +1,118 @@
+package com.http2.api;
+
+import org.junit.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/** the requests of appendix C.4 of RFC 7541, whose encoded blocks it gives byte for byte */
+public class HpackModelTest {
+
+  private static final List<Map.Entry<String, String>> FIRST =
+      fields(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com");
+  private static final List<Map.Entry<String, String>> SECOND =
+      fields(
+          ":method",
+          "GET",
+          ":scheme",
+          "http",
+          ":path",
+          "/",
+          ":authority",
+          "www.example.com",
+          "cache-control",
+          "no-cache");
+
+  private final HpackModel model = new HpackModel();
+
+  @Test
+  public void test_Encode_FirstRequest() {
+    HpackModel.Block block = model.encode(FIRST, 0);
+
+    // 8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff
+    assertEquals(17, block.getHpackBytes());
+    assertEquals(3, block.getStaticHits());
+    assertEquals(1, block.getNameHits());
+    assertEquals(57, model.getTableSize());
+  }
+
+  @Test
+  public void test_Encode_SecondRequestHitsDynamicTable() {
+    model.encode(FIRST, 0);
+
+    HpackModel.Block block = model.encode(SECOND, 0);
+
+    // 8286 84be 5886 a8eb 1064 9cbf
+    assertEquals(12, block.getHpackBytes());
+    assertEquals(1, block.getDynamicHits());
+    assertEquals(110, model.getTableSize());
+  }
+
+  @Test
+  public void test_Encode_ThirdRequestLiteralName() {
+    model.encode(FIRST, 0);
+    model.encode(SECOND, 0);
+
+    HpackModel.Block block =
+        model.encode(
+            fields(
+                ":method",
+                "GET",
+                ":scheme",
+                "https",
+                ":path",
+                "/index.html",
+                ":authority",
+                "www.example.com",
+                "custom-key",
+                "custom-value"),
+            0);
+
+    // 8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b b8e8 b4bf
+    assertEquals(24, block.getHpackBytes());
+    assertEquals(1, block.getLiterals());
+    assertEquals(164, model.getTableSize());
+  }
+
+  @Test
+  public void test_Encode_NonAsciiValueSizedAsUtf8() {
+    // two bytes of utf-8, whose Huffman codes are longer than the bytes themselves
+    HpackModel.Block block = model.encode(fields("x-name", "\u00e9"), 0);
+
+    // a literal with a new name: a byte of type, 1 + 5 for the name and 1 + 2 for the value
+    assertEquals(10, block.getHpackBytes());
+  }
+
+  @Test
+  public void test_Encode_EvictsOldestEntries() {
+    HpackModel small = new HpackModel(100);
+    small.encode(fields("a", "1"), 0);
+    small.encode(fields("b", "2"), 0);
+    small.encode(fields("c", "3"), 0);
+
+    // each takes 34 bytes, so only the two newest fit
+    assertEquals(68, small.getTableSize());
+    assertEquals(1, small.encode(fields("c", "3"), 0).getDynamicHits());
+    assertEquals(0, small.encode(fields("a", "1"), 0).getDynamicHits());
+  }
+
+  @Test
+  public void test_H1Size() {
+    List<Map.Entry<String, String>> headers = fields("Host", "example.com");
+
+    // "GET / HTTP/1.1\r\n" "Host: example.com\r\n" "\r\n"
+    assertEquals(16 + 19 + 2, HpackModel.h1Size("GET", "/", headers));
+  }
+
+  private static List<Map.Entry<String, String>> fields(String... namesAndValues) {
+    List<Map.Entry<String, String>> fields = new ArrayList<>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      fields.add(new AbstractMap.SimpleImmutableEntry<>(namesAndValues[i], namesAndValues[i + 1]));
+    }
+    return fields;
+  }
+}
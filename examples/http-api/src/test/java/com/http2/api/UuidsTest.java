@@ -0,0 +1,72 @@
+package com.http2.api;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UuidsTest {
+
+  private static final String UUID_STRING = "0f1e2d3c-4b5a-6978-8796-a5b4c3d2e1f0";
+
+  @Test
+  public void test_IsUuid_Canonical() {
+    assertTrue(Uuids.isUuid(UUID_STRING));
+    assertTrue(Uuids.isUuid(UUID_STRING.toUpperCase()));
+    assertTrue(Uuids.isUuid(UUID_STRING.toCharArray(), 0, Uuids.LENGTH));
+  }
+
+  @Test
+  public void test_IsUuid_NotCanonical() {
+    assertFalse(Uuids.isUuid(null));
+    assertFalse(Uuids.isUuid(""));
+    assertFalse(Uuids.isUuid(UUID_STRING.substring(1)));
+    assertFalse(Uuids.isUuid(UUID_STRING.replace('-', '0')));
+    assertFalse(Uuids.isUuid(UUID_STRING.replace('f', 'g')));
+  }
+
+  @Test
+  public void test_IsUuid_NonAsciiDigits() {
+    // an arabic-indic and a fullwidth digit, which Character.digit would take
+    assertFalse(Uuids.isUuid(UUID_STRING.replace('0', '\u0660')));
+    assertFalse(Uuids.isUuid(UUID_STRING.replace('1', '\uff11')));
+    char[] chars = UUID_STRING.replace('0', '\u0660').toCharArray();
+    assertFalse(Uuids.isUuid(chars, 0, chars.length));
+  }
+
+  @Test
+  public void test_SignificantBits_SameAsUuid() {
+    UUID uuid = UUID.fromString(UUID_STRING);
+
+    assertEquals(uuid.getMostSignificantBits(), Uuids.mostSignificantBits(UUID_STRING));
+    assertEquals(uuid.getLeastSignificantBits(), Uuids.leastSignificantBits(UUID_STRING));
+    String upper = UUID_STRING.toUpperCase();
+    assertEquals(uuid.getMostSignificantBits(), Uuids.mostSignificantBits(upper));
+    assertEquals(uuid.getLeastSignificantBits(), Uuids.leastSignificantBits(upper));
+  }
+
+  @Test
+  public void test_SignificantBits_WithinChars() {
+    char[] chars = ("  " + UUID_STRING + "  ").toCharArray();
+    UUID uuid = UUID.fromString(UUID_STRING);
+
+    assertTrue(Uuids.isUuid(chars, 2, Uuids.LENGTH));
+    assertEquals(uuid.getMostSignificantBits(), Uuids.mostSignificantBits(chars, 2));
+    assertEquals(uuid.getLeastSignificantBits(), Uuids.leastSignificantBits(chars, 2));
+  }
+
+  @Test
+  public void test_Write_RoundTrip() {
+    UUID uuid = UUID.randomUUID();
+    ByteBuffer buffer = ByteBuffer.allocate(Uuids.LENGTH);
+
+    Uuids.write(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), buffer);
+
+    assertEquals(uuid.toString(), new String(buffer.array(), StandardCharsets.US_ASCII));
+  }
+}
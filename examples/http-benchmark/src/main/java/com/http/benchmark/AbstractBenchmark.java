@@ -3,8 +3,8 @@ package com.http.benchmark;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Snapshot;
 import com.codahale.metrics.Timer;
-import com.opencsv.CSVWriter;
 import io.airlift.airline.Cli;
+import io.airlift.airline.Command;
 import io.airlift.airline.Help;
 import io.airlift.airline.Option;
 import io.airlift.airline.OptionType;
@@ -13,24 +13,26 @@ import okio.Buffer;
 import okio.BufferedSink;
 import okio.GzipSink;
 import okio.Okio;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
 import org.apache.commons.text.RandomStringGenerator;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.X509TrustManager;
 import java.io.BufferedReader;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.IntStream;
-
-import static org.eclipse.jetty.util.ssl.SslContextFactory.TRUST_ALL_CERTS;
-
-/** @author Stephen Durfey */
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The options, clients and results files every command of the benchmark shares. Commands that run
+ * an action per entity count extend {@link ActionBenchmark}; the others schedule their own
+ * requests in {@link #run}.
+ *
+ * @author Stephen Durfey
+ */
 public abstract class AbstractBenchmark implements Runnable {
 
   @Option(
@@ -111,6 +113,98 @@ public abstract class AbstractBenchmark implements Runnable {
   )
   public boolean gzip = false;
 
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--jfr"},
+    description =
+        "records the measured window with Java Flight Recorder; the recording and a summary of the"
+            + " hottest methods and allocation sites are written next to the results file"
+  )
+  public boolean jfr = false;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--duration"},
+    description =
+        "soaks the service for this many seconds, looping over the entity counts instead of running"
+            + " a number of repetitions"
+  )
+  public long duration = 0;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--interval"},
+    description = "seconds between the interval reports of a soak; defaults to 10"
+  )
+  public long interval = 10;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--server-metrics"},
+    description =
+        "admin url of the service, e.g. http://localhost:8081; its ingest throughput and"
+            + " durability latency over the run are reported with the results"
+  )
+  public String serverMetrics;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--h2-connections"},
+    description =
+        "h2 connections to spread the requests of a client over, instead of multiplexing them all"
+            + " over one; defaults to 1"
+  )
+  public int h2Connections = 1;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--h2-selection"},
+    description =
+        "how a request picks one of the --h2-connections: round-robin, the default, or"
+            + " least-streams"
+  )
+  public String h2Selection = ConnectionShards.ROUND_ROBIN;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--drain-at"},
+    description =
+        "seconds into the run to simulate a restart of the service at, by draining it through the"
+            + " tasks of its --admin port and resuming it --restart-pause later; 0, the default,"
+            + " doesn't"
+  )
+  public long drainAt = 0;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--restart-pause"},
+    description = "milliseconds between the drain and the resume of a restart; defaults to 2000"
+  )
+  public long restartPause = 2000;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--admin"},
+    description = "admin url of the service to restart; defaults to http://localhost:8081"
+  )
+  public String admin = "http://localhost:8081";
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--tls-provider"},
+    description = "name of the installed JSSE provider to use for tls; defaults to the JDK's"
+  )
+  public String tlsProvider;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--header-stats"},
+    description =
+        "sizes the headers of every request as http/1.1 and as HPACK blocks, and reports the bytes"
+            + " per request and how often the dynamic table was hit"
+  )
+  public boolean headerStats = false;
+
   protected String BEARER_TOKEN;
 
   Random random = new Random();
@@ -121,137 +215,144 @@ public abstract class AbstractBenchmark implements Runnable {
           .build();
 
   protected MetricRegistry registry = new MetricRegistry();
-  private List<Integer> entityCounts = Arrays.asList(1, 10, 100, 1000, 5000);
+  // every request is recorded here, the interval reporter of a soak swaps it out as it reports
+  protected final Recorder intervalRecorder = new Recorder(3);
+  // every request of the run; each read drains it into runHistogram, what an agent sends its
+  // coordinator
+  private final Recorder runRecorder = new Recorder(3);
+  private final Histogram runHistogram = new Histogram(3);
+  private Histogram runInterval;
+  protected final LongAdder errors = new LongAdder();
+  // the result of the action running on the current thread; picked up by getHttpClient
+  protected final ThreadLocal<RunResult> currentRun = new ThreadLocal<>();
+  // what went over each of the --h2-connections, across every client of the run
+  private ConnectionShards.Stats[] connectionStats;
+  // splits the requests of the run around a simulated restart, when --drain-at was given
+  protected volatile RestartSimulator restart;
+  // sizes the headers of every request, when --header-stats was given
+  protected volatile HeaderStats headers;
+  protected List<Integer> entityCounts = Arrays.asList(1, 10, 100, 1000, 5000);
   private static final List<Protocol> HTTP1 = Arrays.asList(Protocol.HTTP_1_1);
   private static final List<Protocol> HTTP2 = Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
 
-  public static class Action implements Runnable {
-
-    private final ActionOperator action;
-    private final List<Protocol> protocols;
-    private final String url;
-    private final String metricName;
-    private final int numEntities;
-    private final int payloadSize;
-
-    public Action(
-        ActionOperator action,
-        List<Protocol> protocols,
-        String url,
-        String metricName,
-        int numEntities,
-        int payloadSize) {
-      this.action = action;
-      this.protocols = protocols;
-      this.url = url;
-      this.metricName = metricName;
-      this.numEntities = numEntities;
-      this.payloadSize = payloadSize;
-    }
+  public abstract Map<String, Timer> getTimers(int numEntities);
 
-    @Override
-    public void run() {
-      try {
-        action.run(protocols, url, metricName, numEntities, payloadSize);
-      } catch (Exception e) {
-        throw new RuntimeException(e);
-      }
-    }
+  /** the name of the per request timer for an entity count */
+  public abstract String getMetricName(int numEntities);
+
+  public static void main(String... args)
+      throws ExecutionException, InterruptedException, IOException {
+    cli().parse(args).run();
   }
 
-  public interface ActionOperator {
-    void run(
-        List<Protocol> protocols, String url, String metricName, int numEntities, int payloadSize)
-        throws Exception;
+  /** every command of the benchmark, also used by {@code sweep} to run its workloads */
+  public static Cli<Runnable> cli() {
+    return Cli.<Runnable>builder("benchmark")
+        .withDescription("A suite of tests to benchmark a REST service")
+        .withDefaultCommand(Help.class)
+        .withCommands(
+            Help.class,
+            SingleMessageBenchmark.class,
+            StreamMessageBenchmark.class,
+            NdjsonBenchmark.class,
+            DuplexBenchmark.class,
+            CoalesceBenchmark.class,
+            PayloadMessageBenchmark.class,
+            MixedWorkloadBenchmark.class,
+            BurstBenchmark.class,
+            GetBenchmark.class,
+            HeaderBenchmark.class,
+            TlsBenchmark.class,
+            SweepCommand.class,
+            CoordinateCommand.class,
+            AgentCommand.class,
+            CompareResults.class,
+            TokenCommand.class)
+        .build();
   }
 
-  public abstract Action getAction(
-      List<Protocol> protocols, String url, int numEntities, int payloadSize);
+  /**
+   * the command a command line names, such as a workload of {@code sweep} or an agent, writing
+   * its results to the file given
+   */
+  public static Runnable command(String commandLine, String resultsFile) {
+    List<String> args = new ArrayList<>(Arrays.asList(commandLine.trim().split("\\s+")));
+    args.addAll(Arrays.asList("-o", resultsFile));
+    return cli().parse(args);
+  }
 
-  public abstract Map<String, Timer> getTimers(int numEntities);
+  /** starts reading the metrics of the service, when an admin url was given */
+  protected ServerMetrics startServerMetrics() throws IOException {
+    if (serverMetrics == null) return null;
+    ServerMetrics server = new ServerMetrics(serverMetrics);
+    server.start();
+    return server;
+  }
 
-  public static void main(String... args)
-      throws ExecutionException, InterruptedException, IOException {
+  protected void reportServerMetrics(ServerMetrics server, ResultsJournal journal)
+      throws IOException {
+    if (server == null) return;
+    Map<String, Object> report = server.stop();
+    ServerMetrics.print(report);
+    journal.writeServer(report);
+  }
 
-    Cli<Runnable> benchmark =
-        Cli.<Runnable>builder("benchmark")
-            .withDescription("A suite of tests to benchmark a REST service")
-            .withDefaultCommand(Help.class)
-            .withCommands(
-                Help.class,
-                SingleMessageBenchmark.class,
-                StreamMessageBenchmark.class,
-                PayloadMessageBenchmark.class)
-            .build();
-
-    benchmark.parse(args).run();
+  protected List<Protocol> getProtocols() {
+    return http2 ? HTTP2 : HTTP1;
   }
 
-  public void run() {
-    try {
-      setBearerToken();
-
-      ExecutorService threadPool = Executors.newFixedThreadPool(threads);
-
-      // if numEntities was set at the command line, override the default values
-      if (numEntities > 0) entityCounts = Arrays.asList(numEntities);
-
-      List<Future> futures = new ArrayList<>();
-      IntStream.range(0, repetitions)
-          .forEach(
-              i ->
-                  entityCounts
-                      .stream()
-                      .forEach(
-                          entities -> {
-                            if (!http2) {
-                              futures.add(
-                                  threadPool.submit(
-                                      getAction(HTTP1, url, numEntities, payloadSize)));
-                            } else {
-                              futures.add(
-                                  threadPool.submit(
-                                      getAction(HTTP2, url, numEntities, payloadSize)));
-                            }
-                          }));
-
-      System.out.println("Executing [" + futures.size() + "] actions");
-      // wait for all futures to finish before moving out to print the results
-      int i = 1;
-      for (final Future future : futures) {
-        if (verbose)
-          System.out.println("waiting for future [" + i + "/" + futures.size() + "] to finish");
-        future.get();
-        i++;
-      }
-      if (verbose) System.out.println("All actions have finished");
+  /** the options of the run, as recorded in the results journal */
+  protected Map<String, Object> getConfig() {
+    Map<String, Object> config = new LinkedHashMap<>();
+    config.put("url", url);
+    config.put("protocol", getProtocol());
+    config.put("tls", url != null && enableSSL(url));
+    config.put("gzip", gzip);
+    config.put("threads", threads);
+    config.put("repetitions", repetitions);
+    config.put("entities", entityCounts);
+    config.put("payloadSize", payloadSize);
+    config.put("readTimeoutMs", readTimeout);
+    config.put("bearerToken", BEARER_TOKEN != null);
+    config.put("jfr", jfr);
+    config.put("durationSeconds", duration);
+    config.put("intervalSeconds", interval);
+    config.put("serverMetrics", serverMetrics);
+    config.put("h2Connections", h2Connections);
+    config.put("h2Selection", h2Selection);
+    config.put("drainAtSeconds", drainAt);
+    config.put("restartPauseMs", restartPause);
+    config.put("tlsProvider", tlsProvider);
+    config.put("headerStats", isHeaderStats());
+    return config;
+  }
 
-      printResults(entityCounts);
-      threadPool.shutdown();
-    } catch (ExecutionException | InterruptedException | IOException e) {
-      throw new RuntimeException(e);
-    }
+  /** the name of the command being run, e.g. {@code single} */
+  protected String getMode() {
+    Command command = getClass().getAnnotation(Command.class);
+    return command == null ? getClass().getSimpleName() : command.name();
   }
 
-  private void printResults(List<Integer> entityCounts) throws IOException {
-    // create CSV writer
-    System.out.println("Writing metrics to file [" + resultsOutputDir + "]");
-    try (CSVWriter writer = new CSVWriter(new FileWriter(resultsOutputDir))) {
-      writer.writeNext(getHeader().split(","));
-      entityCounts
-          .stream()
-          .forEach(
-              entities -> {
-                Map<String, Timer> timers = getTimers(entities);
-                timers
-                    .entrySet()
-                    .forEach(
-                        e -> writer.writeNext(getTimerLine(e.getKey(), e.getValue()).split(",")));
-              });
-    }
+  /** whether the headers of every request are sized, see {@link HeaderStats} */
+  protected boolean isHeaderStats() {
+    return headerStats;
+  }
+
+  protected String getProtocol() {
+    return http2 ? "http2" : "http1";
   }
 
-  private String getHeader() {
+  /**
+   * Builds the name of a file that sits next to the results file, e.g. {@code results.csv} with a
+   * suffix of {@code .jfr} becomes {@code results.jfr}.
+   */
+  protected String resultsFile(String suffix) {
+    String base = resultsOutputDir == null ? "results" : resultsOutputDir;
+    if (base.endsWith(".csv")) base = base.substring(0, base.length() - ".csv".length());
+    return base + suffix;
+  }
+
+  protected String getHeader() {
     return new StringBuilder()
         .append("Metric Name")
         .append(",")
@@ -270,10 +371,22 @@ public abstract class AbstractBenchmark implements Runnable {
         .append("95th Percentile")
         .append(",")
         .append("99th Percentile")
+        .append(",")
+        .append("Protocol")
+        .append(",")
+        .append("Mode")
+        .append(",")
+        .append("Entities")
+        .append(",")
+        .append("Repetition")
+        .append(",")
+        .append("Throughput")
+        .append(",")
+        .append("Schema Version")
         .toString();
   }
 
-  private String getTimerLine(String metricName, Timer timer) {
+  protected String getTimerLine(String metricName, Timer timer) {
     Snapshot snapshot = timer.getSnapshot();
     return new StringBuilder()
         .append(metricName)
@@ -296,7 +409,7 @@ public abstract class AbstractBenchmark implements Runnable {
         .toString();
   }
 
-  private void setBearerToken() throws IOException {
+  protected void setBearerToken() throws IOException {
     if (BEARER_TOKEN_LOCATION != null) {
       try (BufferedReader reader = new BufferedReader(new FileReader(BEARER_TOKEN_LOCATION))) {
         BEARER_TOKEN = reader.readLine();
@@ -323,19 +436,42 @@ public abstract class AbstractBenchmark implements Runnable {
       builder.addNetworkInterceptor(new GzipRequestInterceptor());
 
     // add this timer second, so it doesn't capture the compression time from gzip
-    builder.addNetworkInterceptor(new HttpInterceptor(registry.timer(metricName)));
+    builder.addNetworkInterceptor(
+        new HttpInterceptor(registry.timer(metricName), currentRun.get()));
     
     if (enableSSL(url)) {
       if (verbose) System.out.println("Using TLS for connection; Trusting all certificates");
-      final SSLContext sslContext = SSLContext.getInstance("SSL");
-      sslContext.init(null, TRUST_ALL_CERTS, new java.security.SecureRandom());
-      // Create an ssl socket factory with our all-trusting manager
-      final SSLSocketFactory sslSocketFactory = sslContext.getSocketFactory();
+      // shared by every client, so new connections can resume the sessions of earlier ones
+      builder.sslSocketFactory(
+          ClientTls.trustingAll(tlsProvider).getSocketFactory(), ClientTls.trustManager());
+    }
 
-      builder.sslSocketFactory(sslSocketFactory, (X509TrustManager) TRUST_ALL_CERTS[0]);
+    OkHttpClient client = builder.build();
+    if (h2Connections > 1 && protocols.contains(Protocol.HTTP_2)) {
+      return ConnectionShards.shard(client, getConnectionStats(), h2Selection);
     }
+    return client;
+  }
+
+  private synchronized ConnectionShards.Stats[] getConnectionStats() {
+    if (connectionStats == null) connectionStats = ConnectionShards.stats(h2Connections);
+    return connectionStats;
+  }
 
-    return builder.build();
+  /** the latency of every request sent so far, in nanoseconds; a copy, for the caller to keep */
+  public synchronized Histogram getRunHistogram() {
+    runInterval = runRecorder.getIntervalHistogram(runInterval);
+    runHistogram.add(runInterval);
+    return runHistogram.copy();
+  }
+
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  /** prints what went over each of the --h2-connections, when requests were spread over them */
+  protected void printConnections() {
+    if (connectionStats != null) ConnectionShards.print(connectionStats);
   }
 
   private boolean enableSSL(String url) {
@@ -345,9 +481,15 @@ public abstract class AbstractBenchmark implements Runnable {
   protected class HttpInterceptor implements Interceptor {
 
     private final Timer timer;
+    private final RunResult run;
 
     public HttpInterceptor(Timer timer) {
+      this(timer, null);
+    }
+
+    public HttpInterceptor(Timer timer, RunResult run) {
       this.timer = timer;
+      this.run = run;
     }
 
     @Override
@@ -359,11 +501,26 @@ public abstract class AbstractBenchmark implements Runnable {
             chain.request().newBuilder().header("Authorization", "Bearer " + BEARER_TOKEN).build();
       } else request = chain.request();
 
+      // after the token, so it is sized with the rest of the headers
+      if (headers != null) headers.record(request, chain.connection());
+
       Timer.Context time = timer.time();
+      long start = System.nanoTime();
+      boolean failed = false;
       try {
-        return chain.proceed(request);
+        Response response = chain.proceed(request);
+        // a 304 answers a conditional request, the response a client asked for rather than an error
+        failed = !response.isSuccessful() && response.code() != 304;
+        return response;
       } finally {
         time.stop();
+        long end = System.nanoTime();
+        intervalRecorder.recordValue(end - start);
+        runRecorder.recordValue(end - start);
+        // failed calls are counted by whoever made the call, this only counts error responses
+        if (failed) errors.increment();
+        if (run != null) run.record(start, end);
+        if (restart != null) restart.record(end - start);
       }
     }
   }
@@ -440,6 +597,8 @@ public abstract class AbstractBenchmark implements Runnable {
 
     @Override
     public void onFailure(Call call, IOException e) {
+      errors.increment();
+      latch.countDown();
       e.printStackTrace();
     }
 
@@ -0,0 +1,354 @@
+package com.http.benchmark;
+
+import com.codahale.metrics.Timer;
+import com.opencsv.CSVWriter;
+import okhttp3.Protocol;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.DoubleSummaryStatistics;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * A command that runs an {@link Action} for every entity count, {@code --repetitions} times or
+ * over and over for a {@code --duration}, and writes a line per entity count and per repetition to
+ * the results file.
+ */
+public abstract class ActionBenchmark extends AbstractBenchmark {
+
+  private static final String ALL_REPETITIONS = "all";
+
+  private final Queue<RunResult> runResults = new ConcurrentLinkedQueue<>();
+  private final Map<Integer, DoubleSummaryStatistics> throughputs = new ConcurrentHashMap<>();
+  private final LongAdder entitiesCompleted = new LongAdder();
+  private ResultsJournal journal;
+
+  public static class Action implements Runnable {
+
+    private final ActionOperator action;
+    private final List<Protocol> protocols;
+    private final String url;
+    private final String metricName;
+    private final int numEntities;
+    private final int payloadSize;
+
+    public Action(
+        ActionOperator action,
+        List<Protocol> protocols,
+        String url,
+        String metricName,
+        int numEntities,
+        int payloadSize) {
+      this.action = action;
+      this.protocols = protocols;
+      this.url = url;
+      this.metricName = metricName;
+      this.numEntities = numEntities;
+      this.payloadSize = payloadSize;
+    }
+
+    @Override
+    public void run() {
+      try {
+        action.run(protocols, url, metricName, numEntities, payloadSize);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  public interface ActionOperator {
+    void run(
+        List<Protocol> protocols, String url, String metricName, int numEntities, int payloadSize)
+        throws Exception;
+  }
+
+  public abstract Action getAction(
+      List<Protocol> protocols, String url, int numEntities, int payloadSize);
+
+  @Override
+  public void run() {
+    try {
+      setBearerToken();
+
+      ExecutorService threadPool = Executors.newFixedThreadPool(threads);
+
+      // if numEntities was set at the command line, override the default values
+      if (numEntities > 0) entityCounts = Arrays.asList(numEntities);
+
+      Path journalFile = Paths.get(resultsFile(".jsonl"));
+      System.out.println("Writing run records to file [" + journalFile + "]");
+      journal = ResultsJournal.open(journalFile, getMode(), getConfig());
+
+      try {
+        benchmark(threadPool);
+      } finally {
+        // a run that failed still leaves a journal that ends with the summary of what finished
+        threadPool.shutdown();
+        try {
+          writeSummary();
+        } finally {
+          journal.close();
+        }
+      }
+    } catch (ExecutionException | InterruptedException | IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** runs the actions of the benchmark, reporting them and writing them to the journal */
+  private void benchmark(ExecutorService threadPool)
+      throws ExecutionException, InterruptedException, IOException {
+    JfrRecording recording = jfr ? JfrRecording.start(getClass().getSimpleName()) : null;
+    ServerMetrics server = startServerMetrics();
+
+    if (isHeaderStats()) headers = new HeaderStats();
+
+    if (drainAt > 0) {
+      restart =
+          new RestartSimulator(admin, TimeUnit.SECONDS.toMillis(drainAt), restartPause, errors);
+      restart.start();
+    }
+
+    List<Future> futures = new ArrayList<>();
+    IntervalReporter reporter = null;
+    if (duration > 0) {
+      String intervalsFile = resultsFile(".intervals.csv");
+      System.out.println(
+          "Soaking for ["
+              + duration
+              + "] seconds; writing interval reports to file ["
+              + intervalsFile
+              + "]");
+      reporter =
+          new IntervalReporter(
+              intervalRecorder, entitiesCompleted, errors, intervalsFile, journal);
+      reporter.start(interval);
+      futures.addAll(soak(threadPool));
+    } else {
+      IntStream.range(0, repetitions)
+          .forEach(
+              i ->
+                  entityCounts
+                      .stream()
+                      .forEach(
+                          entities ->
+                              futures.add(
+                                  threadPool.submit(
+                                      measure(
+                                          getAction(getProtocols(), url, entities, payloadSize),
+                                          entities,
+                                          i)))));
+    }
+
+    System.out.println("Executing [" + futures.size() + "] actions");
+    // wait for all futures to finish before moving out to print the results
+    int i = 1;
+    for (final Future future : futures) {
+      if (verbose)
+        System.out.println("waiting for future [" + i + "/" + futures.size() + "] to finish");
+      future.get();
+      i++;
+    }
+    if (verbose) System.out.println("All actions have finished");
+    if (reporter != null) reporter.stop();
+
+    if (recording != null) {
+      Path recordingFile = Paths.get(resultsFile(".jfr"));
+      Path summaryFile = Paths.get(resultsFile(".jfr.txt"));
+      System.out.println("Writing flight recording to file [" + recordingFile + "]");
+      recording.stop(recordingFile, summaryFile);
+    }
+
+    printResults(entityCounts);
+    printConnections();
+    if (restart != null) {
+      restart.stop();
+      restart.print();
+    }
+    if (headers != null) {
+      headers.print();
+      journal.writeHeaders(headers.summary());
+    }
+    reportServerMetrics(server, journal);
+  }
+
+  /** writes the summary record of the timers of every entity count */
+  private void writeSummary() throws IOException {
+    Map<String, Timer> timers = new LinkedHashMap<>();
+    entityCounts.forEach(entities -> timers.putAll(getTimers(entities)));
+    journal.writeSummary(timers);
+  }
+
+  /**
+   * Starts a worker per thread that keeps running actions, cycling through the entity counts, until
+   * the soak duration is up. A failing action doesn't stop the soak, it is counted as an error.
+   */
+  private List<Future> soak(ExecutorService threadPool) {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(duration);
+    AtomicInteger repetition = new AtomicInteger();
+
+    List<Future> futures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      futures.add(
+          threadPool.submit(
+              () -> {
+                while (System.nanoTime() < deadline) {
+                  for (int entities : entityCounts) {
+                    if (System.nanoTime() >= deadline) return;
+                    try {
+                      measure(
+                              getAction(getProtocols(), url, entities, payloadSize),
+                              entities,
+                              repetition.getAndIncrement())
+                          .run();
+                    } catch (RuntimeException e) {
+                      errors.increment();
+                      if (verbose) e.printStackTrace();
+                    }
+                  }
+                }
+              }));
+    }
+    return futures;
+  }
+
+  /**
+   * Wraps an action so the requests it makes are also recorded into a {@link RunResult} for the
+   * repetition it belongs to.
+   */
+  private Runnable measure(Action action, int entities, int repetition) {
+    RunResult result =
+        new RunResult(getMetricName(entities), getProtocol(), getMode(), entities, repetition);
+    return () -> {
+      currentRun.set(result);
+      result.start();
+      try {
+        action.run();
+        entitiesCompleted.add(entities);
+      } finally {
+        currentRun.remove();
+        result.finish();
+        throughputs.compute(
+            entities,
+            (k, stats) -> {
+              DoubleSummaryStatistics summary =
+                  stats == null ? new DoubleSummaryStatistics() : stats;
+              summary.accept(result.getThroughput());
+              return summary;
+            });
+        // a soak can run a huge number of actions, those only go to the journal
+        if (duration == 0) runResults.add(result);
+        try {
+          journal.write(result);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
+
+  private void printResults(List<Integer> entityCounts) throws IOException {
+    // create CSV writer
+    System.out.println("Writing metrics to file [" + resultsOutputDir + "]");
+    try (CSVWriter writer = new CSVWriter(new FileWriter(resultsOutputDir))) {
+      writer.writeNext(getHeader().split(","));
+      entityCounts
+          .stream()
+          .forEach(
+              entities -> {
+                Map<String, Timer> timers = getTimers(entities);
+                double throughput = getThroughput(entities);
+                timers
+                    .entrySet()
+                    .forEach(
+                        e ->
+                            writer.writeNext(
+                                (getTimerLine(e.getKey(), e.getValue())
+                                        + getMetadataLine(entities, ALL_REPETITIONS, throughput))
+                                    .split(",")));
+              });
+
+      // one line per repetition, so result files can be compared on the distribution of the runs
+      runResults
+          .stream()
+          .sorted(
+              Comparator.comparingInt(RunResult::getEntities)
+                  .thenComparingInt(RunResult::getRepetition))
+          .forEach(
+              r ->
+                  writer.writeNext(
+                      (getRunLine(r)
+                              + getMetadataLine(
+                                  r.getEntities(),
+                                  String.valueOf(r.getRepetition()),
+                                  r.getThroughput()))
+                          .split(",")));
+    }
+  }
+
+  /** mean throughput, in entities per second, of the repetitions of an entity count */
+  private double getThroughput(int entities) {
+    DoubleSummaryStatistics stats = throughputs.get(entities);
+    return stats == null ? 0 : stats.getAverage();
+  }
+
+  private String getRunLine(RunResult result) {
+    return new StringBuilder()
+        .append(result.getMetricName())
+        .append(",")
+        .append(result.getCount())
+        .append(",")
+        .append(convertToMillis(result.getMedian()))
+        .append(",")
+        .append(convertToMillis(result.getMean()))
+        .append(",")
+        .append(convertToMillis(result.getMin()))
+        .append(",")
+        .append(convertToMillis(result.getMax()))
+        .append(",")
+        .append(convertToMillis(result.get75thPercentile()))
+        .append(",")
+        .append(convertToMillis(result.get95thPercentile()))
+        .append(",")
+        .append(convertToMillis(result.get99thPercentile()))
+        .toString();
+  }
+
+  private String getMetadataLine(int entities, String repetition, double throughput) {
+    return new StringBuilder()
+        .append(",")
+        .append(getProtocol())
+        .append(",")
+        .append(getMode())
+        .append(",")
+        .append(entities)
+        .append(",")
+        .append(repetition)
+        .append(",")
+        .append(String.format(Locale.ROOT, "%.2f", throughput))
+        .append(",")
+        .append(ResultsFile.SCHEMA_VERSION)
+        .toString();
+  }
+}
@@ -0,0 +1,124 @@
+package com.http.benchmark;
+
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds how many requests a client can keep in flight to a host before latency starts to climb,
+ * the knee, by adjusting the limit of a dispatcher as requests complete. The limit starts at one,
+ * which gives the baseline latency, and doubles after every window of requests whose median
+ * latency stays within {@link #TOLERANCE} of the baseline. Once a window goes over, the knee is
+ * narrowed down between the last limit within it and the first one over, and the limit stays at
+ * the knee for the rest of the run. It never goes above the most streams the peer allows.
+ *
+ * <p>Added as the first application interceptor, so a request is timed once the dispatcher lets it
+ * go rather than while it waits for the limit, whichever connection it then goes out on.
+ */
+public class AdaptiveConcurrency implements Interceptor {
+
+  /** how far above the baseline the median of a window can be and still count as flat */
+  static final double TOLERANCE = 0.5;
+
+  private final Dispatcher dispatcher;
+  private final int max;
+  private final long[] window;
+
+  private int completed;
+  private long windowStart = System.nanoTime();
+  private int limit = 1;
+  private long baseline;
+  // the highest limit within the tolerance and the lowest one over it, once one was over
+  private int good;
+  private int bad;
+  private boolean settled;
+  private final List<String> steps = new ArrayList<>();
+
+  public AdaptiveConcurrency(Dispatcher dispatcher, int max, int window) {
+    this.dispatcher = dispatcher;
+    this.max = Math.max(1, max);
+    this.window = new long[Math.max(1, window)];
+    dispatcher.setMaxRequests(this.max);
+    dispatcher.setMaxRequestsPerHost(limit);
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    long start = System.nanoTime();
+    try {
+      return chain.proceed(chain.request());
+    } finally {
+      completed(System.nanoTime() - start);
+    }
+  }
+
+  private synchronized void completed(long nanos) {
+    if (settled) return;
+    window[completed++] = nanos;
+    if (completed < window.length) return;
+
+    long now = System.nanoTime();
+    double throughput = completed / ((now - windowStart) / (double) TimeUnit.SECONDS.toNanos(1));
+    Arrays.sort(window);
+    long median = window[window.length / 2];
+    completed = 0;
+    windowStart = now;
+
+    if (baseline == 0 || median < baseline) baseline = median;
+    boolean flat = median <= baseline * (1 + TOLERANCE);
+    steps.add(
+        String.format(
+            Locale.ROOT,
+            "%d in flight: p50 %.2fms, %.0f req/s%s",
+            limit,
+            median / 1e6,
+            throughput,
+            flat ? "" : " (over)"));
+
+    if (flat) {
+      good = limit;
+    } else {
+      bad = limit;
+    }
+    if (bad == 0) {
+      // still ramping
+      if (limit == max) {
+        settled = true;
+      } else {
+        limit = Math.min(max, limit * 2);
+      }
+    } else if (bad - good <= Math.max(1, good / 8)) {
+      settled = true;
+      limit = Math.max(1, good);
+    } else {
+      limit = (good + bad) / 2;
+    }
+    dispatcher.setMaxRequestsPerHost(limit);
+  }
+
+  /** the limit settled on, or the one it is at while still looking */
+  public synchronized int getKnee() {
+    return limit;
+  }
+
+  /** prints every window and the knee found */
+  public synchronized void report(String metricName) {
+    steps.forEach(step -> System.out.println("  " + step));
+    System.out.println(
+        (settled ? "Concurrency knee" : "No knee found yet, last limit")
+            + " for ["
+            + metricName
+            + "] is ["
+            + limit
+            + "] in flight, of ["
+            + max
+            + "] the peer allows");
+  }
+}
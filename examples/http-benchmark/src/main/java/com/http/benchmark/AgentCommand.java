@@ -0,0 +1,148 @@
+package com.http.benchmark;
+
+import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Generates load for a {@code coordinate} command running elsewhere. The agent waits for a
+ * coordinator to connect, prepares the workload it is sent as the command it names, starts it at
+ * the time the coordinator says, so every agent starts together, and sends back the latency of
+ * every request as a histogram the coordinator can merge with those of the other agents.
+ *
+ * <p>An agent runs whatever workload it is sent, so it only listens on the loopback interface
+ * unless {@code --bind} says otherwise, and only prepares a workload sent with the secret in the
+ * {@link AgentMessage#SECRET_ENV} environment variable, which it won't start without.
+ */
+@Command(name = "agent", description = "Runs workloads for a coordinator and reports histograms")
+public class AgentCommand implements Runnable {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--port"},
+    description = "port to wait for the coordinator on; defaults to 7070"
+  )
+  public int port = 7070;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--bind"},
+    description = "address to wait for the coordinator on, 0.0.0.0 for all; defaults to loopback"
+  )
+  public String bind;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--once"},
+    description = "exits after the first coordinator disconnects instead of waiting for the next"
+  )
+  public boolean once = false;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"-o", "--output"},
+    description = "prefix of the results files of the workloads run; defaults to agent-<port>"
+  )
+  public String output;
+
+  @Override
+  public void run() {
+    String secret = System.getenv(AgentMessage.SECRET_ENV);
+    if (secret == null || secret.isEmpty()) {
+      throw new IllegalArgumentException(
+          "no secret to share with the coordinator; set " + AgentMessage.SECRET_ENV);
+    }
+    String prefix = output == null ? "agent-" + port : output;
+    try (ServerSocket server = new ServerSocket(port, 50, address())) {
+      System.out.println(
+          "Waiting for a coordinator on [" + server.getLocalSocketAddress() + "]");
+      int session = 0;
+      do {
+        try (Socket socket = server.accept()) {
+          System.out.println(
+              "Coordinator connected from [" + socket.getRemoteSocketAddress() + "]");
+          serve(socket, secret, prefix + "-" + session++ + ".csv");
+        } catch (IOException e) {
+          System.out.println("Lost the coordinator: " + e);
+        }
+      } while (!once);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private InetAddress address() throws IOException {
+    return bind == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind);
+  }
+
+  private void serve(Socket socket, String secret, String results) throws IOException {
+    BufferedReader in =
+        new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+
+    AgentMessage prepare = AgentMessage.read(in);
+    if (!AgentMessage.PREPARE.equals(prepare.getType())
+        || prepare.getSecret() == null
+        // in constant time, so the secret can't be guessed a byte at a time
+        || !MessageDigest.isEqual(
+            secret.getBytes(StandardCharsets.UTF_8),
+            prepare.getSecret().getBytes(StandardCharsets.UTF_8))) {
+      System.out.println("Turned away [" + socket.getRemoteSocketAddress() + "], wrong secret");
+      AgentMessage.error("not prepared with the shared secret").write(out);
+      return;
+    }
+    AbstractBenchmark benchmark;
+    try {
+      benchmark = prepare(prepare.getWorkload(), results);
+    } catch (RuntimeException e) {
+      AgentMessage.error("can't run [" + prepare.getWorkload() + "]: " + e.getMessage()).write(out);
+      return;
+    }
+    AgentMessage.of(AgentMessage.READY).write(out);
+
+    AgentMessage start = AgentMessage.read(in);
+    long wait = start.getStartAt() - System.currentTimeMillis();
+    System.out.println("Starting [" + prepare.getWorkload() + "] in [" + wait + "]ms");
+    try {
+      if (wait > 0) Thread.sleep(wait);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    long begin = System.nanoTime();
+    try {
+      benchmark.run();
+    } catch (RuntimeException e) {
+      if (e.getCause() != null) e.getCause().printStackTrace();
+      AgentMessage.error("[" + prepare.getWorkload() + "] failed: " + e).write(out);
+      return;
+    }
+
+    AgentMessage result = AgentMessage.of(AgentMessage.RESULT);
+    result.setElapsedNanos(System.nanoTime() - begin);
+    result.setErrors(benchmark.getErrors());
+    result.encode(benchmark.getRunHistogram());
+    result.write(out);
+  }
+
+  /** the command a workload names, writing its results to a file of this agent's */
+  private static AbstractBenchmark prepare(String workload, String results) {
+    Runnable command = AbstractBenchmark.command(workload, results);
+    if (!(command instanceof AbstractBenchmark)) {
+      throw new IllegalArgumentException("not a command that sends requests");
+    }
+    return (AbstractBenchmark) command;
+  }
+}
@@ -0,0 +1,150 @@
+package com.http.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+
+/**
+ * A line of json exchanged between the {@code coordinate} command and its agents. The coordinator
+ * sends a workload to {@link #PREPARE}, with the secret the agents share with it, and once every
+ * agent answered {@link #READY}, a time to {@link #START} at; each agent answers with its {@link
+ * #RESULT}, or with an {@link #ERROR} at any point.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AgentMessage {
+
+  public static final String PREPARE = "prepare";
+  public static final String READY = "ready";
+  public static final String START = "start";
+  public static final String RESULT = "result";
+  public static final String ERROR = "error";
+
+  /** the environment variable the secret shared by a coordinator and its agents is read from */
+  public static final String SECRET_ENV = "BENCHMARK_AGENT_SECRET";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private String type;
+  private String workload;
+  private String secret;
+  private Long startAt;
+  /** the latencies of the run, as a compressed HdrHistogram in base64 */
+  private String histogram;
+  private Long errors;
+  private Long elapsedNanos;
+  private String error;
+
+  public static AgentMessage of(String type) {
+    AgentMessage message = new AgentMessage();
+    message.setType(type);
+    return message;
+  }
+
+  public static AgentMessage error(String error) {
+    AgentMessage message = of(ERROR);
+    message.setError(error);
+    return message;
+  }
+
+  /** reads the next message, failing if the other side has gone */
+  public static AgentMessage read(BufferedReader in) throws IOException {
+    String line = in.readLine();
+    if (line == null) throw new EOFException("the other side closed the connection");
+    return MAPPER.readValue(line, AgentMessage.class);
+  }
+
+  public void write(Writer out) throws IOException {
+    out.write(MAPPER.writeValueAsString(this));
+    out.write('\n');
+    out.flush();
+  }
+
+  public void encode(Histogram histogram) {
+    ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+    int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+    this.histogram = Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length));
+  }
+
+  public Histogram decode() throws IOException {
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(histogram));
+      return Histogram.decodeFromCompressedByteBuffer(buffer, 0);
+    } catch (DataFormatException e) {
+      throw new IOException("not a histogram", e);
+    }
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public void setType(String type) {
+    this.type = type;
+  }
+
+  public String getWorkload() {
+    return workload;
+  }
+
+  public void setWorkload(String workload) {
+    this.workload = workload;
+  }
+
+  public String getSecret() {
+    return secret;
+  }
+
+  public void setSecret(String secret) {
+    this.secret = secret;
+  }
+
+  /** epoch millis */
+  public Long getStartAt() {
+    return startAt;
+  }
+
+  public void setStartAt(Long startAt) {
+    this.startAt = startAt;
+  }
+
+  public String getHistogram() {
+    return histogram;
+  }
+
+  public void setHistogram(String histogram) {
+    this.histogram = histogram;
+  }
+
+  public Long getErrors() {
+    return errors;
+  }
+
+  public void setErrors(Long errors) {
+    this.errors = errors;
+  }
+
+  public Long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  public void setElapsedNanos(Long elapsedNanos) {
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public void setError(String error) {
+    this.error = error;
+  }
+}
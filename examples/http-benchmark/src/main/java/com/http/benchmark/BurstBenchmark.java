@@ -0,0 +1,358 @@
+package com.http.benchmark;
+
+import com.codahale.metrics.Timer;
+import com.opencsv.CSVWriter;
+import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
+import okhttp3.*;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hits a service with a burst of concurrent uploads between two calm phases, to show how it
+ * degrades under overload and whether it recovers afterwards. A service with admission control
+ * should turn the excess away quickly (503s) while keeping the latency of what it accepts close to
+ * the calm phases, rather than slowing every request down or falling over.
+ *
+ * <p>Each phase keeps a fixed number of uploads in flight, starting a new one whenever one
+ * finishes, so a rejected upload is immediately retried unless {@code --honor-retry-after} is set.
+ */
+@Command(
+  name = "burst",
+  description =
+      "Runs a calm, a burst and a recovery phase of concurrent payload uploads and reports how the"
+          + " service degraded in each"
+)
+public class BurstBenchmark extends AbstractBenchmark {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--calm-concurrency"},
+    description = "uploads in flight during the calm and recovery phases; defaults to 8"
+  )
+  public int calmConcurrency = 8;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--burst-concurrency"},
+    description = "uploads in flight during the burst; defaults to 512"
+  )
+  public int burstConcurrency = 512;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--phase-seconds"},
+    description = "length of the calm and recovery phases; defaults to 20"
+  )
+  public long phaseSeconds = 20;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--burst-seconds"},
+    description = "length of the burst; defaults to 10"
+  )
+  public long burstSeconds = 10;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--honor-retry-after"},
+    description = "waits for the Retry-After of a rejected upload before starting the next one"
+  )
+  public boolean honorRetryAfter = false;
+
+  private static final String ROOT_METRIC_NAME = "http_burst";
+  private static final int DEFAULT_ENTITIES = 100;
+
+  private final List<Phase> phases =
+      Arrays.asList(new Phase("calm"), new Phase("burst"), new Phase("recovery"));
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder entitiesWritten = new LongAdder();
+  private final ScheduledExecutorService retries = Executors.newSingleThreadScheduledExecutor();
+
+  private OkHttpClient client;
+  private RequestBody body;
+  private int entities;
+  private volatile Phase phase;
+  private volatile int target;
+  private volatile boolean running;
+
+  @Override
+  public void run() {
+    try {
+      setBearerToken();
+      entities = numEntities > 0 ? numEntities : DEFAULT_ENTITIES;
+      body = RequestBodies.entities(generator, entities, payloadSize);
+
+      client = getHttpClient(getProtocols(), url, ROOT_METRIC_NAME);
+      client.dispatcher().setMaxRequests(burstConcurrency);
+      client.dispatcher().setMaxRequestsPerHost(burstConcurrency);
+
+      try (ResultsJournal journal =
+          ResultsJournal.open(Paths.get(resultsFile(".jsonl")), getMode(), getConfig())) {
+        IntervalReporter reporter =
+            new IntervalReporter(
+                intervalRecorder,
+                entitiesWritten,
+                errors,
+                resultsFile(".intervals.csv"),
+                journal);
+        ServerMetrics server = startServerMetrics();
+        reporter.start(interval);
+
+        running = true;
+        runPhase(phases.get(0), calmConcurrency, phaseSeconds);
+        runPhase(phases.get(1), burstConcurrency, burstSeconds);
+        runPhase(phases.get(2), calmConcurrency, phaseSeconds);
+        running = false;
+        // backed off uploads that were never started give their slots back
+        inFlight.addAndGet(-retries.shutdownNow().size());
+
+        // let the uploads that are still on the wire finish before reporting
+        long deadline = System.currentTimeMillis() + readTimeout;
+        while (inFlight.get() > 0 && System.currentTimeMillis() < deadline) {
+          Thread.sleep(100);
+        }
+
+        reporter.stop();
+        printPhases();
+        writePhases();
+        reportServerMetrics(server, journal);
+        journal.writeSummary(getTimers(0));
+      }
+
+      client.dispatcher().executorService().shutdown();
+      client.connectionPool().evictAll();
+    } catch (IOException
+        | InterruptedException
+        | NoSuchAlgorithmException
+        | KeyManagementException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void runPhase(Phase next, int concurrency, long seconds) throws InterruptedException {
+    System.out.println(
+        "Starting the ["
+            + next.name
+            + "] phase with ["
+            + concurrency
+            + "] uploads in flight for ["
+            + seconds
+            + "] seconds");
+    phase = next;
+    target = concurrency;
+    next.start = System.nanoTime();
+    topUp();
+    Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+    next.end = System.nanoTime();
+  }
+
+  /** starts uploads until the phase has as many in flight as it should */
+  private void topUp() {
+    while (running) {
+      int current = inFlight.get();
+      if (current >= target) return;
+      if (inFlight.compareAndSet(current, current + 1)) send();
+    }
+  }
+
+  private void send() {
+    Phase current = phase;
+    current.sent.increment();
+    Request request =
+        new Request.Builder().url(url).post(body).tag(new Sent(current, System.nanoTime())).build();
+    client.newCall(request).enqueue(callback);
+  }
+
+  private final Callback callback =
+      new Callback() {
+        @Override
+        public void onFailure(Call call, IOException e) {
+          Sent sent = (Sent) call.request().tag();
+          sent.phase.failed.increment();
+          errors.increment();
+          if (verbose) e.printStackTrace();
+          finished(0);
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+          long retryAfter = 0;
+          try {
+            Sent sent = (Sent) call.request().tag();
+            long latency = System.nanoTime() - sent.nanos;
+            if (response.isSuccessful()) {
+              sent.phase.timer.update(latency, TimeUnit.NANOSECONDS);
+              sent.phase.entities.add(entities);
+              entitiesWritten.add(entities);
+            } else if (response.code() == 503) {
+              sent.phase.rejected.increment();
+              sent.phase.rejectedLatency.update(latency, TimeUnit.NANOSECONDS);
+              if (honorRetryAfter) retryAfter = retryAfterSeconds(response);
+            } else {
+              sent.phase.failed.increment();
+            }
+          } finally {
+            response.close();
+            finished(retryAfter);
+          }
+        }
+      };
+
+  private void finished(long retryAfterSeconds) {
+    if (retryAfterSeconds > 0 && running) {
+      // the slot stays taken until the retry is due, like a client that backs off would
+      retries.schedule(
+          () -> {
+            inFlight.decrementAndGet();
+            topUp();
+          },
+          retryAfterSeconds,
+          TimeUnit.SECONDS);
+      return;
+    }
+    inFlight.decrementAndGet();
+    topUp();
+  }
+
+  private static long retryAfterSeconds(Response response) {
+    try {
+      String header = response.header("Retry-After");
+      return header == null ? 0 : Long.parseLong(header.trim());
+    } catch (NumberFormatException e) {
+      // an http date rather than seconds; back off for a second
+      return 1;
+    }
+  }
+
+  private void printPhases() {
+    String format = "%-10s %8s %10s %10s %10s %12s %8s %8s %8s %12s%n";
+    System.out.printf(
+        format,
+        "phase",
+        "sent",
+        "accepted",
+        "rejected",
+        "failed",
+        "entities/s",
+        "p50 ms",
+        "p99 ms",
+        "max ms",
+        "reject p99");
+    for (Phase p : phases) {
+      System.out.printf(
+          format,
+          p.name,
+          p.sent.sum(),
+          p.timer.getCount(),
+          p.rejected.sum(),
+          p.failed.sum(),
+          String.format(Locale.ROOT, "%.1f", p.getThroughput()),
+          convertToMillis(p.timer.getSnapshot().getMedian()),
+          convertToMillis(p.timer.getSnapshot().get99thPercentile()),
+          convertToMillis(p.timer.getSnapshot().getMax()),
+          convertToMillis(p.rejectedLatency.getSnapshot().get99thPercentile()));
+    }
+  }
+
+  /** writes a line per phase, of the accepted uploads, in the same layout as the other commands */
+  private void writePhases() throws IOException {
+    System.out.println("Writing metrics to file [" + resultsOutputDir + "]");
+    try (CSVWriter writer = new CSVWriter(new FileWriter(resultsOutputDir))) {
+      writer.writeNext(getHeader().split(","));
+      for (Phase p : phases) {
+        String metadata =
+            new StringBuilder()
+                .append(",")
+                .append(getProtocol())
+                .append(",")
+                .append(getMode() + ":" + p.name)
+                .append(",")
+                .append(entities)
+                .append(",")
+                .append("all")
+                .append(",")
+                .append(String.format(Locale.ROOT, "%.2f", p.getThroughput()))
+                .append(",")
+                .append(ResultsFile.SCHEMA_VERSION)
+                .toString();
+        writer.writeNext((getTimerLine(p.metricName, p.timer) + metadata).split(","));
+      }
+    }
+  }
+
+  @Override
+  protected Map<String, Object> getConfig() {
+    Map<String, Object> config = super.getConfig();
+    config.put("calmConcurrency", calmConcurrency);
+    config.put("burstConcurrency", burstConcurrency);
+    config.put("phaseSeconds", phaseSeconds);
+    config.put("burstSeconds", burstSeconds);
+    config.put("honorRetryAfter", honorRetryAfter);
+    return config;
+  }
+
+  /** the timers of the accepted uploads of every phase, regardless of the entity count */
+  @Override
+  public Map<String, Timer> getTimers(int numEntities) {
+    Map<String, Timer> timers = new LinkedHashMap<>();
+    phases.forEach(p -> timers.put(p.metricName, p.timer));
+    return timers;
+  }
+
+  @Override
+  public String getMetricName(int numEntities) {
+    return ROOT_METRIC_NAME;
+  }
+
+  private class Phase {
+    private final String name;
+    private final String metricName;
+    private final Timer timer;
+    private final Timer rejectedLatency;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder entities = new LongAdder();
+    private volatile long start;
+    private volatile long end;
+
+    Phase(String name) {
+      this.name = name;
+      this.metricName = ROOT_METRIC_NAME + "_" + name;
+      this.timer = registry.timer(metricName);
+      this.rejectedLatency = registry.timer(metricName + "_rejected");
+    }
+
+    /** entities accepted per second over the phase */
+    double getThroughput() {
+      double seconds = (end - start) / (double) TimeUnit.SECONDS.toNanos(1);
+      return seconds <= 0 ? 0 : entities.sum() / seconds;
+    }
+  }
+
+  private static class Sent {
+    private final Phase phase;
+    private final long nanos;
+
+    Sent(Phase phase, long nanos) {
+      this.phase = phase;
+      this.nanos = nanos;
+    }
+  }
+}
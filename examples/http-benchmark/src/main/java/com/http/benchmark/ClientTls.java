@@ -0,0 +1,44 @@
+package com.http.benchmark;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.X509TrustManager;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.eclipse.jetty.util.ssl.SslContextFactory.TRUST_ALL_CERTS;
+
+/**
+ * The ssl contexts the clients of the benchmark share, one per JSSE provider. The JDK keeps the
+ * sessions a client can resume in its ssl context, so with a context per client every connection
+ * of a new client would pay for a full handshake.
+ */
+public class ClientTls {
+
+  private static final Map<String, SSLContext> CONTEXTS = new ConcurrentHashMap<>();
+
+  private ClientTls() {}
+
+  /** a context trusting every certificate, from the provider named, or the default one for null */
+  public static SSLContext trustingAll(String provider) {
+    return CONTEXTS.computeIfAbsent(provider == null ? "" : provider, ClientTls::create);
+  }
+
+  public static X509TrustManager trustManager() {
+    return (X509TrustManager) TRUST_ALL_CERTS[0];
+  }
+
+  private static SSLContext create(String provider) {
+    try {
+      SSLContext context =
+          provider.isEmpty()
+              ? SSLContext.getInstance("TLS")
+              : SSLContext.getInstance("TLS", provider);
+      context.init(null, TRUST_ALL_CERTS, new SecureRandom());
+      return context;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalArgumentException("can't set tls up with provider [" + provider + "]", e);
+    }
+  }
+}
@@ -0,0 +1,292 @@
+package com.http.benchmark;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.http2.api.Entity;
+import com.opencsv.CSVWriter;
+import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
+import okhttp3.*;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Offers entities one at a time at a fixed rate, as the {@code single} command would send them,
+ * but through a {@link Coalescer} that gathers them into batches, once per linger setting. Each
+ * entity is timed from being offered until the request carrying it is answered, so the results
+ * chart what a longer linger costs in latency against what it saves in requests.
+ */
+@Command(
+  name = "coalesce",
+  description = "Coalesces single entities into batches, comparing the latency of linger settings"
+)
+public class CoalesceBenchmark extends AbstractBenchmark {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--linger"},
+    description =
+        "milliseconds a batch waits for more entities before it is sent; can be repeated, defaults"
+            + " to 0, 1, 5 and 20"
+  )
+  public List<Long> lingers = new ArrayList<>();
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--max-batch"},
+    description = "entities that send a batch without waiting for the linger; defaults to 100"
+  )
+  public int maxBatch = 100;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--rate"},
+    description = "entities offered per second; defaults to 5000"
+  )
+  public int rate = 5000;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"-c", "--concurrency"},
+    description = "requests in flight at once; defaults to 64"
+  )
+  public int concurrency = 64;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--multipart"},
+    description = "sends batches as multipart/mixed parts instead of a json document"
+  )
+  public boolean multipart = false;
+
+  private static final String ROOT_METRIC_NAME = "http_coalesce";
+  private static final List<Long> DEFAULT_LINGERS = Arrays.asList(0L, 1L, 5L, 20L);
+  private static final int DEFAULT_ENTITIES = 10000;
+
+  private final List<Setting> settings = new ArrayList<>();
+
+  @Override
+  public void run() {
+    try {
+      setBearerToken();
+      int entities = numEntities > 0 ? numEntities : DEFAULT_ENTITIES;
+      for (long linger : lingers.isEmpty() ? DEFAULT_LINGERS : lingers) {
+        settings.add(new Setting(linger));
+      }
+
+      System.out.println(
+          "Offering ["
+              + entities
+              + "] entities at ["
+              + rate
+              + "]/s for each linger, in batches of up to ["
+              + maxBatch
+              + "]");
+      for (Setting setting : settings) {
+        run(setting, entities);
+      }
+
+      printSettings();
+      printConnections();
+      writeSettings(entities);
+      try (ResultsJournal journal =
+          ResultsJournal.open(Paths.get(resultsFile(".jsonl")), getMode(), getConfig())) {
+        journal.writeSummary(getTimers(entities));
+      }
+    } catch (IOException
+        | InterruptedException
+        | NoSuchAlgorithmException
+        | KeyManagementException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void run(Setting setting, int entities)
+      throws IOException, InterruptedException, NoSuchAlgorithmException,
+          KeyManagementException {
+    OkHttpClient client = getHttpClient(getProtocols(), url, setting.requestMetricName);
+    client.dispatcher().setMaxRequests(concurrency);
+    client.dispatcher().setMaxRequestsPerHost(concurrency);
+
+    CountDownLatch answered = new CountDownLatch(entities);
+    Coalescer.Sender sender =
+        (batch, addedAt) -> {
+          setting.batchSizes.update(batch.size());
+          Request request;
+          try {
+            request =
+                new Request.Builder()
+                    .url(url)
+                    .post(RequestBodies.coalesced(batch, multipart))
+                    .build();
+          } catch (IOException e) {
+            failed(setting, batch, answered, e);
+            return;
+          }
+          client
+              .newCall(request)
+              .enqueue(
+                  new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                      failed(setting, batch, answered, e);
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) {
+                      response.close();
+                      if (!response.isSuccessful()) setting.failed.add(batch.size());
+                      long now = System.nanoTime();
+                      for (long added : addedAt) {
+                        setting.timer.update(now - added, TimeUnit.NANOSECONDS);
+                        answered.countDown();
+                      }
+                    }
+                  });
+        };
+
+    System.out.println("Starting linger of [" + setting.linger + "]ms");
+    long start = System.nanoTime();
+    long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+    try (Coalescer coalescer =
+        new Coalescer(maxBatch, setting.linger, TimeUnit.MILLISECONDS, sender)) {
+      for (int i = 0; i < entities; i++) {
+        // offered on a schedule rather than all at once, so a linger has something to wait for
+        long wait = start + i * interval - System.nanoTime();
+        if (wait > 0) LockSupport.parkNanos(wait);
+        Entity entity = new Entity();
+        entity.setName(generator.generate(payloadSize));
+        entity.setAddress(UUID.randomUUID().toString());
+        coalescer.add(entity);
+      }
+    }
+    if (!answered.await(readTimeout, TimeUnit.MILLISECONDS)) {
+      System.out.println("Gave up waiting for [" + answered.getCount() + "] entities");
+    }
+    setting.elapsed = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+
+    client.dispatcher().executorService().shutdown();
+    client.connectionPool().evictAll();
+  }
+
+  private void failed(Setting setting, List<Entity> batch, CountDownLatch answered, IOException e) {
+    errors.increment();
+    if (verbose) e.printStackTrace();
+    setting.failed.add(batch.size());
+    batch.forEach(entity -> answered.countDown());
+  }
+
+  private void printSettings() {
+    String format = "%-10s %10s %10s %12s %8s %8s %8s %8s%n";
+    System.out.printf(
+        format,
+        "linger ms",
+        "requests",
+        "mean batch",
+        "entities/s",
+        "failed",
+        "p50 ms",
+        "p99 ms",
+        "max ms");
+    for (Setting s : settings) {
+      System.out.printf(
+          format,
+          s.linger,
+          s.batchSizes.getCount(),
+          String.format(Locale.ROOT, "%.1f", s.batchSizes.getSnapshot().getMean()),
+          String.format(Locale.ROOT, "%.1f", s.timer.getCount() / s.elapsed),
+          s.failed.sum(),
+          convertToMillis(s.timer.getSnapshot().getMedian()),
+          convertToMillis(s.timer.getSnapshot().get99thPercentile()),
+          convertToMillis(s.timer.getSnapshot().getMax()));
+    }
+  }
+
+  /** writes a line per linger, with entities per second as its throughput */
+  private void writeSettings(int entities) throws IOException {
+    System.out.println("Writing metrics to file [" + resultsOutputDir + "]");
+    try (CSVWriter writer = new CSVWriter(new FileWriter(resultsOutputDir))) {
+      writer.writeNext(getHeader().split(","));
+      for (Setting s : settings) {
+        String metadata =
+            new StringBuilder()
+                .append(",")
+                .append(getProtocol())
+                .append(",")
+                .append(getMode() + ":linger=" + s.linger + "ms")
+                .append(",")
+                .append(entities)
+                .append(",")
+                .append("all")
+                .append(",")
+                .append(String.format(Locale.ROOT, "%.2f", s.timer.getCount() / s.elapsed))
+                .append(",")
+                .append(ResultsFile.SCHEMA_VERSION)
+                .toString();
+        writer.writeNext((getTimerLine(s.metricName, s.timer) + metadata).split(","));
+      }
+    }
+  }
+
+  @Override
+  protected Map<String, Object> getConfig() {
+    Map<String, Object> config = super.getConfig();
+    config.put("lingers", lingers.isEmpty() ? DEFAULT_LINGERS : lingers);
+    config.put("maxBatch", maxBatch);
+    config.put("rate", rate);
+    config.put("concurrency", concurrency);
+    config.put("multipart", multipart);
+    return config;
+  }
+
+  /** the per entity and per request timers of every linger, regardless of the entity count */
+  @Override
+  public Map<String, Timer> getTimers(int numEntities) {
+    Map<String, Timer> timers = new LinkedHashMap<>();
+    for (Setting s : settings) {
+      timers.put(s.metricName, s.timer);
+      timers.put(s.requestMetricName, registry.timer(s.requestMetricName));
+    }
+    return timers;
+  }
+
+  @Override
+  public String getMetricName(int numEntities) {
+    return ROOT_METRIC_NAME;
+  }
+
+  private class Setting {
+    private final long linger;
+    private final String metricName;
+    private final String requestMetricName;
+    // from an entity being offered until the request carrying it is answered
+    private final Timer timer;
+    private final Histogram batchSizes;
+    private final LongAdder failed = new LongAdder();
+    private double elapsed;
+
+    Setting(long linger) {
+      this.linger = linger;
+      this.metricName = ROOT_METRIC_NAME + "_linger_" + linger + "ms";
+      this.requestMetricName = metricName + "_request";
+      this.timer = registry.timer(metricName);
+      this.batchSizes = registry.histogram(metricName + "_batch_size");
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.http.benchmark;
+
+import com.http2.api.Entity;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers entities added one at a time into batches: a batch is handed to the {@link Sender} once
+ * it has {@code maxBatch} entities, or once its first entity has waited for the linger, whichever
+ * comes first. With a linger of zero every entity is sent on its own, as the {@code single}
+ * command does; a longer linger trades the latency of the first entities of a batch for fewer
+ * requests.
+ */
+public class Coalescer implements Closeable {
+
+  /** sends a batch; called with the coalescer locked, so it should only start the request */
+  public interface Sender {
+    /** @param addedAt when each entity was added, from {@link System#nanoTime} */
+    void send(List<Entity> entities, long[] addedAt);
+  }
+
+  private final int maxBatch;
+  private final long lingerNanos;
+  private final Sender sender;
+  private final ScheduledExecutorService linger =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "coalescer-linger");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private List<Entity> pending;
+  private long[] addedAt;
+  // counts the batches, so a linger that fires after its batch went out doesn't send the next
+  private long batch;
+  private ScheduledFuture<?> lingering;
+
+  public Coalescer(int maxBatch, long linger, TimeUnit unit, Sender sender) {
+    this.maxBatch = Math.max(1, maxBatch);
+    this.lingerNanos = unit.toNanos(linger);
+    this.sender = sender;
+    this.pending = new ArrayList<>(this.maxBatch);
+    this.addedAt = new long[this.maxBatch];
+  }
+
+  public synchronized void add(Entity entity) {
+    if (pending.isEmpty() && lingerNanos > 0) {
+      long current = batch;
+      lingering = linger.schedule(() -> flush(current), lingerNanos, TimeUnit.NANOSECONDS);
+    }
+    addedAt[pending.size()] = System.nanoTime();
+    pending.add(entity);
+    if (pending.size() >= maxBatch || lingerNanos == 0) flush();
+  }
+
+  /** sends whatever is pending without waiting for the linger */
+  public synchronized void flush() {
+    if (pending.isEmpty()) return;
+    if (lingering != null) {
+      lingering.cancel(false);
+      lingering = null;
+    }
+    List<Entity> entities = pending;
+    long[] times = Arrays.copyOf(addedAt, entities.size());
+    pending = new ArrayList<>(maxBatch);
+    batch++;
+    sender.send(entities, times);
+  }
+
+  private synchronized void flush(long expected) {
+    if (batch == expected) flush();
+  }
+
+  /** sends what is pending and stops the linger timer */
+  @Override
+  public void close() {
+    flush();
+    linger.shutdownNow();
+  }
+}
@@ -0,0 +1,210 @@
+package com.http.benchmark;
+
+import io.airlift.airline.Arguments;
+import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Compares result files written by the benchmark commands against a baseline. Measurements are
+ * matched on protocol, mode and entity count, and a p99 or throughput change beyond the threshold
+ * is a regression when the repetitions of the two files are significantly different (or when a
+ * file has too few repetitions to test). Exits with a non-zero status if anything regressed, so
+ * it can gate a rollout.
+ */
+@Command(
+  name = "compare",
+  description =
+      "Compares result files against a baseline; exits non-zero when p99 or throughput regress"
+)
+public class CompareResults implements Runnable {
+
+  @Arguments(
+    title = "files",
+    description = "result files to compare; the first file is the baseline",
+    required = true
+  )
+  public List<String> files;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--p99-threshold"},
+    description = "percentage a p99 latency may grow by before it is a regression; defaults to 10"
+  )
+  public double p99Threshold = 10;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--throughput-threshold"},
+    description = "percentage throughput may drop by before it is a regression; defaults to 10"
+  )
+  public double throughputThreshold = 10;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--alpha"},
+    description = "significance level of the Mann-Whitney U test; defaults to 0.05"
+  )
+  public double alpha = 0.05;
+
+  private static final String ROW_FORMAT = "%-36s %-10s %12s %12s %9s %9s  %s%n";
+
+  @Override
+  public void run() {
+    if (files.size() < 2) {
+      throw new IllegalArgumentException("at least two result files are needed to compare");
+    }
+
+    try {
+      Map<String, List<ResultsFile.Row>> baseline = byKey(ResultsFile.read(files.get(0)));
+
+      boolean regressed = false;
+      for (String file : files.subList(1, files.size())) {
+        System.out.println("Comparing [" + file + "] against baseline [" + files.get(0) + "]");
+        regressed |= compare(baseline, byKey(ResultsFile.read(file)));
+        System.out.println();
+      }
+
+      if (regressed) {
+        System.out.println("Performance regressed beyond the configured thresholds");
+        System.exit(1);
+      }
+      System.out.println("No regressions found");
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private boolean compare(
+      Map<String, List<ResultsFile.Row>> baseline, Map<String, List<ResultsFile.Row>> candidate) {
+    System.out.printf(
+        ROW_FORMAT, "measurement", "metric", "baseline", "candidate", "change", "p", "");
+
+    boolean regressed = false;
+    for (Map.Entry<String, List<ResultsFile.Row>> e : baseline.entrySet()) {
+      List<ResultsFile.Row> rows = candidate.get(e.getKey());
+      if (rows == null) {
+        System.out.printf(ROW_FORMAT, e.getKey(), "", "", "", "", "", "missing from candidate");
+        continue;
+      }
+
+      regressed |=
+          compareMetric(e.getKey(), "p99 ms", e.getValue(), rows, ResultsFile.Row::getP99, true);
+      // the full request lines share their throughput with the per request lines
+      if (!rows.get(0).isFullRequest()) {
+        regressed |=
+            compareMetric(
+                e.getKey(),
+                "entities/s",
+                e.getValue(),
+                rows,
+                ResultsFile.Row::getThroughput,
+                false);
+      }
+    }
+    return regressed;
+  }
+
+  /**
+   * Compares one metric of a measurement. The aggregated lines give the change, the per
+   * repetition lines give the distributions to test.
+   */
+  private boolean compareMetric(
+      String key,
+      String metric,
+      List<ResultsFile.Row> baseline,
+      List<ResultsFile.Row> candidate,
+      ToDoubleFunction<ResultsFile.Row> value,
+      boolean higherIsWorse) {
+    double before = aggregate(baseline, value);
+    double after = aggregate(candidate, value);
+    if (Double.isNaN(before) || Double.isNaN(after)) return false;
+
+    double[] beforeRuns = repetitions(baseline, value);
+    double[] afterRuns = repetitions(candidate, value);
+    double p =
+        beforeRuns.length > 1 && afterRuns.length > 1
+            ? Statistics.mannWhitneyU(beforeRuns, afterRuns)
+            : Double.NaN;
+
+    // too small to measure a relative change, e.g. a p99 that rounds to 0 ms
+    if (before == 0) {
+      print(key, metric, before, after, "n/a", p, "");
+      return false;
+    }
+
+    double change = (after - before) * 100 / before;
+    double worse = higherIsWorse ? change : -change;
+    double threshold = higherIsWorse ? p99Threshold : throughputThreshold;
+    boolean testable = isTestable(p, beforeRuns.length, afterRuns.length, alpha);
+    boolean significant = !testable || p < alpha;
+    boolean regressed = worse > threshold && significant;
+
+    String verdict = "";
+    if (regressed) verdict = testable ? "REGRESSION" : "REGRESSION (too few repetitions to test)";
+    else if (worse > threshold) verdict = "not significant";
+    else if (-worse > threshold && significant) verdict = "improvement";
+
+    print(key, metric, before, after, String.format("%+.1f%%", change), p, verdict);
+    return regressed;
+  }
+
+  /**
+   * whether the repetitions can tell a significant difference at all; with e.g. 3 of each the
+   * smallest p-value there is, 0.1, is above the usual alpha, and only the threshold can decide
+   */
+  static boolean isTestable(double p, int beforeRuns, int afterRuns, double alpha) {
+    return !Double.isNaN(p) && Statistics.minimumP(beforeRuns, afterRuns) < alpha;
+  }
+
+  private void print(
+      String key,
+      String metric,
+      double before,
+      double after,
+      String change,
+      double p,
+      String verdict) {
+    System.out.printf(
+        ROW_FORMAT,
+        key,
+        metric,
+        String.format("%.2f", before),
+        String.format("%.2f", after),
+        change,
+        Double.isNaN(p) ? "n/a" : String.format("%.4f", p),
+        verdict);
+  }
+
+  private static double aggregate(
+      List<ResultsFile.Row> rows, ToDoubleFunction<ResultsFile.Row> value) {
+    return rows.stream()
+        .filter(ResultsFile.Row::isAggregate)
+        .mapToDouble(value)
+        .findFirst()
+        .orElse(Double.NaN);
+  }
+
+  private static double[] repetitions(
+      List<ResultsFile.Row> rows, ToDoubleFunction<ResultsFile.Row> value) {
+    return rows.stream()
+        .filter(r -> !r.isAggregate())
+        .mapToDouble(value)
+        .filter(v -> !Double.isNaN(v))
+        .toArray();
+  }
+
+  private static Map<String, List<ResultsFile.Row>> byKey(List<ResultsFile.Row> rows) {
+    return rows.stream()
+        .collect(
+            Collectors.groupingBy(
+                ResultsFile.Row::getKey, LinkedHashMap::new, Collectors.toList()));
+  }
+}
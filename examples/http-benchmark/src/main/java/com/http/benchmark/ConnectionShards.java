@@ -0,0 +1,160 @@
+package com.http.benchmark;
+
+import okhttp3.Dns;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Spreads the requests of a client over a number of h2 connections instead of the one OkHttp
+ * multiplexes everything over. OkHttp shares a connection between requests with the same address,
+ * and an address includes its {@link Dns}, so every shard is a copy of the client with a resolver
+ * of its own: each ends up with its own connection in the shared pool. The client handed out runs
+ * every request on a shard picked round robin or by the fewest streams in flight.
+ */
+public class ConnectionShards implements Interceptor {
+
+  public static final String ROUND_ROBIN = "round-robin";
+  public static final String LEAST_STREAMS = "least-streams";
+
+  private final OkHttpClient[] shards;
+  private final AtomicInteger[] inFlight;
+  private final Stats[] stats;
+  private final boolean leastStreams;
+  private final AtomicInteger next = new AtomicInteger();
+
+  private ConnectionShards(OkHttpClient client, Stats[] stats, String selection) {
+    if (!ROUND_ROBIN.equals(selection) && !LEAST_STREAMS.equals(selection)) {
+      throw new IllegalArgumentException(
+          "unknown selection ["
+              + selection
+              + "], expected "
+              + ROUND_ROBIN
+              + " or "
+              + LEAST_STREAMS);
+    }
+    this.shards = new OkHttpClient[stats.length];
+    this.inFlight = new AtomicInteger[stats.length];
+    for (int i = 0; i < stats.length; i++) {
+      // shares the pool and dispatcher of the client, with a resolver that only this shard uses
+      shards[i] = client.newBuilder().dns(new ShardDns()).build();
+      inFlight[i] = new AtomicInteger();
+    }
+    this.stats = stats;
+    this.leastStreams = LEAST_STREAMS.equals(selection);
+  }
+
+  /**
+   * a client sending its requests over a connection per entry of {@code stats}, which collect
+   * what went over each; it shares its connection pool and dispatcher with the client given
+   */
+  public static OkHttpClient shard(OkHttpClient client, Stats[] stats, String selection) {
+    ConnectionShards shards = new ConnectionShards(client, stats, selection);
+    return client.newBuilder().addInterceptor(shards).build();
+  }
+
+  /** one entry per connection, to collect what every client sharded over them sent */
+  public static Stats[] stats(int connections) {
+    Stats[] stats = new Stats[connections];
+    for (int i = 0; i < connections; i++) {
+      stats[i] = new Stats();
+    }
+    return stats;
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    int shard = select();
+    Request request = chain.request();
+    int streams = inFlight[shard].incrementAndGet();
+    stats[shard].started(streams);
+    try {
+      // runs on the thread the dispatcher gave the call, so the limits of the dispatcher still hold
+      Response response = shards[shard].newCall(request).execute();
+      long sent = request.body() == null ? 0 : request.body().contentLength();
+      stats[shard].completed(Math.max(0, sent));
+      return response;
+    } finally {
+      inFlight[shard].decrementAndGet();
+    }
+  }
+
+  private int select() {
+    if (!leastStreams) return (next.getAndIncrement() & Integer.MAX_VALUE) % shards.length;
+    // starts looking at a different shard each time, so ties don't all go to the first one
+    int start = (next.getAndIncrement() & Integer.MAX_VALUE) % shards.length;
+    int best = start;
+    for (int i = 1; i < shards.length; i++) {
+      int shard = (start + i) % shards.length;
+      if (inFlight[shard].get() < inFlight[best].get()) best = shard;
+    }
+    return best;
+  }
+
+  /** prints a line per connection with its share of the requests and its throughput */
+  public static void print(Stats[] stats) {
+    long total = 0;
+    for (Stats s : stats) {
+      total += s.requests.sum();
+    }
+    String format = "%-11s %10s %7s %10s %10s %12s%n";
+    System.out.printf(
+        format, "connection", "requests", "share", "req/s", "MB/s sent", "max streams");
+    for (int i = 0; i < stats.length; i++) {
+      Stats s = stats[i];
+      double seconds = s.getActiveNanos() / (double) TimeUnit.SECONDS.toNanos(1);
+      System.out.printf(
+          format,
+          i,
+          s.requests.sum(),
+          String.format(Locale.ROOT, "%.1f%%", total == 0 ? 0 : 100.0 * s.requests.sum() / total),
+          String.format(Locale.ROOT, "%.1f", seconds == 0 ? 0 : s.requests.sum() / seconds),
+          String.format(
+              Locale.ROOT, "%.2f", seconds == 0 ? 0 : s.bytesSent.sum() / seconds / (1 << 20)),
+          s.maxStreams.get());
+    }
+  }
+
+  /** what went over one connection, across every client sharded over it */
+  public static class Stats {
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final AtomicInteger maxStreams = new AtomicInteger();
+    private volatile long first;
+    private volatile long last;
+
+    private void started(int streams) {
+      if (first == 0) first = System.nanoTime();
+      maxStreams.accumulateAndGet(streams, Math::max);
+    }
+
+    private void completed(long bytes) {
+      requests.increment();
+      bytesSent.add(bytes);
+      last = System.nanoTime();
+    }
+
+    /** from the first request starting to the last one completing */
+    public long getActiveNanos() {
+      return first == 0 || last == 0 ? 0 : last - first;
+    }
+  }
+
+  /** resolves like the system, but is a resolver no other shard shares */
+  private static class ShardDns implements Dns {
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+      return Dns.SYSTEM.lookup(hostname);
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package com.http.benchmark;
+
+import com.opencsv.CSVWriter;
+import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads a workload over agents, so the load isn't limited to what one JVM can generate. Every
+ * agent is sent the workload, and once all of them are ready they are told to start at the same
+ * moment; their histograms are merged into one report when they are done. Agents run the {@code
+ * agent} command on other hosts, or are started on this one with {@code --local-agents}; starting
+ * at the same moment across hosts relies on their clocks agreeing.
+ *
+ * <p>The workload is sent with the secret in the {@link AgentMessage#SECRET_ENV} environment
+ * variable, which the agents have to share; agents started here are given a random one when it
+ * isn't set.
+ */
+@Command(
+  name = "coordinate",
+  description = "Runs a workload on several agents at once and merges their latency histograms"
+)
+public class CoordinateCommand implements Runnable {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"-a", "--agent"},
+    description = "host:port of an agent; can be repeated"
+  )
+  public List<String> agents = new ArrayList<>();
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--local-agents"},
+    description = "agent JVMs to start on this host, on ports from --local-port up"
+  )
+  public int localAgents = 0;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--local-port"},
+    description = "port of the first local agent; defaults to 7070"
+  )
+  public int localPort = 7070;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"-w", "--workload"},
+    description =
+        "the benchmark command line every agent runs, without -o, e.g. \"payload -u"
+            + " https://localhost:8445/http2/payload -h2 -e 1000 -t 4\"",
+    required = true
+  )
+  public String workload;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--start-delay"},
+    description = "milliseconds between the agents being ready and starting; defaults to 2000"
+  )
+  public long startDelay = 2000;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--connect-timeout"},
+    description = "seconds to keep trying to reach an agent; defaults to 30"
+  )
+  public long connectTimeout = 30;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"-o", "--output"},
+    description = "prefix of the files written; defaults to coordinated"
+  )
+  public String output = "coordinated";
+
+  private static final String ROW_FORMAT = "%-24s %10s %8s %10s %8s %8s %8s %8s%n";
+
+  @Override
+  public void run() {
+    List<Process> processes = new ArrayList<>();
+    List<Agent> connected = new ArrayList<>();
+    try {
+      String secret = System.getenv(AgentMessage.SECRET_ENV);
+      if (secret == null || secret.isEmpty()) {
+        if (!agents.isEmpty()) {
+          throw new IllegalArgumentException(
+              "no secret to share with the agents; set " + AgentMessage.SECRET_ENV);
+        }
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        secret = Base64.getEncoder().encodeToString(random);
+      }
+
+      List<String> addresses = new ArrayList<>(agents);
+      for (int i = 0; i < localAgents; i++) {
+        processes.add(startLocal(localPort + i, secret, output + "-agent-" + i + ".log"));
+        // where an agent listens by default
+        addresses.add(InetAddress.getLoopbackAddress().getHostAddress() + ":" + (localPort + i));
+      }
+      if (addresses.isEmpty()) {
+        throw new IllegalArgumentException("no agents; give --agent or --local-agents");
+      }
+
+      for (String address : addresses) {
+        connected.add(new Agent(address, connectTimeout));
+      }
+      System.out.println("Preparing [" + workload + "] on [" + connected.size() + "] agents");
+      AgentMessage prepare = AgentMessage.of(AgentMessage.PREPARE);
+      prepare.setWorkload(workload);
+      prepare.setSecret(secret);
+      for (Agent agent : connected) {
+        prepare.write(agent.out);
+      }
+      for (Agent agent : connected) {
+        agent.expect(AgentMessage.READY);
+      }
+
+      AgentMessage start = AgentMessage.of(AgentMessage.START);
+      start.setStartAt(System.currentTimeMillis() + startDelay);
+      for (Agent agent : connected) {
+        start.write(agent.out);
+      }
+
+      // agents finish at different times, each is waited for on a thread of its own
+      ExecutorService waiting = Executors.newFixedThreadPool(connected.size());
+      List<Future<AgentMessage>> results = new ArrayList<>();
+      for (Agent agent : connected) {
+        results.add(waiting.submit(() -> agent.expect(AgentMessage.RESULT)));
+      }
+      for (int i = 0; i < connected.size(); i++) {
+        connected.get(i).result = results.get(i).get();
+      }
+      waiting.shutdown();
+
+      report(connected);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    } finally {
+      connected.forEach(Agent::close);
+      for (Process process : processes) {
+        process.destroy();
+      }
+    }
+  }
+
+  /**
+   * starts an agent in a JVM of its own, from the same classpath as this one, with the secret in
+   * its environment rather than on its command line, where other users could see it
+   */
+  private static Process startLocal(int port, String secret, String log) throws IOException {
+    List<String> command =
+        Arrays.asList(
+            new File(System.getProperty("java.home"), "bin/java").getPath(),
+            "-cp",
+            System.getProperty("java.class.path"),
+            AbstractBenchmark.class.getName(),
+            "agent",
+            "--port",
+            String.valueOf(port),
+            "--once");
+    ProcessBuilder builder = new ProcessBuilder(command);
+    builder.environment().put(AgentMessage.SECRET_ENV, secret);
+    return builder
+        .redirectErrorStream(true)
+        .redirectOutput(new File(log))
+        .start();
+  }
+
+  private void report(List<Agent> agents) throws IOException {
+    // auto resizing, so it takes whatever range the agents recorded
+    Histogram merged = new Histogram(3);
+    long errors = 0;
+    long elapsed = 0;
+
+    System.out.printf(
+        ROW_FORMAT,
+        "agent",
+        "requests",
+        "errors",
+        "req/s",
+        "p50 ms",
+        "p99 ms",
+        "p99.9 ms",
+        "max ms");
+    try (CSVWriter writer = new CSVWriter(new FileWriter(output + ".csv"))) {
+      writer.writeNext(
+          new String[] {"Agent", "Requests", "Errors", "Throughput", "p50", "p99", "p99.9", "Max"});
+      for (Agent agent : agents) {
+        Histogram histogram = agent.result.decode();
+        long agentElapsed = agent.result.getElapsedNanos();
+        write(writer, agent.address, histogram, agent.result.getErrors(), agentElapsed);
+        merged.add(histogram);
+        errors += agent.result.getErrors();
+        // the agents started together, so the run lasted as long as the slowest of them
+        elapsed = Math.max(elapsed, agentElapsed);
+      }
+      write(writer, "all", merged, errors, elapsed);
+    }
+
+    String distribution = output + ".hgrm";
+    System.out.println("Writing the merged percentile distribution to [" + distribution + "]");
+    try (PrintStream out = new PrintStream(new FileOutputStream(distribution), false, "UTF-8")) {
+      merged.outputPercentileDistribution(out, 1e6);
+    }
+  }
+
+  private static void write(
+      CSVWriter writer, String agent, Histogram histogram, long errors, long elapsedNanos) {
+    String[] line = {
+      agent,
+      String.valueOf(histogram.getTotalCount()),
+      String.valueOf(errors),
+      String.format(
+          Locale.ROOT,
+          "%.1f",
+          histogram.getTotalCount() / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1))),
+      millis(histogram.getValueAtPercentile(50)),
+      millis(histogram.getValueAtPercentile(99)),
+      millis(histogram.getValueAtPercentile(99.9)),
+      millis(histogram.getMaxValue())
+    };
+    System.out.printf(ROW_FORMAT, (Object[]) line);
+    writer.writeNext(line);
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.2f", nanos / 1e6);
+  }
+
+  /** the connection to one agent */
+  private static class Agent {
+    private final String address;
+    private final Socket socket;
+    private final BufferedReader in;
+    private final Writer out;
+    private AgentMessage result;
+
+    Agent(String address, long timeoutSeconds) throws IOException, InterruptedException {
+      this.address = address;
+      int colon = address.lastIndexOf(':');
+      InetSocketAddress target =
+          new InetSocketAddress(
+              address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+
+      // a local agent may still be starting up
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+      Socket socket = null;
+      while (socket == null) {
+        try {
+          socket = new Socket(target.getHostString(), target.getPort());
+        } catch (ConnectException e) {
+          if (System.nanoTime() > deadline) throw e;
+          Thread.sleep(250);
+        }
+      }
+      this.socket = socket;
+      this.in =
+          new BufferedReader(
+              new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      this.out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+    }
+
+    AgentMessage expect(String type) throws IOException {
+      AgentMessage message = AgentMessage.read(in);
+      if (AgentMessage.ERROR.equals(message.getType())) {
+        throw new IOException("agent [" + address + "]: " + message.getError());
+      }
+      if (!type.equals(message.getType())) {
+        throw new IOException(
+            "agent [" + address + "] sent [" + message.getType() + "] instead of [" + type + "]");
+      }
+      return message;
+    }
+
+    void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // nothing left to say to it
+      }
+    }
+  }
+}
@@ -0,0 +1,352 @@
+package com.http.benchmark;
+
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.http2.api.Entity;
+import com.http2.api.IngestProgress;
+import com.http2.api.MessageAck;
+import com.opencsv.CSVWriter;
+import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FutureCallback;
+import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the round trip of every message within a single h2 stream to the duplex endpoint: each
+ * stream sends its messages one data frame at a time while it reads the acks the service writes
+ * back, and a message's round trip is from the frame being sent to its ack arriving. OkHttp can't
+ * read a response while it is still sending the request, so this talks to the service with Jetty's
+ * HTTP/2 client.
+ *
+ * <p>Each stream keeps at most {@code --window} messages unacknowledged; a window of 1 measures
+ * the bare round trip, a larger one how acks keep up while messages are pipelined.
+ */
+@Command(
+  name = "duplex",
+  description = "Streams messages over single h2 streams, timing each one until it is acknowledged"
+)
+public class DuplexBenchmark extends AbstractBenchmark {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--streams"},
+    description = "streams sending at once over the one connection; defaults to 1"
+  )
+  public int streams = 1;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--window"},
+    description = "messages a stream sends ahead of their acks; defaults to 1"
+  )
+  public int window = 1;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--multipart"},
+    description = "sends every message as a part of a multipart/mixed body instead of a json line"
+  )
+  public boolean multipart = false;
+
+  private static final String ROOT_METRIC_NAME = "http_duplex_message";
+  private static final int DEFAULT_MESSAGES = 10000;
+  private static final String BOUNDARY = "duplex-boundary";
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final LongAdder acked = new LongAdder();
+  private final LongAdder duplicates = new LongAdder();
+
+  @Override
+  public void run() {
+    int messages = numEntities > 0 ? numEntities : DEFAULT_MESSAGES;
+    URI uri = URI.create(url);
+    boolean tls = "https".equals(uri.getScheme());
+    int port = uri.getPort() > 0 ? uri.getPort() : tls ? 443 : 80;
+
+    HTTP2Client client = new HTTP2Client();
+    SslContextFactory ssl = new SslContextFactory(true);
+    client.addBean(ssl);
+    ExecutorService senders = Executors.newFixedThreadPool(streams);
+    try {
+      setBearerToken();
+      client.start();
+      FuturePromise<Session> connected = new FuturePromise<>();
+      client.connect(
+          tls ? ssl : null,
+          new InetSocketAddress(uri.getHost(), port),
+          new ServerSessionListener.Adapter(),
+          connected);
+      Session session = connected.get(readTimeout, TimeUnit.MILLISECONDS);
+
+      System.out.println(
+          "Sending ["
+              + messages
+              + "] messages on each of ["
+              + streams
+              + "] streams with a window of ["
+              + window
+              + "]");
+      CountDownLatch finished = new CountDownLatch(streams);
+      long start = System.nanoTime();
+      for (int i = 0; i < streams; i++) {
+        DuplexStream stream = new DuplexStream(messages, finished);
+        senders.submit(() -> stream.send(session));
+      }
+      long patience = readTimeout + TimeUnit.SECONDS.toMillis(messages);
+      if (!finished.await(patience, TimeUnit.MILLISECONDS)) {
+        System.out.println("Gave up waiting for every stream to be acknowledged");
+      }
+      double elapsed = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+
+      Timer timer = registry.timer(getMetricName(messages));
+      System.out.println(
+          String.format(
+              Locale.ROOT,
+              "Acked [%d] of [%d] messages, [%d] duplicates, [%d] errors in %.2fs: %.1f msg/s,"
+                  + " round trip p50=%sms p99=%sms max=%sms",
+              acked.sum(),
+              (long) messages * streams,
+              duplicates.sum(),
+              errors.sum(),
+              elapsed,
+              acked.sum() / elapsed,
+              convertToMillis(timer.getSnapshot().getMedian()),
+              convertToMillis(timer.getSnapshot().get99thPercentile()),
+              convertToMillis(timer.getSnapshot().getMax())));
+
+      writeResults(messages, timer, acked.sum() / elapsed);
+      try (ResultsJournal journal =
+          ResultsJournal.open(Paths.get(resultsFile(".jsonl")), getMode(), getConfig())) {
+        journal.writeSummary(getTimers(messages));
+      }
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    } finally {
+      senders.shutdownNow();
+      try {
+        client.stop();
+      } catch (Exception e) {
+        if (verbose) e.printStackTrace();
+      }
+    }
+  }
+
+  private void writeResults(int messages, Timer timer, double throughput) throws IOException {
+    System.out.println("Writing metrics to file [" + resultsOutputDir + "]");
+    try (CSVWriter writer = new CSVWriter(new FileWriter(resultsOutputDir))) {
+      writer.writeNext(getHeader().split(","));
+      String metadata =
+          new StringBuilder()
+              .append(",")
+              .append(getProtocol())
+              .append(",")
+              .append(getMode() + (multipart ? ":multipart" : ":ndjson"))
+              .append(",")
+              .append(messages)
+              .append(",")
+              .append("all")
+              .append(",")
+              .append(String.format(Locale.ROOT, "%.2f", throughput))
+              .append(",")
+              .append(ResultsFile.SCHEMA_VERSION)
+              .toString();
+      writer.writeNext((getTimerLine(getMetricName(messages), timer) + metadata).split(","));
+    }
+  }
+
+  /** sends the messages of one stream, and times each from being sent until its ack arrives */
+  private class DuplexStream extends Stream.Listener.Adapter {
+    private final int messages;
+    private final CountDownLatch finished;
+    private final long[] sentAt;
+    private final Semaphore unacked = new Semaphore(window);
+    private final Timer timer = registry.timer(getMetricName(0));
+    // what has arrived of a line that isn't complete yet
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    private volatile boolean done;
+
+    DuplexStream(int messages, CountDownLatch finished) {
+      this.messages = messages;
+      this.finished = finished;
+      this.sentAt = new long[messages];
+    }
+
+    void send(Session session) {
+      try {
+        HttpFields fields = new HttpFields();
+        fields.put(
+            HttpHeader.CONTENT_TYPE,
+            multipart ? "multipart/mixed; boundary=" + BOUNDARY : IngestProgress.NDJSON);
+        if (BEARER_TOKEN != null) fields.put(HttpHeader.AUTHORIZATION, "Bearer " + BEARER_TOKEN);
+        MetaData.Request request =
+            new MetaData.Request("POST", new HttpURI(url), HttpVersion.HTTP_2, fields);
+
+        FuturePromise<Stream> opened = new FuturePromise<>();
+        session.newStream(new HeadersFrame(request, null, false), opened, this);
+        Stream stream = opened.get(readTimeout, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < messages && !done; i++) {
+          byte[] message = message(i);
+          if (!unacked.tryAcquire(readTimeout, TimeUnit.MILLISECONDS)) {
+            throw new IOException("no ack within [" + readTimeout + "]ms");
+          }
+          sentAt[i] = System.nanoTime();
+          FutureCallback sent = new FutureCallback();
+          stream.data(new DataFrame(stream.getId(), ByteBuffer.wrap(message), false), sent);
+          sent.get();
+        }
+        byte[] end = multipart ? ("--" + BOUNDARY + "--\r\n").getBytes() : new byte[0];
+        FutureCallback sent = new FutureCallback();
+        stream.data(new DataFrame(stream.getId(), ByteBuffer.wrap(end), true), sent);
+        sent.get();
+      } catch (Exception e) {
+        errors.increment();
+        if (verbose) e.printStackTrace();
+        finish();
+      }
+    }
+
+    /**
+     * a json line, or a part that ends with the delimiter of the next one, so the service can tell
+     * the part is complete without waiting for the next message; the first carries the opening
+     * delimiter, and the closing one is sent after the last
+     */
+    private byte[] message(int i) throws IOException {
+      Entity entity = new Entity();
+      entity.setName(generator.generate(payloadSize));
+      entity.setAddress(UUID.randomUUID().toString());
+      if (!multipart) {
+        return (mapper.writeValueAsString(entity) + "\n").getBytes(StandardCharsets.UTF_8);
+      }
+
+      String delimiter = "--" + BOUNDARY + "\r\n";
+      String part = "Content-Type: text/plain\r\n\r\n" + entity.getName() + "\r\n";
+      boolean last = i == messages - 1;
+      return ((i == 0 ? delimiter : "") + part + (last ? "" : delimiter))
+          .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void onHeaders(Stream stream, HeadersFrame frame) {
+      if (frame.getMetaData() instanceof MetaData.Response) {
+        int status = ((MetaData.Response) frame.getMetaData()).getStatus();
+        if (status != 200) {
+          System.out.println("Received status code: [" + status + "]");
+          errors.increment();
+          finish();
+        }
+      }
+      if (frame.isEndStream()) finish();
+    }
+
+    @Override
+    public void onData(Stream stream, DataFrame frame, Callback callback) {
+      try {
+        ByteBuffer data = frame.getData();
+        while (data.hasRemaining()) {
+          byte b = data.get();
+          if (b == '\n') {
+            acknowledged(mapper.readValue(line.toByteArray(), MessageAck.class));
+            line.reset();
+          } else {
+            line.write(b);
+          }
+        }
+        callback.succeeded();
+      } catch (IOException e) {
+        callback.failed(e);
+        errors.increment();
+        finish();
+      }
+      if (frame.isEndStream()) finish();
+    }
+
+    @Override
+    public void onReset(Stream stream, ResetFrame frame) {
+      System.out.println("Stream reset with error [" + frame.getError() + "]");
+      errors.increment();
+      finish();
+    }
+
+    private void acknowledged(MessageAck ack) {
+      int sequence = (int) ack.getSequence();
+      if (sequence >= 0 && sequence < messages) {
+        timer.update(System.nanoTime() - sentAt[sequence], TimeUnit.NANOSECONDS);
+      }
+      acked.increment();
+      if (ack.isDuplicate()) duplicates.increment();
+      if (ack.getError() != null) {
+        System.out.println("Message [" + sequence + "] failed: " + ack.getError());
+        errors.increment();
+      }
+      unacked.release();
+    }
+
+    private void finish() {
+      if (done) return;
+      done = true;
+      // lets a sender waiting on the window notice it is done
+      unacked.release(window);
+      finished.countDown();
+    }
+  }
+
+  @Override
+  protected String getProtocol() {
+    return "http2";
+  }
+
+  @Override
+  protected Map<String, Object> getConfig() {
+    Map<String, Object> config = super.getConfig();
+    config.put("streams", streams);
+    config.put("window", window);
+    config.put("multipart", multipart);
+    return config;
+  }
+
+  /** every stream records into the same timer, regardless of the message count */
+  @Override
+  public Map<String, Timer> getTimers(int numEntities) {
+    return Collections.singletonMap(getMetricName(numEntities), registry.timer(getMetricName(0)));
+  }
+
+  @Override
+  public String getMetricName(int numEntities) {
+    return ROOT_METRIC_NAME;
+  }
+}
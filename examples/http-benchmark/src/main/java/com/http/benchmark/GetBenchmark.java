@@ -0,0 +1,263 @@
+package com.http.benchmark;
+
+import com.codahale.metrics.Timer;
+import com.opencsv.CSVWriter;
+import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
+import okhttp3.*;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads from the service as fast as it answers, keeping a number of GETs in flight over the same
+ * client, to measure read throughput over h2 and what a server side response cache and conditional
+ * requests do for it. Paths are read round robin.
+ */
+@Command(
+  name = "get",
+  description = "Keeps a number of GET requests in flight against read endpoints for a duration"
+)
+public class GetBenchmark extends AbstractBenchmark {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"-p", "--path"},
+    description =
+        "path appended to the url to read; can be repeated, defaults to /stats and /stats/segments"
+  )
+  public List<String> paths = new ArrayList<>();
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"-c", "--concurrency"},
+    description = "requests in flight at once; defaults to 64"
+  )
+  public int concurrency = 64;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--conditional"},
+    description = "revalidates with the last ETag seen for a path, so unchanged reads are a 304"
+  )
+  public boolean conditional = false;
+
+  private static final String ROOT_METRIC_NAME = "http_get";
+  private static final List<String> DEFAULT_PATHS = Arrays.asList("/stats", "/stats/segments");
+  private static final long DEFAULT_DURATION = 30;
+
+  private final List<Target> targets = new ArrayList<>();
+  private final AtomicInteger next = new AtomicInteger();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder completed = new LongAdder();
+
+  private OkHttpClient client;
+  private volatile boolean running;
+
+  @Override
+  public void run() {
+    try {
+      setBearerToken();
+      long seconds = duration > 0 ? duration : DEFAULT_DURATION;
+      for (String path : paths.isEmpty() ? DEFAULT_PATHS : paths) {
+        targets.add(new Target(path));
+      }
+
+      client = getHttpClient(getProtocols(), url, ROOT_METRIC_NAME);
+      client.dispatcher().setMaxRequests(concurrency);
+      client.dispatcher().setMaxRequestsPerHost(concurrency);
+
+      try (ResultsJournal journal =
+          ResultsJournal.open(Paths.get(resultsFile(".jsonl")), getMode(), getConfig())) {
+        IntervalReporter reporter =
+            new IntervalReporter(
+                intervalRecorder, completed, errors, resultsFile(".intervals.csv"), journal);
+        System.out.println(
+            "Reading "
+                + targets.size()
+                + " paths with ["
+                + concurrency
+                + "] requests in flight for ["
+                + seconds
+                + "] seconds");
+        reporter.start(interval);
+
+        long start = System.nanoTime();
+        running = true;
+        for (int i = 0; i < concurrency; i++) {
+          inFlight.incrementAndGet();
+          send();
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running = false;
+
+        long deadline = System.currentTimeMillis() + readTimeout;
+        while (inFlight.get() > 0 && System.currentTimeMillis() < deadline) {
+          Thread.sleep(100);
+        }
+        double elapsed = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+
+        reporter.stop();
+        printTargets(elapsed);
+        printConnections();
+        writeTargets(elapsed);
+        journal.writeSummary(getTimers(0));
+      }
+
+      client.dispatcher().executorService().shutdown();
+      client.connectionPool().evictAll();
+    } catch (IOException
+        | InterruptedException
+        | NoSuchAlgorithmException
+        | KeyManagementException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void send() {
+    Target target = targets.get((next.getAndIncrement() & Integer.MAX_VALUE) % targets.size());
+    Request.Builder request = new Request.Builder().url(target.url).get().tag(target);
+    String etag = target.etag;
+    if (conditional && etag != null) request.header("If-None-Match", etag);
+
+    long start = System.nanoTime();
+    client
+        .newCall(request.build())
+        .enqueue(
+            new Callback() {
+              @Override
+              public void onFailure(Call call, IOException e) {
+                target.failed.increment();
+                errors.increment();
+                if (verbose) e.printStackTrace();
+                finished();
+              }
+
+              @Override
+              public void onResponse(Call call, Response response) throws IOException {
+                try (ResponseBody body = response.body()) {
+                  if (response.code() == 304) {
+                    target.notModified.increment();
+                  } else if (response.isSuccessful()) {
+                    target.bytes.add(body.bytes().length);
+                    target.etag = response.header("ETag");
+                    target.ok.increment();
+                  } else {
+                    target.failed.increment();
+                  }
+                  target.timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                  completed.increment();
+                } finally {
+                  finished();
+                }
+              }
+            });
+  }
+
+  private void finished() {
+    if (running) {
+      send();
+    } else {
+      inFlight.decrementAndGet();
+    }
+  }
+
+  private void printTargets(double elapsed) {
+    String format = "%-24s %10s %10s %10s %8s %12s %8s %8s %8s%n";
+    System.out.printf(
+        format, "path", "req/s", "200", "304", "failed", "bytes/s", "p50 ms", "p99 ms", "max ms");
+    for (Target t : targets) {
+      System.out.printf(
+          format,
+          t.path,
+          String.format(Locale.ROOT, "%.1f", t.timer.getCount() / elapsed),
+          t.ok.sum(),
+          t.notModified.sum(),
+          t.failed.sum(),
+          String.format(Locale.ROOT, "%.0f", t.bytes.sum() / elapsed),
+          convertToMillis(t.timer.getSnapshot().getMedian()),
+          convertToMillis(t.timer.getSnapshot().get99thPercentile()),
+          convertToMillis(t.timer.getSnapshot().getMax()));
+    }
+  }
+
+  /** writes a line per path, with requests per second as its throughput */
+  private void writeTargets(double elapsed) throws IOException {
+    System.out.println("Writing metrics to file [" + resultsOutputDir + "]");
+    try (CSVWriter writer = new CSVWriter(new FileWriter(resultsOutputDir))) {
+      writer.writeNext(getHeader().split(","));
+      for (Target t : targets) {
+        String metadata =
+            new StringBuilder()
+                .append(",")
+                .append(getProtocol())
+                .append(",")
+                .append(getMode() + ":" + t.path)
+                .append(",")
+                .append(0)
+                .append(",")
+                .append("all")
+                .append(",")
+                .append(String.format(Locale.ROOT, "%.2f", t.timer.getCount() / elapsed))
+                .append(",")
+                .append(ResultsFile.SCHEMA_VERSION)
+                .toString();
+        writer.writeNext((getTimerLine(t.metricName, t.timer) + metadata).split(","));
+      }
+    }
+  }
+
+  @Override
+  protected Map<String, Object> getConfig() {
+    Map<String, Object> config = super.getConfig();
+    config.put("paths", paths.isEmpty() ? DEFAULT_PATHS : paths);
+    config.put("concurrency", concurrency);
+    config.put("conditional", conditional);
+    return config;
+  }
+
+  /** the timers of every path, regardless of the entity count */
+  @Override
+  public Map<String, Timer> getTimers(int numEntities) {
+    Map<String, Timer> timers = new LinkedHashMap<>();
+    targets.forEach(t -> timers.put(t.metricName, t.timer));
+    return timers;
+  }
+
+  @Override
+  public String getMetricName(int numEntities) {
+    return ROOT_METRIC_NAME;
+  }
+
+  private class Target {
+    private final String path;
+    private final String url;
+    private final String metricName;
+    private final Timer timer;
+    private final LongAdder ok = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private volatile String etag;
+
+    Target(String path) {
+      this.path = path;
+      this.url = GetBenchmark.this.url + path;
+      this.metricName = ROOT_METRIC_NAME + path.replaceAll("[^A-Za-z0-9]+", "_");
+      this.timer = registry.timer(metricName);
+    }
+  }
+}
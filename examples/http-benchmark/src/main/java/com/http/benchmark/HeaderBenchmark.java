@@ -0,0 +1,154 @@
+package com.http.benchmark;
+
+import com.codahale.metrics.Timer;
+import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
+import okhttp3.*;
+
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Uploads single messages, like {@code single}, with a number of large custom headers on every
+ * request, to compare what headers cost over http/1.1 and h2. The values of most of the headers
+ * stay the same for the whole action, which is what HPACK's dynamic table is for; the {@code
+ * --varying} ones get a new value on every request, so they are sent as literals every time, and
+ * as they are added to the table they push the others out of it. The headers are always sized,
+ * as with {@code --header-stats}.
+ */
+@Command(
+  name = "headers",
+  description = "Uploads single messages with large custom headers, to compare h1 and h2 headers"
+)
+public class HeaderBenchmark extends ActionBenchmark {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--header-count"},
+    description = "custom headers sent with every request; defaults to 10"
+  )
+  public int headerCount = 10;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--header-size"},
+    description = "length of the value of every custom header; defaults to 256"
+  )
+  public int headerSize = 256;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--varying"},
+    description = "how many of the custom headers get a new value on every request; defaults to 0"
+  )
+  public int varying = 0;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--in-flight"},
+    description = "requests in flight at once over h2; defaults to 64"
+  )
+  public int inFlight = 64;
+
+  private static final String ROOT_METRIC_NAME = "http_headers";
+  private static final String FULL_RESULT = "_full_result";
+  private static final String HEADER_PREFIX = "X-Bench-";
+
+  @Override
+  public Action getAction(List<Protocol> protocols, String url, int numEntities, int payloadSize) {
+    if (varying > headerCount) {
+      throw new IllegalArgumentException(
+          "--varying [" + varying + "] is more than --header-count [" + headerCount + "]");
+    }
+    String metricName = getMetricName(numEntities);
+    return new Action(this::upload, protocols, url, metricName, numEntities, payloadSize);
+  }
+
+  @Override
+  public Map<String, Timer> getTimers(int numEntities) {
+    Map<String, Timer> timers = new HashMap<>();
+    String name = getMetricName(numEntities);
+    timers.put(name, registry.timer(name));
+    String fullName = name + FULL_RESULT;
+    timers.put(fullName, registry.timer(fullName));
+    return timers;
+  }
+
+  @Override
+  public String getMetricName(int numEntities) {
+    return ROOT_METRIC_NAME + "_" + numEntities;
+  }
+
+  @Override
+  protected boolean isHeaderStats() {
+    return true;
+  }
+
+  private void upload(
+      List<Protocol> protocols, String url, String metricName, int numEntities, int payloadSize)
+      throws InterruptedException, KeyManagementException, NoSuchAlgorithmException, IOException {
+
+    OkHttpClient client = getHttpClient(protocols, url, metricName);
+    System.out.println("Starting header testing for " + metricName);
+
+    // the values that stay the same, the varying headers come first and get new ones
+    String[] values = new String[headerCount];
+    for (int i = 0; i < headerCount; i++) {
+      values[i] = generator.generate(headerSize);
+    }
+
+    Timer.Context timer = registry.timer(metricName + FULL_RESULT).time();
+    long start = System.currentTimeMillis();
+    try {
+      CountDownLatch latch = new CountDownLatch(numEntities);
+      for (int n = 0; n < numEntities; n++) {
+        Request.Builder request =
+            new Request.Builder().url(url).post(RequestBodies.text(generator, payloadSize));
+        for (int i = 0; i < headerCount; i++) {
+          request.header(
+              HEADER_PREFIX + i, i < varying ? generator.generate(headerSize) : values[i]);
+        }
+
+        // https://github.com/square/okhttp/issues/3442
+        if (n == 0) {
+          client.dispatcher().setMaxRequestsPerHost(1);
+          client.newCall(request.build()).execute().close();
+          latch.countDown();
+          if (protocols.contains(Protocol.HTTP_2)) {
+            // one connection multiplexes them all
+            client.dispatcher().setMaxRequests(inFlight);
+            client.dispatcher().setMaxRequestsPerHost(inFlight);
+          }
+        } else {
+          client.newCall(request.build()).enqueue(new HttpCallback(latch));
+        }
+      }
+      latch.await();
+    } finally {
+      timer.stop();
+      System.out.println(
+          "Total run time for ["
+              + metricName
+              + "] is "
+              + (System.currentTimeMillis() - start)
+              + "ms");
+      client.connectionPool().evictAll();
+    }
+  }
+
+  @Override
+  protected Map<String, Object> getConfig() {
+    Map<String, Object> config = super.getConfig();
+    config.put("headerCount", headerCount);
+    config.put("headerSize", headerSize);
+    config.put("varying", varying);
+    config.put("inFlight", inFlight);
+    return config;
+  }
+}
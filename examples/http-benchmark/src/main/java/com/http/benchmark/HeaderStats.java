@@ -0,0 +1,130 @@
+package com.http.benchmark;
+
+import com.http2.api.HpackModel;
+import okhttp3.Connection;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Protocol;
+import okhttp3.Request;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Sizes the headers of every request the benchmark sends, as they go on the wire: the request line
+ * and headers of http/1.1, and the header list and HPACK block of h2. OkHttp doesn't tell how big
+ * the blocks its encoder writes are, so each h2 connection gets a {@link HpackModel} that encodes
+ * its requests the same way, dynamic table and all; the requests of http/1.1 connections are also
+ * sized as the h2 block they'd be on a connection of their own, so a run over either protocol
+ * reports both.
+ */
+public class HeaderStats {
+
+  // a model per connection, gone with the connection
+  private final Map<Connection, HpackModel> models =
+      Collections.synchronizedMap(new WeakHashMap<>());
+  private final HpackModel.Totals h1 = new HpackModel.Totals();
+  private final HpackModel.Totals h2 = new HpackModel.Totals();
+
+  /** sizes a request as it is sent over the connection given */
+  public void record(Request request, Connection connection) {
+    HttpUrl url = request.url();
+    String target =
+        url.encodedQuery() == null
+            ? url.encodedPath()
+            : url.encodedPath() + "?" + url.encodedQuery();
+    // as OkHttp sends it as the Host of http/1.1 and the :authority of h2
+    String authority =
+        url.port() == HttpUrl.defaultPort(url.scheme())
+            ? url.host()
+            : url.host() + ":" + url.port();
+
+    Headers headers = request.headers();
+    List<Map.Entry<String, String>> h1Headers = new ArrayList<>(headers.size());
+    List<Map.Entry<String, String>> fields = new ArrayList<>(headers.size() + 4);
+    fields.add(new AbstractMap.SimpleImmutableEntry<>(HpackModel.METHOD, request.method()));
+    fields.add(new AbstractMap.SimpleImmutableEntry<>(HpackModel.PATH, target));
+    fields.add(new AbstractMap.SimpleImmutableEntry<>(HpackModel.AUTHORITY, authority));
+    fields.add(new AbstractMap.SimpleImmutableEntry<>(HpackModel.SCHEME, url.scheme()));
+    for (int i = 0; i < headers.size(); i++) {
+      h1Headers.add(new AbstractMap.SimpleImmutableEntry<>(headers.name(i), headers.value(i)));
+      String name = HpackModel.name(headers.name(i));
+      if (HpackModel.SKIPPED.contains(name)) continue;
+      fields.add(new AbstractMap.SimpleImmutableEntry<>(name, headers.value(i)));
+    }
+
+    boolean http2 = connection.protocol() == Protocol.HTTP_2;
+    HpackModel model = models.computeIfAbsent(connection, c -> new HpackModel());
+    HpackModel.Block block =
+        model.encode(fields, HpackModel.h1Size(request.method(), target, h1Headers));
+    (http2 ? h2 : h1).add(block);
+  }
+
+  /** prints the header bytes per request of each protocol the run used */
+  public void print() {
+    String format = "%-9s %10s %10s %10s %10s %9s %9s %9s%n";
+    System.out.printf(
+        format,
+        "headers",
+        "requests",
+        "h1 B/req",
+        "list B/req",
+        "hpack B/req",
+        "ratio",
+        "dynamic",
+        "indexed");
+    print(format, "over h1", h1);
+    print(format, "over h2", h2);
+  }
+
+  private static void print(String format, String protocol, HpackModel.Totals totals) {
+    long blocks = totals.getBlocks();
+    if (blocks == 0) return;
+    System.out.printf(
+        format,
+        protocol,
+        blocks,
+        perRequest(totals.getH1Bytes(), blocks),
+        perRequest(totals.getListBytes(), blocks),
+        perRequest(totals.getHpackBytes(), blocks),
+        percent(totals.getCompressionRatio()),
+        percent(totals.getDynamicHitRatio()),
+        percent(totals.getIndexedRatio()));
+  }
+
+  private static String perRequest(long bytes, long blocks) {
+    return String.format(Locale.ROOT, "%.1f", bytes / (double) blocks);
+  }
+
+  private static String percent(double ratio) {
+    return String.format(Locale.ROOT, "%.1f%%", 100 * ratio);
+  }
+
+  /** the totals of the requests sent over each protocol, for the results journal */
+  public Map<String, Object> summary() {
+    Map<String, Object> summary = new LinkedHashMap<>();
+    summary.put("h1", summary(h1));
+    summary.put("h2", summary(h2));
+    return summary;
+  }
+
+  private static Map<String, Object> summary(HpackModel.Totals totals) {
+    Map<String, Object> summary = new LinkedHashMap<>();
+    summary.put("requests", totals.getBlocks());
+    summary.put("fields", totals.getFields());
+    summary.put("h1Bytes", totals.getH1Bytes());
+    summary.put("listBytes", totals.getListBytes());
+    summary.put("hpackBytes", totals.getHpackBytes());
+    summary.put("staticHits", totals.getStaticHits());
+    summary.put("dynamicHits", totals.getDynamicHits());
+    summary.put("nameHits", totals.getNameHits());
+    summary.put("literals", totals.getLiterals());
+    return summary;
+  }
+}
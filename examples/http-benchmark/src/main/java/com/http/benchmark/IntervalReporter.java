@@ -0,0 +1,135 @@
+package com.http.benchmark;
+
+import com.opencsv.CSVWriter;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reports the requests recorded during a soak run every interval: throughput, the percentiles of
+ * the interval's histogram and the errors seen since the last report. Request latencies are
+ * recorded into a {@link Recorder}, which is wait free for the recording threads; the reporter
+ * swaps its interval histogram out on every tick, so a report only costs the reporting thread.
+ */
+public class IntervalReporter {
+
+  private static final String[] HEADER = {
+    "Timestamp",
+    "Elapsed Seconds",
+    "Requests",
+    "Requests/s",
+    "Entities/s",
+    "Errors",
+    "Median",
+    "90th Percentile",
+    "99th Percentile",
+    "99.9th Percentile",
+    "Max"
+  };
+
+  private final Recorder recorder;
+  private final LongAdder entities;
+  private final LongAdder errors;
+  private final CSVWriter writer;
+  private final ResultsJournal journal;
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  private final long start = System.nanoTime();
+  private long lastReport = start;
+  private long lastEntities;
+  private long lastErrors;
+  private Histogram interval;
+
+  public IntervalReporter(
+      Recorder recorder,
+      LongAdder entities,
+      LongAdder errors,
+      String outputFile,
+      ResultsJournal journal)
+      throws IOException {
+    this.recorder = recorder;
+    this.entities = entities;
+    this.errors = errors;
+    this.journal = journal;
+    this.writer = new CSVWriter(new FileWriter(outputFile));
+    writer.writeNext(HEADER);
+
+    // drop anything recorded before the soak started
+    interval = recorder.getIntervalHistogram();
+  }
+
+  public void start(long intervalSeconds) {
+    scheduler.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+  }
+
+  /** stops the reporter, writing a last report for the time since the previous one */
+  public void stop() throws IOException, InterruptedException {
+    scheduler.shutdown();
+    scheduler.awaitTermination(1, TimeUnit.MINUTES);
+    report();
+    writer.close();
+  }
+
+  private synchronized void report() {
+    long now = System.nanoTime();
+    interval = recorder.getIntervalHistogram(interval);
+
+    double seconds = (now - lastReport) / (double) TimeUnit.SECONDS.toNanos(1);
+    long elapsed = TimeUnit.NANOSECONDS.toSeconds(now - start);
+    long entitiesNow = entities.sum();
+    long errorsNow = errors.sum();
+    long intervalErrors = errorsNow - lastErrors;
+    double requestRate = seconds == 0 ? 0 : interval.getTotalCount() / seconds;
+    double entityRate = seconds == 0 ? 0 : (entitiesNow - lastEntities) / seconds;
+
+    lastReport = now;
+    lastEntities = entitiesNow;
+    lastErrors = errorsNow;
+
+    writer.writeNext(
+        new String[] {
+          String.valueOf(System.currentTimeMillis()),
+          String.valueOf(elapsed),
+          String.valueOf(interval.getTotalCount()),
+          String.format(Locale.ROOT, "%.2f", requestRate),
+          String.format(Locale.ROOT, "%.2f", entityRate),
+          String.valueOf(intervalErrors),
+          String.valueOf(toMillis(interval.getValueAtPercentile(50))),
+          String.valueOf(toMillis(interval.getValueAtPercentile(90))),
+          String.valueOf(toMillis(interval.getValueAtPercentile(99))),
+          String.valueOf(toMillis(interval.getValueAtPercentile(99.9))),
+          String.valueOf(toMillis(interval.getMaxValue()))
+        });
+
+    try {
+      writer.flush();
+      journal.writeInterval(elapsed, interval, requestRate, entityRate, intervalErrors);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+
+    System.out.println(
+        String.format(
+            "[%5ds] %10.2f req/s %10.2f entities/s %6d errors"
+                + "  p50=%dms p99=%dms p99.9=%dms max=%dms",
+            elapsed,
+            requestRate,
+            entityRate,
+            intervalErrors,
+            toMillis(interval.getValueAtPercentile(50)),
+            toMillis(interval.getValueAtPercentile(99)),
+            toMillis(interval.getValueAtPercentile(99.9)),
+            toMillis(interval.getMaxValue())));
+  }
+
+  private static long toMillis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+}
@@ -0,0 +1,148 @@
+package com.http.benchmark;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wraps a Java Flight Recorder recording of the benchmark JVM. The recording is started right
+ * before the actions are submitted and stopped once they have all finished, so the profile only
+ * covers the measured window. A server running inside the same JVM is covered by the same
+ * recording.
+ *
+ * <p>Requires a JVM that ships the {@code jdk.jfr} API (OpenJDK 8u262+ or 11+).
+ */
+public class JfrRecording {
+
+  private static final String EXECUTION_SAMPLE = "jdk.ExecutionSample";
+  private static final String ALLOCATION_IN_NEW_TLAB = "jdk.ObjectAllocationInNewTLAB";
+  private static final String ALLOCATION_OUTSIDE_TLAB = "jdk.ObjectAllocationOutsideTLAB";
+  private static final String ALLOCATION_SAMPLE = "jdk.ObjectAllocationSample";
+  private static final int TOP_N = 20;
+
+  private final Recording recording;
+
+  private JfrRecording(Recording recording) {
+    this.recording = recording;
+  }
+
+  /** starts a recording using the JDK's built in {@code profile} settings */
+  public static JfrRecording start(String name) throws IOException {
+    try {
+      Recording recording = new Recording(Configuration.getConfiguration("profile"));
+      recording.setName(name);
+      recording.setToDisk(true);
+      recording.start();
+      return new JfrRecording(recording);
+    } catch (ParseException e) {
+      throw new IOException("unable to load the JFR 'profile' configuration", e);
+    }
+  }
+
+  /** stops the recording and writes it, plus a text summary, to the given locations */
+  public void stop(Path recordingFile, Path summaryFile) throws IOException {
+    try {
+      recording.stop();
+      recording.dump(recordingFile);
+    } finally {
+      recording.close();
+    }
+
+    writeSummary(recordingFile, summaryFile);
+  }
+
+  /**
+   * Writes the hottest methods (top frame of the execution samples) and the top allocation sites
+   * (top frame of the allocation events, weighted by bytes) of a recording.
+   */
+  public static void writeSummary(Path recordingFile, Path summaryFile) throws IOException {
+    Map<String, Long> hotMethods = new HashMap<>();
+    Map<String, Long> allocationSites = new HashMap<>();
+    long samples = 0;
+    long allocated = 0;
+
+    // read the events one at a time, recordings of long runs can get large
+    try (RecordingFile events = new RecordingFile(recordingFile)) {
+      while (events.hasMoreEvents()) {
+        RecordedEvent event = events.readEvent();
+        String type = event.getEventType().getName();
+
+        if (EXECUTION_SAMPLE.equals(type)) {
+          String frame = topFrame(event.getStackTrace());
+          if (frame != null) {
+            hotMethods.merge(frame, 1L, Long::sum);
+            samples++;
+          }
+        } else if (ALLOCATION_IN_NEW_TLAB.equals(type)
+            || ALLOCATION_OUTSIDE_TLAB.equals(type)
+            || ALLOCATION_SAMPLE.equals(type)) {
+          String frame = topFrame(event.getStackTrace());
+          long bytes = allocationWeight(event);
+          if (frame != null) {
+            String site = frame + " (" + event.getClass("objectClass").getName() + ")";
+            allocationSites.merge(site, bytes, Long::sum);
+            allocated += bytes;
+          }
+        }
+      }
+    }
+
+    try (PrintWriter writer = new PrintWriter(new FileWriter(summaryFile.toFile()))) {
+      writer.println("Recording: " + recordingFile);
+      writer.println();
+      writer.println("Hottest methods (" + samples + " execution samples)");
+      for (Map.Entry<String, Long> e : top(hotMethods)) {
+        writer.println(String.format("  %6.2f%%  %s", percent(e.getValue(), samples), e.getKey()));
+      }
+      writer.println();
+      writer.println("Top allocation sites (" + allocated + " bytes sampled)");
+      for (Map.Entry<String, Long> e : top(allocationSites)) {
+        writer.println(
+            String.format(
+                "  %6.2f%%  %12d bytes  %s",
+                percent(e.getValue(), allocated), e.getValue(), e.getKey()));
+      }
+    }
+  }
+
+  private static String topFrame(RecordedStackTrace stackTrace) {
+    if (stackTrace == null || stackTrace.getFrames().isEmpty()) return null;
+    RecordedFrame frame = stackTrace.getFrames().get(0);
+    return frame.getMethod().getType().getName()
+        + "."
+        + frame.getMethod().getName()
+        + ":"
+        + frame.getLineNumber();
+  }
+
+  private static long allocationWeight(RecordedEvent event) {
+    // jdk.ObjectAllocationSample (jdk 16+) carries a weight, the older TLAB events carry sizes
+    if (event.hasField("weight")) return event.getLong("weight");
+    if (event.hasField("tlabSize")) return event.getLong("tlabSize");
+    if (event.hasField("allocationSize")) return event.getLong("allocationSize");
+    return 0;
+  }
+
+  private static List<Map.Entry<String, Long>> top(Map<String, Long> counts) {
+    List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+    entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+    return entries.subList(0, Math.min(TOP_N, entries.size()));
+  }
+
+  private static double percent(long value, long total) {
+    return total == 0 ? 0 : (value * 100.0) / total;
+  }
+}
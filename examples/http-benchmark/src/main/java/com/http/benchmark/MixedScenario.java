@@ -0,0 +1,112 @@
+package com.http.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A mix of uploads to run against a service at the same time, read from a yaml file:
+ *
+ * <pre>
+ * duration: 300        # seconds
+ * rate: 500            # requests per second, split over the scenarios by weight
+ * concurrency: 64      # requests on the wire at once, shared by every scenario
+ * scenarios:
+ *   - name: small
+ *     mode: single     # single, stream or payload
+ *     weight: 9
+ *     size: {min: 100, max: 1500}
+ *   - name: bulk
+ *     mode: stream
+ *     rate: 2          # overrides the share of the total rate
+ *     entities: {min: 1000, max: 5000}
+ *     size: {min: 1500, max: 1500}
+ * </pre>
+ */
+public class MixedScenario {
+
+  public long duration = 60;
+  public double rate;
+  public int concurrency = 64;
+  public List<Scenario> scenarios;
+
+  public static class Scenario {
+    public String name;
+    public String mode;
+    /** path appended to the url; defaults to the endpoint of the mode */
+    public String path;
+
+    public double weight = 1;
+    /** requests per second; when not set the scenario gets its weighted share of the total rate */
+    public double rate;
+    /** calls of this scenario allowed to wait in the client before new ones are dropped */
+    public int maxQueued = 1000;
+
+    public Range entities = new Range(1, 1);
+    public Range size = new Range(1500, 1500);
+
+    public String getPath() {
+      if (path != null) return path;
+      switch (mode) {
+        case "single":
+          return "";
+        case "stream":
+          return "/multipart";
+        case "payload":
+          return "/payload";
+        default:
+          throw new IllegalArgumentException(
+              "scenario [" + name + "] has an unknown mode [" + mode + "]");
+      }
+    }
+  }
+
+  /** a uniformly distributed range of values, both ends inclusive */
+  public static class Range {
+    public int min;
+    public int max;
+
+    public Range() {}
+
+    public Range(int min, int max) {
+      this.min = min;
+      this.max = max;
+    }
+
+    public int sample(Random random) {
+      return max <= min ? min : min + random.nextInt(max - min + 1);
+    }
+  }
+
+  public static MixedScenario read(String file) throws IOException {
+    MixedScenario mix =
+        new ObjectMapper(new YAMLFactory()).readValue(new File(file), MixedScenario.class);
+    mix.validate();
+    return mix;
+  }
+
+  /** requests per second of a scenario */
+  public double rateOf(Scenario scenario) {
+    if (scenario.rate > 0) return scenario.rate;
+    double weights =
+        scenarios.stream().filter(s -> s.rate <= 0).mapToDouble(s -> s.weight).sum();
+    return weights == 0 ? 0 : rate * scenario.weight / weights;
+  }
+
+  private void validate() {
+    if (scenarios == null || scenarios.isEmpty()) {
+      throw new IllegalArgumentException("a mix needs at least one scenario");
+    }
+    for (Scenario scenario : scenarios) {
+      scenario.getPath();
+      if (rateOf(scenario) <= 0) {
+        throw new IllegalArgumentException(
+            "scenario [" + scenario.name + "] has no rate; set a total rate or a scenario rate");
+      }
+    }
+  }
+}
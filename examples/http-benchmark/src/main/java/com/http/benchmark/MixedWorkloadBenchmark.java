@@ -0,0 +1,292 @@
+package com.http.benchmark;
+
+import com.codahale.metrics.Timer;
+import com.opencsv.CSVWriter;
+import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
+import okhttp3.*;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs several upload scenarios against a service at the same time, each at its own rate, over one
+ * shared client so they compete for the same connection(s) the way production traffic does. The
+ * mix is read from a yaml file, see {@link MixedScenario}. Results are reported per scenario.
+ *
+ * <p>Requests are fired on a fixed schedule regardless of how fast the service answers (an open
+ * model), so latency is measured from the moment a request was due, including any time it spent
+ * queued in the client.
+ */
+@Command(
+  name = "mixed",
+  description =
+      "Runs a weighted mix of single, stream and payload uploads at the same time over a shared"
+          + " client"
+)
+public class MixedWorkloadBenchmark extends AbstractBenchmark {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"-s", "--scenario"},
+    description = "yaml file describing the mix of uploads to run",
+    required = true
+  )
+  public String scenarioFile;
+
+  private static final String ROOT_METRIC_NAME = "http_mixed";
+  // bodies are built up front, so building them doesn't compete with sending them
+  private static final int VARIANTS = 16;
+
+  private final List<ScenarioRunner> runners = new ArrayList<>();
+
+  @Override
+  public void run() {
+    try {
+      setBearerToken();
+      MixedScenario mix = MixedScenario.read(scenarioFile);
+
+      OkHttpClient client = getHttpClient(getProtocols(), url, ROOT_METRIC_NAME);
+      client.dispatcher().setMaxRequests(mix.concurrency);
+      client.dispatcher().setMaxRequestsPerHost(mix.concurrency);
+
+      for (MixedScenario.Scenario scenario : mix.scenarios) {
+        runners.add(new ScenarioRunner(scenario, mix.rateOf(scenario), client));
+      }
+
+      ServerMetrics server = startServerMetrics();
+      ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(runners.size());
+      System.out.println(
+          "Running [" + runners.size() + "] scenarios for [" + mix.duration + "] seconds");
+      for (ScenarioRunner runner : runners) {
+        long period = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / runner.rate));
+        scheduler.scheduleAtFixedRate(runner::fire, 0, period, TimeUnit.NANOSECONDS);
+      }
+
+      Thread.sleep(TimeUnit.SECONDS.toMillis(mix.duration));
+      scheduler.shutdownNow();
+      runners.forEach(ScenarioRunner::endWindow);
+
+      // let the requests that are still on the wire finish before reporting
+      long deadline = System.currentTimeMillis() + readTimeout;
+      while (runners.stream().anyMatch(r -> r.inFlight.get() > 0)
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(100);
+      }
+
+      printScenarios(mix.duration);
+      writeScenarios(mix.duration, server);
+
+      client.dispatcher().executorService().shutdown();
+      client.connectionPool().evictAll();
+    } catch (IOException
+        | InterruptedException
+        | NoSuchAlgorithmException
+        | KeyManagementException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void printScenarios(long duration) {
+    String format = "%-20s %-8s %10s %10s %10s %8s %8s %8s %8s %8s%n";
+    System.out.printf(
+        format, "scenario", "mode", "target/s", "actual/s", "sent", "errors", "dropped", "p50 ms",
+        "p99 ms", "max ms");
+    for (ScenarioRunner r : runners) {
+      System.out.printf(
+          format,
+          r.scenario.name,
+          r.scenario.mode,
+          String.format(Locale.ROOT, "%.1f", r.rate),
+          String.format(Locale.ROOT, "%.1f", r.windowCompleted / (double) duration),
+          r.sent.sum(),
+          r.failed.sum(),
+          r.dropped.sum(),
+          convertToMillis(r.timer.getSnapshot().getMedian()),
+          convertToMillis(r.timer.getSnapshot().get99thPercentile()),
+          convertToMillis(r.timer.getSnapshot().getMax()));
+    }
+  }
+
+  /** writes a line per scenario in the same layout as the other commands */
+  private void writeScenarios(long duration, ServerMetrics server) throws IOException {
+    System.out.println("Writing metrics to file [" + resultsOutputDir + "]");
+    try (CSVWriter writer = new CSVWriter(new FileWriter(resultsOutputDir))) {
+      writer.writeNext(getHeader().split(","));
+      for (ScenarioRunner r : runners) {
+        String metadata =
+            new StringBuilder()
+                .append(",")
+                .append(getProtocol())
+                .append(",")
+                .append(getMode() + ":" + r.scenario.name)
+                .append(",")
+                // a scenario draws its entity counts from a range, there isn't one to key on
+                .append(0)
+                .append(",")
+                .append("all")
+                .append(",")
+                .append(String.format(Locale.ROOT, "%.2f", r.windowEntities / (double) duration))
+                .append(",")
+                .append(ResultsFile.SCHEMA_VERSION)
+                .toString();
+        writer.writeNext((getTimerLine(r.metricName, r.timer) + metadata).split(","));
+      }
+    }
+
+    try (ResultsJournal journal =
+        ResultsJournal.open(Paths.get(resultsFile(".jsonl")), getMode(), getConfig())) {
+      reportServerMetrics(server, journal);
+      journal.writeSummary(getTimers(0));
+    }
+  }
+
+  @Override
+  protected Map<String, Object> getConfig() {
+    Map<String, Object> config = super.getConfig();
+    config.put("scenarioFile", scenarioFile);
+    return config;
+  }
+
+  /** the timers of every scenario, regardless of the entity count */
+  @Override
+  public Map<String, Timer> getTimers(int numEntities) {
+    Map<String, Timer> timers = new LinkedHashMap<>();
+    runners.forEach(r -> timers.put(r.metricName, r.timer));
+    return timers;
+  }
+
+  @Override
+  public String getMetricName(int numEntities) {
+    return ROOT_METRIC_NAME;
+  }
+
+  /** fires the requests of one scenario and keeps track of how they did */
+  private class ScenarioRunner implements Callback {
+
+    private final MixedScenario.Scenario scenario;
+    private final double rate;
+    private final OkHttpClient client;
+    private final String target;
+    private final String metricName;
+    private final Timer timer;
+
+    private final List<RequestBody> bodies = new ArrayList<>();
+    private final List<Integer> entityCounts = new ArrayList<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder entities = new LongAdder();
+    // what had completed when the scenario stopped firing, the rates are over the duration only
+    private long windowCompleted;
+    private long windowEntities;
+
+    ScenarioRunner(MixedScenario.Scenario scenario, double rate, OkHttpClient client)
+        throws IOException {
+      this.scenario = scenario;
+      this.rate = rate;
+      this.client = client;
+      this.target = url + scenario.getPath();
+      this.metricName = ROOT_METRIC_NAME + "_" + scenario.name;
+      this.timer = registry.timer(metricName);
+
+      for (int i = 0; i < VARIANTS; i++) {
+        int count = scenario.entities.sample(random);
+        int size = scenario.size.sample(random);
+        entityCounts.add(count);
+        bodies.add(body(count, size));
+      }
+    }
+
+    private RequestBody body(int count, int size) throws IOException {
+      switch (scenario.mode) {
+        case "single":
+          return RequestBodies.text(generator, size);
+        case "stream":
+          return RequestBodies.multipart(generator, count, size);
+        case "payload":
+          return RequestBodies.entities(generator, count, size);
+        default:
+          throw new IllegalArgumentException("unknown mode [" + scenario.mode + "]");
+      }
+    }
+
+    void fire() {
+      if (inFlight.get() >= scenario.maxQueued) {
+        dropped.increment();
+        return;
+      }
+
+      int variant = ThreadLocalRandom.current().nextInt(bodies.size());
+      Request request =
+          new Request.Builder()
+              .url(target)
+              .post(bodies.get(variant))
+              .tag(new Sent(System.nanoTime(), entityCounts.get(variant)))
+              .build();
+
+      inFlight.incrementAndGet();
+      sent.increment();
+      client.newCall(request).enqueue(this);
+    }
+
+    /** ends the duration of the run; what completes after this is still timed, but not counted */
+    void endWindow() {
+      windowCompleted = completed.sum();
+      windowEntities = entities.sum();
+    }
+
+    @Override
+    public void onFailure(Call call, IOException e) {
+      inFlight.decrementAndGet();
+      failed.increment();
+      errors.increment();
+      if (verbose) e.printStackTrace();
+    }
+
+    @Override
+    public void onResponse(Call call, Response response) throws IOException {
+      try {
+        Sent tag = (Sent) call.request().tag();
+        timer.update(System.nanoTime() - tag.nanos, TimeUnit.NANOSECONDS);
+        if (response.isSuccessful()) {
+          completed.increment();
+          entities.add(tag.entities);
+        } else {
+          failed.increment();
+        }
+      } finally {
+        inFlight.decrementAndGet();
+        response.close();
+      }
+    }
+  }
+
+  private static class Sent {
+    private final long nanos;
+    private final int entities;
+
+    Sent(long nanos, int entities) {
+      this.nanos = nanos;
+      this.entities = entities;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package com.http.benchmark;
+
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.http2.api.IngestProgress;
+import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
+import okhttp3.*;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams entities to the ndjson endpoint, one per line in a single request, and reads the
+ * progress lines the service answers with. OkHttp sends the whole body before it reads the
+ * response, so the progress lines are read once the upload is done; the service writes each of
+ * them as soon as it has published the entities it acknowledges.
+ */
+@Command(
+  name = "ndjson",
+  description = "Streams a number of entities to a rest end point as newline delimited json"
+)
+public class NdjsonBenchmark extends ActionBenchmark {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--ack"},
+    description = "entities the service publishes before it answers with a progress line"
+  )
+  public int ack = 1000;
+
+  private static final String ROOT_METRIC_NAME = "http_ndjson_message";
+  private static final String FULL_RESULT = "_full_result";
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Override
+  public Action getAction(List<Protocol> protocols, String url, int numEntities, int payloadSize) {
+    String metricName = getMetricName(numEntities);
+    return new Action(this::testNdjson, protocols, url, metricName, numEntities, payloadSize);
+  }
+
+  @Override
+  protected Map<String, Object> getConfig() {
+    Map<String, Object> config = super.getConfig();
+    config.put("ack", ack);
+    return config;
+  }
+
+  @Override
+  public Map<String, Timer> getTimers(int numEntities) {
+    Map<String, Timer> timers = new HashMap<>();
+    String streamName = getMetricName(numEntities);
+    timers.put(streamName, registry.timer(streamName));
+    String fullName = streamName + FULL_RESULT;
+    timers.put(fullName, registry.timer(fullName));
+    return timers;
+  }
+
+  @Override
+  public String getMetricName(int numEntities) {
+    return ROOT_METRIC_NAME + "_" + numEntities;
+  }
+
+  private void testNdjson(
+      List<Protocol> protocols, String url, String metricName, int numEntities, int payloadSize)
+      throws KeyManagementException, NoSuchAlgorithmException, IOException {
+    OkHttpClient client = getHttpClient(protocols, url, metricName);
+    System.out.println("Starting upload testing for " + metricName);
+
+    HttpUrl ackUrl =
+        HttpUrl.parse(url).newBuilder().addQueryParameter("ack", String.valueOf(ack)).build();
+    Request request =
+        new Request.Builder()
+            .url(ackUrl)
+            .post(RequestBodies.ndjson(generator, numEntities, payloadSize))
+            .build();
+
+    Timer.Context timer = registry.timer(metricName + FULL_RESULT).time();
+    int lines = 0;
+    IngestProgress last = null;
+    try (Response response = client.newCall(request).execute()) {
+      if (!response.isSuccessful()) {
+        System.out.println(
+            "Received status code: [" + response.code() + "] with message [" + response.message());
+        return;
+      }
+      BufferedSource body = response.body().source();
+      String line;
+      while ((line = body.readUtf8Line()) != null) {
+        if (line.isEmpty()) continue;
+        last = mapper.readValue(line, IngestProgress.class);
+        lines++;
+        if (verbose) System.out.println(line);
+      }
+    } finally {
+      long stop = timer.stop();
+      System.out.println(
+          "Total run time for ["
+              + metricName
+              + "] is "
+              + convertToMillis(stop)
+              + "ms with ["
+              + lines
+              + "] progress lines");
+      client.connectionPool().evictAll();
+      if (client.cache() != null) client.cache().close();
+    }
+
+    // a failure after the response was committed is only in the last line
+    if (last == null || !last.isDone() || last.getEntities() != numEntities) {
+      errors.increment();
+      System.out.println(
+          "Upload for ["
+              + metricName
+              + "] didn't complete: "
+              + (last == null
+                  ? "no progress"
+                  : last.getEntities() + " of " + numEntities + " entities, " + last.getError()));
+    }
+  }
+}
@@ -1,10 +1,9 @@
 package com.http.benchmark;
 
 import com.codahale.metrics.Timer;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.http2.api.Entity;
-import com.http2.api.PostEntities;
 import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
 import okhttp3.*;
 
 import java.io.IOException;
@@ -13,9 +12,6 @@ import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /** @author Stephen Durfey */
 @Command(
@@ -23,51 +19,62 @@ import java.util.stream.IntStream;
   description =
       "Tests writing to an HTTP endpoint writing a payload at a time with a number of entities"
 )
-public class PayloadMessageBenchmark extends AbstractBenchmark {
+public class PayloadMessageBenchmark extends ActionBenchmark {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--binary"},
+    description =
+        "sends the entities as a binary batch, with 16 byte addresses, for /http2/payload/binary"
+  )
+  public boolean binary = false;
 
   private static final String ROOT_METRIC_NAME = "http_payload_message";
   private static final String FULL_RESULT = "_full_result";
 
   @Override
   public Action getAction(List<Protocol> protocols, String url, int numEntities, int payloadSize) {
-    String metricName = ROOT_METRIC_NAME + "_" + numEntities;
+    String metricName = getMetricName(numEntities);
     return new Action(this::testLargePost, protocols, url, metricName, numEntities, payloadSize);
   }
 
+  @Override
+  protected Map<String, Object> getConfig() {
+    Map<String, Object> config = super.getConfig();
+    config.put("binary", binary);
+    return config;
+  }
+
   @Override
   public Map<String, Timer> getTimers(int numEntities) {
     Map<String, Timer> timers = new HashMap<>();
-    String streamName = ROOT_METRIC_NAME + "_" + numEntities;
+    String streamName = getMetricName(numEntities);
     timers.put(streamName, registry.timer(streamName));
     String fullName = streamName + FULL_RESULT;
-    timers.put(fullName, registry.timer(streamName));
+    timers.put(fullName, registry.timer(fullName));
     return timers;
   }
 
+  @Override
+  public String getMetricName(int numEntities) {
+    return ROOT_METRIC_NAME + "_" + numEntities;
+  }
+
   private void testLargePost(
       List<Protocol> protocols, String url, String metricName, int numEntities, int payloadSize)
       throws KeyManagementException, NoSuchAlgorithmException, IOException {
     OkHttpClient client = getHttpClient(protocols, url, metricName);
-    System.out.println("Starting upload testing for " + metricName);
-
-    ObjectMapper mapper = new ObjectMapper();
-
-    List<Entity> entities =
-        IntStream.range(0, numEntities)
-            .mapToObj(
-                i -> {
-                  Entity entity = new Entity();
-                  entity.setName(generator.generate(payloadSize));
-                  entity.setAddress(UUID.randomUUID().toString());
-                  return entity;
-                })
-            .collect(Collectors.toList());
-
-    PostEntities post = new PostEntities();
-    post.setEntities(entities);
 
     RequestBody body =
-        RequestBody.create(MediaType.parse("application/json"), mapper.writeValueAsString(post));
+        binary
+            ? RequestBodies.binary(generator, numEntities, payloadSize)
+            : RequestBodies.entities(generator, numEntities, payloadSize);
+    System.out.println(
+        "Starting upload testing for "
+            + metricName
+            + " with a body of ["
+            + body.contentLength()
+            + "] bytes");
     Request.Builder request = new Request.Builder().url(url).post(body);
 
 //    if (BEARER_TOKEN != null) request.addHeader(HttpHeader.AUTHORIZATION.name(), BEARER_TOKEN);
@@ -0,0 +1,75 @@
+package com.http.benchmark;
+
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.frames.SettingsFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the SETTINGS a service sends when an h2 connection opens. OkHttp keeps them to itself, so
+ * this opens a connection of its own with Jetty's HTTP/2 client, waits for the first SETTINGS
+ * frame and closes it again.
+ */
+public class PeerSettings {
+
+  private PeerSettings() {}
+
+  /** the settings of the service at a url, by {@link SettingsFrame} key */
+  public static Map<Integer, Integer> probe(String url, long timeoutMillis) throws Exception {
+    URI uri = URI.create(url);
+    boolean tls = "https".equals(uri.getScheme());
+    int port = uri.getPort() > 0 ? uri.getPort() : tls ? 443 : 80;
+
+    HTTP2Client client = new HTTP2Client();
+    SslContextFactory ssl = new SslContextFactory(true);
+    client.addBean(ssl);
+    client.start();
+    try {
+      CompletableFuture<Map<Integer, Integer>> settings = new CompletableFuture<>();
+      FuturePromise<Session> connected = new FuturePromise<>();
+      client.connect(
+          tls ? ssl : null,
+          new InetSocketAddress(uri.getHost(), port),
+          new Session.Listener.Adapter() {
+            @Override
+            public void onSettings(Session session, SettingsFrame frame) {
+              settings.complete(frame.getSettings());
+            }
+          },
+          connected);
+      Session session = connected.get(timeoutMillis, TimeUnit.MILLISECONDS);
+      try {
+        return settings.get(timeoutMillis, TimeUnit.MILLISECONDS);
+      } finally {
+        session.close(ErrorCode.NO_ERROR.code, null, Callback.NOOP);
+      }
+    } finally {
+      client.stop();
+    }
+  }
+
+  /**
+   * the most streams the service at a url lets a connection have open, or a fallback when it
+   * doesn't say or can't be asked
+   */
+  public static int maxConcurrentStreams(String url, long timeoutMillis, int fallback) {
+    try {
+      Integer max = probe(url, timeoutMillis).get(SettingsFrame.MAX_CONCURRENT_STREAMS);
+      System.out.println("Peer allows [" + (max == null ? "unlimited" : max) + "] streams");
+      return max == null ? fallback : max;
+    } catch (Exception e) {
+      System.out.println(
+          "Couldn't read the peer's settings, assuming [" + fallback + "] streams: " + e);
+      return fallback;
+    }
+  }
+}
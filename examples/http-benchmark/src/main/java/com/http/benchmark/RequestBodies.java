@@ -0,0 +1,144 @@
+package com.http.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.http2.api.Entity;
+import com.http2.api.EntityBatch;
+import com.http2.api.EntityBatches;
+import com.http2.api.IngestProgress;
+import com.http2.api.PostEntities;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.apache.commons.text.RandomStringGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/** Builds the request bodies sent by the upload commands. */
+public class RequestBodies {
+
+  public static final MediaType TEXT = MediaType.parse("text/plain");
+  public static final MediaType JSON = MediaType.parse("application/json");
+  public static final MediaType BATCH = MediaType.parse(EntityBatches.MEDIA_TYPE);
+  public static final MediaType NDJSON = MediaType.parse(IngestProgress.NDJSON);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private RequestBodies() {}
+
+  /** a single entity as plain text, as sent by the {@code single} command */
+  public static RequestBody text(RandomStringGenerator generator, int payloadSize) {
+    return RequestBody.create(TEXT, generator.generate(payloadSize));
+  }
+
+  /** a MIME multipart/mixed body with a part per entity, as sent by the {@code stream} command */
+  public static MultipartBody multipart(
+      RandomStringGenerator generator, int numEntities, int payloadSize) {
+    MultipartBody.Builder builder = new MultipartBody.Builder().setType(MultipartBody.MIXED);
+
+    String payload = generator.generate(payloadSize);
+
+    IntStream.range(0, numEntities)
+        .mapToObj(i -> RequestBody.create(TEXT, payload))
+        .forEach(body -> builder.addPart(body));
+
+    return builder.build();
+  }
+
+  /** a {@link PostEntities} document, as sent by the {@code payload} command */
+  public static RequestBody entities(
+      RandomStringGenerator generator, int numEntities, int payloadSize)
+      throws JsonProcessingException {
+    PostEntities post = postEntities(generator, numEntities, payloadSize);
+    return RequestBody.create(JSON, MAPPER.writeValueAsBytes(post));
+  }
+
+  /**
+   * the same entities as {@link #entities} in the binary form of {@link EntityBatches}, with the
+   * addresses as 16 bytes instead of 36 chars
+   */
+  public static RequestBody binary(
+      RandomStringGenerator generator, int numEntities, int payloadSize) throws IOException {
+    EntityBatch batch = new EntityBatch(numEntities, numEntities * payloadSize);
+    for (int i = 0; i < numEntities; i++) {
+      char[] name = generator.generate(payloadSize).toCharArray();
+      UUID address = UUID.randomUUID();
+      batch.add();
+      batch.setName(name, 0, name.length);
+      batch.setAddress(address.getMostSignificantBits(), address.getLeastSignificantBits());
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      EntityBatches.write(batch, out);
+    }
+    return RequestBody.create(BATCH, bytes.toByteArray());
+  }
+
+  /**
+   * an entity per line, as sent by the {@code ndjson} command. Entities are generated as the body
+   * is written rather than up front, and the body has no length, so it is streamed as it goes.
+   */
+  public static RequestBody ndjson(
+      RandomStringGenerator generator, int numEntities, int payloadSize) {
+    return new RequestBody() {
+      @Override
+      public MediaType contentType() {
+        return NDJSON;
+      }
+
+      @Override
+      public void writeTo(BufferedSink sink) throws IOException {
+        Entity entity = new Entity();
+        for (int i = 0; i < numEntities; i++) {
+          entity.setName(generator.generate(payloadSize));
+          entity.setAddress(UUID.randomUUID().toString());
+          sink.write(MAPPER.writeValueAsBytes(entity));
+          sink.writeByte('\n');
+        }
+      }
+    };
+  }
+
+  /**
+   * a batch from a {@link Coalescer}: a lone entity as the plain text of the {@code single}
+   * command, more as a {@link PostEntities} document or as multipart/mixed parts
+   */
+  public static RequestBody coalesced(List<Entity> entities, boolean multipart)
+      throws JsonProcessingException {
+    if (entities.size() == 1) return RequestBody.create(TEXT, entities.get(0).getName());
+    if (multipart) {
+      MultipartBody.Builder builder = new MultipartBody.Builder().setType(MultipartBody.MIXED);
+      entities.forEach(e -> builder.addPart(RequestBody.create(TEXT, e.getName())));
+      return builder.build();
+    }
+    PostEntities post = new PostEntities();
+    post.setEntities(entities);
+    return RequestBody.create(JSON, MAPPER.writeValueAsBytes(post));
+  }
+
+  public static PostEntities postEntities(
+      RandomStringGenerator generator, int numEntities, int payloadSize) {
+    List<Entity> entities =
+        IntStream.range(0, numEntities)
+            .mapToObj(
+                i -> {
+                  Entity entity = new Entity();
+                  entity.setName(generator.generate(payloadSize));
+                  entity.setAddress(UUID.randomUUID().toString());
+                  return entity;
+                })
+            .collect(Collectors.toList());
+
+    PostEntities post = new PostEntities();
+    post.setEntities(entities);
+    return post;
+  }
+}
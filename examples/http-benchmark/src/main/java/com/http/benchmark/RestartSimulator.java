@@ -0,0 +1,150 @@
+package com.http.benchmark;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simulates a rolling restart of the service in the middle of a run: at the time given it runs the
+ * {@code drain} task on the admin port of the service, which answers once the streams in flight
+ * have finished and the connections were sent their GOAWAY, waits as long as a restart would take
+ * and runs the {@code resume} task. The requests of the run are split by when they completed,
+ * before the drain, between the drain and the resume, and after, so the errors and the latency
+ * blip of the restart show against the rest of the run.
+ */
+public class RestartSimulator {
+
+  private static final String[] PHASES = {"before", "restart", "after"};
+
+  private final String tasksUrl;
+  private final long drainAtMillis;
+  private final long pauseMillis;
+  private final LongAdder errors;
+  private final OkHttpClient client =
+      new OkHttpClient.Builder().readTimeout(0, TimeUnit.MILLISECONDS).build();
+  private final Recorder[] recorders = new Recorder[PHASES.length];
+  // when every phase started and the errors of the run by then, plus the end of the last one
+  private final long[] startedAt = new long[PHASES.length + 1];
+  private final long[] errorsAt = new long[PHASES.length + 1];
+
+  private volatile int phase;
+  private Thread thread;
+
+  public RestartSimulator(String adminUrl, long drainAtMillis, long pauseMillis, LongAdder errors) {
+    this.tasksUrl = adminUrl.replaceAll("/+$", "") + "/tasks/";
+    this.drainAtMillis = drainAtMillis;
+    this.pauseMillis = pauseMillis;
+    this.errors = errors;
+    for (int i = 0; i < PHASES.length; i++) {
+      recorders[i] = new Recorder(3);
+    }
+  }
+
+  public void start() {
+    startedAt[0] = System.nanoTime();
+    errorsAt[0] = errors.sum();
+    thread = new Thread(this::restart, "restart-simulator");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** records a request as part of the phase it completed in */
+  public void record(long nanos) {
+    recorders[phase].recordValue(nanos);
+  }
+
+  private void restart() {
+    boolean resumed = true;
+    try {
+      Thread.sleep(drainAtMillis);
+      enter(1);
+      System.out.println("Draining the service");
+      resumed = false;
+      String drained = post("drain");
+      System.out.println("Drain: " + drained + "; restarting for [" + pauseMillis + "]ms");
+      Thread.sleep(pauseMillis);
+      post("resume");
+      resumed = true;
+      enter(2);
+      System.out.println("Resumed the service");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      System.out.println("Couldn't restart the service: " + e);
+    } finally {
+      if (!resumed) {
+        // the run ended in the middle of the restart, the service isn't left refusing everything
+        try {
+          post("resume");
+        } catch (IOException e) {
+          System.out.println("Couldn't resume the service: " + e);
+        }
+      }
+    }
+  }
+
+  private synchronized void enter(int next) {
+    startedAt[next] = System.nanoTime();
+    errorsAt[next] = errors.sum();
+    phase = next;
+  }
+
+  private String post(String task) throws IOException {
+    Request request =
+        new Request.Builder()
+            .url(tasksUrl + task)
+            .post(RequestBody.create(null, new byte[0]))
+            .build();
+    try (Response response = client.newCall(request).execute()) {
+      if (!response.isSuccessful()) {
+        throw new IOException("task [" + task + "] answered [" + response.code() + "]");
+      }
+      return response.body().string().trim();
+    }
+  }
+
+  /** ends the last phase, resuming the service if the run ended in the middle of the restart */
+  public void stop() throws InterruptedException {
+    thread.interrupt();
+    thread.join();
+    synchronized (this) {
+      startedAt[phase + 1] = System.nanoTime();
+      errorsAt[phase + 1] = errors.sum();
+    }
+  }
+
+  /** prints a line per phase the run got to, with its requests, errors and latency */
+  public void print() {
+    String format = "%-8s %9s %10s %8s %10s %8s %8s %8s%n";
+    System.out.printf(
+        format, "phase", "seconds", "requests", "errors", "req/s", "p50 ms", "p99 ms", "max ms");
+    for (int i = 0; i <= phase; i++) {
+      Histogram histogram = recorders[i].getIntervalHistogram();
+      double seconds = (startedAt[i + 1] - startedAt[i]) / (double) TimeUnit.SECONDS.toNanos(1);
+      System.out.printf(
+          format,
+          PHASES[i],
+          String.format(Locale.ROOT, "%.1f", seconds),
+          histogram.getTotalCount(),
+          errorsAt[i + 1] - errorsAt[i],
+          String.format(
+              Locale.ROOT, "%.1f", seconds == 0 ? 0 : histogram.getTotalCount() / seconds),
+          millis(histogram.getValueAtPercentile(50)),
+          millis(histogram.getValueAtPercentile(99)),
+          millis(histogram.getMaxValue()));
+    }
+    if (phase == 0) System.out.println("The run ended before the restart");
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.2f", nanos / 1e6);
+  }
+}
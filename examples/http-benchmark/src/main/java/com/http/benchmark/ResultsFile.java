@@ -0,0 +1,144 @@
+package com.http.benchmark;
+
+import com.opencsv.CSVReader;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the CSV files written by {@link AbstractBenchmark}. Version 2 files carry the protocol,
+ * mode, entity count, repetition and throughput of every line, and have a line per repetition in
+ * addition to the aggregated lines. Older files only carry the metric name, which the rest is
+ * parsed back out of.
+ */
+public class ResultsFile {
+
+  public static final int SCHEMA_VERSION = 2;
+
+  private static final String HEADER = "Metric Name";
+  private static final String ALL_REPETITIONS = "all";
+  private static final int VERSION_2_COLUMNS = 15;
+
+  // e.g. http2_single_message_100 (BenchmarkMain) or http_single_message_100_full_result
+  private static final Pattern LEGACY_METRIC =
+      Pattern.compile("(http1|http2|http)_(single|stream|payload)_message_(\\d+)(_full_\\w+)?");
+
+  /** a single line of a results file; latencies are in milliseconds */
+  public static class Row {
+    private final String metricName;
+    private final String protocol;
+    private final String mode;
+    private final int entities;
+    private final int repetition;
+    private final boolean fullRequest;
+    private final long count;
+    private final double p99;
+    private final double throughput;
+
+    public Row(
+        String metricName,
+        String protocol,
+        String mode,
+        int entities,
+        int repetition,
+        boolean fullRequest,
+        long count,
+        double p99,
+        double throughput) {
+      this.metricName = metricName;
+      this.protocol = protocol;
+      this.mode = mode;
+      this.entities = entities;
+      this.repetition = repetition;
+      this.fullRequest = fullRequest;
+      this.count = count;
+      this.p99 = p99;
+      this.throughput = throughput;
+    }
+
+    /** identifies the same measurement across files: protocol, mode, entity count (tier) */
+    public String getKey() {
+      return protocol + "/" + mode + "/" + entities + (fullRequest ? "/full_request" : "");
+    }
+
+    public String getMetricName() {
+      return metricName;
+    }
+
+    /** -1 for lines aggregated over all repetitions */
+    public int getRepetition() {
+      return repetition;
+    }
+
+    public boolean isFullRequest() {
+      return fullRequest;
+    }
+
+    public boolean isAggregate() {
+      return repetition < 0;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public double getP99() {
+      return p99;
+    }
+
+    /** entities per second, NaN when the file doesn't record it */
+    public double getThroughput() {
+      return throughput;
+    }
+  }
+
+  public static List<Row> read(String file) throws IOException {
+    List<Row> rows = new ArrayList<>();
+    try (CSVReader reader = new CSVReader(new FileReader(file))) {
+      String[] line;
+      while ((line = reader.readNext()) != null) {
+        if (line.length == 0 || HEADER.equals(line[0]) || line[0].trim().isEmpty()) continue;
+        rows.add(line.length >= VERSION_2_COLUMNS ? parse(line) : parseLegacy(line));
+      }
+    }
+    return rows;
+  }
+
+  private static Row parse(String[] line) {
+    String metricName = line[0];
+    return new Row(
+        metricName,
+        line[9],
+        line[10],
+        Integer.parseInt(line[11]),
+        ALL_REPETITIONS.equals(line[12]) ? -1 : Integer.parseInt(line[12]),
+        metricName.contains("_full_"),
+        Long.parseLong(line[1]),
+        Double.parseDouble(line[8]),
+        Double.parseDouble(line[13]));
+  }
+
+  private static Row parseLegacy(String[] line) {
+    String metricName = line[0];
+    Matcher matcher = LEGACY_METRIC.matcher(metricName);
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException("unrecognized metric name [" + metricName + "]");
+    }
+
+    String protocol = "http".equals(matcher.group(1)) ? "unknown" : matcher.group(1);
+    return new Row(
+        metricName,
+        protocol,
+        matcher.group(2),
+        Integer.parseInt(matcher.group(3)),
+        -1,
+        matcher.group(4) != null,
+        Long.parseLong(line[1]),
+        Double.parseDouble(line[8]),
+        Double.NaN);
+  }
+}
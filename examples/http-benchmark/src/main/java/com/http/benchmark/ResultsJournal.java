@@ -0,0 +1,210 @@
+package com.http.benchmark;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the results of a benchmark as JSON lines, one record per line. The first record holds the
+ * configuration of the run and the environment it ran in, then a record is appended (and flushed)
+ * as each action finishes, and a summary of the aggregated timers is written last. Nothing is held
+ * on to between records, so a run can go on for hours without growing the heap.
+ *
+ * <p>Every record has a {@code type} ({@code config}, {@code run}, {@code interval}, {@code
+ * server}, {@code headers} or {@code summary}) and a {@code schemaVersion}. Latencies are in
+ * milliseconds.
+ */
+public class ResultsJournal implements Closeable {
+
+  private final JsonGenerator generator;
+
+  private ResultsJournal(JsonGenerator generator) {
+    this.generator = generator;
+  }
+
+  /** creates the journal file and writes the configuration record */
+  public static ResultsJournal open(Path file, String mode, Map<String, Object> config)
+      throws IOException {
+    JsonGenerator generator =
+        new ObjectMapper()
+            .getFactory()
+            .createGenerator(new BufferedWriter(new FileWriter(file.toFile())));
+    // records are separated by new lines instead
+    generator.setRootValueSeparator(null);
+    ResultsJournal journal = new ResultsJournal(generator);
+    journal.writeConfig(mode, config);
+    return journal;
+  }
+
+  private void writeConfig(String mode, Map<String, Object> config) throws IOException {
+    RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+
+    startRecord("config");
+    generator.writeStringField("mode", mode);
+    generator.writeNumberField("startTime", System.currentTimeMillis());
+    generator.writeObjectField("config", config);
+
+    generator.writeObjectFieldStart("environment");
+    generator.writeObjectFieldStart("jvm");
+    generator.writeStringField("version", System.getProperty("java.version"));
+    generator.writeStringField("vendor", System.getProperty("java.vendor"));
+    generator.writeStringField("vmName", runtime.getVmName());
+    generator.writeStringField("vmVersion", runtime.getVmVersion());
+    generator.writeObjectField("arguments", runtime.getInputArguments());
+    generator.writeEndObject();
+    generator.writeObjectFieldStart("os");
+    generator.writeStringField("name", System.getProperty("os.name"));
+    generator.writeStringField("version", System.getProperty("os.version"));
+    generator.writeStringField("arch", System.getProperty("os.arch"));
+    generator.writeEndObject();
+    generator.writeObjectFieldStart("host");
+    generator.writeStringField("name", hostName());
+    generator.writeNumberField("availableProcessors", Runtime.getRuntime().availableProcessors());
+    generator.writeNumberField("maxHeapBytes", Runtime.getRuntime().maxMemory());
+    generator.writeEndObject();
+    generator.writeEndObject();
+
+    endRecord();
+  }
+
+  /** appends the record of a finished action */
+  public synchronized void write(RunResult result) throws IOException {
+    startRecord("run");
+    generator.writeStringField("metricName", result.getMetricName());
+    generator.writeStringField("protocol", result.getProtocol());
+    generator.writeStringField("mode", result.getMode());
+    generator.writeNumberField("entities", result.getEntities());
+    generator.writeNumberField("repetition", result.getRepetition());
+    generator.writeNumberField("startTime", result.getStartTime());
+    generator.writeNumberField("durationMs", toMillis(result.getDurationNanos()));
+    generator.writeNumberField("throughput", result.getThroughput());
+
+    generator.writeObjectFieldStart("requests");
+    generator.writeNumberField("count", result.getCount());
+    generator.writeNumberField("min", toMillis(result.getMin()));
+    generator.writeNumberField("max", toMillis(result.getMax()));
+    generator.writeNumberField("mean", toMillis(result.getMean()));
+    generator.writeNumberField("p50", toMillis(result.getMedian()));
+    generator.writeNumberField("p75", toMillis(result.get75thPercentile()));
+    generator.writeNumberField("p90", toMillis(result.get90thPercentile()));
+    generator.writeNumberField("p95", toMillis(result.get95thPercentile()));
+    generator.writeNumberField("p99", toMillis(result.get99thPercentile()));
+    generator.writeNumberField("p999", toMillis(result.get999thPercentile()));
+    generator.writeEndObject();
+
+    endRecord();
+  }
+
+  /** appends the record of a soak interval */
+  public synchronized void writeInterval(
+      long elapsedSeconds,
+      Histogram interval,
+      double requestRate,
+      double entityRate,
+      long errors)
+      throws IOException {
+    startRecord("interval");
+    generator.writeNumberField("timestamp", System.currentTimeMillis());
+    generator.writeNumberField("elapsedSeconds", elapsedSeconds);
+    generator.writeNumberField("requestRate", requestRate);
+    generator.writeNumberField("entityRate", entityRate);
+    generator.writeNumberField("errors", errors);
+
+    generator.writeObjectFieldStart("requests");
+    generator.writeNumberField("count", interval.getTotalCount());
+    generator.writeNumberField("min", toMillis(interval.getMinValue()));
+    generator.writeNumberField("max", toMillis(interval.getMaxValue()));
+    generator.writeNumberField("mean", toMillis(interval.getMean()));
+    generator.writeNumberField("p50", toMillis(interval.getValueAtPercentile(50)));
+    generator.writeNumberField("p75", toMillis(interval.getValueAtPercentile(75)));
+    generator.writeNumberField("p90", toMillis(interval.getValueAtPercentile(90)));
+    generator.writeNumberField("p95", toMillis(interval.getValueAtPercentile(95)));
+    generator.writeNumberField("p99", toMillis(interval.getValueAtPercentile(99)));
+    generator.writeNumberField("p999", toMillis(interval.getValueAtPercentile(99.9)));
+    generator.writeEndObject();
+
+    endRecord();
+  }
+
+  /** appends the record of what the service ingested during the run, see {@link ServerMetrics} */
+  public synchronized void writeServer(Map<String, Object> report) throws IOException {
+    startRecord("server");
+    generator.writeObjectField("ingest", report);
+    endRecord();
+  }
+
+  /** appends the record of how big the headers of the run were, see {@link HeaderStats} */
+  public synchronized void writeHeaders(Map<String, Object> summary) throws IOException {
+    startRecord("headers");
+    generator.writeObjectField("headers", summary);
+    endRecord();
+  }
+
+  /** writes the summary record with the aggregated timers of the run */
+  public synchronized void writeSummary(Map<String, Timer> timers) throws IOException {
+    startRecord("summary");
+    generator.writeNumberField("endTime", System.currentTimeMillis());
+    generator.writeArrayFieldStart("timers");
+    for (Map.Entry<String, Timer> e : timers.entrySet()) {
+      Snapshot snapshot = e.getValue().getSnapshot();
+      generator.writeStartObject();
+      generator.writeStringField("name", e.getKey());
+      generator.writeNumberField("count", e.getValue().getCount());
+      generator.writeNumberField("min", toMillis(snapshot.getMin()));
+      generator.writeNumberField("max", toMillis(snapshot.getMax()));
+      generator.writeNumberField("mean", toMillis(snapshot.getMean()));
+      generator.writeNumberField("p50", toMillis(snapshot.getMedian()));
+      generator.writeNumberField("p75", toMillis(snapshot.get75thPercentile()));
+      generator.writeNumberField("p90", toMillis(snapshot.getValue(0.9)));
+      generator.writeNumberField("p95", toMillis(snapshot.get95thPercentile()));
+      generator.writeNumberField("p99", toMillis(snapshot.get99thPercentile()));
+      generator.writeNumberField("p999", toMillis(snapshot.get999thPercentile()));
+      generator.writeEndObject();
+    }
+    generator.writeEndArray();
+    endRecord();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    generator.close();
+  }
+
+  private void startRecord(String type) throws IOException {
+    generator.writeStartObject();
+    generator.writeStringField("type", type);
+    generator.writeNumberField("schemaVersion", ResultsFile.SCHEMA_VERSION);
+  }
+
+  private void endRecord() throws IOException {
+    generator.writeEndObject();
+    generator.writeRaw('\n');
+    generator.flush();
+  }
+
+  private static double toMillis(double nanos) {
+    return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  private static String hostName() {
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      return "unknown";
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package com.http.benchmark;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a single action, i.e. one repetition of one entity count. Requests made while the
+ * action runs are timed into a timer scoped to the action, which is summarized and dropped once
+ * the action finishes so a long list of results stays small.
+ */
+public class RunResult {
+
+  private final String metricName;
+  private final String protocol;
+  private final String mode;
+  private final int entities;
+  private final int repetition;
+
+  private volatile Timer requests = new Timer(new UniformReservoir());
+  private long firstRequestStart = Long.MAX_VALUE;
+  private long lastRequestEnd = Long.MIN_VALUE;
+
+  private long startTime;
+  private long durationNanos;
+  private long count;
+  private double median;
+  private double mean;
+  private long min;
+  private long max;
+  private double p75;
+  private double p90;
+  private double p95;
+  private double p99;
+  private double p999;
+
+  public RunResult(String metricName, String protocol, String mode, int entities, int repetition) {
+    this.metricName = metricName;
+    this.protocol = protocol;
+    this.mode = mode;
+    this.entities = entities;
+    this.repetition = repetition;
+  }
+
+  /** marks the wall clock time the action started at */
+  public void start() {
+    startTime = System.currentTimeMillis();
+  }
+
+  /** records one request made by this action, using {@link System#nanoTime()} timestamps */
+  public void record(long startNanos, long endNanos) {
+    Timer timer = requests;
+    if (timer == null) return;
+
+    timer.update(endNanos - startNanos, TimeUnit.NANOSECONDS);
+    synchronized (this) {
+      firstRequestStart = Math.min(firstRequestStart, startNanos);
+      lastRequestEnd = Math.max(lastRequestEnd, endNanos);
+    }
+  }
+
+  /**
+   * Summarizes the requests made by the action, after which no more requests are recorded. The
+   * duration of the action is the window from the start of its first request until the end of its
+   * last one, so building request bodies up front doesn't count against its throughput.
+   */
+  public synchronized void finish() {
+    durationNanos = lastRequestEnd > firstRequestStart ? lastRequestEnd - firstRequestStart : 0;
+    Snapshot snapshot = requests.getSnapshot();
+    count = requests.getCount();
+    median = snapshot.getMedian();
+    mean = snapshot.getMean();
+    min = snapshot.getMin();
+    max = snapshot.getMax();
+    p75 = snapshot.get75thPercentile();
+    p90 = snapshot.getValue(0.9);
+    p95 = snapshot.get95thPercentile();
+    p99 = snapshot.get99thPercentile();
+    p999 = snapshot.get999thPercentile();
+    requests = null;
+  }
+
+  /** entities uploaded per second over the whole action */
+  public double getThroughput() {
+    if (durationNanos == 0) return 0;
+    return entities / (durationNanos / (double) TimeUnit.SECONDS.toNanos(1));
+  }
+
+  public String getMetricName() {
+    return metricName;
+  }
+
+  public String getProtocol() {
+    return protocol;
+  }
+
+  public String getMode() {
+    return mode;
+  }
+
+  public int getEntities() {
+    return entities;
+  }
+
+  public int getRepetition() {
+    return repetition;
+  }
+
+  /** epoch millis the action started at */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  public long getDurationNanos() {
+    return durationNanos;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public double getMedian() {
+    return median;
+  }
+
+  public double getMean() {
+    return mean;
+  }
+
+  public long getMin() {
+    return min;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public double get75thPercentile() {
+    return p75;
+  }
+
+  public double get90thPercentile() {
+    return p90;
+  }
+
+  public double get95thPercentile() {
+    return p95;
+  }
+
+  public double get99thPercentile() {
+    return p99;
+  }
+
+  public double get999thPercentile() {
+    return p999;
+  }
+}
@@ -0,0 +1,166 @@
+package com.http.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the ingest metrics of the service from the metrics servlet on its admin port, before and
+ * after a run, so the results show how fast the service persisted what was sent and how long
+ * entities waited to be durable, not just how fast requests were answered. When the service tracks
+ * allocation, the bytes allocated per upload request are reported too.
+ */
+public class ServerMetrics {
+
+  private static final String INGEST = "com.http2.examples.ingest.IngestPipeline.";
+  private static final String ALLOCATION = "com.http2.examples.compact.AllocationFilter.";
+  private static final String[] UPLOAD_PATHS = {
+    "http2.payload", "http2.payload.compact", "http2.payload.binary"
+  };
+
+  private final String metricsUrl;
+  private final OkHttpClient client = new OkHttpClient();
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  private JsonNode start;
+  private long startNanos;
+
+  public ServerMetrics(String adminUrl) {
+    this.metricsUrl = adminUrl.replaceAll("/+$", "") + "/metrics";
+  }
+
+  /** takes the snapshot the end of the run is compared to */
+  public void start() throws IOException {
+    start = scrape();
+    startNanos = System.nanoTime();
+  }
+
+  /**
+   * reports what the service ingested since {@link #start()}; rates are over the run, latencies are
+   * those of the service's timers at the end of it
+   */
+  public Map<String, Object> stop() throws IOException {
+    JsonNode end = scrape();
+    double seconds = (System.nanoTime() - startNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+
+    long entities = delta(end, "meters", "entities");
+    long bytes = delta(end, "meters", "bytes");
+
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("entities", entities);
+    report.put("entitiesPerSecond", entities / seconds);
+    report.put("bytesPerSecond", bytes / seconds);
+    report.put("rejected", delta(end, "meters", "rejected"));
+    report.put("meanBatchSize", metric(end, "histograms", "batch-size").path("mean").asDouble());
+    report.put("commit", timer(end, "commit"));
+    report.put("durability", timer(end, "durability"));
+
+    Map<String, Double> allocation = new LinkedHashMap<>();
+    Map<String, Double> cpu = new LinkedHashMap<>();
+    for (String path : UPLOAD_PATHS) {
+      long requests = allocationDelta(end, "histograms", path);
+      if (requests > 0) {
+        String uri = "/" + path.replace('.', '/');
+        allocation.put(uri, allocationDelta(end, "meters", path + ".bytes") / (double) requests);
+        cpu.put(uri, allocationDelta(end, "meters", path + ".cpu-nanos") / 1e3 / requests);
+      }
+    }
+    report.put("allocationPerRequest", allocation);
+    report.put("cpuMicrosPerRequest", cpu);
+    return report;
+  }
+
+  /** prints a report returned by {@link #stop()} */
+  @SuppressWarnings("unchecked")
+  public static void print(Map<String, Object> report) {
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "Server ingested [%d] entities: %.2f entities/s, %.2f bytes/s, mean batch of %.1f"
+                + " requests, [%d] requests rejected",
+            report.get("entities"),
+            report.get("entitiesPerSecond"),
+            report.get("bytesPerSecond"),
+            report.get("meanBatchSize"),
+            report.get("rejected")));
+    for (String name : new String[] {"commit", "durability"}) {
+      Map<String, Double> timer = (Map<String, Double>) report.get(name);
+      System.out.println(
+          String.format(
+              Locale.ROOT,
+              "Server %-10s p50=%.2fms p99=%.2fms max=%.2fms",
+              name,
+              timer.get("p50"),
+              timer.get("p99"),
+              timer.get("max")));
+    }
+    Map<String, Double> allocation = (Map<String, Double>) report.get("allocationPerRequest");
+    Map<String, Double> cpu = (Map<String, Double>) report.get("cpuMicrosPerRequest");
+    allocation.forEach(
+        (path, bytes) ->
+            System.out.println(
+                String.format(
+                    Locale.ROOT,
+                    "Server allocated %.0f bytes and used %.0fus of CPU per request to %s",
+                    bytes,
+                    cpu.get(path),
+                    path)));
+  }
+
+  private JsonNode scrape() throws IOException {
+    Request request = new Request.Builder().url(metricsUrl).get().build();
+    try (Response response = client.newCall(request).execute()) {
+      if (!response.isSuccessful()) {
+        throw new IOException(
+            "reading metrics from [" + metricsUrl + "] failed with [" + response.code() + "]");
+      }
+      return mapper.readTree(response.body().byteStream());
+    }
+  }
+
+  private long delta(JsonNode end, String type, String name) {
+    return metric(end, type, name).path("count").asLong()
+        - metric(start, type, name).path("count").asLong();
+  }
+
+  private long allocationDelta(JsonNode end, String type, String name) {
+    return end.path(type).path(ALLOCATION + name).path("count").asLong()
+        - start.path(type).path(ALLOCATION + name).path("count").asLong();
+  }
+
+  private Map<String, Double> timer(JsonNode metrics, String name) {
+    JsonNode timer = metric(metrics, "timers", name);
+    double toMillis = toMillis(timer.path("duration_units").asText("seconds"));
+
+    Map<String, Double> values = new LinkedHashMap<>();
+    for (String field : new String[] {"p50", "p75", "p95", "p99", "p999", "max"}) {
+      values.put(field, timer.path(field).asDouble() * toMillis);
+    }
+    return values;
+  }
+
+  private static JsonNode metric(JsonNode metrics, String type, String name) {
+    return metrics.path(type).path(INGEST + name);
+  }
+
+  private static double toMillis(String durationUnits) {
+    switch (durationUnits) {
+      case "nanoseconds":
+        return 1e-6;
+      case "microseconds":
+        return 1e-3;
+      case "milliseconds":
+        return 1;
+      default:
+        return 1000;
+    }
+  }
+}
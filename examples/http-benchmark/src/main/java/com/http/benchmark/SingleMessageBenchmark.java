@@ -2,6 +2,8 @@ package com.http.benchmark;
 
 import com.codahale.metrics.Timer;
 import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
 import okhttp3.*;
 
 import java.io.IOException;
@@ -19,14 +21,34 @@ import java.util.stream.IntStream;
   name = "single",
   description = "Tests writing to an HTTP endpoint writing a single message per request"
 )
-public class SingleMessageBenchmark extends AbstractBenchmark {
+public class SingleMessageBenchmark extends ActionBenchmark {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--in-flight"},
+    description =
+        "requests in flight at once over h2; by default the limit is ramped up until latency"
+            + " climbs, and the knee found is reported"
+  )
+  public int inFlight = 0;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--adaptive-window"},
+    description = "requests completed at each limit while looking for the knee; defaults to 100"
+  )
+  public int adaptiveWindow = 100;
 
   private static final String ROOT_METRIC_NAME = "http_single_message";
   private static final String FULL_RESULT = "_full_result";
+  // what the limit is capped at when the service doesn't say how many streams it allows
+  private static final int DEFAULT_MAX_STREAMS = 256;
+
+  private Integer maxStreams;
 
   @Override
   public Action getAction(List<Protocol> protocols, String url, int numEntities, int payloadSize) {
-    String metricName = ROOT_METRIC_NAME + "_" + numEntities;
+    String metricName = getMetricName(numEntities);
     return new Action(
         this::testIndividualMessages, protocols, url, metricName, numEntities, payloadSize);
   }
@@ -34,26 +56,37 @@ public class SingleMessageBenchmark extends AbstractBenchmark {
   @Override
   public Map<String, Timer> getTimers(int numEntities) {
     Map<String, Timer> timers = new HashMap<>();
-    String streamName = ROOT_METRIC_NAME + "_" + numEntities;
+    String streamName = getMetricName(numEntities);
     timers.put(streamName, registry.timer(streamName));
     String fullName = streamName + FULL_RESULT;
-    timers.put(fullName, registry.timer(streamName));
+    timers.put(fullName, registry.timer(fullName));
     return timers;
   }
 
+  @Override
+  public String getMetricName(int numEntities) {
+    return ROOT_METRIC_NAME + "_" + numEntities;
+  }
+
   private void testIndividualMessages(
       List<Protocol> protocols, String url, String metricName, int numEntities, int payloadSize)
       throws InterruptedException, KeyManagementException, NoSuchAlgorithmException, IOException {
 
     OkHttpClient client = getHttpClient(protocols, url, metricName);
+    AdaptiveConcurrency adaptive = null;
+    if (protocols.contains(Protocol.HTTP_2) && inFlight <= 0) {
+      adaptive = new AdaptiveConcurrency(client.dispatcher(), getMaxStreams(url), adaptiveWindow);
+      // first, ahead of anything that sends the request on through another client; the new client
+      // shares the dispatcher and connections of the one it is built from
+      OkHttpClient.Builder builder = client.newBuilder();
+      builder.interceptors().add(0, adaptive);
+      client = builder.build();
+    }
     System.out.println("Starting upload testing for " + metricName);
 
     List<RequestBody> bodies =
         IntStream.range(0, numEntities)
-            .mapToObj(
-                i ->
-                    RequestBody.create(
-                        MediaType.parse("text/plain"), generator.generate(payloadSize)))
+            .mapToObj(i -> RequestBodies.text(generator, payloadSize))
             .collect(Collectors.toList());
 
     Timer.Context timer = registry.timer(metricName + FULL_RESULT).time();
@@ -78,8 +111,10 @@ public class SingleMessageBenchmark extends AbstractBenchmark {
           // http/2 uses one connection, so, don't limit to just one message
           // at a time. with http/1.x, this setting will cause it to open
           // n TCP connections .... we don't want that.
-          if (cntr == 1 && protocols.contains(Protocol.HTTP_2))
-            client.dispatcher().setMaxRequestsPerHost(50);
+          if (cntr == 1 && protocols.contains(Protocol.HTTP_2) && adaptive == null) {
+            client.dispatcher().setMaxRequests(inFlight);
+            client.dispatcher().setMaxRequestsPerHost(inFlight);
+          }
 
           HttpCallback httpCallback = new HttpCallback(latch);
           client.newCall(request.build()).enqueue(httpCallback);
@@ -95,8 +130,25 @@ public class SingleMessageBenchmark extends AbstractBenchmark {
               + "] is "
               + (System.currentTimeMillis() - start)
               + "ms");
+      if (adaptive != null) adaptive.report(metricName);
       client.connectionPool().evictAll();
       if (client.cache() != null) client.cache().close();
     }
   }
+
+  @Override
+  protected Map<String, Object> getConfig() {
+    Map<String, Object> config = super.getConfig();
+    config.put("inFlight", inFlight > 0 ? inFlight : "adaptive");
+    config.put("adaptiveWindow", adaptiveWindow);
+    return config;
+  }
+
+  /** the most streams the service allows on a connection, asked once per run */
+  private synchronized int getMaxStreams(String url) {
+    if (maxStreams == null) {
+      maxStreams = PeerSettings.maxConcurrentStreams(url, readTimeout, DEFAULT_MAX_STREAMS);
+    }
+    return maxStreams;
+  }
 }
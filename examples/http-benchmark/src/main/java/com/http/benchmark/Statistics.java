@@ -0,0 +1,124 @@
+package com.http.benchmark;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/** Significance tests used to compare the repetitions of two benchmark runs. */
+public class Statistics {
+
+  // largest sample size for which the exact distribution of U is computed
+  private static final int EXACT_LIMIT = 20;
+
+  private Statistics() {}
+
+  /**
+   * Two sided Mann-Whitney U test. Makes no assumption about the shape of the distributions, which
+   * suits latency and throughput numbers. The p-value is exact for small samples without ties, and
+   * uses the normal approximation (with tie and continuity correction) otherwise.
+   *
+   * @return the p-value, or NaN when either sample is empty
+   */
+  public static double mannWhitneyU(double[] a, double[] b) {
+    int n1 = a.length;
+    int n2 = b.length;
+    if (n1 == 0 || n2 == 0) return Double.NaN;
+
+    int n = n1 + n2;
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) order[i] = i;
+    Arrays.sort(order, Comparator.comparingDouble(i -> i < n1 ? a[i] : b[i - n1]));
+
+    // assign average ranks to ties, keeping track of the tie correction term
+    double rankSumA = 0;
+    double tieCorrection = 0;
+    int i = 0;
+    while (i < n) {
+      int j = i;
+      double value = valueOf(order[i], a, b);
+      while (j + 1 < n && valueOf(order[j + 1], a, b) == value) j++;
+
+      double rank = (i + j) / 2.0 + 1;
+      for (int k = i; k <= j; k++) {
+        if (order[k] < n1) rankSumA += rank;
+      }
+      int ties = j - i + 1;
+      tieCorrection += (double) ties * ties * ties - ties;
+      i = j + 1;
+    }
+
+    double u1 = rankSumA - n1 * (n1 + 1) / 2.0;
+    double u = Math.min(u1, (double) n1 * n2 - u1);
+
+    if (tieCorrection == 0 && n1 <= EXACT_LIMIT && n2 <= EXACT_LIMIT) {
+      return Math.min(1, 2 * exactCdf((int) u, n1, n2));
+    }
+
+    double mean = n1 * n2 / 2.0;
+    double variance = n1 * n2 / 12.0 * ((n + 1) - tieCorrection / ((double) n * (n - 1)));
+    if (variance <= 0) return 1;
+
+    double z = Math.max(0, (Math.abs(u1 - mean) - 0.5) / Math.sqrt(variance));
+    return Math.min(1, 2 * (1 - normalCdf(z)));
+  }
+
+  /**
+   * the smallest two sided p-value {@link #mannWhitneyU} can give for samples of size n1 and n2,
+   * that of two samples apart without ties; with fewer repetitions than it takes to get this below
+   * a significance level, no difference can ever be significant
+   */
+  public static double minimumP(int n1, int n2) {
+    if (n1 == 0 || n2 == 0) return Double.NaN;
+    // 2 of the C(n1 + n2, n1) orderings are as extreme
+    double orderings = 1;
+    for (int k = 1; k <= Math.min(n1, n2); k++) {
+      orderings = orderings * (Math.max(n1, n2) + k) / k;
+    }
+    return Math.min(1, 2 / orderings);
+  }
+
+  private static double valueOf(int index, double[] a, double[] b) {
+    return index < a.length ? a[index] : b[index - a.length];
+  }
+
+  /** P(U <= u) for samples of size n1 and n2, without ties */
+  private static double exactCdf(int u, int n1, int n2) {
+    // counts[m][k][v]: number of orderings of m values from a and k from b with U == v
+    double[][][] counts = new double[n1 + 1][n2 + 1][];
+    for (int m = 0; m <= n1; m++) {
+      for (int k = 0; k <= n2; k++) {
+        counts[m][k] = new double[m * k + 1];
+        if (m == 0 || k == 0) {
+          counts[m][k][0] = 1;
+          continue;
+        }
+        for (int v = 0; v <= m * k; v++) {
+          // the largest value either comes from a (beating all k values of b) or from b
+          double fromA = v >= k && v - k < counts[m - 1][k].length ? counts[m - 1][k][v - k] : 0;
+          double fromB = v < counts[m][k - 1].length ? counts[m][k - 1][v] : 0;
+          counts[m][k][v] = fromA + fromB;
+        }
+      }
+    }
+
+    double total = 0;
+    double below = 0;
+    for (int v = 0; v < counts[n1][n2].length; v++) {
+      total += counts[n1][n2][v];
+      if (v <= u) below += counts[n1][n2][v];
+    }
+    return below / total;
+  }
+
+  /** standard normal CDF, using the Abramowitz and Stegun 7.1.26 approximation of erf */
+  static double normalCdf(double z) {
+    double x = Math.abs(z) / Math.sqrt(2);
+    double t = 1 / (1 + 0.3275911 * x);
+    double erf =
+        1
+            - t
+                * (0.254829592
+                    + t * (-0.284496736 + t * (1.421413741 + t * (-1.453152027 + t * 1.061405429))))
+                * Math.exp(-x * x);
+    return z >= 0 ? 0.5 * (1 + erf) : 0.5 * (1 - erf);
+  }
+}
@@ -2,6 +2,8 @@ package com.http.benchmark;
 
 import com.codahale.metrics.Timer;
 import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
 import okhttp3.*;
 
 import java.io.IOException;
@@ -10,21 +12,29 @@ import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.IntStream;
 
 /** @author Stephen Durfey */
 @Command(
   name = "stream",
   description = "Streams a number of entities to a rest end point as MIME multipart/mixed"
 )
-public class StreamMessageBenchmark extends AbstractBenchmark {
+public class StreamMessageBenchmark extends ActionBenchmark {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--sequential-parts"},
+    description =
+        "has the service process the parts on the request thread even when it has a pool for"
+            + " them, to compare against a run without it"
+  )
+  public boolean sequentialParts = false;
 
   private static final String ROOT_METRIC_NAME = "http_stream_message";
   private static final String FULL_RESULT = "_full_result";
 
   @Override
   public Action getAction(List<Protocol> protocols, String url, int numEntities, int payloadSize) {
-    String metricName = ROOT_METRIC_NAME + "_" + numEntities;
+    String metricName = getMetricName(numEntities);
     return new Action(
         this::testMessageStream, protocols, url, metricName, numEntities, payloadSize);
   }
@@ -32,34 +42,34 @@ public class StreamMessageBenchmark extends AbstractBenchmark {
   @Override
   public Map<String, Timer> getTimers(int numEntities) {
     Map<String, Timer> timers = new HashMap<>();
-    String streamName = ROOT_METRIC_NAME + "_" + numEntities;
+    String streamName = getMetricName(numEntities);
     timers.put(streamName, registry.timer(streamName));
     String fullName = streamName + FULL_RESULT;
-    timers.put(fullName, registry.timer(streamName));
+    timers.put(fullName, registry.timer(fullName));
     return timers;
   }
 
+  @Override
+  public String getMetricName(int numEntities) {
+    return ROOT_METRIC_NAME + "_" + numEntities;
+  }
+
   private void testMessageStream(
       List<Protocol> protocols, String url, String metricName, int numEntities, int payloadSize)
       throws InterruptedException, KeyManagementException, NoSuchAlgorithmException, IOException {
 
     System.out.println("Starting upload testing for " + metricName);
-    MultipartBody.Builder builder = new MultipartBody.Builder().setType(MultipartBody.MIXED);
-
-    String payload = generator.generate(payloadSize);
-    
-    IntStream.range(0, numEntities)
-        .mapToObj(
-            i -> RequestBody.create(MediaType.parse("text/plain"), payload))
-        .forEach(body -> builder.addPart(body));
-
-    MultipartBody multipartBody = builder.build();
+    MultipartBody multipartBody = RequestBodies.multipart(generator, numEntities, payloadSize);
 
     OkHttpClient client = getHttpClient(protocols, url, metricName);
     Timer.Context timer = registry.timer(metricName + FULL_RESULT).time();
     long start = System.currentTimeMillis();
     try {
-      Request.Builder request = new Request.Builder().url(url).post(multipartBody);
+      HttpUrl target =
+          sequentialParts
+              ? HttpUrl.parse(url).newBuilder().addQueryParameter("sequential", "true").build()
+              : HttpUrl.parse(url);
+      Request.Builder request = new Request.Builder().url(target).post(multipartBody);
 
       // https://github.com/square/okhttp/issues/3442
       client.dispatcher().setMaxRequestsPerHost(1);
@@ -82,4 +92,11 @@ public class StreamMessageBenchmark extends AbstractBenchmark {
       if (client.cache() != null) client.cache().close();
     }
   }
+
+  @Override
+  protected Map<String, Object> getConfig() {
+    Map<String, Object> config = super.getConfig();
+    config.put("sequentialParts", sequentialParts);
+    return config;
+  }
 }
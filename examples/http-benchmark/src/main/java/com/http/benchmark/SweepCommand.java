@@ -0,0 +1,282 @@
+package com.http.benchmark;
+
+import com.opencsv.CSVWriter;
+import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a set of workloads against the service once per point of a grid of server settings, and
+ * reports the best point for each workload. For every point the service is started from its jar
+ * with the settings of the {@code performance} section given as {@code -Ddw.} overrides, the
+ * workloads are run in this process as the benchmark commands they name, and the service is
+ * stopped again. A workload is scored by its throughput, with the lower p99 breaking ties.
+ */
+@Command(
+  name = "sweep",
+  description = "Runs workloads against the service over a grid of thread and connector settings"
+)
+public class SweepCommand implements Runnable {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--server-jar"},
+    description = "jar of the service to start for every point of the grid",
+    required = true
+  )
+  public String serverJar;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--config"},
+    description = "configuration file the service is started with; defaults to config.yml"
+  )
+  public String config = "config.yml";
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--jvm-arg"},
+    description = "argument for the jvm of the service, e.g. the alpn-boot -Xbootclasspath/p"
+  )
+  public List<String> jvmArgs = new ArrayList<>();
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--admin"},
+    description = "admin url polled until the service is up; defaults to http://localhost:8081"
+  )
+  public String admin = "http://localhost:8081";
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"-w", "--workload"},
+    description =
+        "a benchmark command line to run at every point, e.g. \"single -u"
+            + " https://localhost:8445/http2 -h2 -e 5000\"; can be repeated",
+    required = true
+  )
+  public List<String> workloads;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--acceptors"},
+    description = "acceptor threads of the h2 connector to try; can be repeated"
+  )
+  public List<Integer> acceptors = new ArrayList<>();
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--selectors"},
+    description = "selector threads of the h2 connector to try; can be repeated"
+  )
+  public List<Integer> selectors = new ArrayList<>();
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--max-threads"},
+    description = "maximum server threads to try; can be repeated"
+  )
+  public List<Integer> maxThreads = new ArrayList<>();
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--startup-timeout"},
+    description = "seconds to wait for the service to come up; defaults to 60"
+  )
+  public long startupTimeout = 60;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"-o", "--output"},
+    description = "prefix of the files written; defaults to sweep"
+  )
+  public String output = "sweep";
+
+  private static final String ROW_FORMAT = "%-40s %12s %9s%s%n";
+
+  @Override
+  public void run() {
+    List<Map<String, Integer>> grid = grid();
+    System.out.println(
+        "Sweeping ["
+            + grid.size()
+            + "] settings with ["
+            + workloads.size()
+            + "] workloads; writing results to ["
+            + output
+            + ".csv]");
+
+    // by workload, the score of every point it ran at
+    Map<String, Map<String, Score>> scores = new LinkedHashMap<>();
+    workloads.forEach(w -> scores.put(w, new LinkedHashMap<>()));
+    try {
+      for (int p = 0; p < grid.size(); p++) {
+        Map<String, Integer> point = grid.get(p);
+        String name = describe(point);
+        System.out.println("Starting the service with " + name);
+        Process server = start(point, output + "-" + p + ".log");
+        try {
+          awaitStartup(server);
+          for (int w = 0; w < workloads.size(); w++) {
+            String results = output + "-" + p + "-" + w + ".csv";
+            scores.get(workloads.get(w)).put(name, runWorkload(workloads.get(w), results));
+          }
+        } finally {
+          stop(server);
+        }
+      }
+      report(scores);
+    } catch (IOException | InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** every combination of the settings given; one default point when none are */
+  private List<Map<String, Integer>> grid() {
+    List<Map<String, Integer>> grid = new ArrayList<>();
+    grid.add(new LinkedHashMap<>());
+    grid = expand(grid, "performance.h2.acceptorThreads", acceptors);
+    grid = expand(grid, "performance.h2.selectorThreads", selectors);
+    grid = expand(grid, "performance.maxThreads", maxThreads);
+    return grid;
+  }
+
+  private static List<Map<String, Integer>> expand(
+      List<Map<String, Integer>> grid, String setting, List<Integer> values) {
+    if (values.isEmpty()) return grid;
+    List<Map<String, Integer>> expanded = new ArrayList<>();
+    for (Map<String, Integer> point : grid) {
+      for (int value : values) {
+        Map<String, Integer> next = new LinkedHashMap<>(point);
+        next.put(setting, value);
+        expanded.add(next);
+      }
+    }
+    return expanded;
+  }
+
+  private static String describe(Map<String, Integer> point) {
+    if (point.isEmpty()) return "defaults";
+    StringBuilder name = new StringBuilder();
+    point.forEach(
+        (setting, value) -> {
+          if (name.length() > 0) name.append(' ');
+          name.append(setting.substring(setting.lastIndexOf('.') + 1)).append('=').append(value);
+        });
+    return name.toString();
+  }
+
+  private Process start(Map<String, Integer> point, String log) throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+    command.addAll(jvmArgs);
+    point.forEach((setting, value) -> command.add("-Ddw." + setting + "=" + value));
+    command.addAll(Arrays.asList("-jar", serverJar, "server", config));
+    return new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(new File(log))
+        .start();
+  }
+
+  /** polls the admin url until it answers at all, whatever its status */
+  private void awaitStartup(Process server) throws IOException, InterruptedException {
+    OkHttpClient client =
+        new OkHttpClient.Builder().connectTimeout(1, TimeUnit.SECONDS).build();
+    Request ping = new Request.Builder().url(admin + "/ping").build();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(startupTimeout);
+    while (System.nanoTime() < deadline) {
+      if (!server.isAlive()) {
+        throw new IOException("the service exited with [" + server.exitValue() + "]");
+      }
+      try (Response response = client.newCall(ping).execute()) {
+        return;
+      } catch (IOException e) {
+        Thread.sleep(500);
+      }
+    }
+    throw new IOException("the service didn't come up within [" + startupTimeout + "] seconds");
+  }
+
+  private static void stop(Process server) throws InterruptedException {
+    server.destroy();
+    if (!server.waitFor(30, TimeUnit.SECONDS)) {
+      server.destroyForcibly().waitFor();
+    }
+  }
+
+  /**
+   * runs a workload as the command it names, writing its results to a file of its own, and scores
+   * it by the lines aggregated over its repetitions
+   */
+  private Score runWorkload(String workload, String results) throws IOException {
+    System.out.println("Running [" + workload + "]");
+    AbstractBenchmark.command(workload, results).run();
+
+    Score score = new Score();
+    for (ResultsFile.Row row : ResultsFile.read(results)) {
+      if (!row.isAggregate() || row.isFullRequest()) continue;
+      score.throughput += row.getThroughput();
+      score.p99 = Math.max(score.p99, row.getP99());
+    }
+    return score;
+  }
+
+  private void report(Map<String, Map<String, Score>> scores) throws IOException {
+    try (CSVWriter writer = new CSVWriter(new FileWriter(output + ".csv"))) {
+      writer.writeNext(new String[] {"Workload", "Settings", "Throughput", "p99", "Best"});
+      for (Map.Entry<String, Map<String, Score>> workload : scores.entrySet()) {
+        String best =
+            Collections.max(
+                    workload.getValue().entrySet(),
+                    (a, b) ->
+                        a.getValue().throughput != b.getValue().throughput
+                            ? Double.compare(a.getValue().throughput, b.getValue().throughput)
+                            : Double.compare(b.getValue().p99, a.getValue().p99))
+                .getKey();
+
+        System.out.println();
+        System.out.println("Workload [" + workload.getKey() + "]");
+        System.out.printf(ROW_FORMAT, "settings", "throughput", "p99 ms", "");
+        for (Map.Entry<String, Score> point : workload.getValue().entrySet()) {
+          Score s = point.getValue();
+          boolean isBest = point.getKey().equals(best);
+          System.out.printf(
+              ROW_FORMAT,
+              point.getKey(),
+              String.format(Locale.ROOT, "%.1f", s.throughput),
+              String.format(Locale.ROOT, "%.1f", s.p99),
+              isBest ? "  <- best" : "");
+          writer.writeNext(
+              new String[] {
+                workload.getKey(),
+                point.getKey(),
+                String.format(Locale.ROOT, "%.2f", s.throughput),
+                String.format(Locale.ROOT, "%.2f", s.p99),
+                String.valueOf(isBest)
+              });
+        }
+      }
+    }
+  }
+
+  /** the throughput of a workload's lines added up, and the worst of their p99s */
+  private static class Score {
+    private double throughput;
+    private double p99;
+  }
+}
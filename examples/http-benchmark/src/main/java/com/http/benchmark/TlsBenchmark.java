@@ -0,0 +1,390 @@
+package com.http.benchmark;
+
+import com.opencsv.CSVWriter;
+import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
+import org.HdrHistogram.Histogram;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what TLS costs, apart from the requests it carries: the latency of a full handshake
+ * with the service, of a handshake resuming an earlier session, and how fast records are encrypted
+ * and decrypted once a connection is up. The handshakes are made over sockets that send nothing
+ * else; every full one has its session invalidated so the next can't resume it. The bulk rate is
+ * measured between two engines in this process, with the keystore of the service, so it is the
+ * cost of the cipher and the provider alone. Every {@code --cipher} is measured on its own, to
+ * compare e.g. AES-GCM and ChaCha20.
+ */
+@Command(
+  name = "tls",
+  description = "Measures full and resumed handshake latency and bulk encryption throughput"
+)
+public class TlsBenchmark implements Runnable {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"-u", "--url"},
+    description = "https url of the service to handshake with, e.g. https://localhost:8445",
+    required = true
+  )
+  public String url;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"-n", "--handshakes"},
+    description = "handshakes of each kind to make; defaults to 500"
+  )
+  public int handshakes = 500;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--protocol"},
+    description = "protocol to enable, e.g. TLSv1.3; can be repeated; defaults to the JDK's"
+  )
+  public List<String> protocols = new ArrayList<>();
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--cipher"},
+    description =
+        "cipher suite to measure on its own, e.g. TLS_AES_128_GCM_SHA256; can be repeated;"
+            + " defaults to whatever the service picks"
+  )
+  public List<String> ciphers = new ArrayList<>();
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--tls-provider"},
+    description = "name of the installed JSSE provider to use; defaults to the JDK's"
+  )
+  public String tlsProvider;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--keystore"},
+    description = "keystore of the service, for the bulk encryption rate; skipped without one"
+  )
+  public String keystore;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--keystore-password"},
+    description = "password of the --keystore"
+  )
+  public String keystorePassword = "";
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--bulk-mb"},
+    description = "megabytes to encrypt and decrypt for the bulk rate; defaults to 256"
+  )
+  public int bulkMb = 256;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"-o", "--output"},
+    description = "file to write the results to; defaults to tls.csv"
+  )
+  public String output = "tls.csv";
+
+  private static final String ROW_FORMAT = "%-32s %-14s %10s %8s %8s %8s %10s%n";
+  // the plaintext of a bulk record, as much as a TLS record carries
+  private static final int RECORD = 16 * 1024;
+
+  @Override
+  public void run() {
+    URI target = URI.create(url);
+    String host = target.getHost();
+    int port = target.getPort() == -1 ? 443 : target.getPort();
+    List<String> settings = ciphers.isEmpty() ? Collections.singletonList(null) : ciphers;
+
+    System.out.printf(
+        ROW_FORMAT, "cipher", "measure", "count", "p50 ms", "p99 ms", "max ms", "MB/s");
+    try (CSVWriter writer = new CSVWriter(new FileWriter(output))) {
+      writer.writeNext(
+          new String[] {
+            "Cipher", "Protocol", "Measure", "Count", "p50", "p99", "Max", "Throughput", "Resumed"
+          });
+      for (String cipher : settings) {
+        // a context of its own, so sessions of another cipher aren't resumed
+        SSLContext client = context(null);
+        Handshakes full = handshake(client, host, port, cipher, false);
+        Handshakes resumed = handshake(client, host, port, cipher, true);
+        String name = cipher == null ? full.cipher : cipher;
+        write(writer, name, full, "full handshake");
+        write(writer, name, resumed, "resumed");
+        // a server without a session cache, or tls 1.3, hands out a new session every time
+        System.out.println(
+            "  ["
+                + resumed.resumed
+                + "] of ["
+                + handshakes
+                + "] resumed handshakes kept the session they started from");
+
+        if (keystore != null) {
+          double rate = bulk(cipher);
+          System.out.printf(
+              ROW_FORMAT, name, "bulk", "", "", "", "", String.format(Locale.ROOT, "%.1f", rate));
+          writer.writeNext(
+              new String[] {
+                name,
+                full.protocol,
+                "bulk",
+                String.valueOf(bulkMb),
+                "",
+                "",
+                "",
+                String.format(Locale.ROOT, "%.2f", rate),
+                ""
+              });
+        }
+      }
+    } catch (IOException | GeneralSecurityException e) {
+      throw new RuntimeException(e);
+    }
+    System.out.println("Wrote the results to [" + output + "]");
+  }
+
+  /**
+   * makes the handshakes of one kind; resumed ones start from a session the context already has,
+   * full ones invalidate theirs so the next can't resume it
+   */
+  private Handshakes handshake(
+      SSLContext context, String host, int port, String cipher, boolean resume) throws IOException {
+    Handshakes result = new Handshakes();
+    byte[] first = null;
+    if (resume) {
+      // the session the resumed handshakes start from
+      first = connect(context, host, port, cipher, result).getId();
+    }
+    for (int i = 0; i < handshakes; i++) {
+      long start = System.nanoTime();
+      SSLSession session = connect(context, host, port, cipher, result);
+      result.latency.recordValue(System.nanoTime() - start);
+      if (resume) {
+        if (Arrays.equals(first, session.getId())) result.resumed++;
+      } else {
+        session.invalidate();
+      }
+    }
+    return result;
+  }
+
+  private SSLSession connect(
+      SSLContext context, String host, int port, String cipher, Handshakes result)
+      throws IOException {
+    try (SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket(host, port)) {
+      if (!protocols.isEmpty()) socket.setEnabledProtocols(protocols.toArray(new String[0]));
+      if (cipher != null) socket.setEnabledCipherSuites(new String[] {cipher});
+      socket.startHandshake();
+      SSLSession session = socket.getSession();
+      result.cipher = session.getCipherSuite();
+      result.protocol = session.getProtocol();
+      return session;
+    }
+  }
+
+  /**
+   * encrypts and decrypts {@code --bulk-mb} between a client and a server engine in this process,
+   * in megabytes per second
+   */
+  private double bulk(String cipher) throws IOException, GeneralSecurityException {
+    SSLEngine client = context(null).createSSLEngine("localhost", 0);
+    client.setUseClientMode(true);
+    SSLEngine server = context(serverKeys()).createSSLEngine();
+    server.setUseClientMode(false);
+    for (SSLEngine engine : Arrays.asList(client, server)) {
+      if (!protocols.isEmpty()) engine.setEnabledProtocols(protocols.toArray(new String[0]));
+      if (cipher != null) engine.setEnabledCipherSuites(new String[] {cipher});
+    }
+
+    int packet = Math.max(client.getSession().getPacketBufferSize(), RECORD + 1024);
+    int application = Math.max(server.getSession().getApplicationBufferSize(), RECORD + 1024);
+    ByteBuffer toServer = ByteBuffer.allocate(packet);
+    ByteBuffer toClient = ByteBuffer.allocate(packet);
+    ByteBuffer clientIn = ByteBuffer.allocate(application);
+    ByteBuffer serverIn = ByteBuffer.allocate(application);
+    handshake(client, server, toServer, toClient, clientIn, serverIn);
+
+    byte[] random = new byte[RECORD];
+    new SecureRandom().nextBytes(random);
+    ByteBuffer plain = ByteBuffer.wrap(random);
+    long total = (long) bulkMb << 20;
+    long sent = 0;
+    long start = System.nanoTime();
+    while (sent < total) {
+      plain.clear();
+      toServer.clear();
+      SSLEngineResult wrapped = check(client.wrap(plain, toServer), "encrypting");
+      sent += wrapped.bytesConsumed();
+      toServer.flip();
+      serverIn.clear();
+      check(server.unwrap(toServer, serverIn), "decrypting");
+    }
+    double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+    return sent / seconds / (1 << 20);
+  }
+
+  /** fails unless an engine took a whole record, which the buffers are sized for */
+  private static SSLEngineResult check(SSLEngineResult result, String what) throws SSLException {
+    if (result.getStatus() != SSLEngineResult.Status.OK || result.bytesConsumed() == 0) {
+      throw new SSLException(what + " a record failed: " + result);
+    }
+    return result;
+  }
+
+  /**
+   * passes the handshake records between two engines until neither has more to say, failing if
+   * either closes or a round goes by without either of them moving
+   */
+  private static void handshake(
+      SSLEngine client,
+      SSLEngine server,
+      ByteBuffer toServer,
+      ByteBuffer toClient,
+      ByteBuffer clientIn,
+      ByteBuffer serverIn)
+      throws SSLException {
+    ByteBuffer empty = ByteBuffer.allocate(0);
+    client.beginHandshake();
+    server.beginHandshake();
+    while (handshaking(client) || handshaking(server)) {
+      long moved = moved(client.wrap(empty, toServer)) + runTasks(client);
+      moved += moved(server.wrap(empty, toClient)) + runTasks(server);
+
+      toServer.flip();
+      moved += moved(server.unwrap(toServer, serverIn));
+      toServer.compact();
+      moved += runTasks(server);
+
+      toClient.flip();
+      moved += moved(client.unwrap(toClient, clientIn));
+      toClient.compact();
+      moved += runTasks(client);
+
+      if (moved == 0) {
+        throw new SSLException(
+            "the handshake stalled, client ["
+                + client.getHandshakeStatus()
+                + "] server ["
+                + server.getHandshakeStatus()
+                + "]");
+      }
+    }
+  }
+
+  /** the bytes a step of the handshake took and gave */
+  private static long moved(SSLEngineResult result) throws SSLException {
+    if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+      throw new SSLException("the engine closed during the handshake: " + result);
+    }
+    return result.bytesConsumed() + result.bytesProduced();
+  }
+
+  private static boolean handshaking(SSLEngine engine) {
+    SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+    return status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+        && status != SSLEngineResult.HandshakeStatus.FINISHED;
+  }
+
+  /** runs the tasks an engine delegated, returning how many */
+  private static int runTasks(SSLEngine engine) {
+    int tasks = 0;
+    Runnable task;
+    while ((task = engine.getDelegatedTask()) != null) {
+      task.run();
+      tasks++;
+    }
+    return tasks;
+  }
+
+  private KeyManagerFactory serverKeys() throws IOException, GeneralSecurityException {
+    KeyStore store = KeyStore.getInstance(KeyStore.getDefaultType());
+    try (InputStream in = new FileInputStream(keystore)) {
+      store.load(in, keystorePassword.toCharArray());
+    }
+    KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keys.init(store, keystorePassword.toCharArray());
+    return keys;
+  }
+
+  /** a new context, with the keys given or trusting every certificate as a client */
+  private SSLContext context(KeyManagerFactory keys) {
+    try {
+      SSLContext context =
+          tlsProvider == null
+              ? SSLContext.getInstance("TLS")
+              : SSLContext.getInstance("TLS", tlsProvider);
+      if (keys == null) {
+        context.init(null, new TrustManager[] {ClientTls.trustManager()}, null);
+      } else {
+        context.init(keys.getKeyManagers(), null, null);
+      }
+      return context;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalArgumentException("can't set tls up with [" + tlsProvider + "]", e);
+    }
+  }
+
+  private static void write(CSVWriter writer, String cipher, Handshakes result, String measure) {
+    Histogram latency = result.latency;
+    String[] row = {
+      cipher,
+      measure,
+      String.valueOf(latency.getTotalCount()),
+      millis(latency.getValueAtPercentile(50)),
+      millis(latency.getValueAtPercentile(99)),
+      millis(latency.getMaxValue()),
+      ""
+    };
+    System.out.printf(ROW_FORMAT, (Object[]) row);
+    writer.writeNext(
+        new String[] {
+          cipher,
+          result.protocol,
+          measure,
+          row[2],
+          row[3],
+          row[4],
+          row[5],
+          "",
+          String.valueOf(result.resumed)
+        });
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+
+  /** the handshakes of one kind and what they negotiated */
+  private static class Handshakes {
+    private final Histogram latency = new Histogram(3);
+    private int resumed;
+    private String cipher;
+    private String protocol;
+  }
+}
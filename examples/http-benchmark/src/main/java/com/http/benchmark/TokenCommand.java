@@ -0,0 +1,66 @@
+package com.http.benchmark;
+
+import com.http2.api.BearerTokens;
+import io.airlift.airline.Command;
+import io.airlift.airline.Option;
+import io.airlift.airline.OptionType;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Issues a bearer token the service accepts when its authentication is enabled, to be passed to
+ * the other commands with {@code --bearer}.
+ */
+@Command(name = "token", description = "Writes a signed bearer token for the service to a file")
+public class TokenCommand implements Runnable {
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--secret"},
+    description = "the secret the service verifies tokens with",
+    required = true
+  )
+  public String secret;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--subject"},
+    description = "the tenant the token is issued to; defaults to benchmark"
+  )
+  public String subject = "benchmark";
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"--ttl"},
+    description = "seconds until the token expires; defaults to a day"
+  )
+  public long ttl = 86400;
+
+  @Option(
+    type = OptionType.COMMAND,
+    name = {"-o", "--output"},
+    description = "file to write the token to; printed when not set"
+  )
+  public String output;
+
+  @Override
+  public void run() {
+    long expiresAt = System.currentTimeMillis() / 1000 + ttl;
+    String token = new BearerTokens(secret).sign(subject, expiresAt);
+
+    if (output == null) {
+      System.out.println(token);
+      return;
+    }
+
+    try (Writer writer = new FileWriter(output)) {
+      writer.write(token);
+      writer.write(System.lineSeparator());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    System.out.println("Wrote a token for [" + subject + "] to file [" + output + "]");
+  }
+}
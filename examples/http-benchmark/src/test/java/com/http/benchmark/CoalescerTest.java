@@ -0,0 +1,145 @@
+package com.http.benchmark;
+
+import com.http2.api.Entity;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CoalescerTest {
+
+  private final BlockingQueue<Batch> sent = new LinkedBlockingQueue<>();
+  private Coalescer coalescer;
+
+  @After
+  public void close() {
+    if (coalescer != null) coalescer.close();
+  }
+
+  @Test
+  public void test_Add_FlushesAtMaxBatch() {
+    coalescer = coalescer(3, 1, TimeUnit.HOURS);
+
+    coalescer.add(entity("a"));
+    coalescer.add(entity("b"));
+    assertTrue(sent.isEmpty());
+    coalescer.add(entity("c"));
+
+    assertEquals(1, sent.size());
+    assertEquals(Arrays.asList("a", "b", "c"), sent.poll().names());
+  }
+
+  @Test
+  public void test_Add_ZeroLingerSendsEachEntity() {
+    coalescer = coalescer(10, 0, TimeUnit.MILLISECONDS);
+
+    coalescer.add(entity("a"));
+    coalescer.add(entity("b"));
+
+    assertEquals(2, sent.size());
+    assertEquals(Arrays.asList("a"), sent.poll().names());
+    assertEquals(Arrays.asList("b"), sent.poll().names());
+  }
+
+  @Test
+  public void test_Add_FlushesAfterLinger() throws InterruptedException {
+    coalescer = coalescer(10, 50, TimeUnit.MILLISECONDS);
+
+    long start = System.nanoTime();
+    coalescer.add(entity("a"));
+    coalescer.add(entity("b"));
+    Batch batch = sent.poll(5, TimeUnit.SECONDS);
+
+    assertNotNull(batch);
+    assertTrue(batch.sentAt - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    assertEquals(Arrays.asList("a", "b"), batch.names());
+    assertTrue(batch.addedAt[0] <= batch.addedAt[1]);
+    assertTrue(batch.sentAt - batch.addedAt[0] >= TimeUnit.MILLISECONDS.toNanos(50));
+  }
+
+  @Test
+  public void test_Add_StaleLingerDoesNotSendNextBatch() throws InterruptedException {
+    coalescer = coalescer(2, 200, TimeUnit.MILLISECONDS);
+
+    synchronized (coalescer) {
+      coalescer.add(entity("a"));
+      // the linger of the first batch fires meanwhile, and waits for the lock
+      Thread.sleep(300);
+      coalescer.add(entity("b"));
+      coalescer.add(entity("c"));
+    }
+    assertEquals(Arrays.asList("a", "b"), sent.poll().names());
+
+    // had the stale linger flushed, c would go out now rather than 200ms after it was added
+    assertNull(sent.poll(100, TimeUnit.MILLISECONDS));
+    Batch batch = sent.poll(5, TimeUnit.SECONDS);
+    assertNotNull(batch);
+    assertEquals(Arrays.asList("c"), batch.names());
+  }
+
+  @Test
+  public void test_Flush_SendsPending() {
+    coalescer = coalescer(10, 1, TimeUnit.HOURS);
+    coalescer.add(entity("a"));
+
+    coalescer.flush();
+    coalescer.flush();
+
+    assertEquals(1, sent.size());
+    assertEquals(Arrays.asList("a"), sent.poll().names());
+  }
+
+  @Test
+  public void test_Close_SendsPending() {
+    coalescer = coalescer(10, 1, TimeUnit.HOURS);
+    coalescer.add(entity("a"));
+
+    coalescer.close();
+
+    assertEquals(Arrays.asList("a"), sent.poll().names());
+  }
+
+  private Coalescer coalescer(int maxBatch, long linger, TimeUnit unit) {
+    return new Coalescer(
+        maxBatch,
+        linger,
+        unit,
+        (entities, addedAt) -> sent.add(new Batch(entities, addedAt, System.nanoTime())));
+  }
+
+  private static Entity entity(String name) {
+    Entity entity = new Entity();
+    entity.setName(name);
+    return entity;
+  }
+
+  private static class Batch {
+    private final List<Entity> entities;
+    private final long[] addedAt;
+    private final long sentAt;
+
+    Batch(List<Entity> entities, long[] addedAt, long sentAt) {
+      this.entities = entities;
+      this.addedAt = addedAt;
+      this.sentAt = sentAt;
+    }
+
+    List<String> names() {
+      List<String> names = new ArrayList<>();
+      for (Entity entity : entities) {
+        names.add(entity.getName());
+      }
+      return names;
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package com.http.benchmark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompareResultsTest {
+
+  @Test
+  public void test_IsTestable_TooFewRepetitions() {
+    // three repetitions apart by 10x still only reach p = 0.1
+    double p = Statistics.mannWhitneyU(new double[] {1, 2, 3}, new double[] {10, 20, 30});
+
+    assertFalse(CompareResults.isTestable(p, 3, 3, 0.05));
+    assertTrue(CompareResults.isTestable(p, 3, 3, 0.2));
+  }
+
+  @Test
+  public void test_IsTestable_EnoughRepetitions() {
+    double p =
+        Statistics.mannWhitneyU(new double[] {1, 2, 3, 4, 5}, new double[] {6, 7, 8, 9, 10});
+
+    assertTrue(CompareResults.isTestable(p, 5, 5, 0.05));
+  }
+
+  @Test
+  public void test_IsTestable_SingleRepetition() {
+    assertFalse(CompareResults.isTestable(Double.NaN, 1, 1, 0.05));
+  }
+}
@@ -0,0 +1,65 @@
+package com.http.benchmark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StatisticsTest {
+
+  @Test
+  public void test_MannWhitneyU_SeparatedSamples() {
+    double p =
+        Statistics.mannWhitneyU(new double[] {1, 2, 3, 4, 5}, new double[] {6, 7, 8, 9, 10});
+
+    // exact: 2 of the 252 orderings are at least this extreme
+    assertEquals(2.0 / 252, p, 1e-9);
+  }
+
+  @Test
+  public void test_MannWhitneyU_InterleavedSamples() {
+    double p =
+        Statistics.mannWhitneyU(new double[] {1, 3, 5, 7, 9}, new double[] {2, 4, 6, 8, 10});
+
+    assertEquals(0.6905, p, 1e-4);
+  }
+
+  @Test
+  public void test_MannWhitneyU_IdenticalSamplesWithTies() {
+    double p =
+        Statistics.mannWhitneyU(new double[] {5, 5, 6, 7}, new double[] {5, 5, 6, 7});
+
+    assertTrue(p > 0.99);
+  }
+
+  @Test
+  public void test_MannWhitneyU_LargeSamples() {
+    double[] before = new double[30];
+    double[] after = new double[30];
+    for (int i = 0; i < before.length; i++) {
+      before[i] = i;
+      after[i] = i + 10;
+    }
+
+    assertTrue(Statistics.mannWhitneyU(before, after) < 0.001);
+  }
+
+  @Test
+  public void test_MannWhitneyU_EmptySample() {
+    assertTrue(Double.isNaN(Statistics.mannWhitneyU(new double[0], new double[] {1})));
+  }
+
+  @Test
+  public void test_MinimumP_FewRepetitions() {
+    assertEquals(1.0 / 3, Statistics.minimumP(2, 2), 1e-9);
+    assertEquals(0.1, Statistics.minimumP(3, 3), 1e-9);
+    assertEquals(2.0 / 252, Statistics.minimumP(5, 5), 1e-9);
+  }
+
+  @Test
+  public void test_MinimumP_ReachedBySeparatedSamples() {
+    double p = Statistics.mannWhitneyU(new double[] {1, 2, 3}, new double[] {10, 20, 30});
+
+    assertEquals(Statistics.minimumP(3, 3), p, 1e-9);
+  }
+}
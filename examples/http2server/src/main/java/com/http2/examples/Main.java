@@ -1,11 +1,36 @@
 package com.http2.examples;
 
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.http2.api.EntityBatch;
+import com.http2.examples.admission.AdmissionFilter;
+import com.http2.examples.auth.AuthFilter;
+import com.http2.examples.cache.ResponseCache;
+import com.http2.examples.compact.AllocationFilter;
+import com.http2.examples.compact.EntityBatchDeserializer;
+import com.http2.examples.compact.EntityBatchReader;
+import com.http2.examples.dedup.DuplicateFilter;
+import com.http2.examples.drain.ConnectionDrainer;
+import com.http2.examples.drain.DrainTask;
+import com.http2.examples.drain.ResumeTask;
+import com.http2.examples.headers.HeaderMetricsFilter;
+import com.http2.examples.ingest.IngestPipeline;
+import com.http2.examples.parts.PartProcessor;
+import com.http2.examples.performance.ServerTuning;
+import com.http2.examples.ratelimit.RateLimitFilter;
+import com.http2.examples.ratelimit.RateLimiter;
+import com.http2.examples.scaleout.ScaleOutCommand;
 import com.http2.examples.resources.Http2Resource;
+import com.http2.examples.resources.StatsResource;
 import io.dropwizard.Application;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import org.glassfish.jersey.media.multipart.MultiPartFeature;
 
+import javax.servlet.DispatcherType;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+
 public class Main extends Application<MainConfiguration> {
 
   public static void main(final String[] args) throws Exception {
@@ -19,14 +44,121 @@ public class Main extends Application<MainConfiguration> {
 
   @Override
   public void initialize(final Bootstrap<MainConfiguration> bootstrap) {
-    // TODO: application initialization
+    // lets the compact upload endpoint read its body straight into columns
+    bootstrap
+        .getObjectMapper()
+        .registerModule(
+            new SimpleModule("compact")
+                .addDeserializer(EntityBatch.class, new EntityBatchDeserializer()));
+    bootstrap.addCommand(new ScaleOutCommand());
   }
 
   @Override
   public void run(MainConfiguration configuration, Environment environment) throws Exception {
-      final Http2Resource resource = new Http2Resource();
+      ServerTuning.apply(configuration.getPerformance(), configuration.getServerFactory());
+      environment
+          .lifecycle()
+          .addServerLifecycleListener(
+              server ->
+                  ServerTuning.applySessions(configuration.getPerformance().getTls(), server));
+
+      final IngestPipeline ingest =
+          new IngestPipeline(configuration.getIngest(), environment.metrics());
+      environment.lifecycle().manage(ingest);
+
+      if (configuration.getDrain().isEnabled()) {
+          // first of the filters, so a draining instance turns streams away before doing any work
+          final ConnectionDrainer drainer =
+              new ConnectionDrainer(configuration.getDrain(), environment.metrics());
+          environment.lifecycle().manage(drainer);
+          environment.lifecycle().addServerLifecycleListener(drainer::watch);
+          environment
+              .servlets()
+              .addFilter("drain", drainer)
+              .addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), true, "/http2/*");
+          environment.admin().addTask(new DrainTask(drainer));
+          environment.admin().addTask(new ResumeTask(drainer));
+      }
+
+      if (configuration.getHeaderMetrics().isEnabled()) {
+          // ahead of auth, so the headers of requests it turns away are counted too
+          environment
+              .servlets()
+              .addFilter("header-metrics", new HeaderMetricsFilter(environment.metrics()))
+              .addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), true, "/http2/*");
+      }
+
+      // filters run in the order they are registered: unauthenticated requests are turned away
+      // first, then tenants over their limit, so neither takes an admission slot from the others
+      if (configuration.getAuth().isEnabled()) {
+          environment
+              .servlets()
+              .addFilter("auth", new AuthFilter(configuration.getAuth(), environment.metrics()))
+              .addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), true, "/http2/*");
+      }
+
+      if (configuration.getRateLimit().isEnabled()) {
+          final RateLimiter limiter =
+              new RateLimiter(configuration.getRateLimit(), environment.metrics());
+          environment.lifecycle().manage(limiter);
+          environment
+              .servlets()
+              .addFilter("rate-limit", new RateLimitFilter(limiter))
+              .addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), true, "/http2/*");
+      }
+
+      if (configuration.getAdmission().isEnabled()) {
+          // in front of the resources, so rejected requests never have their bodies read
+          environment
+              .servlets()
+              .addFilter(
+                  "admission",
+                  new AdmissionFilter(
+                      configuration.getAdmission(),
+                      ingest,
+                      new HashSet<>(Arrays.asList("/http2/ndjson", "/http2/duplex")),
+                      environment.metrics()))
+              .addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), true, "/http2/*");
+      }
+
+      if (AllocationFilter.isSupported()) {
+          // registered last, so it only sees what the resources allocate
+          environment
+              .servlets()
+              .addFilter("allocation", new AllocationFilter(environment.metrics()))
+              .addMappingForUrlPatterns(
+                  EnumSet.of(DispatcherType.REQUEST),
+                  true,
+                  "/http2/payload",
+                  "/http2/payload/compact",
+                  "/http2/payload/binary");
+      }
+
+      DuplicateFilter dedup = null;
+      if (configuration.getDedup().isEnabled()) {
+          dedup = new DuplicateFilter(configuration.getDedup(), environment.metrics());
+          environment.lifecycle().manage(dedup);
+      }
+
+      final PartProcessor parts =
+          new PartProcessor(configuration.getParts(), environment.metrics());
+      environment.lifecycle().manage(parts);
+
+      final Http2Resource resource =
+          new Http2Resource(ingest, dedup, parts, environment.getObjectMapper());
       environment.jersey().register(resource);
+
+      final ResponseCache cache =
+          configuration.getResponseCache().isEnabled()
+              ? new ResponseCache(configuration.getResponseCache(), environment.metrics())
+              : null;
+      environment
+          .jersey()
+          .register(
+              new StatsResource(
+                  ingest, cache, environment.getObjectMapper(), environment.metrics()));
       environment.jersey().register(MultiPartFeature.class);
+      environment.jersey().register(new EntityBatchReader());
       environment.getApplicationContext().setMaxFormContentSize(50 * 100000);
   }
 }
@@ -1,7 +1,160 @@
 package com.http2.examples;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.http2.examples.admission.AdmissionConfiguration;
+import com.http2.examples.auth.AuthConfiguration;
+import com.http2.examples.cache.CacheConfiguration;
+import com.http2.examples.dedup.DedupConfiguration;
+import com.http2.examples.drain.DrainConfiguration;
+import com.http2.examples.headers.HeaderMetricsConfiguration;
+import com.http2.examples.ingest.IngestConfiguration;
+import com.http2.examples.parts.PartsConfiguration;
+import com.http2.examples.performance.PerformanceConfiguration;
+import com.http2.examples.ratelimit.RateLimitConfiguration;
 import io.dropwizard.Configuration;
 
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
 public class MainConfiguration extends Configuration {
-    // TODO: implement service configuration
+
+    @Valid
+    @NotNull
+    private IngestConfiguration ingest = new IngestConfiguration();
+
+    @Valid
+    @NotNull
+    private AdmissionConfiguration admission = new AdmissionConfiguration();
+
+    @Valid
+    @NotNull
+    private RateLimitConfiguration rateLimit = new RateLimitConfiguration();
+
+    @Valid
+    @NotNull
+    private AuthConfiguration auth = new AuthConfiguration();
+
+    @Valid
+    @NotNull
+    private CacheConfiguration responseCache = new CacheConfiguration();
+
+    @Valid
+    @NotNull
+    private DedupConfiguration dedup = new DedupConfiguration();
+
+    @Valid
+    @NotNull
+    private PerformanceConfiguration performance = new PerformanceConfiguration();
+
+    @Valid
+    @NotNull
+    private DrainConfiguration drain = new DrainConfiguration();
+
+    @Valid
+    @NotNull
+    private PartsConfiguration parts = new PartsConfiguration();
+
+    @Valid
+    @NotNull
+    private HeaderMetricsConfiguration headerMetrics = new HeaderMetricsConfiguration();
+
+    @JsonProperty
+    public IngestConfiguration getIngest() {
+        return ingest;
+    }
+
+    @JsonProperty
+    public void setIngest(IngestConfiguration ingest) {
+        this.ingest = ingest;
+    }
+
+    @JsonProperty
+    public AdmissionConfiguration getAdmission() {
+        return admission;
+    }
+
+    @JsonProperty
+    public void setAdmission(AdmissionConfiguration admission) {
+        this.admission = admission;
+    }
+
+    @JsonProperty
+    public RateLimitConfiguration getRateLimit() {
+        return rateLimit;
+    }
+
+    @JsonProperty
+    public void setRateLimit(RateLimitConfiguration rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    @JsonProperty
+    public AuthConfiguration getAuth() {
+        return auth;
+    }
+
+    @JsonProperty
+    public void setAuth(AuthConfiguration auth) {
+        this.auth = auth;
+    }
+
+    @JsonProperty
+    public CacheConfiguration getResponseCache() {
+        return responseCache;
+    }
+
+    @JsonProperty
+    public void setResponseCache(CacheConfiguration responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    @JsonProperty
+    public DedupConfiguration getDedup() {
+        return dedup;
+    }
+
+    @JsonProperty
+    public void setDedup(DedupConfiguration dedup) {
+        this.dedup = dedup;
+    }
+
+    @JsonProperty
+    public PerformanceConfiguration getPerformance() {
+        return performance;
+    }
+
+    @JsonProperty
+    public void setPerformance(PerformanceConfiguration performance) {
+        this.performance = performance;
+    }
+
+    @JsonProperty
+    public DrainConfiguration getDrain() {
+        return drain;
+    }
+
+    @JsonProperty
+    public void setDrain(DrainConfiguration drain) {
+        this.drain = drain;
+    }
+
+    @JsonProperty
+    public PartsConfiguration getParts() {
+        return parts;
+    }
+
+    @JsonProperty
+    public void setParts(PartsConfiguration parts) {
+        this.parts = parts;
+    }
+
+    @JsonProperty
+    public HeaderMetricsConfiguration getHeaderMetrics() {
+        return headerMetrics;
+    }
+
+    @JsonProperty
+    public void setHeaderMetrics(HeaderMetricsConfiguration headerMetrics) {
+        this.headerMetrics = headerMetrics;
+    }
 }
@@ -0,0 +1,124 @@
+package com.http2.examples.admission;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/** Configures the {@link AdmissionFilter} in front of the upload endpoints. */
+public class AdmissionConfiguration {
+
+  private boolean enabled = true;
+
+  /** requests allowed in flight when the service starts, before any latency has been measured */
+  @Min(1)
+  private int initialLimit = 64;
+
+  @Min(1)
+  private int minLimit = 8;
+
+  /** there is no point going past the streams a connection may open */
+  @Min(1)
+  private int maxLimit = 1024;
+
+  /** how far the limit moves towards a new estimate on each request, between 0 and 1 */
+  @DecimalMin("0.0")
+  @DecimalMax("1.0")
+  private double smoothing = 0.2;
+
+  /** fraction of the max heap in use above which new requests are turned away */
+  @DecimalMin("0.0")
+  @DecimalMax("1.0")
+  private double maxHeapUsage = 0.85;
+
+  /** fraction of the ingest queue in use above which new requests are turned away */
+  @DecimalMin("0.0")
+  @DecimalMax("1.0")
+  private double maxQueueUsage = 0.9;
+
+  /** sent as the Retry-After of a rejected request */
+  @NotNull private Duration retryAfter = Duration.seconds(1);
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @JsonProperty
+  public int getInitialLimit() {
+    return initialLimit;
+  }
+
+  @JsonProperty
+  public void setInitialLimit(int initialLimit) {
+    this.initialLimit = initialLimit;
+  }
+
+  @JsonProperty
+  public int getMinLimit() {
+    return minLimit;
+  }
+
+  @JsonProperty
+  public void setMinLimit(int minLimit) {
+    this.minLimit = minLimit;
+  }
+
+  @JsonProperty
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+
+  @JsonProperty
+  public void setMaxLimit(int maxLimit) {
+    this.maxLimit = maxLimit;
+  }
+
+  @JsonProperty
+  public double getSmoothing() {
+    return smoothing;
+  }
+
+  @JsonProperty
+  public void setSmoothing(double smoothing) {
+    this.smoothing = smoothing;
+  }
+
+  @JsonProperty
+  public double getMaxHeapUsage() {
+    return maxHeapUsage;
+  }
+
+  @JsonProperty
+  public void setMaxHeapUsage(double maxHeapUsage) {
+    this.maxHeapUsage = maxHeapUsage;
+  }
+
+  @JsonProperty
+  public double getMaxQueueUsage() {
+    return maxQueueUsage;
+  }
+
+  @JsonProperty
+  public void setMaxQueueUsage(double maxQueueUsage) {
+    this.maxQueueUsage = maxQueueUsage;
+  }
+
+  @JsonProperty
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+
+  @JsonProperty
+  public void setRetryAfter(Duration retryAfter) {
+    this.retryAfter = retryAfter;
+  }
+}
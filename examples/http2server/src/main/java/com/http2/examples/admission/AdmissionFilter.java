@@ -0,0 +1,153 @@
+package com.http2.examples.admission;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.http2.examples.ingest.IngestPipeline;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether a request gets in before anything has read its body, so a burst is turned away
+ * while it is still cheap to do so instead of being materialized in the heap. A request is rejected
+ * with a 503 and a Retry-After when the requests in flight are at the {@link GradientLimit}, when
+ * the heap is nearly full, or when the ingest queue is nearly full. The latency of a request is
+ * judged against others of its method and path, so cheap reads don't make uploads look slow.
+ *
+ * <p>Requests to the streaming paths given take a slot like any other, for as long as they last,
+ * but their latency isn't sampled: it is how long a client kept its upload open, not how loaded the
+ * service is, and it would keep the limit from growing.
+ */
+public class AdmissionFilter implements Filter {
+
+  // reading the heap usage isn't free, so it is only read this often
+  private static final long HEAP_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final AdmissionConfiguration config;
+  private final IngestPipeline ingest;
+  private final GradientLimit limit;
+  private final Set<String> streaming;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+  private final String retryAfter;
+
+  private final Meter admitted;
+  private final Meter rejectedLimit;
+  private final Meter rejectedHeap;
+  private final Meter rejectedQueue;
+
+  private volatile double heapUsage;
+  private volatile long heapSampled = System.nanoTime() - HEAP_SAMPLE_NANOS;
+
+  /** @param streaming the paths of long lived uploads, whose latency isn't sampled */
+  public AdmissionFilter(
+      AdmissionConfiguration config,
+      IngestPipeline ingest,
+      Set<String> streaming,
+      MetricRegistry metrics) {
+    this.config = config;
+    this.ingest = ingest;
+    this.streaming = streaming;
+    this.limit =
+        new GradientLimit(
+            config.getInitialLimit(),
+            config.getMinLimit(),
+            config.getMaxLimit(),
+            config.getSmoothing());
+    this.retryAfter = String.valueOf(Math.max(1, config.getRetryAfter().toSeconds()));
+
+    this.admitted = metrics.meter(MetricRegistry.name(AdmissionFilter.class, "admitted"));
+    this.rejectedLimit =
+        metrics.meter(MetricRegistry.name(AdmissionFilter.class, "rejected", "limit"));
+    this.rejectedHeap =
+        metrics.meter(MetricRegistry.name(AdmissionFilter.class, "rejected", "heap"));
+    this.rejectedQueue =
+        metrics.meter(MetricRegistry.name(AdmissionFilter.class, "rejected", "queue"));
+    metrics.register(
+        MetricRegistry.name(AdmissionFilter.class, "limit"), (Gauge<Integer>) limit::getLimit);
+    metrics.register(
+        MetricRegistry.name(AdmissionFilter.class, "in-flight"), (Gauge<Integer>) inFlight::get);
+  }
+
+  @Override
+  public void init(FilterConfig filterConfig) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    Meter rejected = admit();
+    if (rejected != null) {
+      rejected.mark();
+      HttpServletResponse http = (HttpServletResponse) response;
+      http.setHeader("Retry-After", retryAfter);
+      http.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+
+    admitted.mark();
+    int started = inFlight.get();
+    long start = System.nanoTime();
+    boolean dropped = true;
+    try {
+      chain.doFilter(request, response);
+      dropped = ((HttpServletResponse) response).getStatus() >= 500;
+    } finally {
+      inFlight.decrementAndGet();
+      String path = path((HttpServletRequest) request);
+      if (dropped) {
+        limit.onDropped();
+      } else if (!streaming.contains(path)) {
+        limit.onSample(
+            ((HttpServletRequest) request).getMethod() + " " + path,
+            System.nanoTime() - start,
+            started);
+      }
+    }
+  }
+
+  @Override
+  public void destroy() {}
+
+  /** the path of a request; with its method, the class of requests its latency is compared to */
+  private static String path(HttpServletRequest request) {
+    String path = request.getServletPath();
+    return request.getPathInfo() == null ? path : path + request.getPathInfo();
+  }
+
+  /** takes a slot for the request, or returns the meter of the reason it was rejected */
+  private Meter admit() {
+    if (heapUsage() > config.getMaxHeapUsage()) return rejectedHeap;
+    if (ingest.getQueueUsage() > config.getMaxQueueUsage()) return rejectedQueue;
+
+    while (true) {
+      int current = inFlight.get();
+      if (current >= limit.getLimit()) return rejectedLimit;
+      if (inFlight.compareAndSet(current, current + 1)) return null;
+    }
+  }
+
+  private double heapUsage() {
+    long now = System.nanoTime();
+    if (now - heapSampled >= HEAP_SAMPLE_NANOS) {
+      MemoryUsage heap = memory.getHeapMemoryUsage();
+      long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+      heapUsage = heap.getUsed() / (double) max;
+      heapSampled = now;
+    }
+    return heapUsage;
+  }
+}
@@ -0,0 +1,88 @@
+package com.http2.examples.admission;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A concurrency limit that adapts to the latency of the requests it lets through. It keeps a slow
+ * moving average of the latency as the baseline, and compares every request to it: while requests
+ * take about as long as the baseline the limit grows by roughly its square root, and once they take
+ * longer, which is what queueing inside the service looks like, the limit shrinks by the ratio of
+ * the two (but never by more than half at once).
+ *
+ * <p>A sample only grows the limit when the service was using at least half of it, otherwise a
+ * quiet period would let the limit drift up to the max with nothing to back it.
+ *
+ * <p>Endpoints that do very different work take very different times, so a sample is compared to
+ * the baseline of its own class of requests, e.g. its path: a bulk upload is only slow next to
+ * other bulk uploads, not next to a single entity. The limit itself is shared by every class.
+ */
+public class GradientLimit {
+
+  // number of samples the baseline latency is averaged over
+  private static final double BASELINE_WINDOW = 600;
+  // latency can go this far over the baseline before the limit starts shrinking
+  private static final double TOLERANCE = 1.5;
+  // classes of requests with a baseline of their own, those past it share one
+  static final int MAX_CLASSES = 64;
+  static final String OTHER = "other";
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double smoothing;
+
+  private double estimate;
+  private final Map<String, double[]> baselines = new HashMap<>();
+  private volatile int limit;
+
+  public GradientLimit(int initialLimit, int minLimit, int maxLimit, double smoothing) {
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.smoothing = smoothing;
+    this.estimate = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    this.limit = (int) estimate;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * updates the limit with the latency of a request of the class given and the requests in flight
+   * when it started
+   */
+  public synchronized void onSample(String requestClass, long latencyNanos, int inFlight) {
+    if (latencyNanos <= 0) return;
+
+    double[] baseline = baselines.get(requestClass);
+    if (baseline == null) {
+      if (baselines.size() >= MAX_CLASSES) requestClass = OTHER;
+      baseline = baselines.computeIfAbsent(requestClass, c -> new double[1]);
+    }
+    if (baseline[0] == 0) {
+      baseline[0] = latencyNanos;
+    } else {
+      baseline[0] += (latencyNanos - baseline[0]) / BASELINE_WINDOW;
+    }
+
+    double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * baseline[0] / latencyNanos));
+    // a full gradient with the service underused isn't evidence the limit can grow
+    if (gradient == 1.0 && inFlight < estimate / 2) return;
+
+    double target = estimate * gradient + Math.sqrt(estimate);
+    estimate = estimate * (1 - smoothing) + target * smoothing;
+    estimate = Math.max(minLimit, Math.min(maxLimit, estimate));
+
+    // after a stretch of overload the baseline has crept up with the latency; let it come back
+    // down quickly once latency recovers, or the limit would keep growing into the next overload
+    if (baseline[0] > 2 * latencyNanos) baseline[0] *= 0.95;
+
+    limit = (int) estimate;
+  }
+
+  /** shrinks the limit after a request failed in a way that points at overload, e.g. a timeout */
+  public synchronized void onDropped() {
+    estimate = Math.max(minLimit, estimate * 0.9);
+    limit = (int) estimate;
+  }
+}
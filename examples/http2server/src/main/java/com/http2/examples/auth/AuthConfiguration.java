@@ -0,0 +1,103 @@
+package com.http2.examples.auth;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/** Configures the bearer token authentication of the {@link AuthFilter}. */
+public class AuthConfiguration {
+
+  private boolean enabled = false;
+
+  /** the secret tokens are signed with, see {@link com.http2.api.BearerTokens} */
+  private String secret;
+
+  /**
+   * time validating a token takes on top of checking its signature, to stand in for a call to an
+   * introspection service
+   */
+  @NotNull private Duration introspectionDelay = Duration.milliseconds(0);
+
+  private boolean cacheEnabled = true;
+
+  @Min(1)
+  private int cacheSize = 10000;
+
+  /** how long a validated token is trusted for before it is validated again */
+  @NotNull private Duration cacheTtl = Duration.minutes(5);
+
+  /** how long a rejected token is remembered before it is validated again */
+  @NotNull private Duration negativeCacheTtl = Duration.seconds(10);
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @JsonProperty
+  public String getSecret() {
+    return secret;
+  }
+
+  @JsonProperty
+  public void setSecret(String secret) {
+    this.secret = secret;
+  }
+
+  @JsonProperty
+  public Duration getIntrospectionDelay() {
+    return introspectionDelay;
+  }
+
+  @JsonProperty
+  public void setIntrospectionDelay(Duration introspectionDelay) {
+    this.introspectionDelay = introspectionDelay;
+  }
+
+  @JsonProperty
+  public boolean isCacheEnabled() {
+    return cacheEnabled;
+  }
+
+  @JsonProperty
+  public void setCacheEnabled(boolean cacheEnabled) {
+    this.cacheEnabled = cacheEnabled;
+  }
+
+  @JsonProperty
+  public int getCacheSize() {
+    return cacheSize;
+  }
+
+  @JsonProperty
+  public void setCacheSize(int cacheSize) {
+    this.cacheSize = cacheSize;
+  }
+
+  @JsonProperty
+  public Duration getCacheTtl() {
+    return cacheTtl;
+  }
+
+  @JsonProperty
+  public void setCacheTtl(Duration cacheTtl) {
+    this.cacheTtl = cacheTtl;
+  }
+
+  @JsonProperty
+  public Duration getNegativeCacheTtl() {
+    return negativeCacheTtl;
+  }
+
+  @JsonProperty
+  public void setNegativeCacheTtl(Duration negativeCacheTtl) {
+    this.negativeCacheTtl = negativeCacheTtl;
+  }
+}
@@ -0,0 +1,95 @@
+package com.http2.examples.auth;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.http2.api.BearerTokens;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Only lets through requests with a valid bearer token, answering a 401 otherwise. Tokens are
+ * checked against their {@link BearerTokens} signature, after an optional delay standing in for an
+ * introspection service, and the outcome is remembered in a {@link TokenCache} unless the cache is
+ * disabled. The subject of the token is set as the {@link #SUBJECT} attribute of the request.
+ */
+public class AuthFilter implements Filter {
+
+  public static final String SUBJECT = AuthFilter.class.getName() + ".subject";
+
+  private static final String BEARER = "Bearer ";
+
+  private final Function<String, String> validator;
+  private final Meter unauthorized;
+
+  public AuthFilter(AuthConfiguration config, MetricRegistry metrics) {
+    if (config.getSecret() == null || config.getSecret().isEmpty()) {
+      throw new IllegalArgumentException("authentication needs a secret to verify tokens with");
+    }
+    BearerTokens tokens = new BearerTokens(config.getSecret());
+    long delay = config.getIntrospectionDelay().toNanoseconds();
+    Function<String, String> introspect =
+        token -> {
+          if (delay > 0) sleep(delay);
+          return tokens.verify(token);
+        };
+
+    if (config.isCacheEnabled()) {
+      TokenCache cache =
+          new TokenCache(
+              introspect,
+              config.getCacheSize(),
+              config.getCacheTtl().toNanoseconds(),
+              config.getNegativeCacheTtl().toNanoseconds(),
+              metrics);
+      this.validator = cache::validate;
+    } else {
+      this.validator = introspect;
+    }
+    this.unauthorized = metrics.meter(MetricRegistry.name(AuthFilter.class, "unauthorized"));
+  }
+
+  @Override
+  public void init(FilterConfig filterConfig) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    String authorization = ((HttpServletRequest) request).getHeader("Authorization");
+    String subject =
+        authorization != null && authorization.startsWith(BEARER)
+            ? validator.apply(authorization.substring(BEARER.length()))
+            : null;
+
+    if (subject == null) {
+      unauthorized.mark();
+      HttpServletResponse http = (HttpServletResponse) response;
+      http.setHeader("WWW-Authenticate", "Bearer");
+      http.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+      return;
+    }
+
+    request.setAttribute(SUBJECT, subject);
+    chain.doFilter(request, response);
+  }
+
+  @Override
+  public void destroy() {}
+
+  private static void sleep(long nanos) {
+    try {
+      TimeUnit.NANOSECONDS.sleep(nanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package com.http2.examples.auth;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.http2.api.BearerTokens;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Remembers the outcome of validating a token, so a token is validated once per TTL instead of on
+ * every request. Entries are futures: the first request for a token validates it, and requests for
+ * the same token that arrive meanwhile wait for that validation instead of starting their own.
+ *
+ * <p>An entry of a valid token expires after the TTL, or when the token does if that is sooner.
+ * Rejected tokens are remembered too, for a shorter TTL of their own, so a client retrying a bad
+ * token doesn't cost a validation each time; nothing a rejected token claims, such as its expiry,
+ * is trusted, since it wasn't verified. When the
+ * cache grows past its size, expired entries are dropped first, then arbitrary ones, until it is
+ * back under 90% of its size; the hash order of the map makes that a random eviction.
+ */
+public class TokenCache {
+
+  private final Function<String, String> validator;
+  private final int maxSize;
+  private final long ttlNanos;
+  private final long negativeTtlNanos;
+  private final ConcurrentMap<String, CompletableFuture<Entry>> entries = new ConcurrentHashMap<>();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  private final Meter hits;
+  private final Meter misses;
+  private final Meter coalesced;
+  private final Meter evictions;
+  private final Timer validation;
+
+  /**
+   * @param validator returns the subject of a token, or null when the token isn't valid
+   * @param ttlNanos how long a valid token is remembered, at most
+   * @param negativeTtlNanos how long a rejected token is remembered
+   */
+  public TokenCache(
+      Function<String, String> validator,
+      int maxSize,
+      long ttlNanos,
+      long negativeTtlNanos,
+      MetricRegistry metrics) {
+    this.validator = validator;
+    this.maxSize = maxSize;
+    this.ttlNanos = ttlNanos;
+    this.negativeTtlNanos = negativeTtlNanos;
+
+    this.hits = metrics.meter(MetricRegistry.name(TokenCache.class, "hits"));
+    this.misses = metrics.meter(MetricRegistry.name(TokenCache.class, "misses"));
+    this.coalesced = metrics.meter(MetricRegistry.name(TokenCache.class, "coalesced"));
+    this.evictions = metrics.meter(MetricRegistry.name(TokenCache.class, "evictions"));
+    this.validation = metrics.timer(MetricRegistry.name(TokenCache.class, "validation"));
+    metrics.register(
+        MetricRegistry.name(TokenCache.class, "size"), (Gauge<Integer>) entries::size);
+  }
+
+  /** the subject of a token, or null when it isn't valid */
+  public String validate(String token) {
+    long now = System.nanoTime();
+    CompletableFuture<Entry> cached = entries.get(token);
+    if (cached != null) {
+      if (!cached.isDone()) {
+        coalesced.mark();
+        return await(cached).subject;
+      }
+      Entry entry = await(cached);
+      if (entry.expiresAt - now > 0) {
+        hits.mark();
+        return entry.subject;
+      }
+      entries.remove(token, cached);
+    }
+
+    CompletableFuture<Entry> mine = new CompletableFuture<>();
+    CompletableFuture<Entry> theirs = entries.putIfAbsent(token, mine);
+    if (theirs != null) {
+      // someone else started validating it since we looked
+      coalesced.mark();
+      return await(theirs).subject;
+    }
+
+    misses.mark();
+    String subject;
+    try (Timer.Context ignored = validation.time()) {
+      subject = validator.apply(token);
+    } catch (RuntimeException e) {
+      // don't remember a failure to validate, the next request tries again
+      entries.remove(token, mine);
+      mine.completeExceptionally(e);
+      throw e;
+    }
+    mine.complete(new Entry(subject, expiresAt(token, subject, now)));
+
+    if (entries.size() > maxSize) evict();
+    return subject;
+  }
+
+  private long expiresAt(String token, String subject, long now) {
+    if (subject == null) return now + negativeTtlNanos;
+    // the token was verified, so its expiry can be trusted
+    long tokenMillis = BearerTokens.expiresAt(token) * 1000 - System.currentTimeMillis();
+    return now + Math.min(ttlNanos, TimeUnit.MILLISECONDS.toNanos(Math.max(0, tokenMillis)));
+  }
+
+  private void evict() {
+    // one thread evicts at a time, the others carry on
+    if (!evicting.compareAndSet(false, true)) return;
+    try {
+      long now = System.nanoTime();
+      int target = (int) (maxSize * 0.9);
+      int before = entries.size();
+      entries.values().removeIf(f -> isExpired(f, now));
+
+      Iterator<CompletableFuture<Entry>> it = entries.values().iterator();
+      while (entries.size() > target && it.hasNext()) {
+        it.next();
+        it.remove();
+      }
+      evictions.mark(Math.max(0, before - entries.size()));
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  private static boolean isExpired(CompletableFuture<Entry> future, long now) {
+    return future.isDone()
+        && !future.isCompletedExceptionally()
+        && future.join().expiresAt - now < 0;
+  }
+
+  private static Entry await(CompletableFuture<Entry> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw e;
+    }
+  }
+
+  private static class Entry {
+    private final String subject;
+    private final long expiresAt;
+
+    Entry(String subject, long expiresAt) {
+      this.subject = subject;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
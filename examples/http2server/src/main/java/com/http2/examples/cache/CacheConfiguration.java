@@ -0,0 +1,74 @@
+package com.http2.examples.cache;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/** Configures the {@link ResponseCache} of the read endpoints. */
+public class CacheConfiguration {
+
+  private boolean enabled = true;
+
+  @NotNull private EvictionPolicy policy = EvictionPolicy.LRU;
+
+  @Min(1)
+  private int maxEntries = 1000;
+
+  @NotNull private Size maxBytes = Size.megabytes(64);
+
+  /** longest a response is served from the cache, even if what it was built from hasn't changed */
+  @NotNull private Duration ttl = Duration.seconds(10);
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @JsonProperty
+  public EvictionPolicy getPolicy() {
+    return policy;
+  }
+
+  @JsonProperty
+  public void setPolicy(EvictionPolicy policy) {
+    this.policy = policy;
+  }
+
+  @JsonProperty
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+
+  @JsonProperty
+  public void setMaxEntries(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  @JsonProperty
+  public Size getMaxBytes() {
+    return maxBytes;
+  }
+
+  @JsonProperty
+  public void setMaxBytes(Size maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  @JsonProperty
+  public Duration getTtl() {
+    return ttl;
+  }
+
+  @JsonProperty
+  public void setTtl(Duration ttl) {
+    this.ttl = ttl;
+  }
+}
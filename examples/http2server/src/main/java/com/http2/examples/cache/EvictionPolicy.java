@@ -0,0 +1,9 @@
+package com.http2.examples.cache;
+
+/** Which response the {@link ResponseCache} drops when it is full. */
+public enum EvictionPolicy {
+  /** the one read least recently */
+  LRU,
+  /** the one cached first */
+  FIFO
+}
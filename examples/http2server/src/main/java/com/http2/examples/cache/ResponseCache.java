@@ -0,0 +1,139 @@
+package com.http2.examples.cache;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches serialized responses by key, along with the version of the data they were built from. A
+ * response is served from the cache while the version is unchanged and it is younger than the TTL,
+ * otherwise it is built again.
+ *
+ * <p>The cache is split into stripes by the hash of the key, each a {@link LinkedHashMap} in access
+ * (LRU) or insertion (FIFO) order behind its own lock, so readers of different keys rarely wait on
+ * each other. Every stripe gets an equal share of the entry and byte bounds. A response is built
+ * outside the lock, so two misses on the same key may both build it; the last one is kept.
+ */
+public class ResponseCache {
+
+  static final int STRIPES = 16;
+
+  /** builds a response that isn't cached */
+  public interface Loader {
+    byte[] load() throws IOException;
+  }
+
+  private final Stripe[] stripes = new Stripe[STRIPES];
+  private final long ttlNanos;
+
+  private final Meter hits;
+  private final Meter misses;
+  private final Meter evictions;
+
+  public ResponseCache(CacheConfiguration config, MetricRegistry metrics) {
+    this.ttlNanos = config.getTtl().toNanoseconds();
+    boolean accessOrder = config.getPolicy() == EvictionPolicy.LRU;
+    int maxEntries = Math.max(1, config.getMaxEntries() / STRIPES);
+    long maxBytes = Math.max(1, config.getMaxBytes().toBytes() / STRIPES);
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe(accessOrder, maxEntries, maxBytes);
+    }
+
+    this.hits = metrics.meter(MetricRegistry.name(ResponseCache.class, "hits"));
+    this.misses = metrics.meter(MetricRegistry.name(ResponseCache.class, "misses"));
+    this.evictions = metrics.meter(MetricRegistry.name(ResponseCache.class, "evictions"));
+    metrics.register(
+        MetricRegistry.name(ResponseCache.class, "entries"), (Gauge<Integer>) this::getEntries);
+    metrics.register(
+        MetricRegistry.name(ResponseCache.class, "bytes"), (Gauge<Long>) this::getBytes);
+  }
+
+  /** the cached response for a key and version, building and caching it if there isn't one */
+  public byte[] get(String key, long version, Loader loader) throws IOException {
+    Stripe stripe = stripes[(key.hashCode() & Integer.MAX_VALUE) % STRIPES];
+    long now = System.nanoTime();
+
+    synchronized (stripe) {
+      Cached cached = stripe.entries.get(key);
+      if (cached != null && cached.version == version && now - cached.created < ttlNanos) {
+        hits.mark();
+        return cached.body;
+      }
+    }
+
+    misses.mark();
+    byte[] body = loader.load();
+    synchronized (stripe) {
+      evictions.mark(stripe.put(key, new Cached(body, version, now)));
+    }
+    return body;
+  }
+
+  public int getEntries() {
+    int entries = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        entries += stripe.entries.size();
+      }
+    }
+    return entries;
+  }
+
+  public long getBytes() {
+    long bytes = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        bytes += stripe.bytes;
+      }
+    }
+    return bytes;
+  }
+
+  private static class Stripe {
+    private final Map<String, Cached> entries;
+    private final int maxEntries;
+    private final long maxBytes;
+    private long bytes;
+
+    Stripe(boolean accessOrder, int maxEntries, long maxBytes) {
+      this.entries = new LinkedHashMap<>(16, 0.75f, accessOrder);
+      this.maxEntries = maxEntries;
+      this.maxBytes = maxBytes;
+    }
+
+    /** caches a response, returning how many were evicted to make room for it */
+    int put(String key, Cached cached) {
+      Cached previous = entries.put(key, cached);
+      if (previous != null) bytes -= previous.body.length;
+      bytes += cached.body.length;
+
+      // the eldest go first; a response bigger than a stripe ends up evicting itself
+      int evicted = 0;
+      Iterator<Cached> eldest = entries.values().iterator();
+      while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+        Cached evict = eldest.next();
+        eldest.remove();
+        bytes -= evict.body.length;
+        evicted++;
+      }
+      return evicted;
+    }
+  }
+
+  private static class Cached {
+    private final byte[] body;
+    private final long version;
+    private final long created;
+
+    Cached(byte[] body, long version, long created) {
+      this.body = body;
+      this.version = version;
+      this.created = created;
+    }
+  }
+}
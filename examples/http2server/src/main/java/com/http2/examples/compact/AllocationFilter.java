@@ -0,0 +1,102 @@
+package com.http2.examples.compact;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records the bytes allocated by the thread serving a request, from reading its body to writing
+ * the response, as a histogram and a meter of the total per path, so the allocation of the POJO and
+ * the compact upload paths can be compared; along with the CPU time the thread used, when the JVM
+ * measures it. Only counts what the serving thread does, and needs a JVM that tracks allocation
+ * per thread, see {@link #isSupported()}.
+ */
+public class AllocationFilter implements Filter {
+
+  private final com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private final MetricRegistry metrics;
+  private final ConcurrentMap<String, Path> paths = new ConcurrentHashMap<>();
+
+  private final boolean cpu;
+
+  public AllocationFilter(MetricRegistry metrics) {
+    this.metrics = metrics;
+    threads.setThreadAllocatedMemoryEnabled(true);
+    this.cpu = threads.isCurrentThreadCpuTimeSupported();
+    if (cpu) threads.setThreadCpuTimeEnabled(true);
+  }
+
+  public static boolean isSupported() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    return threads instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported();
+  }
+
+  @Override
+  public void init(FilterConfig filterConfig) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    long thread = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(thread);
+    long cpuBefore = cpu ? threads.getCurrentThreadCpuTime() : 0;
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      long allocated = threads.getThreadAllocatedBytes(thread) - before;
+      long cpuNanos = cpu ? threads.getCurrentThreadCpuTime() - cpuBefore : 0;
+      Path path = paths.computeIfAbsent(path((HttpServletRequest) request), this::path);
+      path.allocated.update(allocated);
+      path.bytes.mark(allocated);
+      path.cpuNanos.mark(cpuNanos);
+    }
+  }
+
+  @Override
+  public void destroy() {}
+
+  /**
+   * the decoded path the filter was mapped by, without the parameters or escapes the raw URI can
+   * carry; the filter is only mapped to a few exact paths, so there is a bounded number of them
+   */
+  private static String path(HttpServletRequest request) {
+    String pathInfo = request.getPathInfo();
+    return pathInfo == null ? request.getServletPath() : request.getServletPath() + pathInfo;
+  }
+
+  private Path path(String uri) {
+    String name =
+        MetricRegistry.name(AllocationFilter.class, uri.replaceAll("^/+", "").replace('/', '.'));
+    return new Path(
+        metrics.histogram(name),
+        metrics.meter(MetricRegistry.name(name, "bytes")),
+        metrics.meter(MetricRegistry.name(name, "cpu-nanos")));
+  }
+
+  private static class Path {
+    private final Histogram allocated;
+    private final Meter bytes;
+    private final Meter cpuNanos;
+
+    Path(Histogram allocated, Meter bytes, Meter cpuNanos) {
+      this.allocated = allocated;
+      this.bytes = bytes;
+      this.cpuNanos = cpuNanos;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package com.http2.examples.compact;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.http2.api.EntityBatch;
+import com.http2.api.Uuids;
+
+import java.io.IOException;
+
+/**
+ * Reads the same json as {@link com.http2.api.PostEntities} straight into an {@link EntityBatch},
+ * copying every name and address out of the parser's char buffer into the batch's columns, so no
+ * {@link String} or {@link com.http2.api.Entity} is built per entity. An address that isn't a UUID
+ * is rejected, since the batch only holds UUIDs.
+ */
+public class EntityBatchDeserializer extends StdDeserializer<EntityBatch> {
+
+  public EntityBatchDeserializer() {
+    super(EntityBatch.class);
+  }
+
+  @Override
+  public EntityBatch deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+    expect(p, p.getCurrentToken(), JsonToken.START_OBJECT);
+
+    EntityBatch batch = new EntityBatch();
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.getCurrentName();
+      JsonToken value = p.nextToken();
+      if ("entities".equals(field) && value == JsonToken.START_ARRAY) {
+        readEntities(p, batch);
+      } else {
+        p.skipChildren();
+      }
+    }
+    return batch;
+  }
+
+  private static void readEntities(JsonParser p, EntityBatch batch) throws IOException {
+    JsonToken token;
+    while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+      expect(p, token, JsonToken.START_OBJECT);
+      batch.add();
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.getCurrentName();
+        JsonToken value = p.nextToken();
+        if (value == JsonToken.VALUE_NULL) continue;
+
+        if ("name".equals(field) && value.isScalarValue()) {
+          batch.setName(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+        } else if ("address".equals(field) && value == JsonToken.VALUE_STRING) {
+          char[] chars = p.getTextCharacters();
+          int offset = p.getTextOffset();
+          if (!Uuids.isUuid(chars, offset, p.getTextLength())) {
+            throw JsonMappingException.from(p, "an address has to be a UUID");
+          }
+          batch.setAddress(
+              Uuids.mostSignificantBits(chars, offset), Uuids.leastSignificantBits(chars, offset));
+        } else if ("name".equals(field) || "address".equals(field)) {
+          throw JsonMappingException.from(p, "unexpected " + value + " for the " + field);
+        } else {
+          p.skipChildren();
+        }
+      }
+    }
+  }
+
+  private static void expect(JsonParser p, JsonToken actual, JsonToken expected)
+      throws JsonMappingException {
+    if (actual != expected) {
+      throw JsonMappingException.from(p, "expected " + expected + " but was " + actual);
+    }
+  }
+}
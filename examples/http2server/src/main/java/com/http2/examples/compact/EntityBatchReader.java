@@ -0,0 +1,53 @@
+package com.http2.examples.compact;
+
+import com.http2.api.EntityBatch;
+import com.http2.api.EntityBatches;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.Provider;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/** Reads a body in the binary form of {@link EntityBatches} into an {@link EntityBatch}. */
+@Provider
+@Consumes(EntityBatches.MEDIA_TYPE)
+public class EntityBatchReader implements MessageBodyReader<EntityBatch> {
+
+  // bounds what a malformed body can make the reader allocate up front
+  private static final int MAX_ROWS = 1_000_000;
+  private static final int MAX_NAME_LENGTH = 1 << 20;
+
+  @Override
+  public boolean isReadable(
+      Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+    return type == EntityBatch.class;
+  }
+
+  @Override
+  public EntityBatch readFrom(
+      Class<EntityBatch> type,
+      Type genericType,
+      Annotation[] annotations,
+      MediaType mediaType,
+      MultivaluedMap<String, String> httpHeaders,
+      InputStream entityStream)
+      throws IOException {
+    try {
+      return EntityBatches.read(
+          new DataInputStream(new BufferedInputStream(entityStream)), MAX_ROWS, MAX_NAME_LENGTH);
+    } catch (EOFException e) {
+      throw new BadRequestException("the batch ended early", e);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException(e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package com.http2.examples.dedup;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configures the {@link DuplicateFilter} of posted entities. An address is remembered for at least
+ * {@code (generations - 1) * rotation} and at most {@code generations * rotation}.
+ */
+public class DedupConfiguration {
+
+  private boolean enabled = false;
+
+  /** distinct addresses a generation holds at the false positive rate */
+  @Min(1)
+  private long expectedEntities = 1_000_000;
+
+  /** share of new entities wrongly dropped as duplicates, with every generation full */
+  @DecimalMin("0.000001")
+  @DecimalMax("0.5")
+  private double falsePositiveRate = 0.001;
+
+  @Min(2)
+  private int generations = 3;
+
+  /** how often the oldest generation is cleared to take new addresses */
+  @NotNull private Duration rotation = Duration.minutes(1);
+
+  /**
+   * addresses claimed and waiting on a publish at once, kept in a table sized up front; beyond it
+   * an address goes through unclaimed
+   */
+  @Min(256)
+  private int maxClaims = 65_536;
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @JsonProperty
+  public long getExpectedEntities() {
+    return expectedEntities;
+  }
+
+  @JsonProperty
+  public void setExpectedEntities(long expectedEntities) {
+    this.expectedEntities = expectedEntities;
+  }
+
+  @JsonProperty
+  public double getFalsePositiveRate() {
+    return falsePositiveRate;
+  }
+
+  @JsonProperty
+  public void setFalsePositiveRate(double falsePositiveRate) {
+    this.falsePositiveRate = falsePositiveRate;
+  }
+
+  @JsonProperty
+  public int getGenerations() {
+    return generations;
+  }
+
+  @JsonProperty
+  public void setGenerations(int generations) {
+    this.generations = generations;
+  }
+
+  @JsonProperty
+  public Duration getRotation() {
+    return rotation;
+  }
+
+  @JsonProperty
+  public void setRotation(Duration rotation) {
+    this.rotation = rotation;
+  }
+
+  @JsonProperty
+  public int getMaxClaims() {
+    return maxClaims;
+  }
+
+  @JsonProperty
+  public void setMaxClaims(int maxClaims) {
+    this.maxClaims = maxClaims;
+  }
+}
@@ -0,0 +1,359 @@
+package com.http2.examples.dedup;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.http2.api.Entity;
+import com.http2.api.EntityBatch;
+import com.http2.api.Uuids;
+import io.dropwizard.lifecycle.Managed;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drops entities whose address was already seen recently, so an upload a client retries isn't
+ * persisted twice. Addresses are kept in a ring of Bloom filters, the generations, held off heap in
+ * direct buffers sized up front: an address is a duplicate if any generation has it. Every
+ * rotation the oldest generation is cleared and becomes the current one, so memory stays fixed
+ * however many addresses go through. A false positive drops a new entity; entities without a UUID
+ * address are never dropped.
+ *
+ * <p>An address that isn't a duplicate is only claimed by the check, and is added to the current
+ * generation once its entity has been published, with {@link #commit}; if publishing fails it is
+ * given back with {@link #release}, so a retry of an upload the service turned away isn't dropped.
+ * A claimed address counts as a duplicate until then, so two requests with the same address can't
+ * both get through. Claims are kept as pairs of longs in a table sized up front from {@code
+ * maxClaims}; an address that finds its part of the table full goes through unclaimed, as it did
+ * before claims, and is counted as unclaimed. Nothing is allocated per entity.
+ *
+ * <p>The filters are blocked: all the bits of an address are in one 512 bit block, a cache line,
+ * at the same offset in every generation. Checking and adding an address happens under a lock
+ * striped by block. Keeping the bits of an address in one block costs a slightly higher false
+ * positive rate than the configured one.
+ */
+public class DuplicateFilter implements Managed {
+
+  private static final int BLOCK_BITS = 512;
+  private static final int BLOCK_BYTES = BLOCK_BITS / Byte.SIZE;
+  private static final int MAX_HASHES = 16;
+  private static final int LOCKS = 256;
+
+  private final ByteBuffer[] generations;
+  private final int blocks;
+  private final int hashes;
+  private final long rotationNanos;
+  private final Object[] locks = new Object[LOCKS];
+  // addresses checked but not yet committed or released: each lock guards an open addressing
+  // table of slots, with linear probing, at stripe * slots in the arrays
+  private final int slots;
+  private final long[] claimedMsbs;
+  private final long[] claimedLsbs;
+  private final boolean[] claimed;
+  private final ScheduledExecutorService rotator =
+      Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "dedup-rotator"));
+
+  private volatile int current;
+
+  private final Meter checked;
+  private final Meter duplicates;
+  private final Meter rotations;
+  private final Meter unclaimed;
+
+  public DuplicateFilter(DedupConfiguration config, MetricRegistry metrics) {
+    double n = config.getExpectedEntities();
+    double bits = -n * Math.log(config.getFalsePositiveRate()) / (Math.log(2) * Math.log(2));
+    long blocks = (long) Math.ceil(bits / BLOCK_BITS);
+    if (blocks * BLOCK_BYTES > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "a generation of ["
+              + config.getExpectedEntities()
+              + "] entities at a false positive rate of ["
+              + config.getFalsePositiveRate()
+              + "] needs more than 2GiB");
+    }
+    this.blocks = (int) blocks;
+    this.hashes =
+        (int) Math.max(1, Math.min(MAX_HASHES, Math.round(blocks * BLOCK_BITS / n * Math.log(2))));
+    this.rotationNanos = config.getRotation().toNanoseconds();
+
+    // direct buffers start zeroed, so every generation starts empty
+    this.generations = new ByteBuffer[config.getGenerations()];
+    for (int i = 0; i < generations.length; i++) {
+      generations[i] =
+          ByteBuffer.allocateDirect(this.blocks * BLOCK_BYTES).order(ByteOrder.nativeOrder());
+    }
+    for (int i = 0; i < LOCKS; i++) {
+      locks[i] = new Object();
+    }
+    int slots = 1;
+    while ((long) slots * LOCKS < config.getMaxClaims()) {
+      slots <<= 1;
+    }
+    this.slots = slots;
+    this.claimedMsbs = new long[LOCKS * slots];
+    this.claimedLsbs = new long[LOCKS * slots];
+    this.claimed = new boolean[LOCKS * slots];
+
+    this.checked = metrics.meter(MetricRegistry.name(DuplicateFilter.class, "checked"));
+    this.duplicates = metrics.meter(MetricRegistry.name(DuplicateFilter.class, "duplicates"));
+    this.rotations = metrics.meter(MetricRegistry.name(DuplicateFilter.class, "rotations"));
+    this.unclaimed = metrics.meter(MetricRegistry.name(DuplicateFilter.class, "unclaimed"));
+    metrics.register(
+        MetricRegistry.name(DuplicateFilter.class, "bytes"),
+        (Gauge<Long>) () -> (long) generations.length * this.blocks * BLOCK_BYTES);
+    metrics.register(
+        MetricRegistry.name(DuplicateFilter.class, "saturation"),
+        (Gauge<Double>) this::getSaturation);
+  }
+
+  @Override
+  public void start() {
+    rotator.scheduleAtFixedRate(this::rotate, rotationNanos, rotationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void stop() {
+    rotator.shutdownNow();
+  }
+
+  /**
+   * removes the entities seen or claimed before, including repeats within the list, and claims
+   * the rest; returns how many were removed
+   */
+  public int removeDuplicates(List<Entity> entities) {
+    int before = entities.size();
+    entities.removeIf(e -> isDuplicate(e.getAddress()));
+    return before - entities.size();
+  }
+
+  /** removes the rows seen or claimed before the way {@link #removeDuplicates(List)} does */
+  public int removeDuplicates(EntityBatch batch) {
+    return batch.removeIf(
+        row ->
+            batch.hasAddress(row)
+                && isDuplicate(
+                    batch.getAddressMostSignificantBits(row),
+                    batch.getAddressLeastSignificantBits(row)));
+  }
+
+  /** whether an address was seen or claimed recently, claiming it if it wasn't */
+  public boolean isDuplicate(String address) {
+    return Uuids.isUuid(address)
+        && isDuplicate(Uuids.mostSignificantBits(address), Uuids.leastSignificantBits(address));
+  }
+
+  /** whether the address with the given halves was seen or claimed, claiming it if it wasn't */
+  public boolean isDuplicate(long msb, long lsb) {
+    checked.mark();
+    // read first, so the clearing of the generation that became current is visible here
+    int current = this.current;
+    // where the bits of an address are, the same in every generation; the bits within the block
+    // come from double hashing, and an odd step visits distinct bits
+    long h1 = mix(msb ^ mix(lsb));
+    long h2 = mix(h1 ^ lsb);
+    int block = (int) ((h1 >>> 1) % blocks);
+    int offset = block * BLOCK_BYTES;
+    int first = (int) h2;
+    int step = (int) (h2 >>> 32) | 1;
+    int stripe = block % LOCKS;
+    synchronized (locks[stripe]) {
+      // newest first, where an address retried soon after is
+      for (int i = 0; i < generations.length; i++) {
+        int generation = (current - i + generations.length) % generations.length;
+        if (contains(generations[generation], offset, first, step)) {
+          duplicates.mark();
+          return true;
+        }
+      }
+      if (!claim(stripe, h1, msb, lsb)) {
+        duplicates.mark();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** remembers the addresses of entities that were published, after they were claimed */
+  public void commit(List<Entity> entities) {
+    for (Entity entity : entities) {
+      commit(entity.getAddress());
+    }
+  }
+
+  /** remembers the addresses of rows that were published, after they were claimed */
+  public void commit(EntityBatch batch) {
+    for (int row = 0; row < batch.size(); row++) {
+      if (batch.hasAddress(row)) {
+        commit(
+            batch.getAddressMostSignificantBits(row), batch.getAddressLeastSignificantBits(row));
+      }
+    }
+  }
+
+  /** remembers an address that was published, after it was claimed */
+  public void commit(String address) {
+    if (Uuids.isUuid(address)) {
+      commit(Uuids.mostSignificantBits(address), Uuids.leastSignificantBits(address));
+    }
+  }
+
+  /** remembers the address with the given halves, after it was claimed */
+  public void commit(long msb, long lsb) {
+    int current = this.current;
+    long h1 = mix(msb ^ mix(lsb));
+    long h2 = mix(h1 ^ lsb);
+    int block = (int) ((h1 >>> 1) % blocks);
+    int stripe = block % LOCKS;
+    synchronized (locks[stripe]) {
+      add(generations[current], block * BLOCK_BYTES, (int) h2, (int) (h2 >>> 32) | 1);
+      unclaim(stripe, h1, msb, lsb);
+    }
+  }
+
+  /** gives back the addresses claimed for entities that weren't published */
+  public void release(List<Entity> entities) {
+    for (Entity entity : entities) {
+      release(entity.getAddress());
+    }
+  }
+
+  /** gives back the addresses claimed for rows that weren't published */
+  public void release(EntityBatch batch) {
+    for (int row = 0; row < batch.size(); row++) {
+      if (batch.hasAddress(row)) {
+        release(
+            batch.getAddressMostSignificantBits(row), batch.getAddressLeastSignificantBits(row));
+      }
+    }
+  }
+
+  /** gives back an address claimed for an entity that wasn't published */
+  public void release(String address) {
+    if (Uuids.isUuid(address)) {
+      release(Uuids.mostSignificantBits(address), Uuids.leastSignificantBits(address));
+    }
+  }
+
+  /** gives back the address with the given halves, claimed for an entity that wasn't published */
+  public void release(long msb, long lsb) {
+    long h1 = mix(msb ^ mix(lsb));
+    int stripe = (int) ((h1 >>> 1) % blocks) % LOCKS;
+    synchronized (locks[stripe]) {
+      unclaim(stripe, h1, msb, lsb);
+    }
+  }
+
+  /** share of the bits set in the current generation */
+  public double getSaturation() {
+    ByteBuffer generation = generations[current];
+    long set = 0;
+    for (int i = 0; i < generation.capacity(); i += Long.BYTES) {
+      set += Long.bitCount(generation.getLong(i));
+    }
+    return set / (double) (generation.capacity() * (long) Byte.SIZE);
+  }
+
+  private boolean contains(ByteBuffer generation, int offset, int first, int step) {
+    for (int i = 0; i < hashes; i++) {
+      int bit = (first + i * step) & (BLOCK_BITS - 1);
+      if ((generation.getLong(offset + (bit >>> 6) * Long.BYTES) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void add(ByteBuffer generation, int offset, int first, int step) {
+    for (int i = 0; i < hashes; i++) {
+      int bit = (first + i * step) & (BLOCK_BITS - 1);
+      int word = offset + (bit >>> 6) * Long.BYTES;
+      generation.putLong(word, generation.getLong(word) | (1L << bit));
+    }
+  }
+
+  /**
+   * claims an address in the table of its stripe, under the stripe's lock; false if it is claimed
+   * already. A full table lets the address through unclaimed.
+   */
+  private boolean claim(int stripe, long h1, long msb, long lsb) {
+    int base = stripe * slots;
+    int slot = home(h1);
+    for (int i = 0; i < slots; i++, slot = (slot + 1) & (slots - 1)) {
+      int at = base + slot;
+      if (!claimed[at]) {
+        claimedMsbs[at] = msb;
+        claimedLsbs[at] = lsb;
+        claimed[at] = true;
+        return true;
+      }
+      if (claimedMsbs[at] == msb && claimedLsbs[at] == lsb) {
+        return false;
+      }
+    }
+    unclaimed.mark();
+    return true;
+  }
+
+  /** gives back the claim on an address, if it has one, under the lock of its stripe */
+  private void unclaim(int stripe, long h1, long msb, long lsb) {
+    int base = stripe * slots;
+    int slot = home(h1);
+    for (int i = 0; i < slots && claimed[base + slot]; i++, slot = (slot + 1) & (slots - 1)) {
+      if (claimedMsbs[base + slot] == msb && claimedLsbs[base + slot] == lsb) {
+        remove(base, slot);
+        return;
+      }
+    }
+  }
+
+  /** empties a slot, moving back the claims probed past it so they are still found */
+  private void remove(int base, int hole) {
+    int mask = slots - 1;
+    for (int slot = (hole + 1) & mask;
+        slot != hole && claimed[base + slot];
+        slot = (slot + 1) & mask) {
+      int home = home(mix(claimedMsbs[base + slot] ^ mix(claimedLsbs[base + slot])));
+      // a claim can fill the hole if the hole is between its home and where it is
+      if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+        claimedMsbs[base + hole] = claimedMsbs[base + slot];
+        claimedLsbs[base + hole] = claimedLsbs[base + slot];
+        hole = slot;
+      }
+    }
+    claimed[base + hole] = false;
+  }
+
+  /** the slot a claim is looked up from in the table of its stripe */
+  private int home(long h1) {
+    return (int) (h1 >>> 32) & (slots - 1);
+  }
+
+  /**
+   * clears the oldest generation and makes it the current one. Nothing adds to the oldest
+   * generation, so it is cleared without the locks; a check racing with it may miss a duplicate.
+   */
+  private void rotate() {
+    int oldest = (current + 1) % generations.length;
+    ByteBuffer generation = generations[oldest];
+    for (int i = 0; i < generation.capacity(); i += Long.BYTES) {
+      generation.putLong(i, 0L);
+    }
+    current = oldest;
+    rotations.mark();
+  }
+
+  /** the murmur3 finalizer, spreads the bits of a key over the whole long */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
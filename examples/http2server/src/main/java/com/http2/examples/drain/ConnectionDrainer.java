@@ -0,0 +1,234 @@
+package com.http2.examples.drain;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.lifecycle.Managed;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.HTTP2Connection;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.Callback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Takes h2 connections out of service without cutting off the streams in flight on them. A
+ * connection being drained has its new streams refused with a 503 and a Retry-After while the ones
+ * it already has finish, and once it has had nothing in flight for a moment it is sent a GOAWAY
+ * with the last stream it took, so its client moves on to a new connection.
+ *
+ * <p>Jetty shuts the output of a connection down as soon as its GOAWAY is written, which is why the
+ * GOAWAY waits for the streams to finish rather than going first. Every connection is drained when
+ * the {@code drain} task runs, ahead of a deploy stopping the instance; with a max connection age,
+ * connections past it are drained on their own, so long lived clients spread over new instances.
+ * Requests over http/1.1 are refused with their connection closed.
+ */
+public class ConnectionDrainer implements Filter, Connection.Listener, Managed {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionDrainer.class);
+
+  // how often connections are checked, and how long one has to be idle before its GOAWAY
+  private static final long SWEEP_MILLIS = 50;
+  private static final long QUIET_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final DrainConfiguration config;
+  private final String retryAfter;
+  private final Map<Connection, Tracked> connections = new ConcurrentHashMap<>();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final ScheduledExecutorService sweeper =
+      Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "connection-drainer"));
+
+  private volatile boolean draining;
+
+  private final Meter refused;
+  private final Meter goAways;
+
+  public ConnectionDrainer(DrainConfiguration config, MetricRegistry metrics) {
+    this.config = config;
+    this.retryAfter = String.valueOf(Math.max(0, config.getRetryAfter().toSeconds()));
+
+    this.refused = metrics.meter(MetricRegistry.name(ConnectionDrainer.class, "refused"));
+    this.goAways = metrics.meter(MetricRegistry.name(ConnectionDrainer.class, "go-aways"));
+    metrics.register(
+        MetricRegistry.name(ConnectionDrainer.class, "in-flight"), (Gauge<Integer>) inFlight::get);
+    metrics.register(
+        MetricRegistry.name(ConnectionDrainer.class, "connections"),
+        (Gauge<Integer>) connections::size);
+    metrics.register(
+        MetricRegistry.name(ConnectionDrainer.class, "draining"), (Gauge<Boolean>) () -> draining);
+  }
+
+  /** hears about every connection the connectors of the server open from now on */
+  public void watch(Server server) {
+    for (Connector connector : server.getConnectors()) {
+      connector.addBean(this);
+    }
+  }
+
+  @Override
+  public void start() {
+    sweeper.scheduleAtFixedRate(this::sweep, SWEEP_MILLIS, SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() {
+    sweeper.shutdownNow();
+  }
+
+  @Override
+  public void onOpened(Connection connection) {
+    if (connection instanceof HTTP2Connection) {
+      connections.put(connection, new Tracked((HTTP2Connection) connection));
+    }
+  }
+
+  @Override
+  public void onClosed(Connection connection) {
+    connections.remove(connection);
+  }
+
+  @Override
+  public void init(FilterConfig filterConfig) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    Tracked tracked = tracked(request);
+    // counted before checking, so a connection is never seen idle while a stream is getting in
+    inFlight.incrementAndGet();
+    if (tracked != null) tracked.inFlight.incrementAndGet();
+    try {
+      if (draining || (tracked != null && tracked.retiring)) {
+        refused.mark();
+        HttpServletResponse http = (HttpServletResponse) response;
+        http.setHeader("Retry-After", retryAfter);
+        if (tracked == null) http.setHeader("Connection", "close");
+        http.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        return;
+      }
+      chain.doFilter(request, response);
+    } finally {
+      inFlight.decrementAndGet();
+      if (tracked != null) {
+        tracked.lastFinished = System.nanoTime();
+        tracked.inFlight.decrementAndGet();
+      }
+    }
+  }
+
+  @Override
+  public void destroy() {}
+
+  /** the h2 connection a request came in on, or null when it came over http/1.1 */
+  private Tracked tracked(ServletRequest request) {
+    Request base = Request.getBaseRequest(request);
+    if (base == null) return null;
+    Connection connection = base.getHttpChannel().getEndPoint().getConnection();
+    if (!(connection instanceof HTTP2Connection)) return null;
+    // opened before the connectors were watched
+    return connections.computeIfAbsent(connection, c -> new Tracked((HTTP2Connection) c));
+  }
+
+  /**
+   * drains every connection, and waits for their streams to finish and their GOAWAYs to go out,
+   * up to the timeout; new connections keep being refused until {@link #resume()}
+   */
+  public String drain() throws InterruptedException {
+    long start = System.nanoTime();
+    draining = true;
+    LOGGER.info("draining [{}] connections with [{}] streams", connections.size(), inFlight.get());
+
+    long deadline = start + config.getTimeout().toNanoseconds();
+    while (System.nanoTime() < deadline && !drained()) {
+      Thread.sleep(SWEEP_MILLIS);
+    }
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    String outcome =
+        drained()
+            ? "drained in [" + elapsed + "]ms"
+            : "still had ["
+                + inFlight.get()
+                + "] streams in flight after ["
+                + elapsed
+                + "]ms, stopping now will cut them off";
+    LOGGER.info(outcome);
+    return outcome;
+  }
+
+  /** takes new streams again, e.g. once a deploy is called off */
+  public void resume() {
+    draining = false;
+    LOGGER.info("taking new streams again");
+  }
+
+  private boolean drained() {
+    if (inFlight.get() > 0) return false;
+    for (Tracked tracked : connections.values()) {
+      if (!tracked.goneAway.get()) return false;
+    }
+    return true;
+  }
+
+  private void sweep() {
+    long now = System.nanoTime();
+    Long maxAge =
+        config.getMaxConnectionAge() == null ? null : config.getMaxConnectionAge().toNanoseconds();
+    for (Tracked tracked : connections.values()) {
+      if (!tracked.connection.getEndPoint().isOpen()) {
+        // closed before its listener was added, so it was never heard of closing
+        connections.remove(tracked.connection);
+        continue;
+      }
+      if (maxAge != null && !tracked.retiring && now - tracked.opened > maxAge) {
+        tracked.retiring = true;
+      }
+      if ((draining || tracked.retiring)
+          && tracked.inFlight.get() == 0
+          && now - tracked.lastFinished > QUIET_NANOS) {
+        goAway(tracked);
+      }
+    }
+  }
+
+  private void goAway(Tracked tracked) {
+    if (!tracked.goneAway.compareAndSet(false, true)) return;
+    goAways.mark();
+    tracked
+        .connection
+        .getSession()
+        .close(ErrorCode.NO_ERROR.code, draining ? "draining" : "max age", Callback.NOOP);
+  }
+
+  /** an h2 connection and the streams in flight on it */
+  private static class Tracked {
+    private final HTTP2Connection connection;
+    private final long opened = System.nanoTime();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean goneAway = new AtomicBoolean();
+    private volatile boolean retiring;
+    private volatile long lastFinished = opened;
+
+    Tracked(HTTP2Connection connection) {
+      this.connection = connection;
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package com.http2.examples.drain;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configures the {@link ConnectionDrainer} that lets a rolling deploy take an instance out without
+ * cutting off the streams in flight on its connections.
+ */
+public class DrainConfiguration {
+
+  private boolean enabled = true;
+
+  /** how long the drain task waits for the streams in flight to finish */
+  @NotNull private Duration timeout = Duration.seconds(30);
+
+  /** sent as the Retry-After of a stream refused while draining */
+  @NotNull private Duration retryAfter = Duration.seconds(1);
+
+  /**
+   * connections older than this are drained on their own, so clients spread over new ones; left
+   * out, connections live as long as their clients keep them
+   */
+  private Duration maxConnectionAge;
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @JsonProperty
+  public Duration getTimeout() {
+    return timeout;
+  }
+
+  @JsonProperty
+  public void setTimeout(Duration timeout) {
+    this.timeout = timeout;
+  }
+
+  @JsonProperty
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+
+  @JsonProperty
+  public void setRetryAfter(Duration retryAfter) {
+    this.retryAfter = retryAfter;
+  }
+
+  @JsonProperty
+  public Duration getMaxConnectionAge() {
+    return maxConnectionAge;
+  }
+
+  @JsonProperty
+  public void setMaxConnectionAge(Duration maxConnectionAge) {
+    this.maxConnectionAge = maxConnectionAge;
+  }
+}
@@ -0,0 +1,26 @@
+package com.http2.examples.drain;
+
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+
+/**
+ * {@code POST /tasks/drain} on the admin port drains every connection and answers once their
+ * streams have finished, or the timeout is up, so a deploy knows when the instance can be stopped.
+ */
+public class DrainTask extends Task {
+
+  private final ConnectionDrainer drainer;
+
+  public DrainTask(ConnectionDrainer drainer) {
+    super("drain");
+    this.drainer = drainer;
+  }
+
+  @Override
+  public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output)
+      throws Exception {
+    output.println(drainer.drain());
+  }
+}
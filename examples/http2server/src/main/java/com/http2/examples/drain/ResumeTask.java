@@ -0,0 +1,23 @@
+package com.http2.examples.drain;
+
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+
+/** {@code POST /tasks/resume} on the admin port takes new streams again after a drain. */
+public class ResumeTask extends Task {
+
+  private final ConnectionDrainer drainer;
+
+  public ResumeTask(ConnectionDrainer drainer) {
+    super("resume");
+    this.drainer = drainer;
+  }
+
+  @Override
+  public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) {
+    drainer.resume();
+    output.println("taking new streams");
+  }
+}
@@ -0,0 +1,23 @@
+package com.http2.examples.headers;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configures the {@link HeaderMetricsFilter}. Off by default: it copies the headers of every
+ * request and runs them through a model of one client's encoder, which is only worth it while
+ * benchmarking with that client.
+ */
+public class HeaderMetricsConfiguration {
+
+  private boolean enabled = false;
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+}
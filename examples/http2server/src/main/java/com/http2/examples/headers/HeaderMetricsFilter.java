@@ -0,0 +1,141 @@
+package com.http2.examples.headers;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.http2.api.HpackModel;
+import org.eclipse.jetty.http2.HTTP2Connection;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.server.Request;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Records how big the headers of every request are: as http/1.1 sends them, as the header list h2
+ * limits, and as an HPACK block, with how many of the fields were found in the static and the
+ * dynamic tables. The http/1.1 size of an h2 request counts the Host it would have had, from its
+ * authority.
+ *
+ * <p>The HPACK numbers are a model, not a measurement. Jetty doesn't tell how many bytes a header
+ * block it decoded took, so the block is sized by a {@link HpackModel} of the connection, replaying
+ * what the benchmark's OkHttp client would have encoded. Another client indexes differently, and
+ * the requests of concurrent streams reach the filter in whatever order their threads get to it,
+ * not the order their blocks were encoded in, so the model's dynamic table drifts from the
+ * client's. Off unless {@link HeaderMetricsConfiguration} turns it on.
+ */
+public class HeaderMetricsFilter implements Filter {
+
+  // a model per h2 connection, gone with the connection
+  private final Map<Connection, HpackModel> models =
+      Collections.synchronizedMap(new WeakHashMap<>());
+  private final HpackModel.Totals totals = new HpackModel.Totals();
+
+  private final Histogram h1Bytes;
+  private final Histogram h2H1Bytes;
+  private final Histogram h2ListBytes;
+  private final Histogram h2HpackBytes;
+
+  public HeaderMetricsFilter(MetricRegistry metrics) {
+    this.h1Bytes = metrics.histogram(MetricRegistry.name(HeaderMetricsFilter.class, "h1-bytes"));
+    this.h2H1Bytes =
+        metrics.histogram(MetricRegistry.name(HeaderMetricsFilter.class, "h2", "h1-bytes"));
+    this.h2ListBytes =
+        metrics.histogram(MetricRegistry.name(HeaderMetricsFilter.class, "h2", "list-bytes"));
+    this.h2HpackBytes =
+        metrics.histogram(MetricRegistry.name(HeaderMetricsFilter.class, "h2", "hpack-bytes"));
+    metrics.register(
+        MetricRegistry.name(HeaderMetricsFilter.class, "h2", "compression-ratio"),
+        (Gauge<Double>) totals::getCompressionRatio);
+    metrics.register(
+        MetricRegistry.name(HeaderMetricsFilter.class, "h2", "dynamic-hit-ratio"),
+        (Gauge<Double>) totals::getDynamicHitRatio);
+    metrics.register(
+        MetricRegistry.name(HeaderMetricsFilter.class, "h2", "indexed-ratio"),
+        (Gauge<Double>) totals::getIndexedRatio);
+  }
+
+  @Override
+  public void init(FilterConfig filterConfig) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    record((HttpServletRequest) request);
+    chain.doFilter(request, response);
+  }
+
+  @Override
+  public void destroy() {}
+
+  private void record(HttpServletRequest request) {
+    String target =
+        request.getQueryString() == null
+            ? request.getRequestURI()
+            : request.getRequestURI() + "?" + request.getQueryString();
+    List<Map.Entry<String, String>> headers = new ArrayList<>();
+    for (Enumeration<String> names = request.getHeaderNames(); names.hasMoreElements(); ) {
+      String name = names.nextElement();
+      for (Enumeration<String> values = request.getHeaders(name); values.hasMoreElements(); ) {
+        headers.add(new AbstractMap.SimpleImmutableEntry<>(name, values.nextElement()));
+      }
+    }
+
+    Connection connection = connection(request);
+    if (!(connection instanceof HTTP2Connection)) {
+      h1Bytes.update(HpackModel.h1Size(request.getMethod(), target, headers));
+      return;
+    }
+
+    String authority = authority(request);
+    List<Map.Entry<String, String>> h1Headers = new ArrayList<>(headers.size() + 1);
+    h1Headers.add(new AbstractMap.SimpleImmutableEntry<>("Host", authority));
+    List<Map.Entry<String, String>> fields = new ArrayList<>(headers.size() + 4);
+    fields.add(new AbstractMap.SimpleImmutableEntry<>(HpackModel.METHOD, request.getMethod()));
+    fields.add(new AbstractMap.SimpleImmutableEntry<>(HpackModel.PATH, target));
+    fields.add(new AbstractMap.SimpleImmutableEntry<>(HpackModel.AUTHORITY, authority));
+    fields.add(new AbstractMap.SimpleImmutableEntry<>(HpackModel.SCHEME, request.getScheme()));
+    for (Map.Entry<String, String> header : headers) {
+      String name = HpackModel.name(header.getKey());
+      if (HpackModel.SKIPPED.contains(name)) continue;
+      h1Headers.add(header);
+      fields.add(new AbstractMap.SimpleImmutableEntry<>(name, header.getValue()));
+    }
+
+    HpackModel model = models.computeIfAbsent(connection, c -> new HpackModel());
+    HpackModel.Block block =
+        model.encode(fields, HpackModel.h1Size(request.getMethod(), target, h1Headers));
+    totals.add(block);
+    h2H1Bytes.update(block.getH1Bytes());
+    h2ListBytes.update(block.getListBytes());
+    h2HpackBytes.update(block.getHpackBytes());
+  }
+
+  private static Connection connection(ServletRequest request) {
+    Request base = Request.getBaseRequest(request);
+    return base == null ? null : base.getHttpChannel().getEndPoint().getConnection();
+  }
+
+  /** the :authority of a request, host and port unless the port is the scheme's own */
+  private static String authority(HttpServletRequest request) {
+    int port = request.getServerPort();
+    boolean defaultPort =
+        port <= 0
+            || ("https".equals(request.getScheme()) && port == 443)
+            || ("http".equals(request.getScheme()) && port == 80);
+    return defaultPort ? request.getServerName() : request.getServerName() + ":" + port;
+  }
+}
@@ -0,0 +1,9 @@
+package com.http2.examples.ingest;
+
+/** When a request that published entities into the {@link IngestPipeline} is answered. */
+public enum AckMode {
+  /** as soon as the entities are in the queue; a crash can lose what hasn't been written yet */
+  ENQUEUE,
+  /** once the batch holding the entities has been forced to disk */
+  DURABLE
+}
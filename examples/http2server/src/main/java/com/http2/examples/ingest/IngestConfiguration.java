@@ -0,0 +1,113 @@
+package com.http2.examples.ingest;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import io.dropwizard.util.SizeUnit;
+import io.dropwizard.validation.MaxSize;
+import io.dropwizard.validation.MinSize;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/** Configures the {@link IngestPipeline} that persists the entities posted to the service. */
+public class IngestConfiguration {
+
+  /** directory the segment files are written to */
+  @NotNull private String directory = "ingest";
+
+  /**
+   * size of a segment file; a new one is started when the current one is full. A segment is mapped
+   * whole, and a mapping can't be bigger than an int
+   */
+  @NotNull
+  @MinSize(value = 1, unit = SizeUnit.KILOBYTES)
+  @MaxSize(value = 1, unit = SizeUnit.GIGABYTES)
+  private Size segmentSize = Size.megabytes(64);
+
+  /** requests that can wait to be written before new ones are turned away */
+  @Min(1)
+  private int queueCapacity = 4096;
+
+  /** most requests written by one group commit */
+  @Min(1)
+  private int maxBatchSize = 256;
+
+  /** how long a request waits for room in the queue before it is turned away */
+  @NotNull private Duration enqueueTimeout = Duration.milliseconds(100);
+
+  /** how long a request waits for its entities to be forced to disk in DURABLE mode */
+  @NotNull private Duration ackTimeout = Duration.seconds(30);
+
+  @NotNull private AckMode ackMode = AckMode.DURABLE;
+
+  @JsonProperty
+  public String getDirectory() {
+    return directory;
+  }
+
+  @JsonProperty
+  public void setDirectory(String directory) {
+    this.directory = directory;
+  }
+
+  @JsonProperty
+  public Size getSegmentSize() {
+    return segmentSize;
+  }
+
+  @JsonProperty
+  public void setSegmentSize(Size segmentSize) {
+    this.segmentSize = segmentSize;
+  }
+
+  @JsonProperty
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  @JsonProperty
+  public void setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+  }
+
+  @JsonProperty
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  @JsonProperty
+  public void setMaxBatchSize(int maxBatchSize) {
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  @JsonProperty
+  public Duration getEnqueueTimeout() {
+    return enqueueTimeout;
+  }
+
+  @JsonProperty
+  public void setEnqueueTimeout(Duration enqueueTimeout) {
+    this.enqueueTimeout = enqueueTimeout;
+  }
+
+  @JsonProperty
+  public Duration getAckTimeout() {
+    return ackTimeout;
+  }
+
+  @JsonProperty
+  public void setAckTimeout(Duration ackTimeout) {
+    this.ackTimeout = ackTimeout;
+  }
+
+  @JsonProperty
+  public AckMode getAckMode() {
+    return ackMode;
+  }
+
+  @JsonProperty
+  public void setAckMode(AckMode ackMode) {
+    this.ackMode = ackMode;
+  }
+}
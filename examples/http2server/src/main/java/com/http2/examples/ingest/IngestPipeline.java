@@ -0,0 +1,394 @@
+package com.http2.examples.ingest;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.http2.api.Entity;
+import com.http2.api.EntityBatch;
+import com.http2.api.IngestStats;
+import com.http2.api.SegmentStats;
+import com.http2.api.Uuids;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.ServiceUnavailableException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Persists the entities posted to the service. Request threads publish their entities into a
+ * bounded queue, and a single writer thread drains it in batches into a {@link SegmentLog}, forcing
+ * each batch to disk with one sync (a group commit), so the cost of a sync is shared by every
+ * request that arrived while the previous one was in progress.
+ *
+ * <p>Depending on the {@link AckMode} a request is answered once its entities are queued, or once
+ * the batch holding them is durable. When the queue stays full for longer than the enqueue timeout
+ * the request is turned away with a 503 rather than queueing without bound.
+ */
+public class IngestPipeline implements Managed {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(IngestPipeline.class);
+  // entities are counted by the first hex digit of their address, plus one for those without
+  private static final int SHARDS = 16;
+
+  private final IngestConfiguration config;
+  private final BlockingQueue<Pending> queue;
+
+  private final Meter entities;
+  private final Meter bytes;
+  private final Meter rejected;
+  private final Histogram batchSize;
+  private final Timer commit;
+  private final Timer durability;
+
+  // totals of what has been written; only the writer updates them, the version last
+  private final AtomicLongArray shards = new AtomicLongArray(SHARDS + 1);
+  private volatile long requestsWritten;
+  private volatile long entitiesWritten;
+  private volatile long bytesWritten;
+  private volatile long lastCommitMillis;
+  private volatile long version;
+
+  // records are encoded here before they are appended, it grows to fit the largest entity
+  private ByteBuffer record = ByteBuffer.allocate(4096);
+  private SegmentLog log;
+  private Thread writer;
+  private volatile boolean running;
+
+  public IngestPipeline(IngestConfiguration config, MetricRegistry metrics) {
+    this.config = config;
+    this.queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+
+    this.entities = metrics.meter(MetricRegistry.name(IngestPipeline.class, "entities"));
+    this.bytes = metrics.meter(MetricRegistry.name(IngestPipeline.class, "bytes"));
+    this.rejected = metrics.meter(MetricRegistry.name(IngestPipeline.class, "rejected"));
+    this.batchSize = metrics.histogram(MetricRegistry.name(IngestPipeline.class, "batch-size"));
+    this.commit = metrics.timer(MetricRegistry.name(IngestPipeline.class, "commit"));
+    this.durability = metrics.timer(MetricRegistry.name(IngestPipeline.class, "durability"));
+    metrics.register(
+        MetricRegistry.name(IngestPipeline.class, "queue-depth"), (Gauge<Integer>) queue::size);
+  }
+
+  @Override
+  public void start() throws Exception {
+    // validated to fit in an int, which is as big as a mapping gets
+    log = new SegmentLog(Paths.get(config.getDirectory()), (int) config.getSegmentSize().toBytes());
+    LOGGER.info(
+        "writing entities to [{}] with ack mode [{}]", log.getSegment(), config.getAckMode());
+
+    running = true;
+    writer = new Thread(this::drain, "ingest-writer");
+    writer.start();
+  }
+
+  @Override
+  public void stop() throws Exception {
+    running = false;
+    writer.join();
+    log.close();
+  }
+
+  /**
+   * Publishes entities to be written, returning once they are queued or durable, depending on the
+   * ack mode. A request with an entity too big for a segment is turned away with a 400 before any
+   * of it is queued, rather than failing the group commit it would have been written by.
+   */
+  public void publish(List<Entity> posted) {
+    if (posted.isEmpty()) return;
+    for (Entity entity : posted) {
+      checkFits(recordSize(entity));
+    }
+    enqueue(new Pending(posted, null, written()));
+  }
+
+  /** publishes a batch the way {@link #publish(List)} does, the batch mustn't change after */
+  public void publish(EntityBatch posted) {
+    if (posted.size() == 0) return;
+    for (int row = 0; row < posted.size(); row++) {
+      checkFits(recordSize(posted, row));
+    }
+    enqueue(new Pending(null, posted, written()));
+  }
+
+  private void checkFits(long recordSize) {
+    long segmentSize = config.getSegmentSize().toBytes();
+    if (recordSize > SegmentLog.maxRecordSize(segmentSize)) {
+      throw new BadRequestException(
+          "an entity of ["
+              + recordSize
+              + "] bytes doesn't fit in a segment of ["
+              + segmentSize
+              + "] bytes");
+    }
+  }
+
+  private CompletableFuture<Void> written() {
+    return config.getAckMode() == AckMode.DURABLE ? new CompletableFuture<>() : null;
+  }
+
+  private void enqueue(Pending pending) {
+    boolean durable = pending.written != null;
+    try {
+      if (!queue.offer(
+          pending, config.getEnqueueTimeout().toNanoseconds(), TimeUnit.NANOSECONDS)) {
+        rejected.mark();
+        throw new ServiceUnavailableException("the ingest queue is full");
+      }
+      if (durable) {
+        pending.written.get(config.getAckTimeout().toNanoseconds(), TimeUnit.NANOSECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException("interrupted while ingesting");
+    } catch (TimeoutException e) {
+      throw new ServiceUnavailableException("timed out waiting for the entities to be written");
+    } catch (ExecutionException e) {
+      throw new InternalServerErrorException("failed to write the entities", e.getCause());
+    }
+  }
+
+  /** goes up with every batch written, so it changes whenever {@link #getStats()} does */
+  public long getVersion() {
+    return version;
+  }
+
+  public IngestStats getStats() {
+    IngestStats stats = new IngestStats();
+    // read the version first, so the totals are at least as new as it
+    stats.setVersion(version);
+    stats.setRequests(requestsWritten);
+    stats.setEntities(entitiesWritten);
+    stats.setBytes(bytesWritten);
+    stats.setLastCommitMillis(lastCommitMillis);
+
+    Map<String, Long> byShard = new LinkedHashMap<>();
+    for (int i = 0; i < SHARDS; i++) {
+      byShard.put(Integer.toHexString(i), shards.get(i));
+    }
+    byShard.put("none", shards.get(SHARDS));
+    stats.setShards(byShard);
+    return stats;
+  }
+
+  /** reads what each segment written so far holds */
+  public List<SegmentStats> getSegments() throws IOException {
+    return SegmentLog.scan(Paths.get(config.getDirectory()));
+  }
+
+  /** the fraction of the queue in use */
+  public double getQueueUsage() {
+    return queue.size() / (double) config.getQueueCapacity();
+  }
+
+  private void drain() {
+    List<Pending> batch = new ArrayList<>(config.getMaxBatchSize());
+    // keep going until stopped and everything queued before that is written
+    while (running || !queue.isEmpty()) {
+      try {
+        Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) continue;
+        batch.add(first);
+        queue.drainTo(batch, config.getMaxBatchSize() - 1);
+        write(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        LOGGER.error("failed to write a batch of [{}] requests", batch.size(), e);
+        batch.forEach(p -> p.fail(e));
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void write(List<Pending> batch) {
+    try {
+      long count = 0;
+      long written = 0;
+      long[] byShard = new long[SHARDS + 1];
+      for (Pending pending : batch) {
+        if (pending.entities != null) {
+          for (Entity entity : pending.entities) {
+            encode(entity);
+            written += record.remaining();
+            byShard[shard(entity.getAddress())]++;
+            log.append(record);
+          }
+        } else {
+          for (int row = 0; row < pending.rows.size(); row++) {
+            encode(pending.rows, row);
+            written += record.remaining();
+            byShard[shard(pending.rows, row)]++;
+            log.append(record);
+          }
+        }
+        count += pending.size();
+      }
+
+      try (Timer.Context ignored = commit.time()) {
+        log.force();
+      }
+
+      entities.mark(count);
+      bytes.mark(written);
+      batchSize.update(batch.size());
+      for (int i = 0; i < byShard.length; i++) {
+        if (byShard[i] > 0) shards.addAndGet(i, byShard[i]);
+      }
+      requestsWritten += batch.size();
+      entitiesWritten += count;
+      bytesWritten += written;
+      lastCommitMillis = System.currentTimeMillis();
+      version++;
+
+      long now = System.nanoTime();
+      for (Pending pending : batch) {
+        durability.update(now - pending.enqueued, TimeUnit.NANOSECONDS);
+        if (pending.written != null) pending.written.complete(null);
+      }
+    } catch (IOException e) {
+      LOGGER.error("failed to write a batch of [{}] requests", batch.size(), e);
+      batch.forEach(p -> p.fail(e));
+    }
+  }
+
+  /** the bytes {@link #encode(Entity)} takes for an entity */
+  private static long recordSize(Entity entity) {
+    return 2 * Integer.BYTES + utf8Length(entity.getName()) + utf8Length(entity.getAddress());
+  }
+
+  /** the bytes {@link #encode(EntityBatch, int)} takes for a row */
+  private static long recordSize(EntityBatch rows, int row) {
+    return 2 * Integer.BYTES
+        + Math.max(0, rows.getNameLength(row))
+        + (rows.hasAddress(row) ? Uuids.LENGTH : 0);
+  }
+
+  /** encodes an entity as its name and address, each a length and utf-8 bytes; -1 for null */
+  private void encode(Entity entity) {
+    byte[] name = utf8(entity.getName());
+    byte[] address = utf8(entity.getAddress());
+    int length =
+        2 * Integer.BYTES
+            + (name == null ? 0 : name.length)
+            + (address == null ? 0 : address.length);
+    if (record.capacity() < length) {
+      record = ByteBuffer.allocate(Math.max(length, record.capacity() * 2));
+    }
+
+    record.clear();
+    put(name);
+    put(address);
+    record.flip();
+  }
+
+  /** encodes a row of a batch the same way, without building its strings */
+  private void encode(EntityBatch rows, int row) {
+    int name = rows.getNameLength(row);
+    int address = rows.hasAddress(row) ? Uuids.LENGTH : -1;
+    int length = 2 * Integer.BYTES + Math.max(0, name) + Math.max(0, address);
+    if (record.capacity() < length) {
+      record = ByteBuffer.allocate(Math.max(length, record.capacity() * 2));
+    }
+
+    record.clear();
+    record.putInt(name);
+    rows.copyName(row, record);
+    record.putInt(address);
+    if (address > 0) {
+      Uuids.write(
+          rows.getAddressMostSignificantBits(row),
+          rows.getAddressLeastSignificantBits(row),
+          record);
+    }
+    record.flip();
+  }
+
+  private void put(byte[] value) {
+    if (value == null) {
+      record.putInt(-1);
+    } else {
+      record.putInt(value.length);
+      record.put(value);
+    }
+  }
+
+  private static int shard(String address) {
+    int digit = address == null || address.isEmpty() ? -1 : Character.digit(address.charAt(0), 16);
+    return digit < 0 ? SHARDS : digit;
+  }
+
+  private static int shard(EntityBatch rows, int row) {
+    // the first hex digit of an address is the top four bits
+    return rows.hasAddress(row)
+        ? (int) (rows.getAddressMostSignificantBits(row) >>> 60)
+        : SHARDS;
+  }
+
+  private static byte[] utf8(String value) {
+    return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** the length of a string as utf-8, without encoding it; 0 for null */
+  private static long utf8Length(String value) {
+    if (value == null) return 0;
+    long length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  /** the entities of a request, either as a list or as a batch */
+  private static class Pending {
+    private final List<Entity> entities;
+    private final EntityBatch rows;
+    private final CompletableFuture<Void> written;
+    private final long enqueued = System.nanoTime();
+
+    Pending(List<Entity> entities, EntityBatch rows, CompletableFuture<Void> written) {
+      this.entities = entities;
+      this.rows = rows;
+      this.written = written;
+    }
+
+    int size() {
+      return entities != null ? entities.size() : rows.size();
+    }
+
+    void fail(Throwable t) {
+      if (written != null) written.completeExceptionally(t);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package com.http2.examples.ingest;
+
+import com.http2.api.SegmentStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An append-only log of records, split over fixed size segment files that are memory-mapped while
+ * they are written. Each record is its length as an int followed by its bytes; since a new segment
+ * is zero filled, a length of 0 marks the end of the records in a segment.
+ *
+ * <p>Appending only copies into the mapping, nothing is durable until {@link #force()} is called,
+ * which lets the caller force a whole batch of records with a single sync. A log has one writer and
+ * isn't thread safe.
+ */
+public class SegmentLog implements Closeable {
+
+  private static final String PREFIX = "segment-";
+  private static final String SUFFIX = ".log";
+
+  private final Path directory;
+  private final int segmentSize;
+
+  private long segment;
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+
+  public SegmentLog(Path directory, int segmentSize) throws IOException {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+
+    Files.createDirectories(directory);
+    // segments are never reopened, writing carries on in a new one after the last
+    try (Stream<Path> files = Files.list(directory)) {
+      segment =
+          files
+              .map(p -> p.getFileName().toString())
+              .filter(n -> n.startsWith(PREFIX) && n.endsWith(SUFFIX))
+              .mapToLong(n -> Long.parseLong(n.substring(PREFIX.length(), n.indexOf(SUFFIX))))
+              .max()
+              .orElse(-1);
+    }
+    roll();
+  }
+
+  /** appends the remaining bytes of a record, starting a new segment if it doesn't fit */
+  public void append(ByteBuffer record) throws IOException {
+    int length = record.remaining();
+    if (length == 0 || length > maxRecordSize(segmentSize)) {
+      throw new IllegalArgumentException(
+          "a record of [" + length + "] bytes doesn't fit in a segment of [" + segmentSize + "]");
+    }
+    if (buffer.remaining() < Integer.BYTES + length) {
+      force();
+      roll();
+    }
+    buffer.putInt(length);
+    buffer.put(record);
+  }
+
+  /** the most bytes a record can have in a segment of the size given */
+  public static long maxRecordSize(long segmentSize) {
+    return segmentSize - Integer.BYTES;
+  }
+
+  /** forces everything appended so far to disk */
+  public void force() {
+    buffer.force();
+  }
+
+  /** the segment being written */
+  public Path getSegment() {
+    return segmentFile(segment);
+  }
+
+  @Override
+  public void close() throws IOException {
+    force();
+    // there is no way to unmap the buffer on java 8, it is unmapped once it is garbage collected
+    channel.close();
+  }
+
+  /**
+   * reads every segment in a directory and counts its records. The segment being written can be
+   * read too, what has been appended to it is visible whether or not it has been forced yet.
+   */
+  public static List<SegmentStats> scan(Path directory) throws IOException {
+    List<Path> segments;
+    try (Stream<Path> files = Files.list(directory)) {
+      segments =
+          files
+              .filter(p -> p.getFileName().toString().startsWith(PREFIX))
+              .filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+
+    List<SegmentStats> stats = new ArrayList<>(segments.size());
+    ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+    for (Path segment : segments) {
+      long records = 0;
+      long bytes = 0;
+      try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+        long position = 0;
+        while (position + Integer.BYTES <= channel.size()) {
+          length.clear();
+          while (length.hasRemaining()) {
+            if (channel.read(length, position + length.position()) < 0) break;
+          }
+          int recordLength = length.getInt(0);
+          if (recordLength <= 0) break;
+          records++;
+          bytes += recordLength;
+          position += Integer.BYTES + recordLength;
+        }
+      }
+
+      SegmentStats segmentStats = new SegmentStats();
+      segmentStats.setName(segment.getFileName().toString());
+      segmentStats.setRecords(records);
+      segmentStats.setBytes(bytes);
+      stats.add(segmentStats);
+    }
+    return stats;
+  }
+
+  private void roll() throws IOException {
+    if (channel != null) channel.close();
+    segment++;
+    channel =
+        FileChannel.open(
+            segmentFile(segment),
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+  }
+
+  private Path segmentFile(long segment) {
+    return directory.resolve(String.format("%s%010d%s", PREFIX, segment, SUFFIX));
+  }
+}
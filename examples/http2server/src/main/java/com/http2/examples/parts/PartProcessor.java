@@ -0,0 +1,166 @@
+package com.http2.examples.parts;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.dropwizard.lifecycle.Managed;
+
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Processes the parts of multipart uploads on a pool of threads shared by every upload, so the
+ * work done on every entity of a large upload runs on as many cores as the pool has instead of
+ * only the request thread's. The request thread still reads the parts, one after another as they
+ * arrive, and hands each to the pool as soon as it is read; the results come back in the order the
+ * parts were read. An upload has at most {@code maxPartsInFlight} parts read but not processed,
+ * beyond that reading waits for the pool to catch up. That only holds a client back when the parts
+ * are read from the request as they arrive, as {@code /http2/stream} does; {@code /http2/multipart}
+ * gets its parts from Jersey already parsed, so there the limit only bounds the work queued on the
+ * pool. Either way every result is kept until the upload finishes.
+ *
+ * <p>Without a pool, or for an upload asking to be sequential, every part is processed on the
+ * request thread as it is read, as before.
+ */
+public class PartProcessor implements Managed {
+
+  private static final ThreadLocal<MessageDigest> SHA_256 =
+      ThreadLocal.withInitial(
+          () -> {
+            try {
+              return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+              throw new IllegalStateException(e);
+            }
+          });
+
+  private final PartsConfiguration config;
+  // null when parts are processed on the request thread
+  private final ForkJoinPool pool;
+
+  private final Timer processing;
+  private final Meter waits;
+
+  public PartProcessor(PartsConfiguration config, MetricRegistry metrics) {
+    this.config = config;
+    this.pool =
+        config.getParallelism() == 0
+            ? null
+            : new ForkJoinPool(
+                config.getParallelism(),
+                p -> {
+                  ForkJoinWorkerThread thread =
+                      ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                  thread.setName("parts-" + thread.getPoolIndex());
+                  return thread;
+                },
+                null,
+                // parts are independent, first in first out keeps them close to the reading order
+                true);
+
+    this.processing = metrics.timer(MetricRegistry.name(PartProcessor.class, "processing"));
+    this.waits = metrics.meter(MetricRegistry.name(PartProcessor.class, "waits"));
+    metrics.register(
+        MetricRegistry.name(PartProcessor.class, "active"),
+        (Gauge<Integer>) () -> pool == null ? 0 : pool.getActiveThreadCount());
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() throws InterruptedException {
+    if (pool == null) return;
+    pool.shutdown();
+    pool.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  /**
+   * starts an upload that turns every part into a result, on the pool unless asked to be
+   * sequential
+   */
+  public <T> Upload<T> upload(Function<String, T> result, boolean sequential) {
+    return new Upload<>(result, sequential || pool == null);
+  }
+
+  /** the work done on every part, then what the upload makes of it */
+  private <T> T process(String part, Function<String, T> result) {
+    Timer.Context time = processing.time();
+    try {
+      int rounds = config.getHashRounds();
+      if (rounds > 0) {
+        // the digest is thrown away, only the work it takes counts
+        MessageDigest digest = SHA_256.get();
+        byte[] hash = part.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < rounds; i++) {
+          hash = digest.digest(hash);
+        }
+      }
+      return result.apply(part);
+    } finally {
+      time.stop();
+    }
+  }
+
+  /** the parts of one upload, added by the request thread as they are read */
+  public class Upload<T> {
+    private final Function<String, T> result;
+    private final boolean sequential;
+    private final List<T> processed = new ArrayList<>();
+    private final List<CompletableFuture<T>> futures = new ArrayList<>();
+    private final Semaphore room = new Semaphore(config.getMaxPartsInFlight());
+
+    private Upload(Function<String, T> result, boolean sequential) {
+      this.result = result;
+      this.sequential = sequential;
+    }
+
+    /** processes a part, waiting for room first when too many are in flight */
+    public void add(String part) throws InterruptedIOException {
+      if (sequential) {
+        processed.add(process(part, result));
+        return;
+      }
+      if (!room.tryAcquire()) {
+        waits.mark();
+        try {
+          room.acquire();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("interrupted waiting for parts to be processed");
+        }
+      }
+      CompletableFuture<T> future =
+          CompletableFuture.supplyAsync(() -> process(part, result), pool);
+      future.whenComplete((r, e) -> room.release());
+      futures.add(future);
+    }
+
+    /** waits for every part to be processed, and returns their results in the order they came */
+    public List<T> finish() {
+      if (sequential) return processed;
+      List<T> results = new ArrayList<>(futures.size());
+      try {
+        for (CompletableFuture<T> future : futures) {
+          results.add(future.join());
+        }
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+        throw e;
+      }
+      return results;
+    }
+  }
+}
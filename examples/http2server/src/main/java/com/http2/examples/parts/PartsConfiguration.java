@@ -0,0 +1,60 @@
+package com.http2.examples.parts;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+/** Configures the {@link PartProcessor} that processes the parts of multipart uploads. */
+public class PartsConfiguration {
+
+  /**
+   * threads the parts of multipart uploads are processed on, shared by every upload; 0 processes
+   * them on the request thread, one after another as they are read
+   */
+  @Min(0)
+  private int parallelism = 0;
+
+  /**
+   * parts of one upload read but not processed yet; reading the upload waits for room beyond
+   * these, so it doesn't run ahead of the processing
+   */
+  @Min(1)
+  private int maxPartsInFlight = 256;
+
+  /**
+   * rounds of SHA-256 over every part, standing in for CPU heavy work on every entity such as
+   * validation or enrichment; 0 does none
+   */
+  @Min(0)
+  private int hashRounds = 0;
+
+  @JsonProperty
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  @JsonProperty
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  @JsonProperty
+  public int getMaxPartsInFlight() {
+    return maxPartsInFlight;
+  }
+
+  @JsonProperty
+  public void setMaxPartsInFlight(int maxPartsInFlight) {
+    this.maxPartsInFlight = maxPartsInFlight;
+  }
+
+  @JsonProperty
+  public int getHashRounds() {
+    return hashRounds;
+  }
+
+  @JsonProperty
+  public void setHashRounds(int hashRounds) {
+    this.hashRounds = hashRounds;
+  }
+}
@@ -0,0 +1,54 @@
+package com.http2.examples.performance;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Overrides the threads and queue of one kind of connector. A setting left out keeps what the
+ * connector itself is configured with, or Jetty's default.
+ */
+public class ConnectorConfiguration {
+
+  /** threads accepting new connections */
+  @Min(1)
+  private Integer acceptorThreads;
+
+  /** threads selecting on the open connections, each reading the connections it owns */
+  @Min(1)
+  private Integer selectorThreads;
+
+  /** connections the operating system queues up before an acceptor takes them */
+  @Min(0)
+  private Integer acceptQueueSize;
+
+  @JsonProperty
+  public Integer getAcceptorThreads() {
+    return acceptorThreads;
+  }
+
+  @JsonProperty
+  public void setAcceptorThreads(Integer acceptorThreads) {
+    this.acceptorThreads = acceptorThreads;
+  }
+
+  @JsonProperty
+  public Integer getSelectorThreads() {
+    return selectorThreads;
+  }
+
+  @JsonProperty
+  public void setSelectorThreads(Integer selectorThreads) {
+    this.selectorThreads = selectorThreads;
+  }
+
+  @JsonProperty
+  public Integer getAcceptQueueSize() {
+    return acceptQueueSize;
+  }
+
+  @JsonProperty
+  public void setAcceptQueueSize(Integer acceptQueueSize) {
+    this.acceptQueueSize = acceptQueueSize;
+  }
+}
@@ -0,0 +1,93 @@
+package com.http2.examples.performance;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Tunes the Jetty server the service runs on, applied by {@link ServerTuning} before it is built.
+ * Jetty has one thread pool shared by every connector, so the thread settings are for the server,
+ * while acceptors, selectors and the accept queue are set per kind of connector, and TLS for every
+ * connector that has it. A setting left out keeps what the {@code server} section says, or
+ * Dropwizard's default.
+ */
+public class PerformanceConfiguration {
+
+  @Min(1)
+  private Integer minThreads;
+
+  @Min(1)
+  private Integer maxThreads;
+
+  /** requests waiting for a thread before Jetty turns new ones away */
+  @Min(1)
+  private Integer maxQueuedRequests;
+
+  @Valid @NotNull private ConnectorConfiguration h2 = new ConnectorConfiguration();
+
+  @Valid @NotNull private ConnectorConfiguration https = new ConnectorConfiguration();
+
+  @Valid @NotNull private TlsConfiguration tls = new TlsConfiguration();
+
+  @JsonProperty
+  public Integer getMinThreads() {
+    return minThreads;
+  }
+
+  @JsonProperty
+  public void setMinThreads(Integer minThreads) {
+    this.minThreads = minThreads;
+  }
+
+  @JsonProperty
+  public Integer getMaxThreads() {
+    return maxThreads;
+  }
+
+  @JsonProperty
+  public void setMaxThreads(Integer maxThreads) {
+    this.maxThreads = maxThreads;
+  }
+
+  @JsonProperty
+  public Integer getMaxQueuedRequests() {
+    return maxQueuedRequests;
+  }
+
+  @JsonProperty
+  public void setMaxQueuedRequests(Integer maxQueuedRequests) {
+    this.maxQueuedRequests = maxQueuedRequests;
+  }
+
+  @JsonProperty
+  public ConnectorConfiguration getH2() {
+    return h2;
+  }
+
+  @JsonProperty
+  public void setH2(ConnectorConfiguration h2) {
+    this.h2 = h2;
+  }
+
+  @JsonProperty
+  public ConnectorConfiguration getHttps() {
+    return https;
+  }
+
+  @JsonProperty
+  public void setHttps(ConnectorConfiguration https) {
+    this.https = https;
+  }
+
+  @JsonProperty
+  public TlsConfiguration getTls() {
+    return tls;
+  }
+
+  @JsonProperty
+  public void setTls(TlsConfiguration tls) {
+    this.tls = tls;
+  }
+}
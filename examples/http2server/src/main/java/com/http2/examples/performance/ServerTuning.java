@@ -0,0 +1,129 @@
+package com.http2.examples.performance;
+
+import io.dropwizard.http2.Http2ConnectorFactory;
+import io.dropwizard.jetty.ConnectorFactory;
+import io.dropwizard.jetty.HttpConnectorFactory;
+import io.dropwizard.jetty.HttpsConnectorFactory;
+import io.dropwizard.server.AbstractServerFactory;
+import io.dropwizard.server.DefaultServerFactory;
+import io.dropwizard.server.ServerFactory;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSessionContext;
+import java.util.Optional;
+
+/**
+ * Applies a {@link PerformanceConfiguration} to the server factory. Dropwizard builds the server
+ * after the application has run, so settings changed from {@code Application.run} still take
+ * effect.
+ */
+public class ServerTuning {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ServerTuning.class);
+
+  private ServerTuning() {}
+
+  public static void apply(PerformanceConfiguration config, ServerFactory factory) {
+    if (config.getTls().getSessionTickets() != null) {
+      // read when the JDK first sets TLS up, which hasn't happened yet; older JDKs ignore it
+      System.setProperty(
+          "jdk.tls.server.enableSessionTicketExtension",
+          String.valueOf(config.getTls().getSessionTickets()));
+    }
+
+    if (factory instanceof AbstractServerFactory) {
+      AbstractServerFactory server = (AbstractServerFactory) factory;
+      if (config.getMinThreads() != null) server.setMinThreads(config.getMinThreads());
+      if (config.getMaxThreads() != null) server.setMaxThreads(config.getMaxThreads());
+      if (config.getMaxQueuedRequests() != null) {
+        server.setMaxQueuedRequests(config.getMaxQueuedRequests());
+      }
+      LOGGER.info(
+          "server threads: min [{}], max [{}], max queued requests [{}]",
+          server.getMinThreads(),
+          server.getMaxThreads(),
+          server.getMaxQueuedRequests());
+    }
+
+    if (!(factory instanceof DefaultServerFactory)) {
+      LOGGER.warn("connectors are only tuned with the default server factory, not [{}]", factory);
+      return;
+    }
+    for (ConnectorFactory connector : ((DefaultServerFactory) factory).getApplicationConnectors()) {
+      // an h2 connector is an https connector too, so it is checked first
+      if (connector instanceof Http2ConnectorFactory) {
+        apply(config.getH2(), (HttpConnectorFactory) connector, "h2");
+      } else if (connector instanceof HttpsConnectorFactory) {
+        apply(config.getHttps(), (HttpConnectorFactory) connector, "https");
+      }
+      if (connector instanceof HttpsConnectorFactory) {
+        apply(config.getTls(), (HttpsConnectorFactory) connector);
+      }
+    }
+  }
+
+  private static void apply(TlsConfiguration config, HttpsConnectorFactory connector) {
+    if (config.getProtocols() != null) connector.setSupportedProtocols(config.getProtocols());
+    // jetty has the server prefer the order of the suites it is given over the client's
+    if (config.getCipherSuites() != null) {
+      connector.setSupportedCipherSuites(config.getCipherSuites());
+    }
+    LOGGER.info(
+        "tls on port [{}]: protocols {}, cipher suites {}",
+        connector.getPort(),
+        connector.getSupportedProtocols() == null ? "default" : connector.getSupportedProtocols(),
+        connector.getSupportedCipherSuites() == null
+            ? "default"
+            : connector.getSupportedCipherSuites());
+  }
+
+  /**
+   * sizes the session caches of the TLS connectors of a started server; the JDK keeps them in the
+   * ssl context, which only exists once the connectors are started
+   */
+  public static void applySessions(TlsConfiguration config, Server server) {
+    if (config.getSessionCacheSize() == null && config.getSessionTimeout() == null) return;
+    for (Connector connector : server.getConnectors()) {
+      SslConnectionFactory ssl = connector.getConnectionFactory(SslConnectionFactory.class);
+      if (ssl == null) continue;
+      SSLSessionContext sessions =
+          ssl.getSslContextFactory().getSslContext().getServerSessionContext();
+      if (config.getSessionCacheSize() != null) {
+        sessions.setSessionCacheSize(config.getSessionCacheSize());
+      }
+      if (config.getSessionTimeout() != null) {
+        sessions.setSessionTimeout((int) config.getSessionTimeout().toSeconds());
+      }
+      LOGGER.info(
+          "tls sessions of [{}]: cache size [{}], timeout [{}]s",
+          connector.getName(),
+          sessions.getSessionCacheSize(),
+          sessions.getSessionTimeout());
+    }
+  }
+
+  private static void apply(
+      ConnectorConfiguration config, HttpConnectorFactory connector, String type) {
+    if (config.getAcceptorThreads() != null) {
+      connector.setAcceptorThreads(Optional.of(config.getAcceptorThreads()));
+    }
+    if (config.getSelectorThreads() != null) {
+      connector.setSelectorThreads(Optional.of(config.getSelectorThreads()));
+    }
+    if (config.getAcceptQueueSize() != null) {
+      connector.setAcceptQueueSize(config.getAcceptQueueSize());
+    }
+    // an empty count is left to Jetty, which derives it from the number of cores
+    LOGGER.info(
+        "{} connector on port [{}]: acceptors [{}], selectors [{}], accept queue [{}]",
+        type,
+        connector.getPort(),
+        connector.getAcceptorThreads().map(String::valueOf).orElse("default"),
+        connector.getSelectorThreads().map(String::valueOf).orElse("default"),
+        connector.getAcceptQueueSize() == null ? "default" : connector.getAcceptQueueSize());
+  }
+}
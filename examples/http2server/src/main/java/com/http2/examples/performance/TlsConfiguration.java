@@ -0,0 +1,87 @@
+package com.http2.examples.performance;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import java.util.List;
+
+/**
+ * Tunes the TLS of every connector that has it. A setting left out keeps what the connector itself
+ * is configured with, or the JDK's default.
+ */
+public class TlsConfiguration {
+
+  /** protocols the connectors accept, e.g. only TLSv1.3 on a JDK that has it */
+  private List<String> protocols;
+
+  /**
+   * cipher suites the connectors accept, most preferred first; the server picks by this order
+   * rather than the client's, e.g. AES-GCM first on CPUs with AES instructions, ChaCha20 first on
+   * those without
+   */
+  private List<String> cipherSuites;
+
+  /** sessions the server keeps for clients to resume; 0 keeps as many as it is given */
+  @Min(0)
+  private Integer sessionCacheSize;
+
+  /** how long a session can be resumed after it was created */
+  private Duration sessionTimeout;
+
+  /**
+   * whether sessions are resumed from tickets the client keeps instead of the server's cache, on
+   * a JDK that supports them
+   */
+  private Boolean sessionTickets;
+
+  @JsonProperty
+  public List<String> getProtocols() {
+    return protocols;
+  }
+
+  @JsonProperty
+  public void setProtocols(List<String> protocols) {
+    this.protocols = protocols;
+  }
+
+  @JsonProperty
+  public List<String> getCipherSuites() {
+    return cipherSuites;
+  }
+
+  @JsonProperty
+  public void setCipherSuites(List<String> cipherSuites) {
+    this.cipherSuites = cipherSuites;
+  }
+
+  @JsonProperty
+  public Integer getSessionCacheSize() {
+    return sessionCacheSize;
+  }
+
+  @JsonProperty
+  public void setSessionCacheSize(Integer sessionCacheSize) {
+    this.sessionCacheSize = sessionCacheSize;
+  }
+
+  @JsonProperty
+  public Duration getSessionTimeout() {
+    return sessionTimeout;
+  }
+
+  @JsonProperty
+  public void setSessionTimeout(Duration sessionTimeout) {
+    this.sessionTimeout = sessionTimeout;
+  }
+
+  @JsonProperty
+  public Boolean getSessionTickets() {
+    return sessionTickets;
+  }
+
+  @JsonProperty
+  public void setSessionTickets(Boolean sessionTickets) {
+    this.sessionTickets = sessionTickets;
+  }
+}
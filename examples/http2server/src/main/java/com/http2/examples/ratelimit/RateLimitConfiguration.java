@@ -0,0 +1,103 @@
+package com.http2.examples.ratelimit;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/** Configures the {@link RateLimitFilter}; the limits apply to every tenant separately. */
+public class RateLimitConfiguration {
+
+  private boolean enabled = false;
+
+  @Min(1)
+  private long requestsPerSecond = 1000;
+
+  /** requests a tenant that has been quiet can send at once */
+  @Min(1)
+  private long requestBurst = 2000;
+
+  @NotNull private Size bytesPerSecond = Size.megabytes(100);
+
+  /** bytes a tenant that has been quiet can send at once; at least the largest request */
+  @NotNull private Size bytesBurst = Size.megabytes(200);
+
+  /** tenants tracked at once; tenants beyond it share a single bucket until some go idle */
+  @Min(1)
+  private int maxTenants = 10000;
+
+  /** how long a tenant has to be quiet before it is forgotten */
+  @NotNull private Duration idleTimeout = Duration.minutes(5);
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @JsonProperty
+  public long getRequestsPerSecond() {
+    return requestsPerSecond;
+  }
+
+  @JsonProperty
+  public void setRequestsPerSecond(long requestsPerSecond) {
+    this.requestsPerSecond = requestsPerSecond;
+  }
+
+  @JsonProperty
+  public long getRequestBurst() {
+    return requestBurst;
+  }
+
+  @JsonProperty
+  public void setRequestBurst(long requestBurst) {
+    this.requestBurst = requestBurst;
+  }
+
+  @JsonProperty
+  public Size getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  @JsonProperty
+  public void setBytesPerSecond(Size bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+  @JsonProperty
+  public Size getBytesBurst() {
+    return bytesBurst;
+  }
+
+  @JsonProperty
+  public void setBytesBurst(Size bytesBurst) {
+    this.bytesBurst = bytesBurst;
+  }
+
+  @JsonProperty
+  public int getMaxTenants() {
+    return maxTenants;
+  }
+
+  @JsonProperty
+  public void setMaxTenants(int maxTenants) {
+    this.maxTenants = maxTenants;
+  }
+
+  @JsonProperty
+  public Duration getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  @JsonProperty
+  public void setIdleTimeout(Duration idleTimeout) {
+    this.idleTimeout = idleTimeout;
+  }
+}
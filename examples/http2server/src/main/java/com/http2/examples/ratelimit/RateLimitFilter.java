@@ -0,0 +1,139 @@
+package com.http2.examples.ratelimit;
+
+import com.http2.examples.auth.AuthFilter;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits requests per tenant with a {@link RateLimiter}, answering a 429 with a Retry-After
+ * when a tenant is over its limit. A tenant is the subject the {@link AuthFilter} verified, or the
+ * remote address of a request when authentication is off; an unverified bearer token is ignored,
+ * as a client could send a new one with every request to get a new bucket each time. The bytes of
+ * a request are charged up front from its Content-Length; when it has none they are counted as the
+ * body is read and charged afterwards, which slows the tenant's next requests instead.
+ */
+public class RateLimitFilter implements Filter {
+
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+
+  private final RateLimiter limiter;
+
+  public RateLimitFilter(RateLimiter limiter) {
+    this.limiter = limiter;
+  }
+
+  @Override
+  public void init(FilterConfig filterConfig) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    HttpServletRequest http = (HttpServletRequest) request;
+    String tenant = tenant(http);
+    long length = http.getContentLengthLong();
+
+    long wait = limiter.tryAcquire(tenant, length);
+    if (wait > 0) {
+      HttpServletResponse httpResponse = (HttpServletResponse) response;
+      httpResponse.setHeader(
+          "Retry-After", String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait) + 1)));
+      httpResponse.sendError(SC_TOO_MANY_REQUESTS);
+      return;
+    }
+
+    if (length >= 0) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    CountingRequest counting = new CountingRequest(http);
+    try {
+      chain.doFilter(counting, response);
+    } finally {
+      limiter.charge(tenant, counting.getCount());
+    }
+  }
+
+  @Override
+  public void destroy() {}
+
+  /** the tenant a request is limited as, set by the {@link AuthFilter} that runs first */
+  static String tenant(HttpServletRequest request) {
+    Object subject = request.getAttribute(AuthFilter.SUBJECT);
+    return subject instanceof String ? (String) subject : request.getRemoteAddr();
+  }
+
+  /** counts the bytes read from the body of a request */
+  private static class CountingRequest extends HttpServletRequestWrapper {
+    private ServletInputStream stream;
+    private long count;
+
+    CountingRequest(HttpServletRequest request) {
+      super(request);
+    }
+
+    long getCount() {
+      return count;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+      if (stream == null) stream = new CountingStream(super.getInputStream());
+      return stream;
+    }
+
+    private class CountingStream extends ServletInputStream {
+      private final ServletInputStream delegate;
+
+      CountingStream(ServletInputStream delegate) {
+        this.delegate = delegate;
+      }
+
+      @Override
+      public int read() throws IOException {
+        int b = delegate.read();
+        if (b >= 0) count++;
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int n = delegate.read(b, off, len);
+        if (n > 0) count += n;
+        return n;
+      }
+
+      @Override
+      public boolean isFinished() {
+        return delegate.isFinished();
+      }
+
+      @Override
+      public boolean isReady() {
+        return delegate.isReady();
+      }
+
+      @Override
+      public void setReadListener(ReadListener readListener) {
+        delegate.setReadListener(readListener);
+      }
+
+      @Override
+      public void close() throws IOException {
+        delegate.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.http2.examples.ratelimit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.lifecycle.Managed;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the requests and bytes per second of every tenant separately, so a noisy tenant uses up
+ * its own buckets without touching anyone else's. On the hot path a known tenant costs a lookup in
+ * a concurrent map and a compare-and-set per bucket, with no locks.
+ *
+ * <p>The map is bounded: once it holds the max number of tenants, a new one makes room by
+ * forgetting the tenants that have gone idle there and then, rather than waiting for the next
+ * sweep. Only when none of them are idle do new tenants share a single overflow bucket.
+ */
+public class RateLimiter implements Managed {
+
+  // a full map is swept for a new tenant at most this often, so a flood of them can't make every
+  // request walk the map
+  private static final long MIN_SWEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final RateLimitConfiguration config;
+  private final ConcurrentMap<String, Tenant> tenants = new ConcurrentHashMap<>();
+  private final Tenant overflow;
+  private final long idleNanos;
+  private final AtomicLong lastSweep = new AtomicLong(System.nanoTime() - MIN_SWEEP_NANOS);
+  private final ScheduledExecutorService sweeper =
+      Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "rate-limit-sweeper"));
+
+  private final Meter limitedRequests;
+  private final Meter limitedBytes;
+  private final Meter overflowed;
+  private final Meter evicted;
+
+  public RateLimiter(RateLimitConfiguration config, MetricRegistry metrics) {
+    this.config = config;
+    this.overflow = new Tenant(config);
+    this.idleNanos = config.getIdleTimeout().toNanoseconds();
+
+    this.limitedRequests =
+        metrics.meter(MetricRegistry.name(RateLimiter.class, "limited", "requests"));
+    this.limitedBytes = metrics.meter(MetricRegistry.name(RateLimiter.class, "limited", "bytes"));
+    this.overflowed = metrics.meter(MetricRegistry.name(RateLimiter.class, "overflowed"));
+    this.evicted = metrics.meter(MetricRegistry.name(RateLimiter.class, "evicted"));
+    metrics.register(
+        MetricRegistry.name(RateLimiter.class, "tenants"), (Gauge<Integer>) tenants::size);
+  }
+
+  @Override
+  public void start() {
+    long period = Math.max(TimeUnit.SECONDS.toNanos(1), idleNanos / 2);
+    sweeper.scheduleAtFixedRate(this::sweep, period, period, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void stop() {
+    sweeper.shutdownNow();
+  }
+
+  /**
+   * takes a request and its bytes from the tenant's buckets
+   *
+   * @return 0 if the request can go ahead, otherwise the nanos until it could
+   */
+  public long tryAcquire(String tenant, long bytes) {
+    Tenant buckets = tenant(tenant);
+    // after the lookup, as a new tenant's buckets are full as of when they were made
+    long now = System.nanoTime();
+
+    long wait = buckets.requests.tryTake(1, now);
+    if (wait > 0) {
+      limitedRequests.mark();
+      return wait;
+    }
+    if (bytes > 0) {
+      wait = buckets.bytes.tryTake(bytes, now);
+      if (wait > 0) {
+        // the request doesn't go ahead, so it doesn't count against the requests either
+        buckets.requests.refund(1);
+        limitedBytes.mark();
+        return wait;
+      }
+    }
+    return 0;
+  }
+
+  /** charges bytes that weren't known up front, after the request was let through */
+  public void charge(String tenant, long bytes) {
+    if (bytes > 0) tenant(tenant).bytes.take(bytes, System.nanoTime());
+  }
+
+  private Tenant tenant(String key) {
+    Tenant tenant = tenants.get(key);
+    if (tenant != null) return tenant;
+    if (tenants.size() >= config.getMaxTenants()) {
+      long now = System.nanoTime();
+      long last = lastSweep.get();
+      if (now - last >= MIN_SWEEP_NANOS && lastSweep.compareAndSet(last, now)) sweep();
+      if (tenants.size() >= config.getMaxTenants()) {
+        overflowed.mark();
+        return overflow;
+      }
+    }
+    return tenants.computeIfAbsent(key, k -> new Tenant(config));
+  }
+
+  /** the tenants with buckets of their own */
+  int getTenants() {
+    return tenants.size();
+  }
+
+  /** forgets the tenants that have gone idle */
+  void sweep() {
+    long now = System.nanoTime();
+    int before = tenants.size();
+    tenants.values().removeIf(t -> t.isIdle(idleNanos, now));
+    evicted.mark(Math.max(0, before - tenants.size()));
+  }
+
+  private static class Tenant {
+    private final TokenBucket requests;
+    private final TokenBucket bytes;
+
+    Tenant(RateLimitConfiguration config) {
+      this.requests = new TokenBucket(config.getRequestsPerSecond(), config.getRequestBurst());
+      this.bytes =
+          new TokenBucket(config.getBytesPerSecond().toBytes(), config.getBytesBurst().toBytes());
+    }
+
+    boolean isIdle(long idleNanos, long now) {
+      return requests.isIdle(idleNanos, now) && bytes.isIdle(idleNanos, now);
+    }
+  }
+}
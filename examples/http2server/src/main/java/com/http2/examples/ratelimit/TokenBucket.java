@@ -0,0 +1,66 @@
+package com.http2.examples.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket, kept as the single time at which the bucket was (or will be) empty, as
+ * the generic cell rate algorithm does: the tokens in the bucket are the time since then, capped at
+ * the burst. Taking tokens pushes that time forward by their cost, as long as it doesn't end up
+ * past now. There is no refill to keep up, so taking tokens is a read and a compare-and-set of one
+ * long.
+ */
+public class TokenBucket {
+
+  private final double nanosPerToken;
+  private final long burstNanos;
+  private final AtomicLong empty;
+
+  /**
+   * @param rate tokens added per second
+   * @param burst most tokens the bucket holds
+   */
+  public TokenBucket(long rate, long burst) {
+    this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / (double) rate;
+    this.burstNanos = (long) (burst * nanosPerToken);
+    this.empty = new AtomicLong(System.nanoTime() - burstNanos);
+  }
+
+  /**
+   * takes tokens if there are enough of them. More tokens than the burst can only be taken from a
+   * full bucket, which leaves it in debt.
+   *
+   * @return 0 if they were taken, otherwise the nanos until there will be enough
+   */
+  public long tryTake(long tokens, long now) {
+    long cost = (long) (tokens * nanosPerToken);
+    while (true) {
+      long current = empty.get();
+      long start = Math.max(current, now - burstNanos);
+      long ahead = start + cost - now;
+      if (cost > burstNanos) {
+        // has to wait until the bucket is full
+        if (start > now - burstNanos) return start - (now - burstNanos);
+      } else if (ahead > 0) {
+        return ahead;
+      }
+      if (empty.compareAndSet(current, start + cost)) return 0;
+    }
+  }
+
+  /** takes tokens whether or not there are enough, leaving the bucket in debt if there weren't */
+  public void take(long tokens, long now) {
+    long cost = (long) (tokens * nanosPerToken);
+    empty.getAndUpdate(current -> Math.max(current, now - burstNanos) + cost);
+  }
+
+  /** gives back tokens taken by a request that didn't go ahead after all */
+  public void refund(long tokens) {
+    empty.addAndGet(-(long) (tokens * nanosPerToken));
+  }
+
+  /** whether nothing has been taken from the bucket for a while */
+  public boolean isIdle(long idleNanos, long now) {
+    return now - empty.get() > burstNanos + idleNanos;
+  }
+}
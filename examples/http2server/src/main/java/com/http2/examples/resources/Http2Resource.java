@@ -1,7 +1,18 @@
 package com.http2.examples.resources;
 
 import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.http2.api.Entity;
+import com.http2.api.EntityBatch;
+import com.http2.api.EntityBatches;
+import com.http2.api.IngestProgress;
+import com.http2.api.MessageAck;
 import com.http2.api.PostEntities;
+import com.http2.examples.dedup.DuplicateFilter;
+import com.http2.examples.ingest.IngestPipeline;
+import com.http2.examples.parts.PartProcessor;
 import org.apache.commons.io.IOUtils;
 import org.glassfish.jersey.media.multipart.BodyPart;
 import org.glassfish.jersey.media.multipart.Boundary;
@@ -13,16 +24,25 @@ import org.jvnet.mimepull.MIMEPart;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /** @author Stephen Durfey */
@@ -31,7 +51,19 @@ public class Http2Resource {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Http2Resource.class);
 
-  public Http2Resource() {}
+  private final IngestPipeline ingest;
+  private final DuplicateFilter dedup;
+  private final PartProcessor parts;
+  private final ObjectMapper mapper;
+
+  /** @param dedup drops retried entities before they are persisted; null to persist every one */
+  public Http2Resource(
+      IngestPipeline ingest, DuplicateFilter dedup, PartProcessor parts, ObjectMapper mapper) {
+    this.ingest = ingest;
+    this.dedup = dedup;
+    this.parts = parts;
+    this.mapper = mapper;
+  }
 
   @GET
   @Timed
@@ -44,7 +76,28 @@ public class Http2Resource {
   @Path("payload")
   @Consumes(MediaType.APPLICATION_JSON)
   public int post(PostEntities body) {
-    return body.getEntities().size();
+    // duplicates are accepted along with the rest, a client retrying gets the same answer
+    int posted = body.getEntities().size();
+    publishNew(body.getEntities());
+    return posted;
+  }
+
+  /** takes the same body as {@code payload}, read into columns rather than an object per entity */
+  @POST
+  @Timed
+  @Path("payload/compact")
+  @Consumes(MediaType.APPLICATION_JSON)
+  public int postCompact(EntityBatch batch) {
+    return publish(batch);
+  }
+
+  /** takes a batch in the binary form of {@link EntityBatches}, with addresses as 16 bytes */
+  @POST
+  @Timed
+  @Path("payload/binary")
+  @Consumes(EntityBatches.MEDIA_TYPE)
+  public int postBinary(EntityBatch batch) {
+    return publish(batch);
   }
 
   @POST
@@ -54,15 +107,24 @@ public class Http2Resource {
     return s.length();
   }
 
+  /**
+   * The parts of this and of {@code stream} are processed by the {@link PartProcessor}, on its pool
+   * when it has one, unless {@code sequential} asks for the request thread, to compare the two.
+   */
   @POST
   @Timed
   @Path("multipart")
   @Consumes(MultiPartMediaTypes.MULTIPART_MIXED)
-  public long postMultipart(@Context HttpHeaders headers, MultiPart multiPart) throws IOException {
+  public long postMultipart(
+      @Context HttpHeaders headers,
+      @QueryParam("sequential") boolean sequential,
+      MultiPart multiPart)
+      throws IOException {
     List<String> requestHeader = headers.getRequestHeader("Content-Encoding");
 //    requestHeader.forEach(System.out::println);
     
     int sum = 0;
+    PartProcessor.Upload<Entity> upload = parts.upload(Http2Resource::entity, sequential);
     for (final BodyPart bodyPart : multiPart.getBodyParts()) {
       // converts the data from the underlying input stream into the
       // requested type. this is pretty handy since it will use the
@@ -81,9 +143,12 @@ public class Http2Resource {
       // Funny enough, a BodyPartEntity, is a wrapper around MIMEPart, and MIMEPart
       // is a construct from the mimepull library, which is used in the method
       // below.
-      sum += bodyPart.getEntityAs(String.class).length();
+      String part = bodyPart.getEntityAs(String.class);
+      sum += part.length();
+      upload.add(part);
     }
 
+    ingest.publish(upload.finish());
     return sum;
   }
 
@@ -91,7 +156,11 @@ public class Http2Resource {
   @Timed
   @Path("stream")
   @Consumes(MultiPartMediaTypes.MULTIPART_MIXED)
-  public long postStream(@Context HttpHeaders headers, InputStream stream) throws IOException {
+  public long postStream(
+      @Context HttpHeaders headers,
+      @QueryParam("sequential") boolean sequential,
+      InputStream stream)
+      throws IOException {
     String boundary = headers.getMediaType().getParameters().get(Boundary.BOUNDARY_PARAMETER);
 
     LOGGER.debug("boundary: " + boundary);
@@ -103,12 +172,15 @@ public class Http2Resource {
     boolean hasNext = true;
 
     long sum = 0;
+    PartProcessor.Upload<Entity> upload = parts.upload(Http2Resource::entity, sequential);
     while (hasNext) {
       try {
         MIMEPart part = message.getPart(partIndex);
 
         String s = IOUtils.toString(new InputStreamReader(part.read()));
         sum += Integer.parseInt(s);
+        // handed off as soon as it is read, while the next part is still arriving
+        upload.add(s);
         partIndex++;
       } catch (IllegalStateException e) {
         LOGGER.debug("number of elements in stream: " + partIndex);
@@ -116,6 +188,212 @@ public class Http2Resource {
       }
     }
 
+    ingest.publish(upload.finish());
     return sum;
   }
+
+  /**
+   * One path for entities however a client groups them: a single entity as plain text here, and a
+   * batch it coalesced, as a {@link PostEntities} document or as multipart/mixed parts, below.
+   */
+  @POST
+  @Timed
+  @Path("entity")
+  @Consumes(MediaType.TEXT_PLAIN)
+  public int postEntity(String name) {
+    ingest.publish(Collections.singletonList(entity(name)));
+    return 1;
+  }
+
+  @POST
+  @Timed
+  @Path("entity")
+  @Consumes(MediaType.APPLICATION_JSON)
+  public int postEntities(PostEntities body) {
+    return post(body);
+  }
+
+  @POST
+  @Timed
+  @Path("entity")
+  @Consumes(MultiPartMediaTypes.MULTIPART_MIXED)
+  public int postEntityParts(MultiPart multiPart) {
+    List<Entity> entities = new ArrayList<>(multiPart.getBodyParts().size());
+    for (BodyPart bodyPart : multiPart.getBodyParts()) {
+      entities.add(entity(bodyPart.getEntityAs(String.class)));
+    }
+    ingest.publish(entities);
+    return entities.size();
+  }
+
+  /**
+   * Reads an entity per line as the lines arrive, publishing them every {@code ack} entities and
+   * answering each publish with a line of {@link IngestProgress}, so a client can keep one upload
+   * going and see how far the service got. The response is committed with the first line, so a
+   * failure after it is reported as a last line with an error rather than as a status.
+   */
+  @POST
+  @Path("ndjson")
+  @Consumes(IngestProgress.NDJSON)
+  @Produces(IngestProgress.NDJSON)
+  public StreamingOutput postNdjson(
+      @QueryParam("ack") @DefaultValue("1000") int ack, InputStream stream) {
+    if (ack < 1) throw new BadRequestException("ack has to be at least 1");
+
+    return output -> {
+      IngestProgress progress = new IngestProgress();
+      try (MappingIterator<Entity> lines = mapper.readerFor(Entity.class).readValues(stream)) {
+        // the list is handed to the ingest queue, so every publish gets a new one
+        List<Entity> entities = new ArrayList<>(ack);
+        while (lines.hasNextValue()) {
+          entities.add(lines.nextValue());
+          if (entities.size() == ack) {
+            publish(entities, progress);
+            writeLine(output, progress);
+            entities = new ArrayList<>(ack);
+          }
+        }
+        publish(entities, progress);
+        progress.setDone(true);
+      } catch (JsonProcessingException e) {
+        progress.setError("line after entity [" + progress.getEntities() + "]: " + e.getMessage());
+      } catch (WebApplicationException e) {
+        progress.setError(e.getMessage());
+      }
+      writeLine(output, progress);
+    };
+  }
+
+  /**
+   * Reads an entity per line and answers every one with a {@link MessageAck} as soon as it has been
+   * published, while the rest of the upload is still arriving, so a client can measure the round
+   * trip of each message within one stream.
+   */
+  @POST
+  @Path("duplex")
+  @Consumes(IngestProgress.NDJSON)
+  @Produces(IngestProgress.NDJSON)
+  public StreamingOutput postDuplex(InputStream stream) {
+    return output -> {
+      long sequence = 0;
+      try (MappingIterator<Entity> lines = mapper.readerFor(Entity.class).readValues(stream)) {
+        while (lines.hasNextValue()) {
+          if (!acknowledge(output, sequence++, lines.nextValue())) return;
+        }
+      } catch (JsonProcessingException e) {
+        writeLine(output, ack(sequence, false, "not an entity: " + e.getMessage()));
+      }
+    };
+  }
+
+  /**
+   * The multipart/mixed version of {@link #postDuplex}: every part is an entity named after its
+   * content, answered with a {@link MessageAck} once the parser has reached its end, which it knows
+   * when the delimiter after it arrives.
+   */
+  @POST
+  @Path("duplex")
+  @Consumes(MultiPartMediaTypes.MULTIPART_MIXED)
+  @Produces(IngestProgress.NDJSON)
+  public StreamingOutput postDuplexMultipart(@Context HttpHeaders headers, InputStream stream) {
+    String boundary = headers.getMediaType().getParameters().get(Boundary.BOUNDARY_PARAMETER);
+    MIMEMessage message = new MIMEMessage(stream, boundary, new MIMEConfig());
+
+    return output -> {
+      int partIndex = 0;
+      while (true) {
+        String part;
+        try {
+          part = IOUtils.toString(new InputStreamReader(message.getPart(partIndex).read()));
+        } catch (IllegalStateException e) {
+          // as in postStream, asking for a part past the last one is how the end is found
+          LOGGER.debug("number of parts acknowledged: " + partIndex);
+          return;
+        }
+        if (!acknowledge(output, partIndex++, entity(part))) return;
+      }
+    };
+  }
+
+  /** publishes a single entity and writes its ack; false if it failed and the upload should stop */
+  private boolean acknowledge(OutputStream output, long sequence, Entity entity)
+      throws IOException {
+    boolean duplicate = dedup != null && dedup.isDuplicate(entity.getAddress());
+    try {
+      if (!duplicate) ingest.publish(Collections.singletonList(entity));
+    } catch (WebApplicationException e) {
+      if (dedup != null) dedup.release(entity.getAddress());
+      writeLine(output, ack(sequence, false, e.getMessage()));
+      return false;
+    }
+    if (dedup != null && !duplicate) dedup.commit(entity.getAddress());
+    writeLine(output, ack(sequence, duplicate, null));
+    return true;
+  }
+
+  private static MessageAck ack(long sequence, boolean duplicate, String error) {
+    MessageAck ack = new MessageAck();
+    ack.setSequence(sequence);
+    ack.setDuplicate(duplicate);
+    ack.setError(error);
+    return ack;
+  }
+
+  private void publish(List<Entity> entities, IngestProgress progress) {
+    int read = entities.size();
+    int duplicates = publishNew(entities);
+    progress.setEntities(progress.getEntities() + read);
+    progress.setDuplicates(progress.getDuplicates() + duplicates);
+  }
+
+  private void writeLine(OutputStream output, Object line) throws IOException {
+    // not through writeValue, which would close the response after the first line
+    output.write(mapper.writeValueAsBytes(line));
+    output.write('\n');
+    output.flush();
+  }
+
+  private int publish(EntityBatch batch) {
+    int posted = batch.size();
+    if (dedup == null) {
+      ingest.publish(batch);
+      return posted;
+    }
+    dedup.removeDuplicates(batch);
+    try {
+      ingest.publish(batch);
+    } catch (RuntimeException e) {
+      dedup.release(batch);
+      throw e;
+    }
+    dedup.commit(batch);
+    return posted;
+  }
+
+  /**
+   * publishes the entities that aren't duplicates, and only then has the filter remember them, so
+   * a retry of an upload turned away isn't dropped; returns how many duplicates were removed
+   */
+  private int publishNew(List<Entity> entities) {
+    if (dedup == null) {
+      ingest.publish(entities);
+      return 0;
+    }
+    int duplicates = dedup.removeDuplicates(entities);
+    try {
+      ingest.publish(entities);
+    } catch (RuntimeException e) {
+      dedup.release(entities);
+      throw e;
+    }
+    dedup.commit(entities);
+    return duplicates;
+  }
+
+  /** a part of a multipart upload is persisted as an entity named after its content */
+  private static Entity entity(String part) {
+    Entity entity = new Entity();
+    entity.setName(part);
+    return entity;
+  }
 }
@@ -0,0 +1,97 @@
+package com.http2.examples.resources;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.http2.examples.cache.ResponseCache;
+import com.http2.examples.ingest.IngestPipeline;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
+
+/**
+ * Serves aggregates of the ingested entities. Every response carries the ingest version as its
+ * ETag, so a client revalidating with If-None-Match gets a 304 without the response being built
+ * while nothing was written in between. The version starts over with every start of the service, so
+ * the tag is prefixed with when this one started, or a tag from before a restart could match
+ * totals that are different now. Built responses are kept in a {@link ResponseCache} when one is
+ * given.
+ */
+@Path("/http2/stats")
+@Produces(MediaType.APPLICATION_JSON)
+public class StatsResource {
+
+  private static final CacheControl REVALIDATE = new CacheControl();
+
+  static {
+    // clients may keep a response, but have to check it is still current before using it
+    REVALIDATE.setNoCache(true);
+  }
+
+  private interface Builder {
+    Object build() throws IOException;
+  }
+
+  private final IngestPipeline ingest;
+  private final ResponseCache cache;
+  private final ObjectMapper mapper;
+  private final Meter notModified;
+  // tells the versions of one start of the service from those of another
+  private final String epoch = Long.toString(System.currentTimeMillis());
+
+  public StatsResource(
+      IngestPipeline ingest, ResponseCache cache, ObjectMapper mapper, MetricRegistry metrics) {
+    this.ingest = ingest;
+    this.cache = cache;
+    this.mapper = mapper;
+    this.notModified = metrics.meter(MetricRegistry.name(StatsResource.class, "not-modified"));
+  }
+
+  /** totals of what has been ingested, and entities by the first character of their address */
+  @GET
+  @Timed
+  public Response stats(@Context Request request, @Context UriInfo uri) throws IOException {
+    return respond(request, uri, ingest::getStats);
+  }
+
+  /** what each segment of the ingest log holds; this reads every segment */
+  @GET
+  @Timed
+  @Path("segments")
+  public Response segments(@Context Request request, @Context UriInfo uri) throws IOException {
+    return respond(request, uri, ingest::getSegments);
+  }
+
+  private Response respond(Request request, UriInfo uri, Builder builder) throws IOException {
+    // read before building, so a response is never older than its tag says: it may hold writes
+    // newer than the tag, and a client revalidating with the tag then gets them again at worst
+    long version = ingest.getVersion();
+    EntityTag tag = new EntityTag(epoch + "-" + version);
+
+    Response.ResponseBuilder unchanged = request.evaluatePreconditions(tag);
+    if (unchanged != null) {
+      notModified.mark();
+      return unchanged.cacheControl(REVALIDATE).build();
+    }
+
+    byte[] body =
+        cache == null
+            ? mapper.writeValueAsBytes(builder.build())
+            // keyed on the path alone, the responses don't depend on a query that could vary
+            : cache.get(uri.getPath(), version, () -> mapper.writeValueAsBytes(builder.build()));
+    return Response.ok(body, MediaType.APPLICATION_JSON_TYPE)
+        .tag(tag)
+        .cacheControl(REVALIDATE)
+        .build();
+  }
+}
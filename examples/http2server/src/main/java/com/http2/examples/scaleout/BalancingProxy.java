@@ -0,0 +1,217 @@
+package com.http2.examples.scaleout;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.proxy.AsyncProxyServlet;
+import org.eclipse.jetty.server.Request;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An h2 reverse proxy spreading requests over a set of backends. With {@link Balance#CONNECTION}
+ * every client connection is pinned to the backend its first stream went to, the way a layer 4
+ * balancer sees h2: one long lived connection carrying everything. With {@link Balance#STREAM}
+ * every stream goes to the next backend, whichever connection it came in on. Backends are reached
+ * over h2c, every one on a connection the proxy multiplexes its streams over.
+ */
+public class BalancingProxy extends AsyncProxyServlet {
+
+  private static final String BACKEND = BalancingProxy.class.getName() + ".backend";
+  private static final String STARTED = BalancingProxy.class.getName() + ".started";
+
+  /** what a stream is balanced by */
+  public enum Balance {
+    CONNECTION,
+    STREAM
+  }
+
+  private final List<Backend> backends;
+  private final Balance balance;
+  private final AtomicInteger next = new AtomicInteger();
+  // a client connection to the backend it is pinned to, until the connection closes
+  private final Map<Connection, Backend> pinned = new ConcurrentHashMap<>();
+
+  public BalancingProxy(List<Backend> backends, Balance balance) {
+    this.backends = backends;
+    this.balance = balance;
+  }
+
+  @Override
+  protected HttpClient newHttpClient() {
+    return new HttpClient(new HttpClientTransportOverHTTP2(new HTTP2Client()), null);
+  }
+
+  @Override
+  protected String rewriteTarget(HttpServletRequest clientRequest) {
+    Backend backend;
+    if (balance == Balance.CONNECTION) {
+      backend = pinned.computeIfAbsent(connection(clientRequest), this::pin);
+    } else {
+      backend = nextBackend();
+    }
+    backend.started();
+    clientRequest.setAttribute(BACKEND, backend);
+    clientRequest.setAttribute(STARTED, System.nanoTime());
+
+    StringBuilder target =
+        new StringBuilder(backend.getUrl()).append(clientRequest.getRequestURI());
+    if (clientRequest.getQueryString() != null) {
+      target.append('?').append(clientRequest.getQueryString());
+    }
+    return target.toString();
+  }
+
+  /** the connection a request came in on, which every stream of an h2 connection shares */
+  private static Connection connection(HttpServletRequest request) {
+    return Request.getBaseRequest(request).getHttpChannel().getEndPoint().getConnection();
+  }
+
+  /** pins a new client connection to the next backend, and unpins it once it closes */
+  private Backend pin(Connection connection) {
+    connection.addListener(
+        new Connection.Listener.Adapter() {
+          @Override
+          public void onClosed(Connection closed) {
+            Backend backend = pinned.remove(closed);
+            if (backend != null) backend.disconnected();
+          }
+        });
+    return nextBackend().connected();
+  }
+
+  private Backend nextBackend() {
+    return backends.get((next.getAndIncrement() & Integer.MAX_VALUE) % backends.size());
+  }
+
+  @Override
+  protected void onProxyResponseSuccess(
+      HttpServletRequest clientRequest,
+      HttpServletResponse proxyResponse,
+      Response serverResponse) {
+    completed(clientRequest, false);
+    super.onProxyResponseSuccess(clientRequest, proxyResponse, serverResponse);
+  }
+
+  @Override
+  protected void onProxyResponseFailure(
+      HttpServletRequest clientRequest,
+      HttpServletResponse proxyResponse,
+      Response serverResponse,
+      Throwable failure) {
+    completed(clientRequest, true);
+    super.onProxyResponseFailure(clientRequest, proxyResponse, serverResponse, failure);
+  }
+
+  private static void completed(HttpServletRequest clientRequest, boolean failed) {
+    Backend backend = (Backend) clientRequest.getAttribute(BACKEND);
+    Long started = (Long) clientRequest.getAttribute(STARTED);
+    if (backend == null || started == null) return;
+    backend.completed(System.nanoTime() - started, failed);
+  }
+
+  /**
+   * prints a line per backend with its share of the streams, the most it had in flight, the client
+   * connections pinned to it now and the latency of every stream so far as seen from the proxy
+   */
+  public void report(PrintStream out) {
+    long total = 0;
+    for (Backend backend : backends) {
+      total += backend.requests.sum();
+    }
+    String format = "%-24s %10s %7s %8s %12s %12s %9s %9s %9s%n";
+    out.printf(
+        format,
+        "backend",
+        "streams",
+        "share",
+        "errors",
+        "max streams",
+        "connections",
+        "p50 ms",
+        "p99 ms",
+        "p99.9 ms");
+    for (Backend backend : backends) {
+      Histogram latency = backend.latency();
+      long requests = backend.requests.sum();
+      out.printf(
+          format,
+          backend.getUrl(),
+          requests,
+          String.format(Locale.ROOT, "%.1f%%", total == 0 ? 0 : 100.0 * requests / total),
+          backend.errors.sum(),
+          backend.maxStreams.get(),
+          balance == Balance.CONNECTION ? String.valueOf(backend.connections.get()) : "-",
+          millis(latency.getValueAtPercentile(50)),
+          millis(latency.getValueAtPercentile(99)),
+          millis(latency.getValueAtPercentile(99.9)));
+    }
+  }
+
+  private static String millis(double nanos) {
+    return String.format(Locale.ROOT, "%.2f", nanos / TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  /** one instance behind the proxy and what went to it */
+  public static class Backend {
+    private final String url;
+    // every stream, drained into the latency histogram on every report
+    private final Recorder recorder = new Recorder(3);
+    private final Histogram latency = new Histogram(3);
+    private Histogram interval;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxStreams = new AtomicInteger();
+    // client connections pinned to it and still open
+    private final AtomicInteger connections = new AtomicInteger();
+
+    public Backend(String url) {
+      this.url = url;
+    }
+
+    public String getUrl() {
+      return url;
+    }
+
+    private Backend connected() {
+      connections.incrementAndGet();
+      return this;
+    }
+
+    private void disconnected() {
+      connections.decrementAndGet();
+    }
+
+    private void started() {
+      maxStreams.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    }
+
+    private void completed(long nanos, boolean failed) {
+      inFlight.decrementAndGet();
+      requests.increment();
+      if (failed) errors.increment();
+      recorder.recordValue(nanos);
+    }
+
+    /** the latency of every stream so far, in nanoseconds */
+    private synchronized Histogram latency() {
+      interval = recorder.getIntervalHistogram(interval);
+      latency.add(interval);
+      return latency.copy();
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package com.http2.examples.scaleout;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.http2.examples.Main;
+import com.http2.examples.MainConfiguration;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.http2.Http2ConnectorFactory;
+import io.dropwizard.jetty.ConnectorFactory;
+import io.dropwizard.server.DefaultServerFactory;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts several instances of the service in this JVM behind an h2 reverse proxy, to see how load
+ * spreads when the service is scaled out. Every instance is started from a copy of the
+ * configuration with an h2c connector, an admin port and an ingest directory of its own. The proxy
+ * takes the place of the h2 connector of the configuration, with the same keystore, so benchmarks
+ * are pointed at it unchanged; it reports how the streams spread over the instances until stopped.
+ */
+public class ScaleOutCommand extends ConfiguredCommand<MainConfiguration> {
+
+  public ScaleOutCommand() {
+    super("scale-out", "Runs several instances of the service behind an h2 balancing proxy");
+  }
+
+  @Override
+  public void configure(Subparser subparser) {
+    super.configure(subparser);
+    subparser
+        .addArgument("--backends")
+        .type(Integer.class)
+        .setDefault(3)
+        .help("instances of the service to start");
+    subparser
+        .addArgument("--balance")
+        .choices("connection", "stream")
+        .setDefault("stream")
+        .help("pin every client connection to a backend, or spread every stream");
+    subparser
+        .addArgument("--backend-port")
+        .type(Integer.class)
+        .setDefault(9000)
+        .help("h2c port of the first instance; the admin port of each is 100 above its own");
+    subparser
+        .addArgument("--report-interval")
+        .type(Integer.class)
+        .setDefault(10)
+        .help("seconds between reports of the spread of streams");
+  }
+
+  @Override
+  protected void run(
+      Bootstrap<MainConfiguration> bootstrap, Namespace namespace, MainConfiguration configuration)
+      throws Exception {
+    Http2ConnectorFactory h2 = h2Connector(configuration);
+    int count = namespace.getInt("backends");
+    int firstPort = namespace.getInt("backend_port");
+    BalancingProxy.Balance balance =
+        BalancingProxy.Balance.valueOf(namespace.getString("balance").toUpperCase(Locale.ROOT));
+
+    List<BalancingProxy.Backend> backends = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int port = firstPort + i;
+      Path config = backendConfig(new File(namespace.getString("file")), h2, port, i);
+      // the server command starts the instance and returns, leaving it running on its own threads
+      new Main().run("server", config.toString());
+      backends.add(new BalancingProxy.Backend("http://localhost:" + port));
+    }
+
+    BalancingProxy proxy = new BalancingProxy(backends, balance);
+    Server server = proxyServer(proxy, h2);
+    server.start();
+    System.out.println(
+        "Balancing by "
+            + balance.name().toLowerCase(Locale.ROOT)
+            + " over ["
+            + count
+            + "] instances on https://localhost:"
+            + h2.getPort());
+
+    int interval = namespace.getInt("report_interval");
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    reporter.scheduleAtFixedRate(
+        () -> proxy.report(System.out), interval, interval, TimeUnit.SECONDS);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> proxy.report(System.out)));
+    server.join();
+  }
+
+  private static Http2ConnectorFactory h2Connector(MainConfiguration configuration) {
+    if (configuration.getServerFactory() instanceof DefaultServerFactory) {
+      DefaultServerFactory factory = (DefaultServerFactory) configuration.getServerFactory();
+      for (ConnectorFactory connector : factory.getApplicationConnectors()) {
+        if (connector instanceof Http2ConnectorFactory) return (Http2ConnectorFactory) connector;
+      }
+    }
+    throw new IllegalArgumentException("the configuration has no h2 connector to put a proxy on");
+  }
+
+  /** a copy of the configuration for one instance, with ports and an ingest directory of its own */
+  private static Path backendConfig(File file, Http2ConnectorFactory h2, int port, int index)
+      throws Exception {
+    ObjectMapper yaml = new ObjectMapper(new YAMLFactory());
+    ObjectNode root = (ObjectNode) yaml.readTree(file);
+    ObjectNode server = root.with("server");
+
+    ArrayNode connectors = server.putArray("applicationConnectors");
+    connectors
+        .addObject()
+        .put("type", "h2c")
+        .put("port", port)
+        .put("maxConcurrentStreams", h2.getMaxConcurrentStreams())
+        .put("initialStreamRecvWindow", h2.getInitialStreamRecvWindow());
+    server.putArray("adminConnectors").addObject().put("type", "http").put("port", port + 100);
+
+    ObjectNode ingest = root.with("ingest");
+    JsonNode directory = ingest.get("directory");
+    ingest.put("directory", (directory == null ? "ingest" : directory.asText()) + "-" + index);
+
+    Path config = Files.createTempFile("scale-out-" + index + "-", ".yml");
+    config.toFile().deleteOnExit();
+    yaml.writeValue(config.toFile(), root);
+    return config;
+  }
+
+  /** a server taking h2, and http/1.1 for clients without alpn, with the keystore of the h2 one */
+  private static Server proxyServer(BalancingProxy proxy, Http2ConnectorFactory h2) {
+    Server server = new Server();
+
+    HttpConfiguration http = new HttpConfiguration();
+    http.setSecurePort(h2.getPort());
+    http.addCustomizer(new SecureRequestCustomizer());
+
+    SslContextFactory ssl = new SslContextFactory();
+    ssl.setKeyStorePath(h2.getKeyStorePath());
+    ssl.setKeyStorePassword(h2.getKeyStorePassword());
+    ssl.setCipherComparator(HTTP2Cipher.COMPARATOR);
+    ssl.setUseCipherSuitesOrder(true);
+
+    HTTP2ServerConnectionFactory http2 = new HTTP2ServerConnectionFactory(http);
+    http2.setMaxConcurrentStreams(h2.getMaxConcurrentStreams());
+    ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory();
+    alpn.setDefaultProtocol(HttpVersion.HTTP_1_1.asString());
+
+    ServerConnector connector =
+        new ServerConnector(
+            server,
+            new SslConnectionFactory(ssl, alpn.getProtocol()),
+            alpn,
+            http2,
+            new HttpConnectionFactory(http));
+    connector.setPort(h2.getPort());
+    server.addConnector(connector);
+
+    ServletContextHandler context = new ServletContextHandler();
+    ServletHolder holder = new ServletHolder(proxy);
+    holder.setAsyncSupported(true);
+    context.addServlet(holder, "/*");
+    server.setHandler(context);
+    return server;
+  }
+}
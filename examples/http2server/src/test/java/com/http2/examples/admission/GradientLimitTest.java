@@ -0,0 +1,87 @@
+package com.http2.examples.admission;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GradientLimitTest {
+
+  private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void test_OnSample_GrowsWhileLatencyIsSteady() {
+    GradientLimit limit = new GradientLimit(20, 1, 100, 0.2);
+    for (int i = 0; i < 100; i++) {
+      limit.onSample("POST /payload", 10 * MILLIS, limit.getLimit());
+    }
+
+    assertEquals(100, limit.getLimit());
+  }
+
+  @Test
+  public void test_OnSample_DoesNotGrowWhenUnderused() {
+    GradientLimit limit = new GradientLimit(20, 1, 100, 0.2);
+    for (int i = 0; i < 100; i++) {
+      limit.onSample("POST /payload", 10 * MILLIS, 1);
+    }
+
+    assertEquals(20, limit.getLimit());
+  }
+
+  @Test
+  public void test_OnSample_ShrinksWhenLatencyClimbs() {
+    GradientLimit limit = new GradientLimit(50, 1, 100, 0.2);
+    limit.onSample("POST /payload", 10 * MILLIS, 50);
+    int before = limit.getLimit();
+    for (int i = 0; i < 20; i++) {
+      limit.onSample("POST /payload", 100 * MILLIS, limit.getLimit());
+    }
+
+    assertTrue(limit.getLimit() < before / 2);
+    assertTrue(limit.getLimit() >= 1);
+  }
+
+  @Test
+  public void test_OnSample_ClassesHaveTheirOwnBaseline() {
+    GradientLimit limit = new GradientLimit(50, 1, 100, 0.2);
+    for (int i = 0; i < 100; i++) {
+      limit.onSample("GET /stats", MILLIS, 50);
+    }
+    int before = limit.getLimit();
+    // a hundred times slower than the reads, but as slow as uploads always are
+    for (int i = 0; i < 100; i++) {
+      limit.onSample("POST /payload", 100 * MILLIS, limit.getLimit());
+    }
+
+    assertTrue(limit.getLimit() >= before);
+  }
+
+  @Test
+  public void test_OnSample_ClassesPastTheMaxShareABaseline() {
+    GradientLimit limit = new GradientLimit(50, 1, 100, 0.2);
+    for (int i = 0; i < GradientLimit.MAX_CLASSES; i++) {
+      limit.onSample("GET /" + i, MILLIS, 50);
+    }
+    limit.onSample("GET /slow", 100 * MILLIS, 50);
+    int before = limit.getLimit();
+    // judged against the first of the classes past the max, rather than a baseline of its own
+    limit.onSample("GET /other", 200 * MILLIS, limit.getLimit());
+
+    assertTrue(limit.getLimit() < before);
+  }
+
+  @Test
+  public void test_OnDropped_ShrinksToTheMin() {
+    GradientLimit limit = new GradientLimit(10, 5, 100, 0.2);
+    limit.onDropped();
+    assertEquals(9, limit.getLimit());
+
+    for (int i = 0; i < 20; i++) {
+      limit.onDropped();
+    }
+    assertEquals(5, limit.getLimit());
+  }
+}
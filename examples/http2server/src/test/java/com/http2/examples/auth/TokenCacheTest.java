@@ -0,0 +1,79 @@
+package com.http2.examples.auth;
+
+import com.codahale.metrics.MetricRegistry;
+import com.http2.api.BearerTokens;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TokenCacheTest {
+
+  private final BearerTokens tokens = new BearerTokens("secret");
+  private final AtomicInteger validations = new AtomicInteger();
+
+  @Test
+  public void test_Validate_ValidTokenIsCached() {
+    TokenCache cache = cache(TimeUnit.MINUTES.toNanos(5), TimeUnit.MINUTES.toNanos(5));
+    String token = tokens.sign("tenant-1", inSeconds(3600));
+
+    assertEquals("tenant-1", cache.validate(token));
+    assertEquals("tenant-1", cache.validate(token));
+    assertEquals(1, validations.get());
+  }
+
+  @Test
+  public void test_Validate_ValidTokenExpiresWithTheToken() throws InterruptedException {
+    TokenCache cache = cache(TimeUnit.MINUTES.toNanos(5), TimeUnit.MINUTES.toNanos(5));
+    // expires within the next second, well before the ttl
+    String token = tokens.sign("tenant-1", inSeconds(1));
+    cache.validate(token);
+
+    Thread.sleep(2000);
+    assertNull(cache.validate(token));
+    assertEquals(2, validations.get());
+  }
+
+  @Test
+  public void test_Validate_MalformedTokenIsCached() {
+    TokenCache cache = cache(TimeUnit.MINUTES.toNanos(5), TimeUnit.MINUTES.toNanos(5));
+
+    assertNull(cache.validate("not-a-token"));
+    assertNull(cache.validate("not-a-token"));
+    assertEquals(1, validations.get());
+  }
+
+  @Test
+  public void test_Validate_ForgedTokenOnlyCachedForTheNegativeTtl() throws InterruptedException {
+    TokenCache cache = cache(TimeUnit.MINUTES.toNanos(5), TimeUnit.MILLISECONDS.toNanos(50));
+    // claims an expiry far ahead, which isn't trusted as it isn't signed with the secret
+    String forged = new BearerTokens("other").sign("tenant-1", inSeconds(3600));
+
+    assertNull(cache.validate(forged));
+    assertNull(cache.validate(forged));
+    assertEquals(1, validations.get());
+
+    Thread.sleep(100);
+    assertNull(cache.validate(forged));
+    assertEquals(2, validations.get());
+  }
+
+  private TokenCache cache(long ttlNanos, long negativeTtlNanos) {
+    return new TokenCache(
+        token -> {
+          validations.incrementAndGet();
+          return tokens.verify(token);
+        },
+        100,
+        ttlNanos,
+        negativeTtlNanos,
+        new MetricRegistry());
+  }
+
+  private static long inSeconds(long seconds) {
+    return System.currentTimeMillis() / 1000 + seconds;
+  }
+}
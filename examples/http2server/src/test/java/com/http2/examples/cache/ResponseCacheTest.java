@@ -0,0 +1,123 @@
+package com.http2.examples.cache;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResponseCacheTest {
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @Test
+  public void test_Get_CachedWhileVersionIsUnchanged() throws IOException {
+    ResponseCache cache = cache(EvictionPolicy.LRU, 1000, Duration.minutes(1));
+
+    assertEquals("stats 1", get(cache, "stats", 1));
+    assertEquals("stats 1", get(cache, "stats", 1));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void test_Get_BuiltAgainForNewVersion() throws IOException {
+    ResponseCache cache = cache(EvictionPolicy.LRU, 1000, Duration.minutes(1));
+    get(cache, "stats", 1);
+
+    assertEquals("stats 2", get(cache, "stats", 2));
+    assertEquals(2, loads.get());
+    assertEquals(1, cache.getEntries());
+  }
+
+  @Test
+  public void test_Get_BuiltAgainAfterTtl() throws Exception {
+    ResponseCache cache = cache(EvictionPolicy.LRU, 1000, Duration.milliseconds(10));
+    get(cache, "stats", 1);
+    Thread.sleep(50);
+
+    get(cache, "stats", 1);
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void test_Get_LruEvictsLeastRecentlyRead() throws IOException {
+    // two entries a stripe
+    ResponseCache cache = cache(EvictionPolicy.LRU, 2 * ResponseCache.STRIPES, Duration.minutes(1));
+    List<String> keys = sameStripe(3);
+    get(cache, keys.get(0), 1);
+    get(cache, keys.get(1), 1);
+    get(cache, keys.get(0), 1);
+    get(cache, keys.get(2), 1);
+    loads.set(0);
+
+    get(cache, keys.get(0), 1);
+    assertEquals(0, loads.get());
+    get(cache, keys.get(1), 1);
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void test_Get_FifoEvictsFirstCached() throws IOException {
+    ResponseCache cache =
+        cache(EvictionPolicy.FIFO, 2 * ResponseCache.STRIPES, Duration.minutes(1));
+    List<String> keys = sameStripe(3);
+    get(cache, keys.get(0), 1);
+    get(cache, keys.get(1), 1);
+    get(cache, keys.get(0), 1);
+    get(cache, keys.get(2), 1);
+    loads.set(0);
+
+    get(cache, keys.get(1), 1);
+    assertEquals(0, loads.get());
+    get(cache, keys.get(0), 1);
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void test_Get_ResponseBiggerThanStripeIsNotKept() throws IOException {
+    CacheConfiguration config = new CacheConfiguration();
+    config.setMaxBytes(Size.bytes(ResponseCache.STRIPES * 4));
+    ResponseCache cache = new ResponseCache(config, new MetricRegistry());
+
+    assertEquals("stats 1", get(cache, "stats", 1));
+    assertEquals(0, cache.getEntries());
+    assertEquals(0, cache.getBytes());
+  }
+
+  private ResponseCache cache(EvictionPolicy policy, int maxEntries, Duration ttl) {
+    CacheConfiguration config = new CacheConfiguration();
+    config.setPolicy(policy);
+    config.setMaxEntries(maxEntries);
+    config.setTtl(ttl);
+    return new ResponseCache(config, new MetricRegistry());
+  }
+
+  private String get(ResponseCache cache, String key, long version) throws IOException {
+    byte[] body =
+        cache.get(
+            key,
+            version,
+            () -> {
+              loads.incrementAndGet();
+              return (key + " " + version).getBytes(StandardCharsets.UTF_8);
+            });
+    return new String(body, StandardCharsets.UTF_8);
+  }
+
+  /** keys that land in the same stripe, so they compete for its entries */
+  private static List<String> sameStripe(int count) {
+    List<String> keys = new ArrayList<>();
+    for (int i = 0; keys.size() < count; i++) {
+      String key = "key-" + i;
+      if ((key.hashCode() & Integer.MAX_VALUE) % ResponseCache.STRIPES == 0) keys.add(key);
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,165 @@
+package com.http2.examples.dedup;
+
+import com.codahale.metrics.MetricRegistry;
+import com.http2.api.Entity;
+import com.http2.api.EntityBatch;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicateFilterTest {
+
+  private final DuplicateFilter filter =
+      new DuplicateFilter(new DedupConfiguration(), new MetricRegistry());
+
+  @Test
+  public void test_IsDuplicate_ClaimedUntilCommitted() {
+    String address = UUID.randomUUID().toString();
+
+    assertFalse(filter.isDuplicate(address));
+    // claimed, so a concurrent request with it is a duplicate
+    assertTrue(filter.isDuplicate(address));
+
+    filter.commit(address);
+    assertTrue(filter.isDuplicate(address));
+  }
+
+  @Test
+  public void test_IsDuplicate_ReleasedIsNew() {
+    String address = UUID.randomUUID().toString();
+
+    assertFalse(filter.isDuplicate(address));
+    filter.release(address);
+
+    assertFalse(filter.isDuplicate(address));
+  }
+
+  @Test
+  public void test_IsDuplicate_NoUuidIsNeverDuplicate() {
+    assertFalse(filter.isDuplicate((String) null));
+    assertFalse(filter.isDuplicate("not a uuid"));
+    filter.commit("not a uuid");
+    assertFalse(filter.isDuplicate("not a uuid"));
+  }
+
+  @Test
+  public void test_RemoveDuplicates_RepeatsWithinList() {
+    String address = UUID.randomUUID().toString();
+    List<Entity> entities =
+        new ArrayList<>(
+            Arrays.asList(entity("a", address), entity("b", address), entity("c", null)));
+
+    assertEquals(1, filter.removeDuplicates(entities));
+    assertEquals(2, entities.size());
+    assertEquals("a", entities.get(0).getName());
+    assertEquals("c", entities.get(1).getName());
+  }
+
+  @Test
+  public void test_RemoveDuplicates_RetryAfterFailedPublish() {
+    List<Entity> entities =
+        new ArrayList<>(Arrays.asList(entity("a", UUID.randomUUID().toString())));
+    List<Entity> retry = new ArrayList<>(entities);
+
+    assertEquals(0, filter.removeDuplicates(entities));
+    // as if publishing had failed
+    filter.release(entities);
+
+    assertEquals(0, filter.removeDuplicates(retry));
+    filter.commit(retry);
+    assertEquals(1, filter.removeDuplicates(new ArrayList<>(retry)));
+  }
+
+  @Test
+  public void test_RemoveDuplicates_Batch() {
+    UUID seen = UUID.randomUUID();
+    UUID fresh = UUID.randomUUID();
+    filter.isDuplicate(seen.toString());
+    filter.commit(seen.toString());
+
+    EntityBatch batch = new EntityBatch();
+    address(batch, seen);
+    address(batch, fresh);
+    address(batch, fresh);
+    batch.add();
+
+    assertEquals(2, filter.removeDuplicates(batch));
+    assertEquals(2, batch.size());
+    assertEquals(fresh.toString(), batch.getAddress(0));
+
+    filter.commit(batch);
+    assertTrue(filter.isDuplicate(fresh.toString()));
+  }
+
+  @Test
+  public void test_RemoveDuplicates_ReleasedBatchIsNew() {
+    UUID address = UUID.randomUUID();
+    EntityBatch batch = new EntityBatch();
+    address(batch, address);
+
+    assertEquals(0, filter.removeDuplicates(batch));
+    filter.release(batch);
+
+    assertFalse(filter.isDuplicate(address.toString()));
+  }
+
+  @Test
+  public void test_Release_OthersStayClaimed() {
+    MetricRegistry metrics = new MetricRegistry();
+    DedupConfiguration config = new DedupConfiguration();
+    config.setMaxClaims(4096);
+    DuplicateFilter filter = new DuplicateFilter(config, metrics);
+    Random random = new Random(36);
+    long[] msbs = new long[1536];
+    long[] lsbs = new long[msbs.length];
+    for (int i = 0; i < msbs.length; i++) {
+      msbs[i] = random.nextLong();
+      lsbs[i] = random.nextLong();
+      assertFalse(filter.isDuplicate(msbs[i], lsbs[i]));
+    }
+    assertEquals(0, metrics.meter("com.http2.examples.dedup.DuplicateFilter.unclaimed").getCount());
+
+    // releasing every other claim moves the ones probed past it back
+    for (int i = 0; i < msbs.length; i += 2) {
+      filter.release(msbs[i], lsbs[i]);
+    }
+    for (int i = 0; i < msbs.length; i++) {
+      assertEquals(i % 2 == 1, filter.isDuplicate(msbs[i], lsbs[i]));
+    }
+  }
+
+  @Test
+  public void test_IsDuplicate_FullClaimsLetThrough() {
+    MetricRegistry metrics = new MetricRegistry();
+    DedupConfiguration config = new DedupConfiguration();
+    config.setMaxClaims(256);
+    DuplicateFilter filter = new DuplicateFilter(config, metrics);
+
+    // one claim per stripe, so some of these find theirs taken
+    for (int i = 0; i < 1024; i++) {
+      assertFalse(filter.isDuplicate(UUID.randomUUID().toString()));
+    }
+    assertTrue(
+        metrics.meter("com.http2.examples.dedup.DuplicateFilter.unclaimed").getCount() > 0);
+  }
+
+  private static Entity entity(String name, String address) {
+    Entity entity = new Entity();
+    entity.setName(name);
+    entity.setAddress(address);
+    return entity;
+  }
+
+  private static void address(EntityBatch batch, UUID address) {
+    batch.add();
+    batch.setAddress(address.getMostSignificantBits(), address.getLeastSignificantBits());
+  }
+}
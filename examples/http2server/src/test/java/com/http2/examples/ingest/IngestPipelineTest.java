@@ -0,0 +1,109 @@
+package com.http2.examples.ingest;
+
+import com.codahale.metrics.MetricRegistry;
+import com.http2.api.Entity;
+import com.http2.api.EntityBatch;
+import com.http2.api.IngestStats;
+import com.http2.api.SegmentStats;
+import io.dropwizard.util.Size;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.ws.rs.BadRequestException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class IngestPipelineTest {
+
+  private static final String ADDRESS = "4f0c3a1e-8a42-4d2b-9c1e-2b7d5e6f7a8b";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private IngestPipeline pipeline;
+
+  @Before
+  public void setUp() throws Exception {
+    IngestConfiguration config = new IngestConfiguration();
+    config.setDirectory(folder.getRoot().getPath());
+    config.setSegmentSize(Size.bytes(256));
+    pipeline = new IngestPipeline(config, new MetricRegistry());
+    pipeline.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    pipeline.stop();
+  }
+
+  @Test
+  public void test_Publish_DurableOnceAnswered() throws Exception {
+    pipeline.publish(Arrays.asList(entity("a", ADDRESS), entity("bb", null)));
+
+    IngestStats stats = pipeline.getStats();
+    assertEquals(1, stats.getRequests());
+    assertEquals(2, stats.getEntities());
+    // two lengths a record, and the utf-8 bytes of its name and address
+    assertEquals(8 + 1 + 36 + 8 + 2, stats.getBytes());
+    assertEquals(Long.valueOf(1), stats.getShards().get("4"));
+    assertEquals(Long.valueOf(1), stats.getShards().get("none"));
+    assertEquals(2, records(pipeline.getSegments()));
+  }
+
+  @Test
+  public void test_Publish_BatchWrittenLikeList() throws Exception {
+    EntityBatch batch = new EntityBatch();
+    batch.add();
+    char[] name = "a".toCharArray();
+    batch.setName(name, 0, name.length);
+    batch.setAddress(0x4f0c3a1e8a424d2bL, 0x9c1e2b7d5e6f7a8bL);
+    pipeline.publish(batch);
+
+    IngestStats stats = pipeline.getStats();
+    assertEquals(1, stats.getEntities());
+    assertEquals(8 + 1 + 36, stats.getBytes());
+    assertEquals(Long.valueOf(1), stats.getShards().get("4"));
+  }
+
+  @Test
+  public void test_Publish_OversizedEntityRejectsOnlyItsRequest() throws Exception {
+    char[] big = new char[256];
+    Arrays.fill(big, 'x');
+    try {
+      pipeline.publish(Arrays.asList(entity("a", null), entity(new String(big), null)));
+      fail("expected the request to be rejected");
+    } catch (BadRequestException e) {
+      // expected
+    }
+    pipeline.publish(Collections.singletonList(entity("b", null)));
+
+    // nothing of the rejected request was written, the next one was
+    assertEquals(1, pipeline.getStats().getRequests());
+    assertEquals(1, records(pipeline.getSegments()));
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void test_Publish_OversizedMultibyteName() {
+    // 84 characters of 3 bytes each don't fit in 256 bytes with the lengths
+    char[] big = new char[84];
+    Arrays.fill(big, '\u20ac');
+    pipeline.publish(Collections.singletonList(entity(new String(big), null)));
+  }
+
+  private static Entity entity(String name, String address) {
+    Entity entity = new Entity();
+    entity.setName(name);
+    entity.setAddress(address);
+    return entity;
+  }
+
+  private static long records(List<SegmentStats> segments) {
+    return segments.stream().mapToLong(SegmentStats::getRecords).sum();
+  }
+}
@@ -0,0 +1,70 @@
+package com.http2.examples.ingest;
+
+import com.http2.api.SegmentStats;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SegmentLogTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void test_Append_RollsOverWhenSegmentIsFull() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    // 24 bytes a record with its length, two fit in a segment of 64
+    try (SegmentLog log = new SegmentLog(directory, 64)) {
+      for (int i = 0; i < 3; i++) {
+        log.append(ByteBuffer.allocate(20));
+      }
+    }
+
+    List<SegmentStats> segments = SegmentLog.scan(directory);
+    assertEquals(2, segments.size());
+    assertEquals(2, segments.get(0).getRecords());
+    assertEquals(40, segments.get(0).getBytes());
+    assertEquals(1, segments.get(1).getRecords());
+  }
+
+  @Test
+  public void test_Append_RecordFillingSegment() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (SegmentLog log = new SegmentLog(directory, 64)) {
+      log.append(ByteBuffer.allocate((int) SegmentLog.maxRecordSize(64)));
+    }
+
+    List<SegmentStats> segments = SegmentLog.scan(directory);
+    assertEquals(1, segments.size());
+    assertEquals(1, segments.get(0).getRecords());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_Append_RecordLargerThanSegment() throws IOException {
+    try (SegmentLog log = new SegmentLog(folder.getRoot().toPath(), 64)) {
+      log.append(ByteBuffer.allocate((int) SegmentLog.maxRecordSize(64) + 1));
+    }
+  }
+
+  @Test
+  public void test_Open_CarriesOnAfterLastSegment() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (SegmentLog log = new SegmentLog(directory, 64)) {
+      log.append(ByteBuffer.allocate(8));
+    }
+    try (SegmentLog log = new SegmentLog(directory, 64)) {
+      assertEquals("segment-0000000001.log", log.getSegment().getFileName().toString());
+    }
+
+    List<SegmentStats> segments = SegmentLog.scan(directory);
+    assertEquals(2, segments.size());
+    assertEquals(1, segments.get(0).getRecords());
+    assertEquals(0, segments.get(1).getRecords());
+  }
+}
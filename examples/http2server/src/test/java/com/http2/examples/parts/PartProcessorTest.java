@@ -0,0 +1,140 @@
+package com.http2.examples.parts;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PartProcessorTest {
+
+  private final MetricRegistry metrics = new MetricRegistry();
+  private PartProcessor processor;
+
+  @After
+  public void stop() throws InterruptedException {
+    if (processor != null) processor.stop();
+  }
+
+  @Test
+  public void test_Finish_ResultsInReadOrder() throws IOException {
+    processor = new PartProcessor(config(4, 16), metrics);
+    PartProcessor.Upload<String> upload =
+        processor.upload(
+            part -> {
+              // the earlier a part was read, the longer it takes, so they finish out of order
+              sleep(20 - Integer.parseInt(part));
+              return "entity-" + part;
+            },
+            false);
+
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      upload.add(String.valueOf(i));
+      expected.add("entity-" + i);
+    }
+
+    assertEquals(expected, upload.finish());
+  }
+
+  @Test
+  public void test_Finish_SequentialOnRequestThread() throws IOException {
+    processor = new PartProcessor(config(4, 16), metrics);
+    Thread request = Thread.currentThread();
+    PartProcessor.Upload<Boolean> upload =
+        processor.upload(part -> Thread.currentThread() == request, true);
+
+    upload.add("a");
+    upload.add("b");
+
+    List<Boolean> results = upload.finish();
+    assertEquals(2, results.size());
+    assertTrue(results.get(0));
+    assertTrue(results.get(1));
+  }
+
+  @Test
+  public void test_Finish_WithoutPoolOnRequestThread() throws IOException {
+    processor = new PartProcessor(config(0, 16), metrics);
+    Thread request = Thread.currentThread();
+    PartProcessor.Upload<Boolean> upload =
+        processor.upload(part -> Thread.currentThread() == request, false);
+
+    upload.add("a");
+
+    assertTrue(upload.finish().get(0));
+  }
+
+  @Test
+  public void test_Add_WaitsWhenPartsInFlightAreAtMax() throws Exception {
+    processor = new PartProcessor(config(2, 1), metrics);
+    CountDownLatch release = new CountDownLatch(1);
+    PartProcessor.Upload<String> upload =
+        processor.upload(
+            part -> {
+              await(release);
+              return part;
+            },
+            false);
+    upload.add("a");
+
+    Thread reader =
+        new Thread(
+            () -> {
+              try {
+                upload.add("b");
+              } catch (IOException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    reader.start();
+    reader.join(200);
+    // b waits for a to be processed
+    assertTrue(reader.isAlive());
+
+    release.countDown();
+    reader.join(5000);
+    assertEquals(1, metrics.meter(MetricRegistry.name(PartProcessor.class, "waits")).getCount());
+  }
+
+  // thrown as it is, not wrapped in a CompletionException
+  @Test(expected = NumberFormatException.class)
+  public void test_Finish_RethrowsFailure() throws IOException {
+    processor = new PartProcessor(config(2, 16), metrics);
+    PartProcessor.Upload<Integer> upload = processor.upload(Integer::parseInt, false);
+    upload.add("1");
+    upload.add("not a number");
+
+    upload.finish();
+  }
+
+  private static PartsConfiguration config(int parallelism, int maxPartsInFlight) {
+    PartsConfiguration config = new PartsConfiguration();
+    config.setParallelism(parallelism);
+    config.setMaxPartsInFlight(maxPartsInFlight);
+    return config;
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package com.http2.examples.ratelimit;
+
+import com.codahale.metrics.MetricRegistry;
+import com.http2.examples.auth.AuthFilter;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import org.junit.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class RateLimitFilterTest {
+
+  private final RateLimitFilter filter =
+      new RateLimitFilter(new RateLimiter(config(), new MetricRegistry()));
+
+  @Test
+  public void test_DoFilter_RotatingTokensShareTheAddressLimit()
+      throws IOException, ServletException {
+    assertEquals(200, status(request("10.0.0.1", "Bearer token-1", null)));
+    // unverified, so a new token doesn't get a new bucket
+    assertEquals(429, status(request("10.0.0.1", "Bearer token-2", null)));
+    assertEquals(429, status(request("10.0.0.1", "Bearer token-3", null)));
+
+    assertEquals(200, status(request("10.0.0.2", null, null)));
+  }
+
+  @Test
+  public void test_DoFilter_VerifiedSubjectsHaveTheirOwnBuckets()
+      throws IOException, ServletException {
+    assertEquals(200, status(request("10.0.0.1", "Bearer a", "tenant-a")));
+    assertEquals(200, status(request("10.0.0.1", "Bearer b", "tenant-b")));
+
+    // the same subject with another token, as when a token is renewed
+    assertEquals(429, status(request("10.0.0.1", "Bearer a2", "tenant-a")));
+  }
+
+  @Test
+  public void test_Tenant_SubjectOverAddress() {
+    assertEquals("tenant-a", RateLimitFilter.tenant(request("10.0.0.1", "Bearer x", "tenant-a")));
+    assertEquals("10.0.0.1", RateLimitFilter.tenant(request("10.0.0.1", "Bearer x", null)));
+  }
+
+  /** runs a request through the filter, returning 200 if it got to the chain */
+  private int status(HttpServletRequest request) throws IOException, ServletException {
+    AtomicInteger status = new AtomicInteger(200);
+    HttpServletResponse response =
+        (HttpServletResponse)
+            Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class},
+                (proxy, method, args) -> {
+                  if (method.getName().equals("sendError")) status.set((Integer) args[0]);
+                  return null;
+                });
+    filter.doFilter(request, response, (req, res) -> {});
+    return status.get();
+  }
+
+  private static HttpServletRequest request(
+      String remoteAddr, String authorization, String subject) {
+    Map<String, Object> attributes = new HashMap<>();
+    if (subject != null) attributes.put(AuthFilter.SUBJECT, subject);
+    return (HttpServletRequest)
+        Proxy.newProxyInstance(
+            RateLimitFilterTest.class.getClassLoader(),
+            new Class<?>[] {HttpServletRequest.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "getRemoteAddr":
+                  return remoteAddr;
+                case "getHeader":
+                  return "Authorization".equalsIgnoreCase((String) args[0]) ? authorization : null;
+                case "getAttribute":
+                  return attributes.get(args[0]);
+                case "getContentLengthLong":
+                  return 0L;
+                default:
+                  return null;
+              }
+            });
+  }
+
+  /** a request a second for every tenant, with no burst beyond it */
+  private static RateLimitConfiguration config() {
+    RateLimitConfiguration config = new RateLimitConfiguration();
+    config.setRequestsPerSecond(1);
+    config.setRequestBurst(1);
+    config.setBytesPerSecond(Size.kilobytes(1));
+    config.setBytesBurst(Size.kilobytes(1));
+    config.setMaxTenants(100);
+    config.setIdleTimeout(Duration.minutes(5));
+    return config;
+  }
+}
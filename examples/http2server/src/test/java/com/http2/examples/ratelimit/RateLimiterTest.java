@@ -0,0 +1,78 @@
+package com.http2.examples.ratelimit;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+  private final MetricRegistry metrics = new MetricRegistry();
+
+  @Test
+  public void test_TryAcquire_TenantsHaveTheirOwnBuckets() {
+    RateLimiter limiter = new RateLimiter(config(1, 1, Duration.minutes(5)), metrics);
+
+    assertEquals(0, limiter.tryAcquire("a", 0));
+    assertTrue(limiter.tryAcquire("a", 0) > 0);
+    assertEquals(0, limiter.tryAcquire("b", 0));
+  }
+
+  @Test
+  public void test_TryAcquire_BytesLimitedRequestIsRefunded() {
+    RateLimiter limiter = new RateLimiter(config(2, 10, Duration.minutes(5)), metrics);
+
+    // takes every byte, then is turned away for the bytes of the second
+    assertEquals(0, limiter.tryAcquire("a", 1024));
+    assertTrue(limiter.tryAcquire("a", 1024) > 0);
+
+    // the second request didn't use up the last request token
+    assertEquals(0, limiter.tryAcquire("a", 0));
+    assertEquals(1, meter("limited", "bytes"));
+    assertEquals(0, meter("limited", "requests"));
+  }
+
+  @Test
+  public void test_TryAcquire_NewTenantEvictsIdleOnes() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter(config(1, 1, Duration.milliseconds(1)), metrics);
+    assertEquals(0, limiter.tryAcquire("a", 0));
+
+    // long enough for a's buckets to be full again and idle
+    Thread.sleep(1100);
+    assertEquals(0, limiter.tryAcquire("b", 0));
+
+    assertEquals(1, limiter.getTenants());
+    assertEquals(1, meter("evicted"));
+    assertEquals(0, meter("overflowed"));
+  }
+
+  @Test
+  public void test_TryAcquire_OverflowsWhenNoTenantIsIdle() {
+    RateLimiter limiter = new RateLimiter(config(1, 1, Duration.minutes(5)), metrics);
+    assertEquals(0, limiter.tryAcquire("a", 0));
+    assertEquals(0, limiter.tryAcquire("b", 0));
+
+    assertEquals(1, limiter.getTenants());
+    assertEquals(1, meter("overflowed"));
+  }
+
+  /** a request every second, a byte bucket of 1KiB a second, and the tenants given */
+  private static RateLimitConfiguration config(
+      long requestBurst, int maxTenants, Duration idleTimeout) {
+    RateLimitConfiguration config = new RateLimitConfiguration();
+    config.setRequestsPerSecond(1);
+    config.setRequestBurst(requestBurst);
+    config.setBytesPerSecond(Size.kilobytes(1));
+    config.setBytesBurst(Size.kilobytes(1));
+    config.setMaxTenants(maxTenants);
+    config.setIdleTimeout(idleTimeout);
+    return config;
+  }
+
+  private long meter(String... names) {
+    return metrics.meter(MetricRegistry.name(RateLimiter.class, names)).getCount();
+  }
+}
@@ -0,0 +1,77 @@
+package com.http2.examples.ratelimit;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+  private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void test_TryTake_UpToTheBurst() {
+    // a token every 100ms, at most 5
+    TokenBucket bucket = new TokenBucket(10, 5);
+    long now = System.nanoTime();
+    for (int i = 0; i < 5; i++) {
+      assertEquals(0, bucket.tryTake(1, now));
+    }
+
+    assertEquals(100 * MILLIS, bucket.tryTake(1, now));
+  }
+
+  @Test
+  public void test_TryTake_RefillsOverTime() {
+    TokenBucket bucket = new TokenBucket(10, 5);
+    long now = System.nanoTime();
+    assertEquals(0, bucket.tryTake(5, now));
+
+    assertEquals(100 * MILLIS, bucket.tryTake(2, now + 100 * MILLIS));
+    assertEquals(0, bucket.tryTake(2, now + 200 * MILLIS));
+  }
+
+  @Test
+  public void test_TryTake_MoreThanTheBurstFromAFullBucket() {
+    TokenBucket bucket = new TokenBucket(10, 5);
+    long now = System.nanoTime();
+    assertEquals(0, bucket.tryTake(8, now));
+
+    // the bucket is 3 tokens in debt, so it takes 400ms to have one again
+    assertEquals(400 * MILLIS, bucket.tryTake(1, now));
+  }
+
+  @Test
+  public void test_TryTake_MoreThanTheBurstWaitsForAFullBucket() {
+    TokenBucket bucket = new TokenBucket(10, 5);
+    long now = System.nanoTime();
+    assertEquals(0, bucket.tryTake(1, now));
+
+    assertEquals(100 * MILLIS, bucket.tryTake(8, now));
+  }
+
+  @Test
+  public void test_Refund_GivesTokensBack() {
+    TokenBucket bucket = new TokenBucket(10, 5);
+    long now = System.nanoTime();
+    assertEquals(0, bucket.tryTake(5, now));
+    bucket.refund(1);
+
+    assertEquals(0, bucket.tryTake(1, now));
+    assertTrue(bucket.tryTake(1, now) > 0);
+  }
+
+  @Test
+  public void test_IsIdle_OnceFullForTheTimeout() {
+    TokenBucket bucket = new TokenBucket(10, 5);
+    long now = System.nanoTime();
+    assertEquals(0, bucket.tryTake(5, now));
+
+    // full again 500ms later, then idle for a second
+    assertFalse(bucket.isIdle(1000 * MILLIS, now + 1400 * MILLIS));
+    assertTrue(bucket.isIdle(1000 * MILLIS, now + 1600 * MILLIS));
+  }
+}